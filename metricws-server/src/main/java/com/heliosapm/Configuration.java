@@ -50,6 +50,18 @@ public class Configuration {
 	public static final String HTTP_STATIC_DIR_PROP = "mws.http.static.dir";
 	/** The default HTTP listening bind interface */
 	public static final File HTTP_STATIC_DIR_DEFAULT = new File(new File(System.getProperty("user.home")), ".mws" + File.separator + "static");
+	/** The maximum total bytes of static content held in memory */
+	public static final String HTTP_STATIC_CACHE_MAXSIZE_PROP = "mws.http.static.cache.maxsize";
+	/** The default maximum total bytes of static content held in memory */
+	public static final long HTTP_STATIC_CACHE_MAXSIZE_DEFAULT = 64L * 1024 * 1024;
+	/** The maximum size of a static content file eligible for caching */
+	public static final String HTTP_STATIC_CACHE_MAXENTRY_PROP = "mws.http.static.cache.maxentry";
+	/** The default maximum size of a static content file eligible for caching */
+	public static final int HTTP_STATIC_CACHE_MAXENTRY_DEFAULT = 1024 * 1024;
+	/** The period in ms. of the static content directory scan for changed cached files */
+	public static final String HTTP_STATIC_SCAN_PROP = "mws.http.static.scan";
+	/** The default period in ms. of the static content directory scan for changed cached files */
+	public static final long HTTP_STATIC_SCAN_DEFAULT = 2000L;
 
 	/** The HTTP chunked content enablement */
 	public static final String HTTP_CHUNKING_ENABLED_PROP = "mws.http.chunked";
@@ -64,13 +76,161 @@ public class Configuration {
 	/** The WebSocket frame aggregation enablement */
 	public static final String WS_AGGR_ENABLED_PROP = "mws.ws.aggr";
 	/** The default WebSocket frame aggregation enablement */
-	public static final boolean WS_AGGR_ENABLED_DEFAULT = true;
+	public static final boolean WS_AGGR_ENABLED_DEFAULT = false;
 	
 	/** The WebSocket content aggregation max frame size */
 	public static final String WS_AGGR_MAXSIZE_PROP = "mws.ws.maxframe";
 	/** The default WebSocket content aggregation max frame size */
 	public static final int WS_AGGR_MAXSIZE_DEFAULT = 65536;
-	
+
+	/** The maximum size of an inbound WebSocket message reassembled from fragments */
+	public static final String WS_MAXMESSAGE_PROP = "mws.ws.maxmessage";
+	/** The default maximum size of an inbound WebSocket message */
+	public static final int WS_MAXMESSAGE_DEFAULT = 16 * 1024 * 1024;
+	/** The size of the frames large outbound WebSocket messages are streamed in. Streams only wait for a congested socket off the I/O threads, so with the inline handler executor a whole streamed message is queued at once */
+	public static final String WS_STREAM_CHUNK_PROP = "mws.ws.stream.chunk";
+	/** The default size of the frames large outbound WebSocket messages are streamed in */
+	public static final int WS_STREAM_CHUNK_DEFAULT = 16384;
+	/** The maximum time in ms. a streamed outbound WebSocket message may stall, or wait for its socket to drain, before the socket is closed */
+	public static final String WS_STREAM_TIMEOUT_PROP = "mws.ws.stream.timeout";
+	/** The default maximum time in ms. a streamed outbound WebSocket message may stall */
+	public static final long WS_STREAM_TIMEOUT_DEFAULT = 30000L;
+
+	/** The number of NIO boss (accept) threads */
+	public static final String NIO_BOSS_COUNT_PROP = "mws.nio.bosses";
+	/** The default number of NIO boss (accept) threads */
+	public static final int NIO_BOSS_COUNT_DEFAULT = 1;
+	/** The number of NIO worker (I/O) threads */
+	public static final String NIO_WORKER_COUNT_PROP = "mws.nio.workers";
+	/** The default number of NIO worker (I/O) threads */
+	public static final int NIO_WORKER_COUNT_DEFAULT = Runtime.getRuntime().availableProcessors() * 2;
+
+	/** The period in ms. of the NIO worker event loop latency probe (0 disables the probe) */
+	public static final String NIO_PROBE_PERIOD_PROP = "mws.nio.probe.period";
+	/** The default period in ms. of the NIO worker event loop latency probe */
+	public static final long NIO_PROBE_PERIOD_DEFAULT = 1000L;
+	/** The NIO worker event loop latency in ms. above which a notification is sent */
+	public static final String NIO_PROBE_THRESHOLD_PROP = "mws.nio.probe.threshold";
+	/** The default NIO worker event loop latency threshold in ms. */
+	public static final long NIO_PROBE_THRESHOLD_DEFAULT = 100L;
+
+	/** The time in seconds without reads after which a connection is pinged (0 disables idle reaping) */
+	public static final String IDLE_READER_PROP = "mws.idle.reader";
+	/** The default time in seconds without reads after which a connection is pinged */
+	public static final int IDLE_READER_DEFAULT = 60;
+	/** The number of unanswered pings after which a connection is reaped */
+	public static final String IDLE_MAXPINGS_PROP = "mws.idle.maxpings";
+	/** The default number of unanswered pings after which a connection is reaped */
+	public static final int IDLE_MAXPINGS_DEFAULT = 2;
+	/** The tick duration in ms. of the shared hashed wheel timer */
+	public static final String TIMER_TICK_PROP = "mws.timer.tick";
+	/** The default tick duration in ms. of the shared hashed wheel timer */
+	public static final long TIMER_TICK_DEFAULT = 100L;
+
+	/** The number of new connections admitted per second (0 disables admission control) */
+	public static final String ACCEPT_RATE_PROP = "mws.accept.rate";
+	/** The default number of new connections admitted per second */
+	public static final int ACCEPT_RATE_DEFAULT = 500;
+	/** The number of new connections admitted immediately in a burst */
+	public static final String ACCEPT_BURST_PROP = "mws.accept.burst";
+	/** The default number of new connections admitted immediately in a burst */
+	public static final int ACCEPT_BURST_DEFAULT = 1000;
+	/** The maximum time in ms. a new connection's reads are deferred before the connection is rejected */
+	public static final String ACCEPT_MAXDELAY_PROP = "mws.accept.maxdelay";
+	/** The default maximum time in ms. a new connection's reads are deferred */
+	public static final long ACCEPT_MAXDELAY_DEFAULT = 5000L;
+	/** The new connections per second admitted from one remote address (0 disables the limit).
+	 * Only enable the per address limits when clients connect directly: behind a load balancer or NAT every
+	 * client shares one address and a reconnect storm would be rejected wholesale. */
+	public static final String ACCEPT_IP_RATE_PROP = "mws.accept.ip.rate";
+	/** The default new connections per second admitted from one remote address (disabled) */
+	public static final int ACCEPT_IP_RATE_DEFAULT = 0;
+	/** The new connections admitted at once from one remote address */
+	public static final String ACCEPT_IP_BURST_PROP = "mws.accept.ip.burst";
+	/** The default new connections admitted at once from one remote address */
+	public static final int ACCEPT_IP_BURST_DEFAULT = 50;
+	/** The maximum open connections from one remote address (0 disables the limit). See {@link #ACCEPT_IP_RATE_PROP}. */
+	public static final String ACCEPT_IP_MAXCONN_PROP = "mws.accept.ip.maxconn";
+	/** The default maximum open connections from one remote address (disabled) */
+	public static final int ACCEPT_IP_MAXCONN_DEFAULT = 0;
+	/** The requests per second allowed on one connection (0 disables the limit) */
+	public static final String SESSION_RATE_PROP = "mws.session.rate";
+	/** The default requests per second allowed on one connection */
+	public static final int SESSION_RATE_DEFAULT = 100;
+	/** The requests allowed at once on one connection */
+	public static final String SESSION_BURST_PROP = "mws.session.burst";
+	/** The default requests allowed at once on one connection */
+	public static final int SESSION_BURST_DEFAULT = 200;
+	/** The maximum subscriptions held by one connection (0 disables the limit) */
+	public static final String SESSION_MAXSUBS_PROP = "mws.session.maxsubs";
+	/** The default maximum subscriptions held by one connection */
+	public static final int SESSION_MAXSUBS_DEFAULT = 256;
+	/** The consecutive throttled requests after which a web socket is closed (0 never closes) */
+	public static final String SESSION_MAXTHROTTLED_PROP = "mws.session.maxthrottled";
+	/** The default consecutive throttled requests after which a web socket is closed */
+	public static final int SESSION_MAXTHROTTLED_DEFAULT = 500;
+	/** The window in ms. over which closed web socket clients are told to spread their reconnects */
+	public static final String WS_RECONNECT_SPREAD_PROP = "mws.ws.reconnect.spread";
+	/** The default window in ms. over which closed web socket clients spread their reconnects */
+	public static final long WS_RECONNECT_SPREAD_DEFAULT = 30000L;
+
+	/** The outbound write coalescing enablement */
+	public static final String WRITE_COALESCE_ENABLED_PROP = "mws.write.coalesce";
+	/** The default outbound write coalescing enablement */
+	public static final boolean WRITE_COALESCE_ENABLED_DEFAULT = true;
+	/** The number of pending outbound bytes on a channel which triggers a flush */
+	public static final String WRITE_COALESCE_MAXBYTES_PROP = "mws.write.coalesce.maxbytes";
+	/** The default number of pending outbound bytes on a channel which triggers a flush */
+	public static final int WRITE_COALESCE_MAXBYTES_DEFAULT = 32768;
+	/** The number of pending outbound writes on a channel which triggers a flush */
+	public static final String WRITE_COALESCE_MAXCOUNT_PROP = "mws.write.coalesce.maxcount";
+	/** The default number of pending outbound writes on a channel which triggers a flush */
+	public static final int WRITE_COALESCE_MAXCOUNT_DEFAULT = 64;
+
+	/** The server wide budget of outbound bytes written but not yet flushed */
+	public static final String OUTBOUND_BUDGET_PROP = "mws.outbound.budget";
+	/** The default server wide budget of outbound bytes */
+	public static final long OUTBOUND_BUDGET_DEFAULT = 128L * 1024 * 1024;
+	/** The pending outbound bytes above which a channel is congested and stops being writable */
+	public static final String OUTBOUND_HIGH_PROP = "mws.outbound.high";
+	/** The default per channel outbound high watermark */
+	public static final int OUTBOUND_HIGH_DEFAULT = 256 * 1024;
+	/** The pending outbound bytes below which a congested channel is writable again */
+	public static final String OUTBOUND_LOW_PROP = "mws.outbound.low";
+	/** The default per channel outbound low watermark */
+	public static final int OUTBOUND_LOW_DEFAULT = 64 * 1024;
+	/** The policy applied when the outbound budget is exhausted: CONFLATE, SHED or DISCONNECT */
+	public static final String OUTBOUND_POLICY_PROP = "mws.outbound.policy";
+	/** The default policy applied when the outbound budget is exhausted */
+	public static final String OUTBOUND_POLICY_DEFAULT = "CONFLATE";
+
+	/** The executor JSON request handlers run on: inline (on the I/O thread), pool or virtual. Inline handlers get no backpressure on streamed responses */
+	public static final String HANDLER_EXECUTOR_PROP = "mws.handler.executor";
+	/** The default executor JSON request handlers run on */
+	public static final String HANDLER_EXECUTOR_DEFAULT = "inline";
+	/** The maximum number of JSON request handlers executing at once on virtual threads (0 is unbounded) */
+	public static final String HANDLER_MAXCONCURRENCY_PROP = "mws.handler.maxconcurrency";
+	/** The default maximum number of JSON request handlers executing at once on virtual threads */
+	public static final int HANDLER_MAXCONCURRENCY_DEFAULT = 50000;
+
+	/** The maximum number of requests accepted in one HTTP JSON-RPC batch */
+	public static final String HTTP_API_MAXBATCH_PROP = "mws.http.api.maxbatch";
+	/** The default maximum number of requests accepted in one HTTP JSON-RPC batch */
+	public static final int HTTP_API_MAXBATCH_DEFAULT = 256;
+
+	/** The fraction of JSON requests sampled for stage timing traces (0 disables) */
+	public static final String TRACE_SAMPLE_RATE_PROP = "mws.trace.samplerate";
+	/** The default fraction of JSON requests sampled for stage timing traces */
+	public static final double TRACE_SAMPLE_RATE_DEFAULT = 0.01D;
+	/** The number of slowest request traces retained */
+	public static final String TRACE_SLOWEST_PROP = "mws.trace.slowest";
+	/** The default number of slowest request traces retained */
+	public static final int TRACE_SLOWEST_DEFAULT = 32;
+	/** The number of pooled request trace slots */
+	public static final String TRACE_SLOTS_PROP = "mws.trace.slots";
+	/** The default number of pooled request trace slots */
+	public static final int TRACE_SLOTS_DEFAULT = 256;
+
 	
 	class FilePropertyEditor extends PropertyEditorSupport {
 		@Override
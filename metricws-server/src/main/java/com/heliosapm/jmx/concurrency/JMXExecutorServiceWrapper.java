@@ -24,7 +24,9 @@
  */
 package com.heliosapm.jmx.concurrency;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -44,6 +46,8 @@ import com.heliosapm.jmx.util.helpers.JMXHelper;
 public class JMXExecutorServiceWrapper implements JMXExecutorServiceWrapperMBean {
 	/** The instrumented pool */
 	protected final ThreadPoolExecutor pool;
+	/** The optional provider of per-worker statistics */
+	protected final WorkerStatsProvider workerStats;
 	
 	/**
 	 * Creates a new thread pool wrapper and registers the management interface in the helios MBeanServer
@@ -52,11 +56,22 @@ public class JMXExecutorServiceWrapper implements JMXExecutorServiceWrapperMBean
 	 * @return true if the interface was created and registered, false otherwise
 	 */
 	public static boolean register(final Object pool, final ObjectName on) {
+		return register(pool, on, null);
+	}
+
+	/**
+	 * Creates a new thread pool wrapper exposing the passed per-worker statistics and registers the management interface in the helios MBeanServer
+	 * @param pool An implementation of a {@link ThreadPoolExecutor}
+	 * @param on The JMX ObjectName to register the management interface under
+	 * @param workerStats The provider of per-worker statistics for the pool, may be null
+	 * @return true if the interface was created and registered, false otherwise
+	 */
+	public static boolean register(final Object pool, final ObjectName on, final WorkerStatsProvider workerStats) {
 		if(pool==null) throw new IllegalArgumentException("The passed executor was null");
 		if(on==null) throw new IllegalArgumentException("The passed ObjectName was null");
 		if(!(pool instanceof ThreadPoolExecutor)) return false;
 		if(JMXHelper.isRegistered(on)) return true;
-		JMXExecutorServiceWrapperMBean jsw = new JMXExecutorServiceWrapper((ThreadPoolExecutor)pool);
+		JMXExecutorServiceWrapperMBean jsw = new JMXExecutorServiceWrapper((ThreadPoolExecutor)pool, workerStats);
 		JMXHelper.registerMBean(jsw, on);
 		return true;
 	}
@@ -65,9 +80,11 @@ public class JMXExecutorServiceWrapper implements JMXExecutorServiceWrapperMBean
 	/**
 	 * Creates a new JMXExecutorServiceWrapper
 	 * @param pool a {@link ThreadPoolExecutor} implementation
+	 * @param workerStats The provider of per-worker statistics for the pool, may be null
 	 */
-	protected JMXExecutorServiceWrapper(final ThreadPoolExecutor pool) {
+	protected JMXExecutorServiceWrapper(final ThreadPoolExecutor pool, final WorkerStatsProvider workerStats) {
 		this.pool = pool;
+		this.workerStats = workerStats;
 	}
 
 
@@ -344,4 +361,24 @@ public class JMXExecutorServiceWrapper implements JMXExecutorServiceWrapperMBean
 	public long getCompletedTaskCount() {
 		return pool.getCompletedTaskCount();
 	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXExecutorServiceWrapperMBean#getWorkerStats()
+	 */
+	@Override
+	public String[] getWorkerStats() {
+		return workerStats==null ? new String[0] : workerStats.getWorkerStats();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXExecutorServiceWrapperMBean#getWorkerMetrics()
+	 */
+	@Override
+	public Map<String, Long> getWorkerMetrics() {
+		return workerStats==null ? Collections.<String, Long>emptyMap() : workerStats.getWorkerMetrics();
+	}
 }
@@ -1,5 +1,7 @@
 package com.heliosapm.jmx.concurrency;
 
+import java.util.Map;
+
 /**
  * <p>Title: JMXExecutorServiceWrapperMBean</p>
  * <p>Description: JMX JMBean interface for {@link JMXExecutorServiceWrapper}</p> 
@@ -206,4 +208,18 @@ public interface JMXExecutorServiceWrapperMBean {
 	 */
 	public abstract long getCompletedTaskCount();
 
-}
\ No newline at end of file
+	/**
+	 * Returns a one line summary of each of the pool's long running workers
+	 * @return the worker summaries, empty if the pool does not provide worker statistics
+	 * @see WorkerStatsProvider#getWorkerStats()
+	 */
+	public abstract String[] getWorkerStats();
+
+	/**
+	 * Returns the statistics of the pool's long running workers as a flat map of metric values
+	 * @return the worker metrics, empty if the pool does not provide worker statistics
+	 * @see WorkerStatsProvider#getWorkerMetrics()
+	 */
+	public abstract Map<String, Long> getWorkerMetrics();
+
+}
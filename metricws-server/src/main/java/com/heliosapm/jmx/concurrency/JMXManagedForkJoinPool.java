@@ -0,0 +1,744 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.jmx.concurrency.JMXManagedThreadPool.EnqueuedTask;
+import com.heliosapm.jmx.concurrency.JMXManagedThreadPool.TimedFutureTask;
+import com.heliosapm.jmx.concurrency.JMXManagedThreadPool.TimedRunnable;
+import com.heliosapm.jmx.metrics.SlidingWindow;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: JMXManagedForkJoinPool</p>
+ * <p>Description: A JMX managed work stealing pool for parallel fan-out and recursive decomposition.
+ * Each worker owns a deque: tasks submitted from a worker are pushed onto the head of its own deque and popped
+ * LIFO, while idle workers steal the oldest (and typically largest) tasks from the tail of other workers' deques.
+ * Tasks submitted from outside the pool go through a bounded submission queue.</p>
+ * <p>A task that forks subtasks with {@link #submit(Callable)} should wait for them with {@link #join(Future)} (or
+ * {@link #invokeAll(Collection)}), which runs queued tasks on the joining worker until the subtask is done, rather
+ * than blocking a worker on {@link Future#get()}.</p>
+ * <p>The pool runs on Java 6 so it does not build on <code>java.util.concurrent.ForkJoinPool</code>, but offers the same
+ * management surface as {@link JMXManagedThreadPool}, including the queue wait and execution time windows.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.JMXManagedForkJoinPool</code></p>
+ */
+
+public class JMXManagedForkJoinPool extends AbstractExecutorService implements JMXManagedForkJoinPoolMBean {
+	/** The pool run state */
+	private static final int RUNNING = 0;
+	/** The pool shutdown state */
+	private static final int SHUTDOWN = 1;
+	/** The pool stopped state */
+	private static final int STOP = 2;
+	/** The initial nanos a joining worker with nothing to run waits on the joined task before looking for work again */
+	private static final long JOIN_WAIT = 50000L;
+	/** The maximum nanos a joining worker with nothing to run waits on the joined task before looking for work again */
+	private static final long MAX_JOIN_WAIT = 10000000L;
+	
+	/** The JMX ObjectName for this pool's MBean */
+	protected final ObjectName objectName;
+	/** The pool name */
+	protected final String poolName;
+	/** The instance logger */
+	protected final Logger log;
+	/** The thread group that workers are created in */
+	protected final ThreadGroup threadGroup;
+	/** The sampled CPU and allocation usage of the pool's workers */
+	protected final PoolResourceMonitor.GroupUsage resourceUsage;
+	/** The workers */
+	protected final Worker[] workers;
+	/** The bounded queue for tasks submitted from outside the pool */
+	protected final LinkedBlockingQueue<Runnable> submissions;
+	/** The run state */
+	protected volatile int state = RUNNING;
+	/** Counts down as workers exit */
+	protected final CountDownLatch terminated;
+	/** Guards idle workers */
+	protected final ReentrantLock idleLock = new ReentrantLock();
+	/** Signalled when work is queued */
+	protected final Condition workQueued = idleLock.newCondition();
+	/** The number of idle workers */
+	protected final AtomicInteger idleWorkers = new AtomicInteger(0);
+	/** The number of workers executing a task */
+	protected final AtomicInteger activeWorkers = new AtomicInteger(0);
+	/** The count of uncaught exceptions */
+	protected final AtomicLong uncaughtExceptionCount = new AtomicLong(0L);
+	/** The count of rejected tasks */
+	protected final AtomicLong rejectedExecutionCount = new AtomicLong(0L);
+	/** The count of tasks that completed with an exception */
+	protected final AtomicLong failedTaskCount = new AtomicLong(0L);
+	/** The count of completed tasks */
+	protected final AtomicLong completedTaskCount = new AtomicLong(0L);
+	/** The count of stolen tasks */
+	protected final AtomicLong stealCount = new AtomicLong(0L);
+	/** The size of the metrics sliding windows */
+	protected final int metricWindowSize;
+	/** The percentile reported in the metrics */
+	protected final int metricPercentile;
+	/** The sliding window of task queue wait times in nanos */
+	protected final SlidingWindow queueWaitTimes;
+	/** The sliding window of task execution times in nanos */
+	protected final SlidingWindow executionTimes;
+	
+	/**
+	 * Creates a new JMXManagedForkJoinPool, reading all the configuration values from Config
+	 * @param objectName The JMX ObjectName for this pool's MBean 
+	 * @param poolName The pool name
+	 * @param publishJMX If true, publishes the JMX interface
+	 */
+	public JMXManagedForkJoinPool(final ObjectName objectName, final String poolName, final boolean publishJMX) {
+		this(
+			objectName,
+			poolName,
+			ConfigurationHelper.getIntSystemThenEnvProperty(poolName.toLowerCase() + CONFIG_PARALLELISM, DEFAULT_PARALLELISM),
+			ConfigurationHelper.getIntSystemThenEnvProperty(poolName.toLowerCase() + JMXManagedThreadPoolMBean.CONFIG_MAX_QUEUE_SIZE, JMXManagedThreadPoolMBean.DEFAULT_MAX_QUEUE_SIZE),
+			ConfigurationHelper.getIntSystemThenEnvProperty(poolName.toLowerCase() + JMXManagedThreadPoolMBean.CONFIG_WINDOW_SIZE, JMXManagedThreadPoolMBean.DEFAULT_WINDOW_SIZE),
+			ConfigurationHelper.getIntSystemThenEnvProperty(poolName.toLowerCase() + JMXManagedThreadPoolMBean.CONFIG_WINDOW_PERCENTILE, JMXManagedThreadPoolMBean.DEFAULT_WINDOW_PERCENTILE),
+			publishJMX
+		);
+	}
+	
+	/**
+	 * Creates a new JMXManagedForkJoinPool
+	 * @param objectName The JMX ObjectName for this pool's MBean 
+	 * @param poolName The pool name
+	 * @param parallelism The number of worker threads
+	 * @param queueSize The maximum number of tasks queued from outside the pool
+	 * @param metricWindowSize The maximum size of the metrics sliding window
+	 * @param metricDefaultPercentile The default percentile reported in the metrics management  
+	 * @param publishJMX If true, publishes the management interface
+	 */
+	public JMXManagedForkJoinPool(final ObjectName objectName, final String poolName, final int parallelism, final int queueSize, final int metricWindowSize, final int metricDefaultPercentile, final boolean publishJMX) {
+		if(parallelism < 1) throw new IllegalArgumentException("Invalid parallelism [" + parallelism + "]");
+		this.objectName = objectName;
+		this.poolName = poolName;
+		log = LoggerFactory.getLogger(getClass().getName() + "." + poolName);
+		threadGroup = new ThreadGroup(poolName + "ThreadGroup");
+		resourceUsage = PoolResourceMonitor.register(threadGroup);
+		submissions = new LinkedBlockingQueue<Runnable>(queueSize);
+		this.metricWindowSize = metricWindowSize;
+		this.metricPercentile = metricDefaultPercentile;
+		queueWaitTimes = new SlidingWindow(metricWindowSize);
+		executionTimes = new SlidingWindow(metricWindowSize);
+		terminated = new CountDownLatch(parallelism);
+		workers = new Worker[parallelism];
+		for(int i = 0; i < parallelism; i++) {
+			workers[i] = new Worker(i);
+		}
+		for(Worker w: workers) {
+			w.start();
+		}
+		if(publishJMX) {
+			try {			
+				JMXHelper.getHeliosMBeanServer().registerMBean(this, objectName);
+			} catch (Exception ex) {
+				log.warn("Failed to register JMX management interface. Will continue without.", ex);
+			}		
+			log.info("Created JMX Managed ForkJoin Pool [" + poolName + "] with parallelism [" + parallelism + "]");
+		}
+	}
+	
+	/**
+	 * <p>Title: Worker</p>
+	 * <p>Description: A pool worker thread and its deque of forked tasks</p> 
+	 */
+	protected final class Worker extends Thread {
+		/** The worker's deque of forked tasks */
+		final LinkedBlockingDeque<Runnable> deque = new LinkedBlockingDeque<Runnable>();
+		/** The worker index */
+		final int index;
+		
+		Worker(final int index) {
+			super(threadGroup, poolName + "Thread#" + (index + 1));
+			this.index = index;
+			setDaemon(true);
+		}
+		
+		/**
+		 * Returns the pool this worker belongs to
+		 * @return the owning pool
+		 */
+		JMXManagedForkJoinPool pool() {
+			return JMXManagedForkJoinPool.this;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while(state!=STOP) {
+					final Runnable r = next(this);
+					if(r!=null) {
+						runTask(r);
+					} else if(state==RUNNING) {
+						awaitWork();
+					} else {
+						break;
+					}
+				}
+			} finally {
+				terminated.countDown();
+				if(terminated.getCount()==0L) PoolResourceMonitor.unregister(threadGroup);
+			}
+		}
+	}
+	
+	/**
+	 * Finds the next task for a worker: the head of its own deque, then the tail of another worker's, then the submission queue
+	 * @param w The worker
+	 * @return the next task or null if there is no queued work
+	 */
+	protected Runnable next(final Worker w) {
+		Runnable r = w.deque.pollFirst();
+		if(r!=null) return r;
+		for(int i = 1; i < workers.length; i++) {
+			r = workers[(w.index + i) % workers.length].deque.pollLast();
+			if(r!=null) {
+				stealCount.incrementAndGet();
+				return r;
+			}
+		}
+		return submissions.poll();
+	}
+	
+	/**
+	 * Indicates if there is any queued work
+	 * @return true if there is queued work
+	 */
+	protected boolean hasWork() {
+		if(!submissions.isEmpty()) return true;
+		for(Worker w: workers) {
+			if(!w.deque.isEmpty()) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Parks an idle worker until work is queued or the pool is shutdown
+	 */
+	protected void awaitWork() {
+		idleLock.lock();
+		try {
+			idleWorkers.incrementAndGet();
+			try {
+				while(state==RUNNING && !hasWork()) {
+					workQueued.await();
+				}
+			} finally {
+				idleWorkers.decrementAndGet();
+			}
+		} catch (InterruptedException iex) {
+			/* No Op: shutdownNow */
+		} finally {
+			idleLock.unlock();
+		}
+	}
+	
+	/**
+	 * Wakes an idle worker, if there is one, after work was queued
+	 */
+	protected void signalWork() {
+		if(idleWorkers.get() > 0) {
+			idleLock.lock();
+			try {
+				workQueued.signal();
+			} finally {
+				idleLock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Runs a task on the calling worker, recording its queue wait, execution time and outcome
+	 * @param r The task to run
+	 */
+	protected void runTask(final Runnable r) {
+		final long start = System.nanoTime();
+		if(r instanceof EnqueuedTask) {
+			queueWaitTimes.record(start - ((EnqueuedTask)r).getEnqueueTime());
+		}
+		activeWorkers.incrementAndGet();
+		Throwable t = null;
+		try {
+			r.run();
+		} catch (Throwable ex) {
+			t = ex;
+			uncaughtExceptionCount.incrementAndGet();
+			log.warn("ForkJoin pool handled uncaught exception on thread [" + Thread.currentThread() + "]", ex);
+		} finally {
+			activeWorkers.decrementAndGet();
+			executionTimes.record(System.nanoTime() - start);
+			completedTaskCount.incrementAndGet();
+		}
+		if(t==null && r instanceof Future<?>) {
+			final Future<?> f = (Future<?>)r;
+			if(f.isDone() && !f.isCancelled()) {
+				try {
+					f.get();
+				} catch (ExecutionException ee) {
+					t = ee.getCause();
+				} catch (Exception ex) {
+					/* No Op */
+				}
+			}
+		}
+		if(t!=null) failedTaskCount.incrementAndGet();
+	}
+	
+	/**
+	 * Returns the calling thread's worker if it belongs to this pool
+	 * @return the calling worker or null if the caller is not one of this pool's workers
+	 */
+	protected Worker currentWorker() {
+		final Thread t = Thread.currentThread();
+		return (t instanceof Worker && ((Worker)t).pool()==this) ? (Worker)t : null;
+	}
+
+	/**
+	 * Queues a task. Tasks executed from one of this pool's workers are pushed onto the worker's own deque.
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+	 */
+	@Override
+	public void execute(final Runnable command) {
+		if(command==null) throw new NullPointerException();
+		final Worker w = currentWorker();
+		// tasks already running may still fork after a shutdown
+		if(state==STOP || (state==SHUTDOWN && w==null)) {
+			rejectedExecutionCount.incrementAndGet();
+			throw new RejectedExecutionException("Pool [" + poolName + "] is shutdown");
+		}
+		final Runnable task = command instanceof EnqueuedTask ? command : new TimedRunnable(command);
+		if(w!=null) {
+			w.deque.offerFirst(task);
+		} else if(!submissions.offer(task)) {
+			rejectedExecutionCount.incrementAndGet();
+			throw new RejectedExecutionException("Pool [" + poolName + "] submission queue is full");
+		}
+		signalWork();
+	}
+	
+	/**
+	 * Waits for a task submitted to this pool to complete. When called from one of this pool's workers, 
+	 * the worker runs queued tasks while it waits.
+	 * @param <T> The task's result type
+	 * @param future The future of the task to wait for
+	 * @return the task's result
+	 * @throws InterruptedException thrown if the caller is interrupted
+	 * @throws ExecutionException thrown if the task failed
+	 */
+	public <T> T join(final Future<T> future) throws InterruptedException, ExecutionException {
+		final Worker w = currentWorker();
+		if(w!=null) {
+			long wait = JOIN_WAIT;
+			while(!future.isDone()) {
+				final Runnable r = next(w);
+				if(r!=null) {
+					runTask(r);
+					wait = JOIN_WAIT;
+				} else {
+					// nothing to help with: block on the task, backing off so an idle joiner does not spin
+					try {
+						return future.get(wait, TimeUnit.NANOSECONDS);
+					} catch (TimeoutException tex) {
+						wait = Math.min(wait << 1, MAX_JOIN_WAIT);
+					}
+				}
+			}
+		}
+		return future.get();
+	}
+	
+	/**
+	 * Submits all the tasks and joins them in order
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.AbstractExecutorService#invokeAll(java.util.Collection)
+	 */
+	@Override
+	public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks) throws InterruptedException {
+		final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		for(Callable<T> task: tasks) {
+			futures.add(submit(task));
+		}
+		for(Future<T> f: futures) {
+			try {
+				join(f);
+			} catch (ExecutionException ee) {
+				/* No Op: the caller sees it in the future */
+			}
+		}
+		return futures;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.AbstractExecutorService#newTaskFor(java.util.concurrent.Callable)
+	 */
+	@Override
+	protected <T> FutureTask<T> newTaskFor(final Callable<T> callable) {
+		return new TimedFutureTask<T>(callable);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.AbstractExecutorService#newTaskFor(java.lang.Runnable, java.lang.Object)
+	 */
+	@Override
+	protected <T> FutureTask<T> newTaskFor(final Runnable runnable, final T value) {
+		return new TimedFutureTask<T>(runnable, value);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ExecutorService#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+		if(state==RUNNING) state = SHUTDOWN;
+		wakeAll();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ExecutorService#shutdownNow()
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		state = STOP;
+		final List<Runnable> pending = new ArrayList<Runnable>();
+		submissions.drainTo(pending);
+		for(Worker w: workers) {
+			w.deque.drainTo(pending);
+			w.interrupt();
+		}
+		wakeAll();
+		return pending;
+	}
+	
+	/**
+	 * Wakes all idle workers
+	 */
+	private void wakeAll() {
+		idleLock.lock();
+		try {
+			workQueued.signalAll();
+		} finally {
+			idleLock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#isShutdown()
+	 */
+	@Override
+	public boolean isShutdown() {
+		return state!=RUNNING;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#isTerminated()
+	 */
+	@Override
+	public boolean isTerminated() {
+		return terminated.getCount()==0L;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ExecutorService#awaitTermination(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		queueWaitTimes.reset();
+		executionTimes.reset();
+		failedTaskCount.set(0L);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getPoolName()
+	 */
+	@Override
+	public String getPoolName() {
+		return poolName;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getParallelism()
+	 */
+	@Override
+	public int getParallelism() {
+		return workers.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getActiveCount()
+	 */
+	@Override
+	public int getActiveCount() {
+		return activeWorkers.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getQueueDepth()
+	 */
+	@Override
+	public int getQueueDepth() {
+		int depth = submissions.size();
+		for(Worker w: workers) {
+			depth += w.deque.size();
+		}
+		return depth;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getQueueCapacity()
+	 */
+	@Override
+	public int getQueueCapacity() {
+		return submissions.remainingCapacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getStealCount()
+	 */
+	@Override
+	public long getStealCount() {
+		return stealCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getCompletedTaskCount()
+	 */
+	@Override
+	public long getCompletedTaskCount() {
+		return completedTaskCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getCpuPercent()
+	 */
+	@Override
+	public double getCpuPercent() {
+		return resourceUsage.getCpuPercent();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getUserPercent()
+	 */
+	@Override
+	public double getUserPercent() {
+		return resourceUsage.getUserPercent();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getAllocationRate()
+	 */
+	@Override
+	public long getAllocationRate() {
+		return resourceUsage.getAllocationRate();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getUncaughtExceptionCount()
+	 */
+	@Override
+	public long getUncaughtExceptionCount() {
+		return uncaughtExceptionCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getRejectedExecutionCount()
+	 */
+	@Override
+	public long getRejectedExecutionCount() {
+		return rejectedExecutionCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getFailedTaskCount()
+	 */
+	@Override
+	public long getFailedTaskCount() {
+		return failedTaskCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getMetrics()
+	 */
+	@Override
+	public Map<String, Long> getMetrics() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		JMXManagedThreadPool.addMetrics(map, "QueueWait", queueWaitTimes, metricPercentile);
+		JMXManagedThreadPool.addMetrics(map, "Execution", executionTimes, metricPercentile);
+		map.put("Failed", failedTaskCount.get());
+		map.put("Steals", stealCount.get());
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getMetricsTable()
+	 */
+	@Override
+	public String getMetricsTable() {
+		final StringBuilder b = new StringBuilder(JMXManagedThreadPoolMBean.METRIC_TABLE_HEADER.replace("95th", metricPercentile + "th"));
+		JMXManagedThreadPool.appendMetricsRow(b, poolName, "QueueWait", queueWaitTimes, 0L, metricPercentile);
+		JMXManagedThreadPool.appendMetricsRow(b, poolName, "Execution", executionTimes, failedTaskCount.get(), metricPercentile);
+		return b.append("</table>").toString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getMetricWindowSize()
+	 */
+	@Override
+	public int getMetricWindowSize() {
+		return metricWindowSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getMetricPercentile()
+	 */
+	@Override
+	public int getMetricPercentile() {
+		return metricPercentile;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getQueueWaitAverage()
+	 */
+	@Override
+	public long getQueueWaitAverage() {
+		return JMXManagedThreadPool.toMicros(queueWaitTimes.getMean());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getQueueWaitPercentile()
+	 */
+	@Override
+	public long getQueueWaitPercentile() {
+		return JMXManagedThreadPool.toMicros(queueWaitTimes.getPercentile(metricPercentile));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getQueueWaitMaximum()
+	 */
+	@Override
+	public long getQueueWaitMaximum() {
+		return JMXManagedThreadPool.toMicros(queueWaitTimes.getMax());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getExecutionAverage()
+	 */
+	@Override
+	public long getExecutionAverage() {
+		return JMXManagedThreadPool.toMicros(executionTimes.getMean());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getExecutionPercentile()
+	 */
+	@Override
+	public long getExecutionPercentile() {
+		return JMXManagedThreadPool.toMicros(executionTimes.getPercentile(metricPercentile));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean#getExecutionMaximum()
+	 */
+	@Override
+	public long getExecutionMaximum() {
+		return JMXManagedThreadPool.toMicros(executionTimes.getMax());
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+/**
+ * <p>Title: JMXManagedForkJoinPoolMBean</p>
+ * <p>Description: JMX MBean interface for {@link JMXManagedForkJoinPool}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.JMXManagedForkJoinPoolMBean</code></p>
+ */
+
+public interface JMXManagedForkJoinPoolMBean {
+	/** The  Config property name suffix to specify the pool's parallelism */
+	public static final String CONFIG_PARALLELISM = "-parallelism";
+	/** The default pool's parallelism */
+	public static final int DEFAULT_PARALLELISM = JMXManagedThreadPoolMBean.CORES;
+	
+	/**
+	 * Resets the pool's metrics
+	 */
+	public void reset();
+	
+	/**
+	 * Returns the CPU time of the pool's threads over the last sampling period, as a percentage of one core
+	 * @return the CPU percentage
+	 */
+	public double getCpuPercent();
+	
+	/**
+	 * Returns the user mode CPU time of the pool's threads over the last sampling period, as a percentage of one core
+	 * @return the user mode CPU percentage
+	 */
+	public double getUserPercent();
+	
+	/**
+	 * Returns the rate the pool's threads allocated memory over the last sampling period, in bytes per second
+	 * @return the allocation rate
+	 */
+	public long getAllocationRate();
+	
+	/**
+	 * Returns the MBean's ObjectName 
+	 * @return the objectName
+	 */
+	public ObjectName getObjectName();
+
+	/**
+	 * Returns the pool name
+	 * @return the poolName
+	 */
+	public String getPoolName();
+	
+	/**
+	 * Returns the number of worker threads
+	 * @return the number of worker threads
+	 */
+	public int getParallelism();
+	
+	/**
+	 * Returns the number of workers currently executing a task
+	 * @return the number of active workers
+	 */
+	public int getActiveCount();
+
+	/**
+	 * Returns the number of tasks queued for execution, in the submission queue and in the workers' deques
+	 * @return the current depth of the work queues
+	 */
+	public int getQueueDepth();
+	
+	/**
+	 * Returns the remaining capacity of the submission queue
+	 * @return the current capacity of the submission queue
+	 */
+	public int getQueueCapacity();
+	
+	/**
+	 * Returns the cummulative count of tasks taken by a worker from another worker's deque
+	 * @return the steal count
+	 */
+	public long getStealCount();
+	
+	/**
+	 * Returns the cummulative count of completed tasks
+	 * @return the completed task count
+	 */
+	public long getCompletedTaskCount();
+
+	/**
+	 * Returns the cummulative count of uncaught exceptions
+	 * @return the uncaughtExceptionCount
+	 */
+	public long getUncaughtExceptionCount();
+
+	/**
+	 * Returns the the cummulative count of rejected tasks
+	 * @return the rejectedExecutionCount
+	 */
+	public long getRejectedExecutionCount();
+	
+	/**
+	 * Returns the cummulative count of tasks that completed with an exception
+	 * @return the failed task count
+	 */
+	public long getFailedTaskCount();
+
+	/**
+	 * Returns a map of the queue wait and execution time metrics in microseconds, keyed by the metric name 
+	 * @return the metric map
+	 */
+	public Map<String, Long> getMetrics();
+	
+	/**
+	 * Returns an HTML table of the pool metrics
+	 * @return an HTML table of the pool metrics
+	 */
+	public String getMetricsTable();
+	
+	/**
+	 * Returns the number of most recent tasks the metrics are computed over
+	 * @return the metric sliding window size
+	 */
+	public int getMetricWindowSize();
+	
+	/**
+	 * Returns the percentile reported in the metrics
+	 * @return the metric percentile
+	 */
+	public int getMetricPercentile();
+	
+	/**
+	 * Returns the average time in microseconds recent tasks waited in the queues
+	 * @return the average queue wait time in microseconds
+	 */
+	public long getQueueWaitAverage();
+	
+	/**
+	 * Returns the configured percentile of the time in microseconds recent tasks waited in the queues
+	 * @return the queue wait time percentile in microseconds
+	 */
+	public long getQueueWaitPercentile();
+	
+	/**
+	 * Returns the longest time in microseconds a recent task waited in the queues
+	 * @return the maximum queue wait time in microseconds
+	 */
+	public long getQueueWaitMaximum();
+	
+	/**
+	 * Returns the average execution time in microseconds of recent tasks
+	 * @return the average execution time in microseconds
+	 */
+	public long getExecutionAverage();
+	
+	/**
+	 * Returns the configured percentile of the execution time in microseconds of recent tasks
+	 * @return the execution time percentile in microseconds
+	 */
+	public long getExecutionPercentile();
+	
+	/**
+	 * Returns the longest execution time in microseconds of a recent task
+	 * @return the maximum execution time in microseconds
+	 */
+	public long getExecutionMaximum();
+	
+	/**
+	 * Indicates if the pool has been shutdown
+	 * @return true if the pool has been shutdown
+	 */
+	public boolean isShutdown();
+	
+	/**
+	 * Indicates if the pool has been shutdown and all workers have exited
+	 * @return true if the pool is terminated
+	 */
+	public boolean isTerminated();
+}
@@ -57,6 +57,8 @@ public class JMXManagedScheduler extends ScheduledThreadPoolExecutor implements
 	protected final AtomicLong rejectedExecutionCount = new AtomicLong(0L);
 	/** The thread group that threads created for this pool are created in */
 	protected final ThreadGroup threadGroup;
+	/** The sampled CPU and allocation usage of the pool's threads */
+	protected final PoolResourceMonitor.GroupUsage resourceUsage;
 	/** The thread factory thread serial number factory */
 	protected final AtomicInteger threadSerial = new AtomicInteger(0);
 	/** Threadlocal to hold the start time of a given task */
@@ -90,6 +92,7 @@ public class JMXManagedScheduler extends ScheduledThreadPoolExecutor implements
 		this.objectName = objectName;
 		this.poolName = poolName;
 		this.threadGroup = new ThreadGroup(poolName + "ThreadGroup");
+		resourceUsage = PoolResourceMonitor.register(threadGroup);
 		setThreadFactory(this);
 		setRejectedExecutionHandler(this);
 		if(publishJMX) {
@@ -181,6 +184,43 @@ public class JMXManagedScheduler extends ScheduledThreadPoolExecutor implements
 		return poolName;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedSchedulerMBean#getCpuPercent()
+	 */
+	@Override
+	public double getCpuPercent() {
+		return resourceUsage.getCpuPercent();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedSchedulerMBean#getUserPercent()
+	 */
+	@Override
+	public double getUserPercent() {
+		return resourceUsage.getUserPercent();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedSchedulerMBean#getAllocationRate()
+	 */
+	@Override
+	public long getAllocationRate() {
+		return resourceUsage.getAllocationRate();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ThreadPoolExecutor#terminated()
+	 */
+	@Override
+	protected void terminated() {
+		PoolResourceMonitor.unregister(threadGroup);
+		super.terminated();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see com.heliosapm.jmx.concurrency.JMXManagedSchedulerMBean#getUncaughtExceptionCount()
@@ -49,6 +49,24 @@ public interface JMXManagedSchedulerMBean {
 	public static final int DEFAULT_CORE_SCHEDULER_POOL_SIZE = CORES;
 	
 
+	/**
+	 * Returns the CPU time of the pool's threads over the last sampling period, as a percentage of one core
+	 * @return the CPU percentage
+	 */
+	public double getCpuPercent();
+	
+	/**
+	 * Returns the user mode CPU time of the pool's threads over the last sampling period, as a percentage of one core
+	 * @return the user mode CPU percentage
+	 */
+	public double getUserPercent();
+	
+	/**
+	 * Returns the rate the pool's threads allocated memory over the last sampling period, in bytes per second
+	 * @return the allocation rate
+	 */
+	public long getAllocationRate();
+	
 	/**
 	 * Returns the scheduler's JMX ObjectName
 	 * @return the JMX ObjectName
@@ -27,11 +27,15 @@ package com.heliosapm.jmx.concurrency;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -45,12 +49,14 @@ import javax.management.ObjectName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.heliosapm.jmx.metrics.SlidingWindow;
 import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
 import com.heliosapm.jmx.util.helpers.JMXHelper;
 
 /**
  * <p>Title: JMXManagedThreadPool</p>
- * <p>Description: A JMX managed worker pool</p> 
+ * <p>Description: A JMX managed worker pool. The time each task waits in the queue and the time it takes to execute
+ * are measured with {@link System#nanoTime()} and tabulated over a sliding window of the most recent tasks.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.jmx.concurrency.JMXManagedThreadPool</code></p>
@@ -62,7 +68,7 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 	/** The pool name */
 	protected final String poolName;
 	/** The task work queue */
-	protected final ArrayBlockingQueue<Runnable> workQueue;
+	protected final BlockingQueue<Runnable> workQueue;
 	/** The instance logger */
 	protected final Logger log;
 	/** The count of uncaught exceptions */
@@ -71,8 +77,20 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 	protected final AtomicLong rejectedExecutionCount = new AtomicLong(0L);
 	/** The thread group that threads created for this pool are created in */
 	protected final ThreadGroup threadGroup;
+	/** The sampled CPU and allocation usage of the pool's threads */
+	protected final PoolResourceMonitor.GroupUsage resourceUsage;
 	/** The thread factory thread serial number factory */
 	protected final AtomicInteger threadSerial = new AtomicInteger(0);
+	/** The size of the metrics sliding windows */
+	protected final int metricWindowSize;
+	/** The percentile reported in the metrics */
+	protected final int metricPercentile;
+	/** The sliding window of task queue wait times in nanos */
+	protected final SlidingWindow queueWaitTimes;
+	/** The sliding window of task execution times in nanos */
+	protected final SlidingWindow executionTimes;
+	/** The count of tasks that completed with an exception */
+	protected final AtomicLong failedTaskCount = new AtomicLong(0L);
 	/** Threadlocal to hold the start time of a given task */
 	protected final ThreadLocal<long[]> taskStartTime = new ThreadLocal<long[]>() {
 		@Override
@@ -80,6 +98,8 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 			return new long[1];
 		}
 	};
+	/** The auto sizer, null if the pool is sized statically */
+	protected volatile JMXManagedThreadPoolSizer sizer = null;
 	/** An externally added exception handler */
 	protected UncaughtExceptionHandler exceptionHandler = null;
 
@@ -101,12 +121,24 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 	 * @param publishJMX If true, publishes the JMX interface
 	 */
 	public JMXManagedThreadPool(ObjectName objectName, String poolName, boolean publishJMX) {
+		this(objectName, poolName, DEFAULT_QUEUE_TYPE, publishJMX);
+	}
+	
+	/**
+	 * Creates a new JMXManagedThreadPool, reading all the configuration values from Config
+	 * @param objectName The JMX ObjectName for this pool's MBean 
+	 * @param poolName The pool name
+	 * @param defaultQueueType The work queue type to use if none is configured
+	 * @param publishJMX If true, publishes the JMX interface
+	 */
+	public JMXManagedThreadPool(ObjectName objectName, String poolName, String defaultQueueType, boolean publishJMX) {
 		this(
 			objectName, 
 			poolName,			
 			ConfigurationHelper.getIntSystemThenEnvProperty(poolName.toLowerCase() + CONFIG_CORE_POOL_SIZE, DEFAULT_CORE_POOL_SIZE), 
 			ConfigurationHelper.getIntSystemThenEnvProperty(poolName.toLowerCase() + CONFIG_MAX_POOL_SIZE, DEFAULT_MAX_POOL_SIZE), 
 			ConfigurationHelper.getIntSystemThenEnvProperty(poolName.toLowerCase() + CONFIG_MAX_QUEUE_SIZE, DEFAULT_MAX_QUEUE_SIZE), 
+			ConfigurationHelper.getSystemThenEnvProperty(poolName.toLowerCase() + CONFIG_QUEUE_TYPE, defaultQueueType), 
 			ConfigurationHelper.getLongSystemThenEnvProperty(poolName.toLowerCase() + CONFIG_KEEP_ALIVE, DEFAULT_KEEP_ALIVE), 
 			ConfigurationHelper.getIntSystemThenEnvProperty(poolName.toLowerCase() + CONFIG_WINDOW_SIZE, DEFAULT_WINDOW_SIZE),
 			ConfigurationHelper.getIntSystemThenEnvProperty(poolName.toLowerCase() + CONFIG_WINDOW_PERCENTILE, DEFAULT_WINDOW_PERCENTILE),
@@ -116,6 +148,15 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 		for(int i = 0; i < prestart; i++) {
 			prestartCoreThread();
 		}
+		final String prefix = poolName.toLowerCase();
+		if(ConfigurationHelper.getBooleanSystemThenEnvProperty(prefix + CONFIG_AUTOSIZE, DEFAULT_AUTOSIZE)) {
+			enableAutoSizing(
+				ConfigurationHelper.getIntSystemThenEnvProperty(prefix + CONFIG_AUTOSIZE_MIN, DEFAULT_AUTOSIZE_MIN),
+				ConfigurationHelper.getIntSystemThenEnvProperty(prefix + CONFIG_AUTOSIZE_MAX, DEFAULT_AUTOSIZE_MAX),
+				ConfigurationHelper.getLongSystemThenEnvProperty(prefix + CONFIG_AUTOSIZE_PERIOD, DEFAULT_AUTOSIZE_PERIOD),
+				ConfigurationHelper.getLongSystemThenEnvProperty(prefix + CONFIG_AUTOSIZE_WAIT, DEFAULT_AUTOSIZE_WAIT)
+			);
+		}
 	}
 	/**
 	 * Creates a new JMXManagedThreadPool and publishes the JMX MBean management interface
@@ -155,14 +196,36 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 	 * @param publishJMX If true, publishes the management interface
 	 */
 	public JMXManagedThreadPool(ObjectName objectName, String poolName, int corePoolSize, int maximumPoolSize, int queueSize, long keepAliveTimeMs, int metricWindowSize, int metricDefaultPercentile, boolean publishJMX) {
-		super(corePoolSize, maximumPoolSize, keepAliveTimeMs, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize, false));
+		this(objectName, poolName, corePoolSize, maximumPoolSize, queueSize, ConfigurationHelper.getSystemThenEnvProperty(poolName.toLowerCase() + CONFIG_QUEUE_TYPE, DEFAULT_QUEUE_TYPE), keepAliveTimeMs, metricWindowSize, metricDefaultPercentile, publishJMX);
+	}
+	
+	/**
+	 * Creates a new JMXManagedThreadPool
+	 * @param objectName The JMX ObjectName for this pool's MBean 
+	 * @param poolName The pool name
+	 * @param corePoolSize  the number of threads to keep in the pool, even if they are idle.
+	 * @param maximumPoolSize the maximum number of threads to allow in the pool.
+	 * @param queueSize The maximum number of pending tasks to queue
+	 * @param queueType The work queue type, {@link #QUEUE_TYPE_ARRAY}, {@link #QUEUE_TYPE_RING} or {@link #QUEUE_TYPE_PRIORITY}
+	 * @param keepAliveTimeMs when the number of threads is greater than the core, this is the maximum time in ms. that excess idle threads will wait for new tasks before terminating.
+	 * @param metricWindowSize The maximum size of the metrics sliding window
+	 * @param metricDefaultPercentile The default percentile reported in the metrics management  
+	 * @param publishJMX If true, publishes the management interface
+	 */
+	public JMXManagedThreadPool(ObjectName objectName, String poolName, int corePoolSize, int maximumPoolSize, int queueSize, String queueType, long keepAliveTimeMs, int metricWindowSize, int metricDefaultPercentile, boolean publishJMX) {
+		super(corePoolSize, maximumPoolSize, keepAliveTimeMs, TimeUnit.MILLISECONDS, newWorkQueue(poolName, queueType, queueSize));
 		this.threadGroup = new ThreadGroup(poolName + "ThreadGroup");
+		resourceUsage = PoolResourceMonitor.register(threadGroup);
 		setThreadFactory(this);
 		setRejectedExecutionHandler(this);
 		log = LoggerFactory.getLogger(getClass().getName() + "." + poolName);
 		this.objectName = objectName;
 		this.poolName = poolName;
-		workQueue = (ArrayBlockingQueue<Runnable>)getQueue();
+		workQueue = getQueue();
+		this.metricWindowSize = metricWindowSize;
+		this.metricPercentile = metricDefaultPercentile;
+		queueWaitTimes = new SlidingWindow(metricWindowSize);
+		executionTimes = new SlidingWindow(metricWindowSize);
 		if(publishJMX) {
 			try {			
 				JMXHelper.getHeliosMBeanServer().registerMBean(this, objectName);
@@ -173,6 +236,24 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 		}
 	}
 	
+	/**
+	 * Creates the work queue
+	 * @param poolName The pool name
+	 * @param queueType The work queue type, {@link #QUEUE_TYPE_ARRAY}, {@link #QUEUE_TYPE_RING} or {@link #QUEUE_TYPE_PRIORITY}
+	 * @param queueSize The maximum number of pending tasks to queue (per priority level for a priority queue)
+	 * @return the work queue
+	 */
+	protected static BlockingQueue<Runnable> newWorkQueue(final String poolName, final String queueType, final int queueSize) {
+		final String type = queueType==null ? null : queueType.trim();
+		if(QUEUE_TYPE_RING.equalsIgnoreCase(type)) {
+			return new MPMCRingQueue<Runnable>(queueSize);
+		} else if(QUEUE_TYPE_PRIORITY.equalsIgnoreCase(type)) {
+			return new PriorityTaskQueue(queueSize, PRIORITY_LEVELS, DEFAULT_PRIORITY_LEVEL, 
+					ConfigurationHelper.getLongSystemThenEnvProperty(poolName.toLowerCase() + CONFIG_PRIORITY_AGING, DEFAULT_PRIORITY_AGING));
+		}
+		return new ArrayBlockingQueue<Runnable>(queueSize, false);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getInstance()
@@ -187,7 +268,11 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 	 */
 	@Override
 	protected void beforeExecute(Thread t, Runnable r) {
-		taskStartTime.get()[0] = System.currentTimeMillis();
+		final long now = System.nanoTime();
+		if(r instanceof EnqueuedTask) {
+			queueWaitTimes.record(now - ((EnqueuedTask)r).getEnqueueTime());
+		}
+		taskStartTime.get()[0] = now;
 		super.beforeExecute(t, r);
 	}
 	
@@ -197,12 +282,128 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 	 */
 	@Override
 	protected void afterExecute(Runnable r, Throwable t) {
-		if(t==null) {
-			@SuppressWarnings("unused")  // TODO: tabulate task elapsed times
-			long elapsed = System.currentTimeMillis() - taskStartTime.get()[0]; 
+		executionTimes.record(System.nanoTime() - taskStartTime.get()[0]);
+		if(t==null && r instanceof Future<?>) {
+			final Future<?> f = (Future<?>)r;
+			if(f.isDone() && !f.isCancelled()) {
+				try {
+					f.get();
+				} catch (ExecutionException ee) {
+					t = ee.getCause();
+				} catch (Exception ex) {
+					/* No Op */
+				}
+			}
 		}
+		if(t!=null) failedTaskCount.incrementAndGet();
 		super.afterExecute(r, t);
 	}
+	
+	/**
+	 * <p>Title: EnqueuedTask</p>
+	 * <p>Description: A task stamped with the time it was handed to the pool</p> 
+	 */
+	protected static interface EnqueuedTask {
+		/**
+		 * Returns the nano time the task was handed to the pool
+		 * @return the enqueue nano time
+		 */
+		public long getEnqueueTime();
+	}
+	
+	/**
+	 * <p>Title: TimedFutureTask</p>
+	 * <p>Description: A future task stamped with its creation time</p> 
+	 * @param <T> The task's result type
+	 */
+	protected static class TimedFutureTask<T> extends FutureTask<T> implements EnqueuedTask, Prioritized {
+		/** The creation nano time */
+		private final long enqueueTime = System.nanoTime();
+		/** The wrapped task's priority level */
+		private final int priority;
+		
+		TimedFutureTask(final Callable<T> callable) {
+			super(callable);
+			priority = priorityOf(callable);
+		}
+		
+		TimedFutureTask(final Runnable runnable, final T result) {
+			super(runnable, result);
+			priority = priorityOf(runnable);
+		}
+		
+		@Override
+		public long getEnqueueTime() {
+			return enqueueTime;
+		}
+		
+		@Override
+		public int getPriority() {
+			return priority;
+		}
+	}
+	
+	/**
+	 * Returns the priority level of a task handed to the pool
+	 * @param task The task
+	 * @return the task's priority level or -1 if it does not declare one
+	 */
+	static int priorityOf(final Object task) {
+		return task instanceof Prioritized ? ((Prioritized)task).getPriority() : -1;
+	}
+	
+	/**
+	 * <p>Title: TimedRunnable</p>
+	 * <p>Description: A runnable stamped with the time it was handed to the pool</p> 
+	 */
+	protected static class TimedRunnable implements Runnable, EnqueuedTask, Prioritized {
+		/** The wrapped task */
+		private final Runnable task;
+		/** The enqueue nano time */
+		private final long enqueueTime = System.nanoTime();
+		
+		TimedRunnable(final Runnable task) {
+			this.task = task;
+		}
+		
+		@Override
+		public int getPriority() {
+			return priorityOf(task);
+		}
+		
+		@Override
+		public void run() {
+			task.run();
+		}
+		
+		@Override
+		public long getEnqueueTime() {
+			return enqueueTime;
+		}
+		
+		@Override
+		public String toString() {
+			return task.toString();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.AbstractExecutorService#newTaskFor(java.util.concurrent.Callable)
+	 */
+	@Override
+	protected <T> FutureTask<T> newTaskFor(final Callable<T> callable) {
+		return new TimedFutureTask<T>(callable);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.AbstractExecutorService#newTaskFor(java.lang.Runnable, java.lang.Object)
+	 */
+	@Override
+	protected <T> FutureTask<T> newTaskFor(final Runnable runnable, final T value) {
+		return new TimedFutureTask<T>(runnable, value);
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -267,6 +468,16 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 		return workQueue.size();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getQueueType()
+	 */
+	@Override
+	public String getQueueType() {
+		if(workQueue instanceof MPMCRingQueue) return QUEUE_TYPE_RING;
+		return workQueue instanceof PriorityTaskQueue ? QUEUE_TYPE_PRIORITY : QUEUE_TYPE_ARRAY;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getQueueCapacity()
@@ -277,6 +488,33 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 	}
 	
 
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getCpuPercent()
+	 */
+	@Override
+	public double getCpuPercent() {
+		return resourceUsage.getCpuPercent();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getUserPercent()
+	 */
+	@Override
+	public double getUserPercent() {
+		return resourceUsage.getUserPercent();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getAllocationRate()
+	 */
+	@Override
+	public long getAllocationRate() {
+		return resourceUsage.getAllocationRate();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getUncaughtExceptionCount()
@@ -295,34 +533,160 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 		return rejectedExecutionCount.get();
 	}
 
-//	/**
-//	 * {@inheritDoc}
-//	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getMetrics()
-//	 */
-//	@Override
-//	public Map<String, Long> getMetrics() {
-//		Map<String, Long> map = new TreeMap<String, Long>();
-//		for(Map.Entry<MetricType, Long> ex: metrics.getMetrics().entrySet()) {
-//			map.put(ex.getKey().name(), ex.getValue());
-//		}
-//    	return map;
-//	}
-	
-//	/**
-//	 * {@inheritDoc}
-//	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getMetricsTable()
-//	 */
-//	@Override
-//	public String getMetricsTable() {
-//		StringBuilder b = new StringBuilder(METRIC_TABLE_HEADER);
-//		b.append("<tr>");
-//		b.append("<td>").append(poolName).append("</td>");
-//		for(Map.Entry<String, Long> ex: getMetrics().entrySet()) {
-//			b.append("<td>").append(ex.getValue()).append("</td>");
-//		}
-//		b.append("</tr>");    					
-//		return b.append("</table>").toString();
-//	}
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getMetrics()
+	 */
+	@Override
+	public Map<String, Long> getMetrics() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		addMetrics(map, "QueueWait", queueWaitTimes, metricPercentile);
+		addMetrics(map, "Execution", executionTimes, metricPercentile);
+		map.put("Failed", failedTaskCount.get());
+    	return map;
+	}
+	
+	/**
+	 * Adds the metrics of a sliding window, in microseconds, to the passed map
+	 * @param map The map to add to
+	 * @param category The metric category
+	 * @param window The sliding window
+	 * @param percentile The percentile to report
+	 */
+	protected static void addMetrics(final Map<String, Long> map, final String category, final SlidingWindow window, final int percentile) {
+		map.put(category + ".Average", toMicros(window.getMean()));
+		map.put(category + ".Count", window.getCount());
+		map.put(category + ".Last", toMicros(window.getLast()));
+		map.put(category + ".Maximum", toMicros(window.getMax()));
+		map.put(category + ".Minimum", toMicros(window.getMin()));
+		map.put(category + ".p" + percentile, toMicros(window.getPercentile(percentile)));
+		map.put(category + ".Samples", (long)window.getSampleCount());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getMetricsTable()
+	 */
+	@Override
+	public String getMetricsTable() {
+		final StringBuilder b = new StringBuilder(METRIC_TABLE_HEADER.replace("95th", metricPercentile + "th"));
+		appendMetricsRow(b, poolName, "QueueWait", queueWaitTimes, 0L, metricPercentile);
+		appendMetricsRow(b, poolName, "Execution", executionTimes, failedTaskCount.get(), metricPercentile);
+		return b.append("</table>").toString();
+	}
+	
+	/**
+	 * Appends an HTML table row of the metrics of a sliding window, in microseconds
+	 * @param b The buffer to append to
+	 * @param poolName The pool name
+	 * @param category The metric category
+	 * @param window The sliding window
+	 * @param failed The failed count
+	 * @param percentile The percentile to report
+	 */
+	protected static void appendMetricsRow(final StringBuilder b, final String poolName, final String category, final SlidingWindow window, final long failed, final int percentile) {
+		b.append("<tr>");
+		b.append("<td>").append(poolName).append(" ").append(category).append(" (us)</td>");
+		b.append("<td>").append(toMicros(window.getMean())).append("</td>");
+		b.append("<td>").append(window.getCount()).append("</td>");
+		b.append("<td>").append(failed).append("</td>");
+		b.append("<td>").append(toMicros(window.getLast())).append("</td>");
+		b.append("<td>").append(toMicros(window.getMax())).append("</td>");
+		b.append("<td>").append(toMicros(window.getMin())).append("</td>");
+		b.append("<td>").append(toMicros(window.getPercentile(percentile))).append("</td>");
+		b.append("<td>").append(window.getSampleCount()).append("</td>");
+		b.append("</tr>");
+	}
+	
+	/**
+	 * Converts nanos to micros
+	 * @param nanos The nanos to convert
+	 * @return the micros
+	 */
+	static long toMicros(final long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getMetricWindowSize()
+	 */
+	@Override
+	public int getMetricWindowSize() {
+		return metricWindowSize;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getMetricPercentile()
+	 */
+	@Override
+	public int getMetricPercentile() {
+		return metricPercentile;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getQueueWaitAverage()
+	 */
+	@Override
+	public long getQueueWaitAverage() {
+		return toMicros(queueWaitTimes.getMean());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getQueueWaitPercentile()
+	 */
+	@Override
+	public long getQueueWaitPercentile() {
+		return toMicros(queueWaitTimes.getPercentile(metricPercentile));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getQueueWaitMaximum()
+	 */
+	@Override
+	public long getQueueWaitMaximum() {
+		return toMicros(queueWaitTimes.getMax());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getExecutionAverage()
+	 */
+	@Override
+	public long getExecutionAverage() {
+		return toMicros(executionTimes.getMean());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getExecutionPercentile()
+	 */
+	@Override
+	public long getExecutionPercentile() {
+		return toMicros(executionTimes.getPercentile(metricPercentile));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getExecutionMaximum()
+	 */
+	@Override
+	public long getExecutionMaximum() {
+		return toMicros(executionTimes.getMax());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#getFailedTaskCount()
+	 */
+	@Override
+	public long getFailedTaskCount() {
+		return failedTaskCount.get();
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -333,8 +697,14 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 		return getTaskCount()-getCompletedTaskCount();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>Tasks not created by this pool's submit methods are wrapped to stamp their enqueue time.</p>
+	 * @see java.util.concurrent.ThreadPoolExecutor#execute(java.lang.Runnable)
+	 */
+	@Override
 	public void execute(Runnable r) {
-		super.execute(r);
+		super.execute(r==null || r instanceof EnqueuedTask ? r : new TimedRunnable(r));
 	}
 	
 	/**
@@ -408,14 +778,58 @@ public class JMXManagedThreadPool extends ThreadPoolExecutor implements ThreadFa
 		setKeepAliveTime(keepAliveTimeMs, TimeUnit.MILLISECONDS);
 	}
 	
-//	/**
-//	 * {@inheritDoc}
-//	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#reset()
-//	 */
-//	@Override
-//	public void reset() {
-//		t
-//	}
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#enableAutoSizing(int, int, long, long)
+	 */
+	@Override
+	public synchronized void enableAutoSizing(final int minSize, final int maxSize, final long period, final long targetWait) {
+		disableAutoSizing();
+		sizer = new JMXManagedThreadPoolSizer(this, minSize, maxSize, period, targetWait);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#disableAutoSizing()
+	 */
+	@Override
+	public synchronized void disableAutoSizing() {
+		if(sizer!=null) {
+			sizer.stop();
+			sizer = null;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#isAutoSized()
+	 */
+	@Override
+	public boolean isAutoSized() {
+		return sizer!=null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ThreadPoolExecutor#terminated()
+	 */
+	@Override
+	protected void terminated() {
+		disableAutoSizing();
+		PoolResourceMonitor.unregister(threadGroup);
+		super.terminated();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		queueWaitTimes.reset();
+		executionTimes.reset();
+		failedTaskCount.set(0L);
+	}
 	
 	
 	/**
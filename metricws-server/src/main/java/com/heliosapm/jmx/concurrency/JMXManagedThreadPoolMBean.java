@@ -26,6 +26,7 @@ package com.heliosapm.jmx.concurrency;
 
 import java.lang.management.ManagementFactory;
 import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.Future;
 
 import javax.management.ObjectName;
@@ -57,9 +58,23 @@ public interface JMXManagedThreadPoolMBean {
 	/** The  Config property name suffix to specify the pool's metric sliding window size */
 	public static final String CONFIG_WINDOW_SIZE = "-windowsize";
 	/** The  Config property name suffix to specify the pool's metric default percentile */
-	public static final String CONFIG_WINDOW_PERCENTILE = "-windowsize";
+	public static final String CONFIG_WINDOW_PERCENTILE = "-windowpercentile";
 	/** The  Config property name suffix to specify the number of core threads to prestart */
 	public static final String CONFIG_CORE_PRESTART = "-coreprestart";
+	/** The  Config property name suffix to specify the pool's work queue type, <b><code>array</code></b>, <b><code>ring</code></b> or <b><code>priority</code></b> */
+	public static final String CONFIG_QUEUE_TYPE = "-queuetype";
+	/** The  Config property name suffix to enable the pool's auto sizer */
+	public static final String CONFIG_AUTOSIZE = "-autosize";
+	/** The  Config property name suffix to specify the auto sizer's minimum core pool size */
+	public static final String CONFIG_AUTOSIZE_MIN = "-autosizemin";
+	/** The  Config property name suffix to specify the auto sizer's maximum pool size */
+	public static final String CONFIG_AUTOSIZE_MAX = "-autosizemax";
+	/** The  Config property name suffix to specify the auto sizer's sampling period in ms. */
+	public static final String CONFIG_AUTOSIZE_PERIOD = "-autosizeperiod";
+	/** The  Config property name suffix to specify the auto sizer's target queue wait in ms. */
+	public static final String CONFIG_AUTOSIZE_WAIT = "-autosizewait";
+	/** The  Config property name suffix to specify the extra wait in ms. after which a priority queued task is taken ahead of higher priorities */
+	public static final String CONFIG_PRIORITY_AGING = "-priorityaging";
 	
 	
 	/** The default  pool's core pool size */
@@ -76,12 +91,74 @@ public interface JMXManagedThreadPoolMBean {
 	public static final int DEFAULT_WINDOW_PERCENTILE = 95;
 	/** The default  pool's core thread prestart count */
 	public static final int DEFAULT_CORE_PRESTART = 1;
+	/** The work queue type for a lock based {@link java.util.concurrent.ArrayBlockingQueue} */
+	public static final String QUEUE_TYPE_ARRAY = "array";
+	/** The work queue type for a lock free {@link MPMCRingQueue} */
+	public static final String QUEUE_TYPE_RING = "ring";
+	/** The work queue type for a {@link PriorityTaskQueue} */
+	public static final String QUEUE_TYPE_PRIORITY = "priority";
+	/** The default  pool's work queue type */
+	public static final String DEFAULT_QUEUE_TYPE = QUEUE_TYPE_ARRAY;
+	/** The default  pool's auto sizer enablement */
+	public static final boolean DEFAULT_AUTOSIZE = false;
+	/** The default  auto sizer's minimum core pool size */
+	public static final int DEFAULT_AUTOSIZE_MIN = 1;
+	/** The default  auto sizer's maximum pool size */
+	public static final int DEFAULT_AUTOSIZE_MAX = CORES*8;
+	/** The default  auto sizer's sampling period in ms. */
+	public static final long DEFAULT_AUTOSIZE_PERIOD = 5000;
+	/** The default  auto sizer's target queue wait in ms. */
+	public static final long DEFAULT_AUTOSIZE_WAIT = 50;
+	/** The number of priority levels in a priority work queue */
+	public static final int PRIORITY_LEVELS = 3;
+	/** The priority level of tasks that do not declare one */
+	public static final int DEFAULT_PRIORITY_LEVEL = 1;
+	/** The default  priority queue aging threshold in ms. */
+	public static final long DEFAULT_PRIORITY_AGING = 250;
 	
 	
-//	/**
-//	 * Resets the thread pool's metrics
-//	 */
-//	public void reset();	
+	/**
+	 * Resets the thread pool's metrics
+	 */
+	public void reset();	
+	
+	/**
+	 * Starts auto sizing the pool, replacing any current sizer
+	 * @param minSize The minimum core pool size
+	 * @param maxSize The maximum pool size
+	 * @param period The sampling period in ms.
+	 * @param targetWait The queue wait percentile in ms. above which the sizer grows the pool
+	 */
+	public void enableAutoSizing(int minSize, int maxSize, long period, long targetWait);
+	
+	/**
+	 * Stops auto sizing the pool, leaving it at its current size
+	 */
+	public void disableAutoSizing();
+	
+	/**
+	 * Indicates if the pool is being auto sized
+	 * @return true if the pool is being auto sized
+	 */
+	public boolean isAutoSized();
+	
+	/**
+	 * Returns the CPU time of the pool's threads over the last sampling period, as a percentage of one core
+	 * @return the CPU percentage
+	 */
+	public double getCpuPercent();
+	
+	/**
+	 * Returns the user mode CPU time of the pool's threads over the last sampling period, as a percentage of one core
+	 * @return the user mode CPU percentage
+	 */
+	public double getUserPercent();
+	
+	/**
+	 * Returns the rate the pool's threads allocated memory over the last sampling period, in bytes per second
+	 * @return the allocation rate
+	 */
+	public long getAllocationRate();
 	
 	/**
 	 * Returns the MBean's ObjectName 
@@ -101,6 +178,12 @@ public interface JMXManagedThreadPoolMBean {
 	 */
 	public int getQueueDepth();
 	
+	/**
+	 * Returns the work queue type
+	 * @return the work queue type, <b><code>array</code></b>, <b><code>ring</code></b> or <b><code>priority</code></b>
+	 */
+	public String getQueueType();
+	
 	/**
 	 * Returns the current capacity of the work queue
 	 * @return the current capacity of the work queue
@@ -120,17 +203,71 @@ public interface JMXManagedThreadPoolMBean {
 	 */
 	public long getRejectedExecutionCount();
 
-//	/**
-//	 * Returns a map of the metrics in the metrics tracker, keyed by the metric name 
-//	 * @return the metric map
-//	 */
-//	public Map<String, Long> getMetrics();
-//	
-//	/**
-//	 * Returns an HTML table of the thread pool metrics
-//	 * @return an HTML table of the thread pool metrics
-//	 */
-//	public String getMetricsTable();
+	/**
+	 * Returns a map of the queue wait and execution time metrics in microseconds, keyed by the metric name 
+	 * @return the metric map
+	 */
+	public Map<String, Long> getMetrics();
+	
+	/**
+	 * Returns an HTML table of the thread pool metrics
+	 * @return an HTML table of the thread pool metrics
+	 */
+	public String getMetricsTable();
+	
+	/**
+	 * Returns the number of most recent tasks the metrics are computed over
+	 * @return the metric sliding window size
+	 */
+	public int getMetricWindowSize();
+	
+	/**
+	 * Returns the percentile reported in the metrics
+	 * @return the metric percentile
+	 */
+	public int getMetricPercentile();
+	
+	/**
+	 * Returns the average time in microseconds recent tasks waited in the queue
+	 * @return the average queue wait time in microseconds
+	 */
+	public long getQueueWaitAverage();
+	
+	/**
+	 * Returns the configured percentile of the time in microseconds recent tasks waited in the queue
+	 * @return the queue wait time percentile in microseconds
+	 */
+	public long getQueueWaitPercentile();
+	
+	/**
+	 * Returns the longest time in microseconds a recent task waited in the queue
+	 * @return the maximum queue wait time in microseconds
+	 */
+	public long getQueueWaitMaximum();
+	
+	/**
+	 * Returns the average execution time in microseconds of recent tasks
+	 * @return the average execution time in microseconds
+	 */
+	public long getExecutionAverage();
+	
+	/**
+	 * Returns the configured percentile of the execution time in microseconds of recent tasks
+	 * @return the execution time percentile in microseconds
+	 */
+	public long getExecutionPercentile();
+	
+	/**
+	 * Returns the longest execution time in microseconds of a recent task
+	 * @return the maximum execution time in microseconds
+	 */
+	public long getExecutionMaximum();
+	
+	/**
+	 * Returns the cummulative count of tasks that completed with an exception
+	 * @return the failed task count
+	 */
+	public long getFailedTaskCount();
 	
 	/**
 	 * Returns this instance
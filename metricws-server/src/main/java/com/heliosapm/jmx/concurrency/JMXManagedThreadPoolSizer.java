@@ -0,0 +1,376 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import java.util.HashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanNotificationInfo;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.jmx.notif.SharedNotificationExecutor;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: JMXManagedThreadPoolSizer</p>
+ * <p>Description: Periodically resizes a {@link JMXManagedThreadPool} to follow its load. Each sample measures the
+ * pool's throughput and applies Little's law (busy threads = throughput x mean execution time) to estimate the
+ * number of threads needed to run at the target utilization. When tasks are queueing for longer than the target wait,
+ * the sizer climbs by a quarter of the current size even if the estimate says otherwise, and it only ever shrinks one
+ * thread per sample, so a burst grows the pool quickly and a lull drains it slowly.
+ * The core size is kept within <b><code>[minSize, maxSize]</code></b> and the maximum size is set to twice the core size,
+ * capped at <b><code>maxSize</code></b>. Every resize is sent as a JMX notification.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizer</code></p>
+ */
+
+public class JMXManagedThreadPoolSizer extends NotificationBroadcasterSupport implements JMXManagedThreadPoolSizerMBean, Runnable {
+	/** The scheduler shared by all sizers */
+	private static volatile JMXManagedScheduler scheduler = null;
+	/** The scheduler ctor lock */
+	private static final Object lock = new Object();
+	
+	private static final MBeanNotificationInfo[] NOTIFS = new MBeanNotificationInfo[]{
+		new MBeanNotificationInfo(new String[]{NOTIF_GREW, NOTIF_SHRANK}, Notification.class.getName(), "A thread pool resize: grew or shrank")
+	};
+	
+	/** Instance logger */
+	protected final Logger log;
+	/** The managed pool */
+	protected final JMXManagedThreadPool pool;
+	/** This sizer's ObjectName */
+	protected final ObjectName objectName;
+	/** The sampling period in ms. */
+	protected final long period;
+	/** The minimum core size */
+	protected volatile int minSize;
+	/** The maximum pool size */
+	protected volatile int maxSize;
+	/** The target queue wait in nanos */
+	protected volatile long targetWaitNanos;
+	/** The target utilization */
+	protected volatile float targetUtilization = DEFAULT_TARGET_UTILIZATION;
+	/** The last sampled throughput in tasks per second */
+	protected volatile double throughput = 0D;
+	/** The last busy thread estimate */
+	protected volatile double busyEstimate = 0D;
+	/** The last target size */
+	protected volatile int targetSize;
+	/** The number of resizes */
+	protected final AtomicLong resizes = new AtomicLong();
+	/** Notif sequence number supplier */
+	protected final AtomicLong notifSerial = new AtomicLong();
+	/** The completed task count at the last sample */
+	private long lastCompleted;
+	/** The nano time of the last sample */
+	private long lastSample;
+	/** The schedule handle */
+	private final ScheduledFuture<?> handle;
+	
+	/**
+	 * Creates a new JMXManagedThreadPoolSizer and starts sampling
+	 * @param pool The pool to size
+	 * @param minSize The minimum core size
+	 * @param maxSize The maximum pool size
+	 * @param period The sampling period in ms.
+	 * @param targetWait The queue wait percentile in ms. above which the sizer climbs
+	 */
+	public JMXManagedThreadPoolSizer(final JMXManagedThreadPool pool, final int minSize, final int maxSize, final long period, final long targetWait) {
+		super(SharedNotificationExecutor.getInstance(), NOTIFS);
+		if(pool==null) throw new IllegalArgumentException("The passed pool was null");
+		if(minSize < 1 || maxSize < minSize) throw new IllegalArgumentException("Invalid size bounds [" + minSize + "," + maxSize + "]");
+		if(period < 1L) throw new IllegalArgumentException("Invalid period [" + period + "]");
+		this.pool = pool;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.period = period;
+		setTargetWait(targetWait);
+		log = LoggerFactory.getLogger(getClass().getName() + "." + pool.getPoolName());
+		objectName = JMXHelper.objectName(pool.getObjectName(), "extension=Sizer");
+		targetSize = pool.getCorePoolSize();
+		lastCompleted = pool.getCompletedTaskCount();
+		lastSample = System.nanoTime();
+		handle = getScheduler().scheduleWithFixedDelay(this, period, period, TimeUnit.MILLISECONDS);
+		try {
+			JMXHelper.registerMBean(this, objectName);
+		} catch (Exception ex) {
+			log.warn("Failed to register JMX management interface. Will continue without.", ex);
+		}
+		log.info("Auto sizing pool [{}] within [{},{}] every [{}] ms.", pool.getPoolName(), minSize, maxSize, period);
+	}
+	
+	/**
+	 * Acquires the scheduler shared by all sizers
+	 * @return the shared scheduler
+	 */
+	private static JMXManagedScheduler getScheduler() {
+		if(scheduler==null) {
+			synchronized(lock) {
+				if(scheduler==null) {
+					scheduler = new JMXManagedScheduler(SCHEDULER_OBJECT_NAME, "ThreadPoolSizer", 1, true);
+				}
+			}
+		}
+		return scheduler;
+	}
+	
+	/**
+	 * Takes a sample and resizes the pool if the target size has changed
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			if(pool.isShutdown()) {
+				stop();
+				return;
+			}
+			final long now = System.nanoTime();
+			final long completed = pool.getCompletedTaskCount();
+			final long elapsed = now - lastSample;
+			final double tps = elapsed > 0L ? (completed - lastCompleted) * 1E9D / elapsed : 0D;
+			lastCompleted = completed;
+			lastSample = now;
+			final double busy = tps * pool.executionTimes.getMean() / 1E9D;
+			throughput = tps;
+			busyEstimate = busy;
+			final int current = pool.getCorePoolSize();
+			final int estimate = (int)Math.ceil(busy / targetUtilization);
+			int target;
+			if(pool.getQueueDepth() > 0 && pool.queueWaitTimes.getPercentile(pool.getMetricPercentile()) > targetWaitNanos) {
+				target = Math.max(estimate, current + Math.max(1, current/4));
+			} else if(estimate < current) {
+				target = current - 1;
+			} else {
+				target = estimate;
+			}
+			target = Math.max(minSize, Math.min(maxSize, target));
+			targetSize = target;
+			if(target!=current) {
+				resize(current, target, tps, busy);
+			}
+		} catch (Exception ex) {
+			log.warn("Failed to sample pool [{}]", pool.getPoolName(), ex);
+		}
+	}
+	
+	/**
+	 * Resizes the pool and sends a notification
+	 * @param current The current core size
+	 * @param target The new core size
+	 * @param tps The sampled throughput
+	 * @param busy The sampled busy thread estimate
+	 */
+	protected void resize(final int current, final int target, final double tps, final double busy) {
+		final int max = Math.min(maxSize, target * 2);
+		// keep core <= max at every step
+		if(target > current) {
+			if(max > pool.getMaximumPoolSize()) pool.setMaximumPoolSize(max);
+			pool.setCorePoolSize(target);
+			pool.setMaximumPoolSize(max);
+		} else {
+			pool.setCorePoolSize(target);
+			pool.setMaximumPoolSize(max);
+		}
+		resizes.incrementAndGet();
+		final String message = "Resized pool [" + pool.getPoolName() + "] core size from [" + current + "] to [" + target + "], max size [" + max + "]";
+		log.info(message);
+		final Notification n = new Notification(target > current ? NOTIF_GREW : NOTIF_SHRANK, objectName, notifSerial.incrementAndGet(), System.currentTimeMillis(), message);
+		final HashMap<String, Object> userData = new HashMap<String, Object>(8);
+		userData.put("pool", pool.getPoolName());
+		userData.put("from", current);
+		userData.put("to", target);
+		userData.put("max", max);
+		userData.put("throughput", tps);
+		userData.put("busy", busy);
+		userData.put("queueDepth", pool.getQueueDepth());
+		n.setUserData(userData);
+		sendNotification(n);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#stop()
+	 */
+	@Override
+	public void stop() {
+		if(handle.cancel(false)) {
+			try {
+				JMXHelper.unregisterMBean(objectName);
+			} catch (Exception ex) {
+				/* No Op */
+			}
+			log.info("Stopped auto sizing pool [{}]", pool.getPoolName());
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#isRunning()
+	 */
+	@Override
+	public boolean isRunning() {
+		return !handle.isDone();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#getPoolObjectName()
+	 */
+	@Override
+	public ObjectName getPoolObjectName() {
+		return pool.getObjectName();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#getPeriod()
+	 */
+	@Override
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#getMinSize()
+	 */
+	@Override
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#setMinSize(int)
+	 */
+	@Override
+	public void setMinSize(final int minSize) {
+		if(minSize < 1 || minSize > maxSize) throw new IllegalArgumentException("Invalid min size [" + minSize + "]");
+		this.minSize = minSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#getMaxSize()
+	 */
+	@Override
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#setMaxSize(int)
+	 */
+	@Override
+	public void setMaxSize(final int maxSize) {
+		if(maxSize < minSize) throw new IllegalArgumentException("Invalid max size [" + maxSize + "]");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#getTargetWait()
+	 */
+	@Override
+	public long getTargetWait() {
+		return TimeUnit.NANOSECONDS.toMillis(targetWaitNanos);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#setTargetWait(long)
+	 */
+	@Override
+	public void setTargetWait(final long targetWait) {
+		if(targetWait < 0L) throw new IllegalArgumentException("Invalid target wait [" + targetWait + "]");
+		targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(targetWait);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#getTargetUtilization()
+	 */
+	@Override
+	public float getTargetUtilization() {
+		return targetUtilization;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#setTargetUtilization(float)
+	 */
+	@Override
+	public void setTargetUtilization(final float targetUtilization) {
+		if(targetUtilization <= 0f || targetUtilization > 1f) throw new IllegalArgumentException("Invalid target utilization [" + targetUtilization + "]");
+		this.targetUtilization = targetUtilization;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#getThroughput()
+	 */
+	@Override
+	public double getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#getBusyEstimate()
+	 */
+	@Override
+	public double getBusyEstimate() {
+		return busyEstimate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#getTargetSize()
+	 */
+	@Override
+	public int getTargetSize() {
+		return targetSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean#getResizeCount()
+	 */
+	@Override
+	public long getResizeCount() {
+		return resizes.get();
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import javax.management.ObjectName;
+
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: JMXManagedThreadPoolSizerMBean</p>
+ * <p>Description: JMX MBean interface for {@link JMXManagedThreadPoolSizer}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.JMXManagedThreadPoolSizerMBean</code></p>
+ */
+
+public interface JMXManagedThreadPoolSizerMBean {
+	/** The scheduler shared by all sizers */
+	public static final ObjectName SCHEDULER_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.jmx:service=ThreadPoolSizer,pool=Scheduler");
+	/** The notification type root */
+	public static final String NOTIF_ROOT = "jmx.threadpool.sizer";
+	/** The notification type sent when the sizer grows the pool */
+	public static final String NOTIF_GREW = NOTIF_ROOT + ".grew";
+	/** The notification type sent when the sizer shrinks the pool */
+	public static final String NOTIF_SHRANK = NOTIF_ROOT + ".shrank";
+	
+	/** The default target thread utilization */
+	public static final float DEFAULT_TARGET_UTILIZATION = 0.75f;
+	
+	/**
+	 * Returns the ObjectName of the managed pool
+	 * @return the ObjectName of the managed pool
+	 */
+	public ObjectName getPoolObjectName();
+	
+	/**
+	 * Returns the sampling period in ms.
+	 * @return the sampling period in ms.
+	 */
+	public long getPeriod();
+	
+	/**
+	 * Returns the minimum core pool size the sizer will set
+	 * @return the minimum core pool size
+	 */
+	public int getMinSize();
+	
+	/**
+	 * Sets the minimum core pool size the sizer will set
+	 * @param minSize the minimum core pool size
+	 */
+	public void setMinSize(int minSize);
+	
+	/**
+	 * Returns the maximum pool size the sizer will set
+	 * @return the maximum pool size
+	 */
+	public int getMaxSize();
+	
+	/**
+	 * Sets the maximum pool size the sizer will set
+	 * @param maxSize the maximum pool size
+	 */
+	public void setMaxSize(int maxSize);
+	
+	/**
+	 * Returns the queue wait percentile in ms. above which the sizer climbs regardless of the throughput estimate
+	 * @return the target queue wait in ms.
+	 */
+	public long getTargetWait();
+	
+	/**
+	 * Sets the queue wait percentile in ms. above which the sizer climbs regardless of the throughput estimate
+	 * @param targetWait the target queue wait in ms.
+	 */
+	public void setTargetWait(long targetWait);
+	
+	/**
+	 * Returns the fraction of the pool's threads the sizer aims to keep busy
+	 * @return the target utilization
+	 */
+	public float getTargetUtilization();
+	
+	/**
+	 * Sets the fraction of the pool's threads the sizer aims to keep busy
+	 * @param targetUtilization the target utilization, greater than 0 and no more than 1
+	 */
+	public void setTargetUtilization(float targetUtilization);
+	
+	/**
+	 * Returns the task throughput measured in the last sample, in tasks per second
+	 * @return the last throughput
+	 */
+	public double getThroughput();
+	
+	/**
+	 * Returns the number of busy threads estimated in the last sample (throughput x mean execution time)
+	 * @return the last busy thread estimate
+	 */
+	public double getBusyEstimate();
+	
+	/**
+	 * Returns the pool size the last sample arrived at
+	 * @return the last target size
+	 */
+	public int getTargetSize();
+	
+	/**
+	 * Returns the number of resizes made
+	 * @return the number of resizes
+	 */
+	public long getResizeCount();
+	
+	/**
+	 * Indicates if the sizer is running
+	 * @return true if the sizer is running
+	 */
+	public boolean isRunning();
+	
+	/**
+	 * Stops the sizer, leaving the pool at its current size
+	 */
+	public void stop();
+}
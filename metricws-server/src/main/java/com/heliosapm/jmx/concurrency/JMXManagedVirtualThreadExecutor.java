@@ -0,0 +1,347 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: JMXManagedVirtualThreadExecutor</p>
+ * <p>Description: A JMX managed executor that runs each task on its own virtual thread, for tasks that spend
+ * most of their time blocked (e.g. on remote JMX calls). Virtual threads are only available on Java 21 and up,
+ * so they are created reflectively; check {@link #isAvailable()} first, or use {@link #newExecutor(ObjectName, String, int)}
+ * which falls back to a {@link JMXManagedThreadPool} on older runtimes. Threads are named like the threads of a
+ * {@link JMXManagedThreadPool} and the management interface exposes the same counters.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutor</code></p>
+ */
+
+public class JMXManagedVirtualThreadExecutor extends AbstractExecutorService implements UncaughtExceptionHandler, JMXManagedVirtualThreadExecutorMBean {
+	/** The static class logger */
+	private static final Logger LOG = LoggerFactory.getLogger(JMXManagedVirtualThreadExecutor.class);
+	/** The <b><code>Thread.ofVirtual()</code></b> method, null if virtual threads are not available */
+	private static final Method OF_VIRTUAL;
+	/** The <b><code>Thread.Builder.name(String, long)</code></b> method */
+	private static final Method BUILDER_NAME;
+	/** The <b><code>Thread.Builder.factory()</code></b> method */
+	private static final Method BUILDER_FACTORY;
+
+	static {
+		Method ofVirtual = null, name = null, factory = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			name = builderClass.getMethod("name", String.class, long.class);
+			factory = builderClass.getMethod("factory");
+		} catch (Throwable t) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_FACTORY = factory;
+	}
+
+	/** The JMX ObjectName for this executor's MBean */
+	protected final ObjectName objectName;
+	/** The pool name */
+	protected final String poolName;
+	/** The instance logger */
+	protected final Logger log;
+	/** The virtual thread factory */
+	protected final ThreadFactory threadFactory;
+	/** The maximum number of executing tasks, zero if unbounded */
+	protected final int maxConcurrency;
+	/** The number of executing tasks */
+	protected final AtomicInteger active = new AtomicInteger();
+	/** The highest number of executing tasks */
+	protected final AtomicInteger largestActive = new AtomicInteger();
+	/** The number of accepted tasks */
+	protected final AtomicLong taskCount = new AtomicLong();
+	/** The number of completed tasks */
+	protected final AtomicLong completedCount = new AtomicLong();
+	/** The count of uncaught exceptions */
+	protected final AtomicLong uncaughtExceptionCount = new AtomicLong(0L);
+	/** The count of rejected tasks */
+	protected final AtomicLong rejectedExecutionCount = new AtomicLong(0L);
+	/** Indicates if the executor has been shutdown */
+	protected volatile boolean shutdown = false;
+	/** Signalled when the last task completes after shutdown */
+	protected final Object terminationLock = new Object();
+
+	/**
+	 * Determines if virtual threads are available in this JVM
+	 * @return true if virtual threads are available
+	 */
+	public static boolean isAvailable() {
+		return OF_VIRTUAL!=null;
+	}
+
+	/**
+	 * Creates a virtual thread executor if virtual threads are available, otherwise a {@link JMXManagedThreadPool}
+	 * configured from the pool's system properties
+	 * @param objectName The JMX ObjectName for the executor's MBean 
+	 * @param poolName The pool name
+	 * @param maxConcurrency The maximum number of tasks executing at once on virtual threads, zero for unbounded
+	 * @return the new executor
+	 */
+	public static AbstractExecutorService newExecutor(final ObjectName objectName, final String poolName, final int maxConcurrency) {
+		if(isAvailable()) {
+			return new JMXManagedVirtualThreadExecutor(objectName, poolName, maxConcurrency);
+		}
+		LOG.warn("Virtual threads are not available in this JVM [{}]. Pool [{}] will use platform threads.", System.getProperty("java.version"), poolName);
+		return new JMXManagedThreadPool(objectName, poolName, true);
+	}
+
+	/**
+	 * Creates a new JMXManagedVirtualThreadExecutor and publishes the JMX MBean management interface
+	 * @param objectName The JMX ObjectName for this executor's MBean 
+	 * @param poolName The pool name
+	 * @param maxConcurrency The maximum number of tasks executing at once, zero for unbounded.
+	 * Tasks submitted beyond the limit are rejected.
+	 */
+	public JMXManagedVirtualThreadExecutor(final ObjectName objectName, final String poolName, final int maxConcurrency) {
+		if(!isAvailable()) throw new UnsupportedOperationException("Virtual threads are not available in this JVM [" + System.getProperty("java.version") + "]");
+		this.objectName = objectName;
+		this.poolName = poolName;
+		this.maxConcurrency = maxConcurrency;
+		log = LoggerFactory.getLogger(getClass().getName() + "." + poolName);
+		try {
+			final Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), poolName + "Thread#", 1L);
+			threadFactory = (ThreadFactory)BUILDER_FACTORY.invoke(builder);
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to create virtual thread factory for pool [" + poolName + "]", ex);
+		}
+		try {			
+			JMXHelper.getHeliosMBeanServer().registerMBean(this, objectName);
+		} catch (Exception ex) {
+			log.warn("Failed to register JMX management interface. Will continue without.", ex);
+		}		
+		log.info("Created JMX Managed Virtual Thread Executor [" + poolName + "]");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+	 */
+	@Override
+	public void execute(final Runnable task) {
+		if(task==null) throw new NullPointerException("The passed task was null");
+		if(shutdown) {
+			rejectedExecutionCount.incrementAndGet();
+			throw new RejectedExecutionException("Executor [" + poolName + "] is shutdown");
+		}
+		final int running = active.incrementAndGet();
+		if(maxConcurrency > 0 && running > maxConcurrency) {
+			active.decrementAndGet();
+			rejectedExecutionCount.incrementAndGet();
+			throw new RejectedExecutionException("Executor [" + poolName + "] has [" + maxConcurrency + "] executing tasks");
+		}
+		while(true) {
+			final int largest = largestActive.get();
+			if(running <= largest || largestActive.compareAndSet(largest, running)) break;
+		}
+		taskCount.incrementAndGet();
+		final Thread t = threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					completedCount.incrementAndGet();
+					if(active.decrementAndGet()==0 && shutdown) {
+						synchronized(terminationLock) {
+							terminationLock.notifyAll();
+						}
+					}
+				}
+			}
+		});
+		t.setUncaughtExceptionHandler(this);
+		t.start();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Thread.UncaughtExceptionHandler#uncaughtException(java.lang.Thread, java.lang.Throwable)
+	 */
+	@Override
+	public void uncaughtException(final Thread t, final Throwable e) {
+		uncaughtExceptionCount.incrementAndGet();
+		log.warn("Thread pool handled uncaught exception on thread [" + t + "]", e);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ExecutorService#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		try { JMXHelper.getHeliosMBeanServer().unregisterMBean(objectName); } catch (Exception x) {/* No Op */}
+	}
+
+	/**
+	 * Shuts the executor down. Virtual threads are not tracked individually, so executing tasks are not interrupted.
+	 * @return an empty list since tasks are never queued
+	 * @see java.util.concurrent.ExecutorService#shutdownNow()
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown();
+		return Collections.emptyList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ExecutorService#isShutdown()
+	 */
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ExecutorService#isTerminated()
+	 */
+	@Override
+	public boolean isTerminated() {
+		return shutdown && active.get()==0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ExecutorService#awaitTermination(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized(terminationLock) {
+			while(!isTerminated()) {
+				final long remaining = deadline - System.nanoTime();
+				if(remaining <= 0L) return false;
+				TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutorMBean#getObjectName()
+	 */
+	@Override
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutorMBean#getPoolName()
+	 */
+	@Override
+	public String getPoolName() {
+		return poolName;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutorMBean#getMaxConcurrency()
+	 */
+	@Override
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutorMBean#getActiveCount()
+	 */
+	@Override
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutorMBean#getLargestActiveCount()
+	 */
+	@Override
+	public int getLargestActiveCount() {
+		return largestActive.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutorMBean#getTaskCount()
+	 */
+	@Override
+	public long getTaskCount() {
+		return taskCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutorMBean#getCompletedTaskCount()
+	 */
+	@Override
+	public long getCompletedTaskCount() {
+		return completedCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutorMBean#getUncaughtExceptionCount()
+	 */
+	@Override
+	public long getUncaughtExceptionCount() {
+		return uncaughtExceptionCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutorMBean#getRejectedExecutionCount()
+	 */
+	@Override
+	public long getRejectedExecutionCount() {
+		return rejectedExecutionCount.get();
+	}
+}
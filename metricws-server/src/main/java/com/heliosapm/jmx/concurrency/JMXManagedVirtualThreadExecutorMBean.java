@@ -0,0 +1,103 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import javax.management.ObjectName;
+
+/**
+ * <p>Title: JMXManagedVirtualThreadExecutorMBean</p>
+ * <p>Description: JMX MBean interface for {@link JMXManagedVirtualThreadExecutor}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutorMBean</code></p>
+ */
+public interface JMXManagedVirtualThreadExecutorMBean {
+
+	/**
+	 * Returns the MBean's ObjectName 
+	 * @return the objectName
+	 */
+	public ObjectName getObjectName();
+
+	/**
+	 * Returns the pool name
+	 * @return the poolName
+	 */
+	public String getPoolName();
+
+	/**
+	 * Returns the maximum number of tasks allowed to execute at once
+	 * @return the maximum concurrency, zero if unbounded
+	 */
+	public int getMaxConcurrency();
+
+	/**
+	 * Returns the number of virtual threads currently executing tasks
+	 * @return the number of executing tasks
+	 */
+	public int getActiveCount();
+
+	/**
+	 * Returns the highest number of virtual threads that have ever executed tasks at once
+	 * @return the active count highwater mark
+	 */
+	public int getLargestActiveCount();
+
+	/**
+	 * Returns the total number of tasks that have ever been accepted for execution
+	 * @return the total number of tasks accepted
+	 */
+	public long getTaskCount();
+
+	/**
+	 * Returns the total number of tasks that have completed execution
+	 * @return the total number of tasks completed
+	 */
+	public long getCompletedTaskCount();
+
+	/**
+	 * Returns the cummulative count of uncaught exceptions
+	 * @return the uncaughtExceptionCount
+	 */
+	public long getUncaughtExceptionCount();
+
+	/**
+	 * Returns the the cummulative count of rejected tasks
+	 * @return the rejectedExecutionCount
+	 */
+	public long getRejectedExecutionCount();
+
+    /**
+     * Indicates if the executor is shutdown
+     * @return true if the executor is shutdown, false otherwise
+     */
+    public boolean isShutdown();
+
+    /**
+     * Returns true if all tasks have completed following shut down.
+     * @return true if all tasks have completed following shut down
+     */
+    public boolean isTerminated();
+}
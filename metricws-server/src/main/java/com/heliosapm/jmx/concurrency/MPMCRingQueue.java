@@ -0,0 +1,419 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Title: MPMCRingQueue</p>
+ * <p>Description: A lock free, bounded, multi-producer/multi-consumer queue backed by a ring of sequenced slots
+ * (after Dmitry Vyukov's bounded MPMC queue). Producers and consumers each claim a slot with a single CAS on their own 
+ * cache line padded counter, so unlike {@link java.util.concurrent.ArrayBlockingQueue} they never contend on a shared lock.
+ * The ring is sized to the next power of two but the queue never holds more than the requested capacity.</p>
+ * <p>Consumers that find the queue empty park and are unparked by the next producer. Producers never block in
+ * {@link #offer(Object)}; {@link #put(Object)} and the timed offer back off with short parks until space frees up.</p>
+ * <p>{@link #remove(Object)} and iterator removal replace the element with a tombstone that consumers skip, so
+ * {@link #size()} includes removed elements until a consumer passes over them.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.MPMCRingQueue</code></p>
+ * @param <E> The queued element type
+ */
+
+public class MPMCRingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+	/** Placeholder for removed elements */
+	private static final Object TOMBSTONE = new Object();
+	/** The maximum producer back off park in nanos */
+	private static final long MAX_BACKOFF = 1000000L;
+	
+	/** The element slots */
+	private final AtomicReferenceArray<Object> slots;
+	/** The slot sequences */
+	private final AtomicLongArray sequences;
+	/** The slot index mask */
+	private final int mask;
+	/** The maximum number of queued elements */
+	private final int capacity;
+	/** The next position to produce into */
+	private final PaddedAtomicLong tail = new PaddedAtomicLong();
+	/** The next position to consume from */
+	private final PaddedAtomicLong head = new PaddedAtomicLong();
+	/** The parked consumers */
+	private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+	
+	/**
+	 * <p>Title: PaddedAtomicLong</p>
+	 * <p>Description: An AtomicLong padded out to its own cache line so the head and tail counters do not false share</p> 
+	 */
+	@SuppressWarnings("serial")
+	static class PaddedAtomicLong extends AtomicLong {
+		/** Padding */
+		public volatile long p1, p2, p3, p4, p5, p6, p7;
+	}
+	
+	/**
+	 * Creates a new MPMCRingQueue
+	 * @param capacity The maximum number of queued elements
+	 */
+	public MPMCRingQueue(final int capacity) {
+		if(capacity < 1 || capacity > (1 << 30)) throw new IllegalArgumentException("Invalid capacity [" + capacity + "]");
+		this.capacity = capacity;
+		int size = 1;
+		while(size < capacity) size <<= 1;
+		mask = size - 1;
+		slots = new AtomicReferenceArray<Object>(size);
+		sequences = new AtomicLongArray(size);
+		for(int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Queue#offer(java.lang.Object)
+	 */
+	@Override
+	public boolean offer(final E e) {
+		if(e==null) throw new NullPointerException();
+		while(true) {
+			final long pos = tail.get();
+			final int index = (int)pos & mask;
+			final long dif = sequences.get(index) - pos;
+			if(dif==0L) {
+				if(pos - head.get() >= capacity) return false;
+				if(tail.compareAndSet(pos, pos + 1)) {
+					slots.set(index, e);
+					// a full volatile store: with a lazy set the waiters read below could be reordered ahead of
+					// the publication, missing a consumer that enlisted and then re-polled the empty slot
+					sequences.set(index, pos + 1);
+					if(!waiters.isEmpty()) {
+						final Thread waiter = waiters.poll();
+						if(waiter!=null) LockSupport.unpark(waiter);
+					}
+					return true;
+				}
+			} else if(dif < 0L) {
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Queue#poll()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		while(true) {
+			final long pos = head.get();
+			final int index = (int)pos & mask;
+			final long dif = sequences.get(index) - (pos + 1);
+			if(dif==0L) {
+				if(head.compareAndSet(pos, pos + 1)) {
+					final Object e = slots.getAndSet(index, null);
+					sequences.lazySet(index, pos + mask + 1);
+					if(e!=TOMBSTONE) return (E)e;
+				}
+			} else if(dif < 0L) {
+				return null;
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Queue#peek()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		final long tl = tail.get();
+		for(long pos = head.get(); pos < tl; pos++) {
+			final Object e = slots.get((int)pos & mask);
+			if(e!=null && e!=TOMBSTONE) return (E)e;
+		}
+		return null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+	 */
+	@Override
+	public void put(final E e) throws InterruptedException {
+		long backoff = 1000L;
+		while(!offer(e)) {
+			backoff = backoff(backoff);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long backoff = 1000L;
+		while(!offer(e)) {
+			if(System.nanoTime() - deadline >= 0L) return false;
+			backoff = backoff(backoff);
+		}
+		return true;
+	}
+	
+	/**
+	 * Parks a producer waiting for space
+	 * @param backoff The nanos to park for
+	 * @return the next back off
+	 * @throws InterruptedException thrown if the producer is interrupted
+	 */
+	private static long backoff(final long backoff) throws InterruptedException {
+		LockSupport.parkNanos(backoff);
+		if(Thread.interrupted()) throw new InterruptedException();
+		return Math.min(backoff << 1, MAX_BACKOFF);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#take()
+	 */
+	@Override
+	public E take() throws InterruptedException {
+		return await(-1L);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		return await(unit.toNanos(timeout));
+	}
+	
+	/**
+	 * Polls for an element, parking until a producer signals if the queue is empty
+	 * @param timeout The maximum time to wait in nanos, or -1 to wait indefinitely
+	 * @return the element or null if the timeout elapsed
+	 * @throws InterruptedException thrown if the consumer is interrupted
+	 */
+	private E await(final long timeout) throws InterruptedException {
+		E e = poll();
+		if(e!=null) return e;
+		final Thread me = Thread.currentThread();
+		final long deadline = System.nanoTime() + timeout;
+		while(true) {
+			if(Thread.interrupted()) throw new InterruptedException();
+			waiters.add(me);
+			// re-check after enlisting so a concurrent producer's signal cannot be missed
+			e = poll();
+			if(e==null) {
+				if(timeout < 0L) {
+					LockSupport.park(this);
+				} else {
+					final long remaining = deadline - System.nanoTime();
+					if(remaining <= 0L) {
+						// if a producer already dequeued us, its element must not be left for no one
+						if(waiters.remove(me)) return null;
+						e = poll();
+						if(e==null) {
+							passSignal();
+							return null;
+						}
+						return e;
+					}
+					LockSupport.parkNanos(this, remaining);
+				}
+				e = poll();
+			}
+			if(e!=null) {
+				// pass on a signal we may have consumed to another waiter
+				if(!waiters.remove(me)) passSignal();
+				return e;
+			}
+			waiters.remove(me);
+		}
+	}
+
+	/**
+	 * Wakes up the next parked consumer if elements remain, passing on a signal consumed by a consumer that did not need it
+	 */
+	private void passSignal() {
+		if(!waiters.isEmpty() && !isEmpty()) {
+			final Thread waiter = waiters.poll();
+			if(waiter!=null) LockSupport.unpark(waiter);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		while(true) {
+			final long hd = head.get();
+			final long tl = tail.get();
+			if(hd==head.get()) {
+				final long size = tl - hd;
+				return size < 0L ? 0 : (int)Math.min(size, capacity);
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractCollection#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return tail.get() - head.get() <= 0L;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+	 */
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+	
+	/**
+	 * Returns the maximum number of queued elements
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Removes a queued element by replacing it with a tombstone
+	 * {@inheritDoc}
+	 * @see java.util.AbstractCollection#remove(java.lang.Object)
+	 */
+	@Override
+	public boolean remove(final Object o) {
+		if(o==null) return false;
+		final long tl = tail.get();
+		for(long pos = head.get(); pos < tl; pos++) {
+			final int index = (int)pos & mask;
+			final Object e = slots.get(index);
+			if(e!=null && e!=TOMBSTONE && o.equals(e) && slots.compareAndSet(index, e, TOMBSTONE)) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+	 */
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+	 */
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		if(c==null) throw new NullPointerException();
+		if(c==this) throw new IllegalArgumentException();
+		int n = 0;
+		E e;
+		while(n < maxElements && (e = poll())!=null) {
+			c.add(e);
+			n++;
+		}
+		return n;
+	}
+	
+	/**
+	 * Returns a weakly consistent iterator over a snapshot of the queued elements.
+	 * Removal through the iterator tombstones the element if it is still queued. 
+	 * {@inheritDoc}
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		final List<Object> snapshot = new ArrayList<Object>();
+		final List<Integer> indexes = new ArrayList<Integer>();
+		final long tl = tail.get();
+		for(long pos = head.get(); pos < tl; pos++) {
+			final int index = (int)pos & mask;
+			final Object e = slots.get(index);
+			if(e!=null && e!=TOMBSTONE) {
+				snapshot.add(e);
+				indexes.add(index);
+			}
+		}
+		return new Iterator<E>() {
+			int cursor = 0;
+			int last = -1;
+			@Override
+			public boolean hasNext() {
+				return cursor < snapshot.size();
+			}
+			@Override
+			public E next() {
+				if(cursor >= snapshot.size()) throw new NoSuchElementException();
+				last = cursor++;
+				return (E)snapshot.get(last);
+			}
+			@Override
+			public void remove() {
+				if(last < 0) throw new IllegalStateException();
+				slots.compareAndSet(indexes.get(last), snapshot.get(last), TOMBSTONE);
+				last = -1;
+			}
+		};
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractCollection#toString()
+	 */
+	@Override
+	public String toString() {
+		return "MPMCRingQueue [capacity=" + capacity + ", size=" + size() + "]";
+	}
+}
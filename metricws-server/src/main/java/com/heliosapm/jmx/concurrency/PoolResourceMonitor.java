@@ -0,0 +1,431 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: PoolResourceMonitor</p>
+ * <p>Description: Samples the CPU time, user time and allocated bytes of the threads in each registered thread group
+ * (the managed pools, schedulers and {@link PoolThreadFactory} groups) on a schedule, and publishes them as per-group rates.
+ * CPU times come from {@link ThreadMXBean#getThreadCpuTime(long)} and {@link ThreadMXBean#getThreadUserTime(long)}.
+ * Allocated bytes come from <code>com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long[])</code>, accessed
+ * reflectively since it is not available on every JVM.</p>
+ * <p>Usage is accumulated as per-thread deltas between samples, so a thread that exits between two samples loses
+ * its usage since the last sample.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.PoolResourceMonitor</code></p>
+ */
+
+public class PoolResourceMonitor implements PoolResourceMonitorMBean, Runnable {
+	/** The singleton instance */
+	private static volatile PoolResourceMonitor instance = null;
+	/** Set once the singleton is being created */
+	private static final AtomicBoolean started = new AtomicBoolean(false);
+	/** The monitored thread groups */
+	private static final ConcurrentHashMap<ThreadGroup, GroupUsage> groups = new ConcurrentHashMap<ThreadGroup, GroupUsage>();
+	
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The thread MXBean */
+	protected final ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
+	/** Indicates if CPU time is measured */
+	protected final boolean cpuEnabled;
+	/** The reflected <code>com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long[])</code>, null if not supported */
+	protected final Method allocatedBytes;
+	/** The sampling period in ms. */
+	protected final long period;
+	/** The sampling scheduler */
+	protected final JMXManagedScheduler scheduler;
+	/** The elapsed time of the last sample in nanos */
+	protected volatile long lastSampleTime = 0L;
+	
+	/**
+	 * Registers a thread group for monitoring, starting the monitor if this is the first registration
+	 * @param group The thread group
+	 * @return the group's usage
+	 */
+	public static GroupUsage register(final ThreadGroup group) {
+		if(group==null) throw new IllegalArgumentException("The passed thread group was null");
+		final GroupUsage usage = new GroupUsage(group);
+		final GroupUsage prior = groups.putIfAbsent(group, usage);
+		// the monitor's own scheduler registers while the monitor is created, so guard on the flag and not on the instance
+		if(started.compareAndSet(false, true)) {
+			instance = new PoolResourceMonitor();
+		}
+		return prior==null ? usage : prior;
+	}
+	
+	/**
+	 * Stops monitoring a thread group
+	 * @param group The thread group
+	 */
+	public static void unregister(final ThreadGroup group) {
+		if(group!=null) groups.remove(group);
+	}
+	
+	/**
+	 * Returns the monitor instance
+	 * @return the monitor instance or null if no group has been registered
+	 */
+	public static PoolResourceMonitor getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Creates a new PoolResourceMonitor
+	 */
+	private PoolResourceMonitor() {
+		boolean cpu = false;
+		try {
+			if(tmx.isThreadCpuTimeSupported()) {
+				if(!tmx.isThreadCpuTimeEnabled()) tmx.setThreadCpuTimeEnabled(true);
+				cpu = tmx.isThreadCpuTimeEnabled();
+			}
+		} catch (Exception ex) {
+			log.warn("Failed to enable thread CPU time", ex);
+		}
+		cpuEnabled = cpu;
+		allocatedBytes = allocatedBytesMethod();
+		period = ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_PERIOD, DEFAULT_PERIOD);
+		if(period > 0L) {
+			scheduler = new JMXManagedScheduler(SCHEDULER_OBJECT_NAME, "PoolResourceMonitor", 1, true);
+			scheduler.scheduleWithFixedDelay(this, period, period, TimeUnit.MILLISECONDS);
+		} else {
+			scheduler = null;
+		}
+		try {
+			JMXHelper.registerMBean(this, OBJECT_NAME);
+		} catch (Exception ex) {
+			log.warn("Failed to register JMX management interface. Will continue without.", ex);
+		}
+		log.info("Started PoolResourceMonitor: period [{}] ms., cpu [{}], allocation [{}]", period, cpuEnabled, allocatedBytes!=null);
+	}
+	
+	/**
+	 * Reflects and enables <code>com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long[])</code>
+	 * @return the method or null if it is not supported
+	 */
+	private Method allocatedBytesMethod() {
+		try {
+			final Class<?> iface = Class.forName("com.sun.management.ThreadMXBean");
+			if(!iface.isInstance(tmx)) return null;
+			if(!(Boolean)iface.getMethod("isThreadAllocatedMemorySupported").invoke(tmx)) return null;
+			if(!(Boolean)iface.getMethod("isThreadAllocatedMemoryEnabled").invoke(tmx)) {
+				iface.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(tmx, true);
+			}
+			return iface.getMethod("getThreadAllocatedBytes", long[].class);
+		} catch (Throwable t) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Samples every registered thread group
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		final long start = System.nanoTime();
+		for(GroupUsage usage: groups.values()) {
+			try {
+				sample(usage);
+			} catch (Exception ex) {
+				log.warn("Failed to sample thread group [{}]", usage.name, ex);
+			}
+		}
+		lastSampleTime = System.nanoTime() - start;
+	}
+	
+	/**
+	 * Samples a thread group
+	 * @param usage The group's usage
+	 * @throws Exception thrown on any error reading allocated bytes
+	 */
+	protected void sample(final GroupUsage usage) throws Exception {
+		Thread[] threads = new Thread[Math.max(usage.group.activeCount(), 1) + 4];
+		int count;
+		while((count = usage.group.enumerate(threads, true))==threads.length) {
+			threads = new Thread[threads.length * 2];
+		}
+		final long[] ids = new long[count];
+		for(int i = 0; i < count; i++) {
+			ids[i] = threads[i].getId();
+		}
+		final long[] allocs = allocatedBytes==null ? null : (long[])allocatedBytes.invoke(tmx, ids);
+		final HashMap<Long, long[]> current = new HashMap<Long, long[]>(count * 2);
+		long cpuDelta = 0L, userDelta = 0L, allocDelta = 0L;
+		for(int i = 0; i < count; i++) {
+			final long cpu = cpuEnabled ? tmx.getThreadCpuTime(ids[i]) : -1L;
+			final long user = cpuEnabled ? tmx.getThreadUserTime(ids[i]) : -1L;
+			final long alloc = allocs==null ? -1L : allocs[i];
+			final long[] prior = usage.threads.get(ids[i]);
+			if(cpu >= 0L) cpuDelta += cpu - (prior==null || prior[0] < 0L ? 0L : prior[0]);
+			if(user >= 0L) userDelta += user - (prior==null || prior[1] < 0L ? 0L : prior[1]);
+			if(alloc >= 0L) allocDelta += alloc - (prior==null || prior[2] < 0L ? 0L : prior[2]);
+			current.put(ids[i], new long[]{cpu, user, alloc});
+		}
+		usage.update(current, count, cpuDelta, userDelta, allocDelta, System.nanoTime());
+	}
+	
+	/**
+	 * <p>Title: GroupUsage</p>
+	 * <p>Description: The sampled resource usage of a monitored thread group</p> 
+	 */
+	public static class GroupUsage {
+		/** The thread group */
+		final ThreadGroup group;
+		/** The thread group name */
+		final String name;
+		/** The last sampled values of each thread, keyed by thread id: cpu, user, allocated */
+		HashMap<Long, long[]> threads = new HashMap<Long, long[]>();
+		/** The nano time of the last sample */
+		long lastSample = System.nanoTime();
+		/** The cummulative CPU time in nanos */
+		volatile long cpuTime = 0L;
+		/** The cummulative user time in nanos */
+		volatile long userTime = 0L;
+		/** The cummulative allocated bytes */
+		volatile long allocated = 0L;
+		/** The CPU percentage of one core over the last period */
+		volatile double cpuPercent = 0D;
+		/** The user mode CPU percentage of one core over the last period */
+		volatile double userPercent = 0D;
+		/** The allocation rate over the last period in bytes per second */
+		volatile long allocationRate = 0L;
+		/** The number of threads in the last sample */
+		volatile int threadCount = 0;
+		
+		GroupUsage(final ThreadGroup group) {
+			this.group = group;
+			this.name = group.getName();
+		}
+		
+		/**
+		 * Applies a sample
+		 * @param current The sampled per-thread values
+		 * @param count The number of threads sampled
+		 * @param cpuDelta The CPU nanos since the last sample
+		 * @param userDelta The user nanos since the last sample
+		 * @param allocDelta The bytes allocated since the last sample
+		 * @param now The sample nano time
+		 */
+		void update(final HashMap<Long, long[]> current, final int count, final long cpuDelta, final long userDelta, final long allocDelta, final long now) {
+			final long elapsed = now - lastSample;
+			threads = current;
+			lastSample = now;
+			threadCount = count;
+			cpuTime += cpuDelta;
+			userTime += userDelta;
+			allocated += allocDelta;
+			if(elapsed > 0L) {
+				cpuPercent = cpuDelta * 100D / elapsed;
+				userPercent = userDelta * 100D / elapsed;
+				allocationRate = (long)(allocDelta * 1E9D / elapsed);
+			}
+		}
+		
+		/**
+		 * Returns the thread group name
+		 * @return the thread group name
+		 */
+		public String getName() {
+			return name;
+		}
+		
+		/**
+		 * Returns the CPU time of the group's threads over the last period as a percentage of one core
+		 * @return the CPU percentage
+		 */
+		public double getCpuPercent() {
+			return cpuPercent;
+		}
+		
+		/**
+		 * Returns the user mode CPU time of the group's threads over the last period as a percentage of one core
+		 * @return the user mode CPU percentage
+		 */
+		public double getUserPercent() {
+			return userPercent;
+		}
+		
+		/**
+		 * Returns the allocation rate of the group's threads over the last period in bytes per second
+		 * @return the allocation rate
+		 */
+		public long getAllocationRate() {
+			return allocationRate;
+		}
+		
+		/**
+		 * Returns the cummulative CPU time of the group's threads in ms.
+		 * @return the cummulative CPU time
+		 */
+		public long getCpuTime() {
+			return TimeUnit.NANOSECONDS.toMillis(cpuTime);
+		}
+		
+		/**
+		 * Returns the cummulative user mode CPU time of the group's threads in ms.
+		 * @return the cummulative user mode CPU time
+		 */
+		public long getUserTime() {
+			return TimeUnit.NANOSECONDS.toMillis(userTime);
+		}
+		
+		/**
+		 * Returns the cummulative bytes allocated by the group's threads
+		 * @return the cummulative allocated bytes
+		 */
+		public long getAllocatedBytes() {
+			return allocated;
+		}
+		
+		/**
+		 * Returns the number of threads in the last sample
+		 * @return the sampled thread count
+		 */
+		public int getThreadCount() {
+			return threadCount;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.PoolResourceMonitorMBean#getPeriod()
+	 */
+	@Override
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.PoolResourceMonitorMBean#isCpuTimeEnabled()
+	 */
+	@Override
+	public boolean isCpuTimeEnabled() {
+		return cpuEnabled;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.PoolResourceMonitorMBean#isAllocatedBytesEnabled()
+	 */
+	@Override
+	public boolean isAllocatedBytesEnabled() {
+		return allocatedBytes!=null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.PoolResourceMonitorMBean#getLastSampleTime()
+	 */
+	@Override
+	public long getLastSampleTime() {
+		return TimeUnit.NANOSECONDS.toMicros(lastSampleTime);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.PoolResourceMonitorMBean#getCpuPercents()
+	 */
+	@Override
+	public Map<String, Double> getCpuPercents() {
+		final Map<String, Double> map = new TreeMap<String, Double>();
+		for(GroupUsage usage: groups.values()) {
+			map.put(usage.name, usage.cpuPercent);
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.PoolResourceMonitorMBean#getUserPercents()
+	 */
+	@Override
+	public Map<String, Double> getUserPercents() {
+		final Map<String, Double> map = new TreeMap<String, Double>();
+		for(GroupUsage usage: groups.values()) {
+			map.put(usage.name, usage.userPercent);
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.PoolResourceMonitorMBean#getAllocationRates()
+	 */
+	@Override
+	public Map<String, Long> getAllocationRates() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		for(GroupUsage usage: groups.values()) {
+			map.put(usage.name, usage.allocationRate);
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.PoolResourceMonitorMBean#getCpuTimes()
+	 */
+	@Override
+	public Map<String, Long> getCpuTimes() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		for(GroupUsage usage: groups.values()) {
+			map.put(usage.name, usage.getCpuTime());
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.PoolResourceMonitorMBean#getAllocatedBytes()
+	 */
+	@Override
+	public Map<String, Long> getAllocatedBytes() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		for(GroupUsage usage: groups.values()) {
+			map.put(usage.name, usage.allocated);
+		}
+		return map;
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: PoolResourceMonitorMBean</p>
+ * <p>Description: JMX MBean interface for {@link PoolResourceMonitor}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.PoolResourceMonitorMBean</code></p>
+ */
+
+public interface PoolResourceMonitorMBean {
+	/** The PoolResourceMonitor object name */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("com.heliosapm.jmx:service=PoolResourceMonitor");
+	/** The sampling scheduler's object name */
+	public static final ObjectName SCHEDULER_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.jmx:service=PoolResourceMonitor,pool=Scheduler");
+	
+	/** The  Config property name to specify the sampling period in ms., 0 to disable sampling */
+	public static final String CONFIG_PERIOD = "poolresourcemonitor.period";
+	/** The default sampling period in ms. */
+	public static final long DEFAULT_PERIOD = 5000;
+	
+	/**
+	 * Returns the sampling period in ms.
+	 * @return the sampling period in ms.
+	 */
+	public long getPeriod();
+	
+	/**
+	 * Indicates if per-thread CPU time is supported and enabled
+	 * @return true if CPU time is measured
+	 */
+	public boolean isCpuTimeEnabled();
+	
+	/**
+	 * Indicates if per-thread allocated bytes are supported and enabled
+	 * @return true if allocated bytes are measured
+	 */
+	public boolean isAllocatedBytesEnabled();
+	
+	/**
+	 * Returns the elapsed time of the last sample in microseconds
+	 * @return the last sample's elapsed time in microseconds
+	 */
+	public long getLastSampleTime();
+	
+	/**
+	 * Returns the CPU time of each monitored thread group over the last period, as a percentage of one core, keyed by thread group name
+	 * @return the CPU percentages
+	 */
+	public Map<String, Double> getCpuPercents();
+	
+	/**
+	 * Returns the user mode CPU time of each monitored thread group over the last period, as a percentage of one core, keyed by thread group name
+	 * @return the user mode CPU percentages
+	 */
+	public Map<String, Double> getUserPercents();
+	
+	/**
+	 * Returns the allocation rate of each monitored thread group over the last period, in bytes per second, keyed by thread group name
+	 * @return the allocation rates
+	 */
+	public Map<String, Long> getAllocationRates();
+	
+	/**
+	 * Returns the cummulative CPU time in ms. of each monitored thread group, keyed by thread group name
+	 * @return the cummulative CPU times
+	 */
+	public Map<String, Long> getCpuTimes();
+	
+	/**
+	 * Returns the cummulative allocated bytes of each monitored thread group, keyed by thread group name
+	 * @return the cummulative allocated bytes
+	 */
+	public Map<String, Long> getAllocatedBytes();
+}
@@ -31,7 +31,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>Title: PoolThreadFactory</p>
- * <p>Description: Factory for thread factories</p> 
+ * <p>Description: Factory for thread factories. The CPU and allocation usage of each thread group is sampled by the {@link PoolResourceMonitor}.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.jmx.concurrency.PoolThreadFactory</code></p>
@@ -102,6 +102,7 @@ public class PoolThreadFactory  {
 				if(tg==null) {
 					tg = new ThreadGroup(tgName);
 					threadGroups.put(tgName, tg);
+					PoolResourceMonitor.register(tg);
 				}
 			}
 		}
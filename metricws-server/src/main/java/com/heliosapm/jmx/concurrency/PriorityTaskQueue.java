@@ -0,0 +1,450 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Title: PriorityTaskQueue</p>
+ * <p>Description: A bounded work queue with a FIFO lane per priority level. Consumers take from the highest priority
+ * non-empty lane, so a backlog of low priority work never delays higher priority tasks by more than the time it takes
+ * a thread to free up. To prevent starvation, a lower priority task that has waited longer than the aging threshold
+ * beyond the head of the highest priority lane is taken first (the longest waiting aged task first).</p>
+ * <p>Tasks declare their level by implementing {@link Prioritized}; any other task goes in the default lane.
+ * Each lane has its own capacity, so a saturated lane does not cause higher priority tasks to be rejected.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.PriorityTaskQueue</code></p>
+ */
+
+public class PriorityTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+	/** The lanes, highest priority first */
+	private final ArrayDeque<Entry>[] lanes;
+	/** The capacity of each lane */
+	private final int laneCapacity;
+	/** The lane for tasks that do not declare a priority */
+	private final int defaultLevel;
+	/** The extra wait in nanos after which a lower priority task is taken ahead of higher priority lanes */
+	private final long agingNanos;
+	/** The queue lock */
+	private final ReentrantLock lock = new ReentrantLock();
+	/** Signalled when a task is queued */
+	private final Condition notEmpty = lock.newCondition();
+	/** Signalled per lane when a task is taken from the lane, so only producers waiting on that lane are woken */
+	private final Condition[] notFull;
+	/** The total number of queued tasks */
+	private int count = 0;
+	/** The number of tasks taken because they aged */
+	private long agedCount = 0L;
+	
+	/**
+	 * <p>Title: Entry</p>
+	 * <p>Description: A queued task and its enqueue time</p> 
+	 */
+	private static class Entry {
+		final Runnable task;
+		final long enqueued;
+		Entry(final Runnable task, final long enqueued) {
+			this.task = task;
+			this.enqueued = enqueued;
+		}
+	}
+	
+	/**
+	 * Creates a new PriorityTaskQueue
+	 * @param laneCapacity The capacity of each lane
+	 * @param levels The number of priority levels
+	 * @param defaultLevel The level of tasks that do not declare a priority
+	 * @param agingMs The extra wait in ms. after which a lower priority task is taken ahead of higher priority lanes, 0 to disable aging
+	 */
+	public PriorityTaskQueue(final int laneCapacity, final int levels, final int defaultLevel, final long agingMs) {
+		if(laneCapacity < 1) throw new IllegalArgumentException("Invalid lane capacity [" + laneCapacity + "]");
+		if(levels < 1) throw new IllegalArgumentException("Invalid level count [" + levels + "]");
+		if(defaultLevel < 0 || defaultLevel >= levels) throw new IllegalArgumentException("Invalid default level [" + defaultLevel + "]");
+		this.laneCapacity = laneCapacity;
+		this.defaultLevel = defaultLevel;
+		this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMs);
+		// generic array creation is not allowed, but the array never escapes and only ever holds ArrayDeque<Entry>
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		final ArrayDeque<Entry>[] newLanes = new ArrayDeque[levels];
+		lanes = newLanes;
+		notFull = new Condition[levels];
+		for(int i = 0; i < levels; i++) {
+			lanes[i] = new ArrayDeque<Entry>();
+			notFull[i] = lock.newCondition();
+		}
+	}
+	
+	/**
+	 * Returns the lane for a task
+	 * @param task The task
+	 * @return the lane index
+	 */
+	private int levelOf(final Runnable task) {
+		if(task instanceof Prioritized) {
+			final int p = ((Prioritized)task).getPriority();
+			if(p < 0) return defaultLevel;
+			return p >= lanes.length ? lanes.length - 1 : p;
+		}
+		return defaultLevel;
+	}
+	
+	/**
+	 * Returns the lane the next task would be taken from: the highest priority non-empty lane, unless a lower
+	 * priority task has aged. Must be called holding the lock with count &gt; 0.
+	 * @param top The highest priority non-empty lane
+	 * @return the lane index
+	 */
+	private int nextLane(final int top) {
+		int pick = top;
+		if(agingNanos > 0L) {
+			final long now = System.nanoTime();
+			long oldest = now - lanes[top].peekFirst().enqueued + agingNanos;
+			for(int i = top + 1; i < lanes.length; i++) {
+				final Entry e = lanes[i].peekFirst();
+				if(e!=null && now - e.enqueued > oldest) {
+					oldest = now - e.enqueued;
+					pick = i;
+				}
+			}
+		}
+		return pick;
+	}
+
+	/**
+	 * Returns the highest priority non-empty lane. Must be called holding the lock with count &gt; 0.
+	 * @return the lane index
+	 */
+	private int topLane() {
+		int top = 0;
+		while(lanes[top].isEmpty()) top++;
+		return top;
+	}
+
+	/**
+	 * Takes the next task. Must be called holding the lock with count &gt; 0.
+	 * @return the next task
+	 */
+	private Runnable dequeue() {
+		final int top = topLane();
+		final int pick = nextLane(top);
+		if(pick!=top) agedCount++;
+		final Entry e = lanes[pick].pollFirst();
+		count--;
+		notFull[pick].signal();
+		return e.task;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Queue#offer(java.lang.Object)
+	 */
+	@Override
+	public boolean offer(final Runnable task) {
+		if(task==null) throw new NullPointerException();
+		final int level = levelOf(task);
+		lock.lock();
+		try {
+			if(lanes[level].size() >= laneCapacity) return false;
+			lanes[level].addLast(new Entry(task, System.nanoTime()));
+			count++;
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean offer(final Runnable task, final long timeout, final TimeUnit unit) throws InterruptedException {
+		if(task==null) throw new NullPointerException();
+		final int level = levelOf(task);
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while(lanes[level].size() >= laneCapacity) {
+				if(nanos <= 0L) return false;
+				nanos = notFull[level].awaitNanos(nanos);
+			}
+			lanes[level].addLast(new Entry(task, System.nanoTime()));
+			count++;
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+	 */
+	@Override
+	public void put(final Runnable task) throws InterruptedException {
+		if(task==null) throw new NullPointerException();
+		final int level = levelOf(task);
+		lock.lockInterruptibly();
+		try {
+			while(lanes[level].size() >= laneCapacity) {
+				notFull[level].await();
+			}
+			lanes[level].addLast(new Entry(task, System.nanoTime()));
+			count++;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Queue#poll()
+	 */
+	@Override
+	public Runnable poll() {
+		lock.lock();
+		try {
+			return count==0 ? null : dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#take()
+	 */
+	@Override
+	public Runnable take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while(count==0) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while(count==0) {
+				if(nanos <= 0L) return null;
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the task {@link #poll()} would take now, applying the same aging choice
+	 * {@inheritDoc}
+	 * @see java.util.Queue#peek()
+	 */
+	@Override
+	public Runnable peek() {
+		lock.lock();
+		try {
+			if(count==0) return null;
+			return lanes[nextLane(topLane())].peekFirst().task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the number of tasks queued at a priority level
+	 * @param level The priority level
+	 * @return the number of queued tasks
+	 */
+	public int size(final int level) {
+		lock.lock();
+		try {
+			return lanes[level].size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the number of tasks taken ahead of higher priority lanes because they aged
+	 * @return the aged task count
+	 */
+	public long getAgedCount() {
+		lock.lock();
+		try {
+			return agedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the total remaining capacity of all the lanes
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+	 */
+	@Override
+	public int remainingCapacity() {
+		lock.lock();
+		try {
+			return laneCapacity * lanes.length - count;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractCollection#remove(java.lang.Object)
+	 */
+	@Override
+	public boolean remove(final Object o) {
+		if(o==null) return false;
+		lock.lock();
+		try {
+			for(int i = 0; i < lanes.length; i++) {
+				for(Iterator<Entry> iter = lanes[i].iterator(); iter.hasNext();) {
+					if(o.equals(iter.next().task)) {
+						iter.remove();
+						count--;
+						notFull[i].signal();
+						return true;
+					}
+				}
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+	 */
+	@Override
+	public int drainTo(final Collection<? super Runnable> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+	 */
+	@Override
+	public int drainTo(final Collection<? super Runnable> c, final int maxElements) {
+		if(c==null) throw new NullPointerException();
+		if(c==this) throw new IllegalArgumentException();
+		lock.lock();
+		try {
+			int n = 0;
+			while(n < maxElements && count > 0) {
+				c.add(dequeue());
+				n++;
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns an iterator over a snapshot of the queued tasks in priority order.
+	 * Removal through the iterator removes the task from the queue if it is still queued.
+	 * {@inheritDoc}
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		final List<Runnable> snapshot = new ArrayList<Runnable>();
+		lock.lock();
+		try {
+			for(ArrayDeque<Entry> lane: lanes) {
+				for(Entry e: lane) {
+					snapshot.add(e.task);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		final Iterator<Runnable> iter = snapshot.iterator();
+		return new Iterator<Runnable>() {
+			Runnable last = null;
+			@Override
+			public boolean hasNext() {
+				return iter.hasNext();
+			}
+			@Override
+			public Runnable next() {
+				last = iter.next();
+				return last;
+			}
+			@Override
+			public void remove() {
+				if(last==null) throw new IllegalStateException();
+				PriorityTaskQueue.this.remove(last);
+				last = null;
+			}
+		};
+	}
+}
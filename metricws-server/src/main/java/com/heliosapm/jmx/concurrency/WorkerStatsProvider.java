@@ -0,0 +1,53 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import java.util.Map;
+
+/**
+ * <p>Title: WorkerStatsProvider</p>
+ * <p>Description: Defines a source of per-worker statistics for a pool whose threads are long running
+ * workers (e.g. NIO selector loops) rather than short tasks, so the pool's own task counts say little about
+ * how the load is spread. Attached to a pool's management interface by
+ * {@link JMXExecutorServiceWrapper#register(Object, javax.management.ObjectName, WorkerStatsProvider)}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.WorkerStatsProvider</code></p>
+ */
+
+public interface WorkerStatsProvider {
+	/**
+	 * Returns a one line summary of each worker
+	 * @return the worker summaries
+	 */
+	public String[] getWorkerStats();
+
+	/**
+	 * Returns the worker statistics as a flat map of metric values keyed by
+	 * <b><code>&lt;worker&gt;.&lt;metric&gt;</code></b>
+	 * @return the worker metrics
+	 */
+	public Map<String, Long> getWorkerMetrics();
+}
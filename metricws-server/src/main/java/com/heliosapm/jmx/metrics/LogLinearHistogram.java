@@ -0,0 +1,186 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Title: LogLinearHistogram</p>
+ * <p>Description: A fixed footprint, lock-free and allocation-free histogram of non-negative long values.
+ * Values are counted in power-of-two ranges, each split into 8 linear sub-buckets, so reported
+ * percentiles are within 12.5% of the recorded value over the full long range.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.metrics.LogLinearHistogram</code></p>
+ */
+
+public class LogLinearHistogram {
+	/** The number of bits of linear sub-bucket resolution */
+	private static final int SUB_BITS = 3;
+	/** The number of sub-buckets per power of two */
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	/** The sub-bucket index mask */
+	private static final int SUB_MASK = SUB_COUNT - 1;
+	/** The total number of buckets */
+	private static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+	
+	/** The bucket counts */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	/** The number of recorded values */
+	private final AtomicLong count = new AtomicLong();
+	/** The sum of the recorded values */
+	private final AtomicLong sum = new AtomicLong();
+	/** The maximum recorded value */
+	private final AtomicLong max = new AtomicLong();
+	
+	/** The percentiles reported in {@link #toMap()} */
+	private static final double[] REPORTED_PERCENTILES = {50D, 90D, 99D, 99.9D};
+	/** The names of the percentiles reported in {@link #toMap()} */
+	private static final String[] REPORTED_PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+	
+	/**
+	 * Computes the bucket index for the passed value
+	 * @param value The value (negative values are treated as zero)
+	 * @return the bucket index
+	 */
+	private static int bucketIndex(final long value) {
+		if(value < SUB_COUNT) return value < 0 ? 0 : (int)value;
+		final int exp = 63 - Long.numberOfLeadingZeros(value);
+		final int sub = (int)(value >>> (exp - SUB_BITS)) & SUB_MASK;
+		return ((exp - SUB_BITS + 1) << SUB_BITS) + sub;
+	}
+	
+	/**
+	 * Computes the highest value counted in the passed bucket
+	 * @param index The bucket index
+	 * @return the bucket's highest value
+	 */
+	private static long bucketUpperBound(final int index) {
+		if(index < SUB_COUNT) return index;
+		final int exp = (index >> SUB_BITS) + SUB_BITS - 1;
+		final long width = 1L << (exp - SUB_BITS);
+		final long lower = ((long)(SUB_COUNT + (index & SUB_MASK))) << (exp - SUB_BITS);
+		return lower + width - 1;
+	}
+
+	/**
+	 * Records a value
+	 * @param value The value to record
+	 */
+	public void record(final long value) {
+		buckets.incrementAndGet(bucketIndex(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long m = max.get();
+		while(value > m) {
+			if(max.compareAndSet(m, value)) break;
+			m = max.get();
+		}
+	}
+	
+	/**
+	 * Returns the number of recorded values
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+	
+	/**
+	 * Returns the maximum recorded value
+	 * @return the maximum recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Returns the mean of the recorded values
+	 * @return the mean of the recorded values
+	 */
+	public long getMean() {
+		final long c = count.get();
+		return c==0 ? 0L : sum.get()/c;
+	}
+	
+	/**
+	 * Returns the approximate value at the passed percentile
+	 * @param percentile The percentile (0-100)
+	 * @return the approximate value at the passed percentile, or zero if nothing has been recorded
+	 */
+	public long getPercentile(final double percentile) {
+		final long c = count.get();
+		if(c==0) return 0L;
+		final long target = Math.max(1L, (long)Math.ceil(c * percentile / 100D));
+		long seen = 0;
+		for(int i = 0; i < BUCKET_COUNT; i++) {
+			seen += buckets.get(i);
+			if(seen >= target) {
+				return Math.min(bucketUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+	
+	/**
+	 * Resets the histogram. Values recorded concurrently with a reset may be partially lost.
+	 */
+	public void reset() {
+		for(int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0L);
+		}
+		count.set(0L);
+		sum.set(0L);
+		max.set(0L);
+	}
+	
+	/**
+	 * Returns a summary of this histogram keyed by statistic name (count, mean, max, p50, p90, p99, p999)
+	 * @return a summary of this histogram
+	 */
+	public Map<String, Long> toMap() {
+		final Map<String, Long> map = new LinkedHashMap<String, Long>(8);
+		map.put("count", getCount());
+		map.put("mean", getMean());
+		map.put("max", getMax());
+		for(int i = 0; i < REPORTED_PERCENTILES.length; i++) {
+			map.put(REPORTED_PERCENTILE_NAMES[i], getPercentile(REPORTED_PERCENTILES[i]));
+		}
+		return map;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "LogLinearHistogram " + toMap();
+	}
+
+}
@@ -0,0 +1,176 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: SlidingWindow</p>
+ * <p>Description: A fixed size window over the most recently recorded long values. Recording is lock-free and
+ * allocation-free. Statistics are computed over the window on demand, also without allocation: percentiles are
+ * selected in place in a pre-allocated scratch copy of the window.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.metrics.SlidingWindow</code></p>
+ */
+
+public class SlidingWindow {
+	/** The window samples */
+	private final long[] samples;
+	/** The scratch copy of the samples used for percentile selection */
+	private final long[] scratch;
+	/** The number of values recorded */
+	private final AtomicLong count = new AtomicLong();
+	/** The last value recorded */
+	private volatile long last = 0L;
+
+	/**
+	 * Creates a new SlidingWindow
+	 * @param size The number of most recent values retained
+	 */
+	public SlidingWindow(final int size) {
+		if(size < 1) throw new IllegalArgumentException("Invalid window size [" + size + "]");
+		samples = new long[size];
+		scratch = new long[size];
+	}
+
+	/**
+	 * Records a value
+	 * @param value The value to record
+	 */
+	public void record(final long value) {
+		final long n = count.getAndIncrement();
+		samples[(int)(n % samples.length)] = value;
+		last = value;
+	}
+
+	/**
+	 * Returns the total number of values recorded
+	 * @return the total number of values recorded
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the last value recorded
+	 * @return the last value recorded
+	 */
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * Returns the number of values in the window
+	 * @return the number of values in the window
+	 */
+	public int getSampleCount() {
+		return (int)Math.min(count.get(), samples.length);
+	}
+
+	/**
+	 * Returns the mean of the values in the window
+	 * @return the mean, or zero if the window is empty
+	 */
+	public long getMean() {
+		final int n = getSampleCount();
+		if(n==0) return 0L;
+		long total = 0L;
+		for(int i = 0; i < n; i++) total += samples[i];
+		return total / n;
+	}
+
+	/**
+	 * Returns the minimum of the values in the window
+	 * @return the minimum, or zero if the window is empty
+	 */
+	public long getMin() {
+		final int n = getSampleCount();
+		if(n==0) return 0L;
+		long min = Long.MAX_VALUE;
+		for(int i = 0; i < n; i++) if(samples[i] < min) min = samples[i];
+		return min;
+	}
+
+	/**
+	 * Returns the maximum of the values in the window
+	 * @return the maximum, or zero if the window is empty
+	 */
+	public long getMax() {
+		final int n = getSampleCount();
+		if(n==0) return 0L;
+		long max = Long.MIN_VALUE;
+		for(int i = 0; i < n; i++) if(samples[i] > max) max = samples[i];
+		return max;
+	}
+
+	/**
+	 * Returns the passed percentile of the values in the window
+	 * @param percentile The percentile, 0 to 100
+	 * @return the percentile value, or zero if the window is empty
+	 */
+	public synchronized long getPercentile(final double percentile) {
+		final int n = getSampleCount();
+		if(n==0) return 0L;
+		System.arraycopy(samples, 0, scratch, 0, n);
+		final int rank = (int)Math.min(n - 1, Math.max(0, Math.ceil(percentile / 100D * n) - 1));
+		return select(scratch, n, rank);
+	}
+
+	/**
+	 * Clears the window and the recorded count
+	 */
+	public void reset() {
+		count.set(0L);
+		last = 0L;
+	}
+
+	/**
+	 * Finds the value of the passed rank in the first <b><code>n</code></b> values of the array, reordering them
+	 * @param a The array
+	 * @param n The number of values to select from
+	 * @param rank The zero based rank of the value to select
+	 * @return the selected value
+	 */
+	private static long select(final long[] a, final int n, final int rank) {
+		int lo = 0, hi = n - 1;
+		while(hi > lo) {
+			final long pivot = a[(lo + hi) >>> 1];
+			int i = lo, j = hi;
+			while(i <= j) {
+				while(a[i] < pivot) i++;
+				while(a[j] > pivot) j--;
+				if(i <= j) {
+					final long t = a[i]; a[i] = a[j]; a[j] = t;
+					i++; j--;
+				}
+			}
+			if(rank <= j) hi = j;
+			else if(rank >= i) lo = i;
+			else return a[rank];
+		}
+		return a[rank];
+	}
+}
@@ -25,7 +25,6 @@
 package com.heliosapm.jmx.notif;
 
 import java.lang.management.ManagementFactory;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -38,6 +37,7 @@ import java.util.concurrent.TimeoutException;
 import javax.management.ObjectName;
 import javax.management.QueryExp;
 
+import com.heliosapm.jmx.concurrency.JMXManagedForkJoinPool;
 import com.heliosapm.jmx.concurrency.JMXManagedThreadPool;
 import com.heliosapm.jmx.util.helpers.JMXHelper;
 
@@ -57,6 +57,10 @@ public class SharedNotificationExecutor implements ExecutorService {
 	
 	/** The MBean ObjectName for the file watcher's JMX notification thread pool */
 	public static final ObjectName NOTIF_THREAD_POOL_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.notifications:service=NotificationThreadPool");
+	/** The MBean ObjectName for the work stealing pool that fans out {@link #invokeOp} calls */
+	public static final ObjectName NOTIF_OP_POOL_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.notifications:service=NotificationOpPool");
+	/** The number of MBeans an invokeOp task invokes itself rather than splitting further */
+	public static final int OP_BATCH_SIZE = 16;
 
 	/** The number of CPU cores available to the JVM */
 	public static final int CORES = ManagementFactory.getOperatingSystemMXBean().getAvailableProcessors();
@@ -64,6 +68,8 @@ public class SharedNotificationExecutor implements ExecutorService {
 	
 	/** The shared thread pool */
 	private final JMXManagedThreadPool threadPool;
+	/** The work stealing pool for invokeOp fan-outs */
+	private final JMXManagedForkJoinPool opPool;
 	
 	
 	/**
@@ -84,6 +90,7 @@ public class SharedNotificationExecutor implements ExecutorService {
 	
 	private SharedNotificationExecutor() {
 		threadPool = new JMXManagedThreadPool(NOTIF_THREAD_POOL_OBJECT_NAME, "WatcherNotificationThreadPool", CORES, CORES, 1024, 60000, 100, 90);
+		opPool = new JMXManagedForkJoinPool(NOTIF_OP_POOL_OBJECT_NAME, "NotificationOpPool", CORES, 1024, 100, 90, true);
 	}
 	
 	
@@ -96,23 +103,76 @@ public class SharedNotificationExecutor implements ExecutorService {
 		if(opName==null) throw new IllegalArgumentException("The passed opName was null");
 		final ObjectName[] matches = JMXHelper.query(pattern, query);
 		if(matches.length==0) return;
-		List<Future<?>> futures = new ArrayList<Future<?>>(matches.length);
-		for(final ObjectName on: matches) {
-			futures.add(threadPool.submit(new Runnable(){
-				@Override
-				public void run() {
-					JMXHelper.invoke(on, opName, args, signature);					
-				}
-			}));
-		}
+		final Future<Void> f = opPool.submit(new InvokeOpTask(matches, 0, matches.length, opName, args, signature));
 		if(sync) {
-			for(Future<?> f: futures) {
-				try {
-					f.get();
-				} catch (Exception ex) {
-					throw new RuntimeException("Sync Op [" + opName + "] against [" + pattern + "] timed out", ex);
+			try {
+				opPool.join(f);
+			} catch (Exception ex) {
+				throw new RuntimeException("Sync Op [" + opName + "] against [" + pattern + "] failed", ex);
+			}
+		}
+	}
+	
+	/**
+	 * <p>Title: InvokeOpTask</p>
+	 * <p>Description: Invokes an op against a range of MBeans, splitting the range in half and forking one half
+	 * until it is no larger than {@link SharedNotificationExecutor#OP_BATCH_SIZE}</p> 
+	 */
+	private class InvokeOpTask implements Callable<Void> {
+		/** The target MBeans */
+		private final ObjectName[] targets;
+		/** The first target index, inclusive */
+		private final int from;
+		/** The last target index, exclusive */
+		private final int to;
+		/** The op name */
+		private final String opName;
+		/** The op arguments */
+		private final Object[] args;
+		/** The op signature */
+		private final String[] signature;
+		
+		InvokeOpTask(final ObjectName[] targets, final int from, final int to, final String opName, final Object[] args, final String[] signature) {
+			this.targets = targets;
+			this.from = from;
+			this.to = to;
+			this.opName = opName;
+			this.args = args;
+			this.signature = signature;
+		}
+		
+		@Override
+		public Void call() throws Exception {
+			if(to - from <= OP_BATCH_SIZE) {
+				RuntimeException failure = null;
+				for(int i = from; i < to; i++) {
+					try {
+						JMXHelper.invoke(targets[i], opName, args, signature);
+					} catch (RuntimeException rex) {
+						if(failure==null) failure = rex;
+					}
+				}
+				if(failure!=null) throw failure;
+				return null;
+			}
+			final int mid = (from + to) >>> 1;
+			final Future<Void> left = opPool.submit(new InvokeOpTask(targets, from, mid, opName, args, signature));
+			Exception failure = null;
+			try {
+				new InvokeOpTask(targets, mid, to, opName, args, signature).call();
+			} catch (Exception ex) {
+				failure = ex;
+			}
+			try {
+				opPool.join(left);
+			} catch (ExecutionException eex) {
+				if(failure==null) {
+					// an Error thrown by the subtask stays wrapped in the execution exception
+					failure = eex.getCause() instanceof Exception ? (Exception)eex.getCause() : eex;
 				}
 			}
+			if(failure!=null) throw failure;
+			return null;
 		}
 	}
 
@@ -138,11 +198,13 @@ public class SharedNotificationExecutor implements ExecutorService {
 				try {
 					awaitTermination(60, TimeUnit.SECONDS);					
 				} catch (Exception x) { /* No Op */ }
+				try { JMXHelper.unregisterMBean(NOTIF_OP_POOL_OBJECT_NAME); } catch (Exception x) { /* No Op */ }
 				JMXHelper.unregisterMBean(NOTIF_THREAD_POOL_OBJECT_NAME);
 			}
 		};
 		t.setDaemon(true);
 		threadPool.shutdown();
+		opPool.shutdown();
 		t.start();
 	}
 
@@ -154,6 +216,8 @@ public class SharedNotificationExecutor implements ExecutorService {
 	@Override
 	public List<Runnable> shutdownNow() {
 		try { JMXHelper.unregisterMBean(NOTIF_THREAD_POOL_OBJECT_NAME); } catch (Exception x) { /* No Op */ }
+		try { JMXHelper.unregisterMBean(NOTIF_OP_POOL_OBJECT_NAME); } catch (Exception x) { /* No Op */ }
+		opPool.shutdownNow();
 		return threadPool.shutdownNow();
 	}
 
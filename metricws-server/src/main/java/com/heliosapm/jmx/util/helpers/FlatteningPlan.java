@@ -0,0 +1,314 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.util.helpers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularType;
+
+/**
+ * <p>Title: FlatteningPlan</p>
+ * <p>Description: A flattening of CompositeData and TabularData values compiled once per {@link CompositeType} or {@link TabularType}
+ * and reused for every value of that type. The plan holds the item keys, and caches the interned flattened names
+ * for each attribute name and delimiter (and each table row key), so flattening a value does no string building after the first poll.</p>
+ * <p>Flattened names follow {@link JMXHelper#indexOpenData(String, Object, String, javax.management.MBeanAttributeInfo)}:
+ * <b><code>&lt;name&gt;&lt;delim&gt;&lt;item&gt;</code></b> for composites and
+ * <b><code>&lt;name&gt;&lt;delim&gt;&lt;key1&gt;&lt;delim&gt;...&lt;keyN&gt;&lt;delim&gt;&lt;item&gt;</code></b> for table rows.
+ * Nested open data is not flattened further.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.util.helpers.FlatteningPlan</code></p>
+ */
+
+public class FlatteningPlan {
+	/** The compiled plans keyed by open type */
+	private static final Map<OpenType<?>, FlatteningPlan> plans = new ConcurrentHashMap<OpenType<?>, FlatteningPlan>();
+	/** The compiled compound name paths keyed by compound name, keyed by delimiter */
+	private static final Map<String, Map<String, String[]>> paths = new ConcurrentHashMap<String, Map<String, String[]>>();
+	
+	/** The maximum number of row key name sets cached for each attribute of a tabular plan */
+	public static final int MAX_CACHED_ROWS = 1024;
+	/** The maximum number of compiled compound name paths per delimiter */
+	public static final int MAX_CACHED_PATHS = 4096;
+	
+	/** The tabular type, null for a composite plan */
+	private final TabularType tabularType;
+	/** The composite type, or row type for a tabular plan */
+	private final CompositeType compositeType;
+	/** The composite item keys */
+	private final String[] itemKeys;
+	/** The flattened names keyed by attribute name, keyed by delimiter */
+	private final Map<String, Map<String, Names>> names = new ConcurrentHashMap<String, Map<String, Names>>();
+	
+	/**
+	 * <p>Title: Names</p>
+	 * <p>Description: The flattened names of a plan for one attribute name and delimiter</p> 
+	 */
+	private class Names {
+		/** The name prefix, <code>&lt;name&gt;&lt;delim&gt;</code> */
+		final String prefix;
+		/** The delimiter */
+		final String delimiter;
+		/** The item names for a composite plan */
+		final String[] items;
+		/** The item names for each row key of a tabular plan */
+		final Map<List<?>, String[]> rows;
+		
+		Names(final String name, final String delimiter) {
+			this.delimiter = delimiter;
+			prefix = name + delimiter;
+			if(tabularType==null) {
+				items = itemNames(prefix);
+				rows = null;
+			} else {
+				items = null;
+				rows = new ConcurrentHashMap<List<?>, String[]>();
+			}
+		}
+		
+		/**
+		 * Returns the item names of a table row
+		 * @param rowKey The row key
+		 * @return the row's item names
+		 */
+		String[] row(final List<?> rowKey) {
+			String[] rowNames = rows.get(rowKey);
+			if(rowNames==null) {
+				final StringBuilder b = new StringBuilder(prefix);
+				for(Object k: rowKey) {
+					b.append(k).append(delimiter);
+				}
+				rowNames = itemNames(b.toString());
+				if(rows.size() < MAX_CACHED_ROWS) rows.put(rowKey, rowNames);
+			}
+			return rowNames;
+		}
+	}
+	
+	/**
+	 * Returns the plan for the passed open type, compiling it on first use
+	 * @param type A CompositeType or TabularType
+	 * @return the plan
+	 */
+	public static FlatteningPlan forType(final OpenType<?> type) {
+		if(type==null) throw new IllegalArgumentException("The passed OpenType was null");
+		FlatteningPlan plan = plans.get(type);
+		if(plan==null) {
+			if(type instanceof CompositeType) {
+				plan = new FlatteningPlan(null, (CompositeType)type);
+			} else if(type instanceof TabularType) {
+				plan = new FlatteningPlan((TabularType)type, ((TabularType)type).getRowType());
+			} else {
+				throw new IllegalArgumentException("Unsupported OpenType [" + type + "]");
+			}
+			plans.put(type, plan);
+		}
+		return plan;
+	}
+	
+	/**
+	 * Returns the plan for the type of the passed open data value
+	 * @param openData A CompositeData or TabularData
+	 * @return the plan or null if the value is not CompositeData or TabularData
+	 */
+	public static FlatteningPlan forValue(final Object openData) {
+		if(openData instanceof CompositeData) return forType(((CompositeData)openData).getCompositeType());
+		if(openData instanceof TabularData) return forType(((TabularData)openData).getTabularType());
+		return null;
+	}
+	
+	/**
+	 * Returns the number of compiled plans
+	 * @return the number of compiled plans
+	 */
+	public static int getPlanCount() {
+		return plans.size();
+	}
+	
+	/**
+	 * Creates a new FlatteningPlan
+	 * @param tabularType The tabular type, null for a composite plan
+	 * @param compositeType The composite type, or row type for a tabular plan
+	 */
+	private FlatteningPlan(final TabularType tabularType, final CompositeType compositeType) {
+		this.tabularType = tabularType;
+		this.compositeType = compositeType;
+		itemKeys = compositeType.keySet().toArray(new String[0]);
+	}
+	
+	/**
+	 * Builds the interned item names for a prefix
+	 * @param prefix The name prefix
+	 * @return the item names
+	 */
+	private String[] itemNames(final String prefix) {
+		final String[] itemNames = new String[itemKeys.length];
+		for(int i = 0; i < itemKeys.length; i++) {
+			itemNames[i] = (prefix + itemKeys[i]).intern();
+		}
+		return itemNames;
+	}
+	
+	/**
+	 * Returns the flattened names for an attribute name and delimiter
+	 * @param name The attribute name
+	 * @param delimiter The delimiter
+	 * @return the flattened names
+	 */
+	private Names names(final String name, final String delimiter) {
+		Map<String, Names> byName = names.get(delimiter);
+		if(byName==null) {
+			byName = new ConcurrentHashMap<String, Names>();
+			names.put(delimiter, byName);
+		}
+		Names n = byName.get(name);
+		if(n==null) {
+			n = new Names(name, delimiter);
+			byName.put(name, n);
+		}
+		return n;
+	}
+	
+	/**
+	 * Returns the rows of the passed value for a tabular plan, or the value itself for a composite plan
+	 * @param openData The open data value
+	 * @return the composite values to flatten
+	 */
+	@SuppressWarnings("unchecked")
+	private Collection<CompositeData> composites(final Object openData) {
+		if(tabularType==null) {
+			final List<CompositeData> one = new ArrayList<CompositeData>(1);
+			one.add((CompositeData)openData);
+			return one;
+		}
+		return (Collection<CompositeData>)((TabularData)openData).values();
+	}
+	
+	/**
+	 * Flattens the passed value into the map, keeping the original values
+	 * @param name The attribute name
+	 * @param delimiter The delimiter
+	 * @param openData A CompositeData or TabularData of this plan's type
+	 * @param map The map to put the leaves into
+	 */
+	public void flatten(final String name, final String delimiter, final Object openData, final Map<String, Object> map) {
+		final Names n = names(name, delimiter);
+		if(tabularType==null) {
+			put(n.items, ((CompositeData)openData).getAll(itemKeys), map);
+		} else {
+			final List<String> indexNames = tabularType.getIndexNames();
+			for(CompositeData row: composites(openData)) {
+				put(n.row(rowKey(row, indexNames)), row.getAll(itemKeys), map);
+			}
+		}
+	}
+	
+	/**
+	 * Puts one composite's values in the map
+	 * @param itemNames The flattened item names
+	 * @param values The item values
+	 * @param map The map
+	 */
+	private static void put(final String[] itemNames, final Object[] values, final Map<String, Object> map) {
+		for(int i = 0; i < values.length; i++) {
+			map.put(itemNames[i], values[i]);
+		}
+	}
+	
+	/**
+	 * Returns the index key of a table row
+	 * @param row The row
+	 * @param indexNames The table's index names
+	 * @return the row key
+	 */
+	private static List<?> rowKey(final CompositeData row, final List<String> indexNames) {
+		final List<Object> key = new ArrayList<Object>(indexNames.size());
+		for(String indexName: indexNames) {
+			key.add(row.get(indexName));
+		}
+		return key;
+	}
+	
+	/**
+	 * Extracts a field from a CompositeData using a compound name whose first fragment is the attribute name.
+	 * The split of the compound name is compiled once per delimiter and name.
+	 * @param cd The composite data instance
+	 * @param delimiter The delimiter used for the compound name
+	 * @param name The compound attribute name
+	 * @return The extracted object
+	 */
+	public static Object extract(final CompositeData cd, final String delimiter, final String name) {
+		final String[] fragments = path(delimiter, name);
+		CompositeData ref = cd;
+		Object value = null;
+		for(int i = 1; i < fragments.length; i++) {
+			value = ref.get(fragments[i]);
+			if(value instanceof CompositeData) {
+				ref = (CompositeData)value;
+			} else {
+				break;
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * Returns the compiled fragments of a compound name
+	 * @param delimiter The delimiter
+	 * @param name The compound name
+	 * @return the fragments
+	 */
+	private static String[] path(final String delimiter, final String name) {
+		Map<String, String[]> byName = paths.get(delimiter);
+		if(byName==null) {
+			byName = new ConcurrentHashMap<String, String[]>();
+			paths.put(delimiter, byName);
+		}
+		String[] fragments = byName.get(name);
+		if(fragments==null) {
+			fragments = name.split(Pattern.quote(delimiter));
+			if(byName.size() < MAX_CACHED_PATHS) byName.put(name, fragments);
+		}
+		return fragments;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "FlatteningPlan [" + (tabularType!=null ? tabularType.getTypeName() : compositeType.getTypeName()) + ", items=" + itemKeys.length + "]";
+	}
+}
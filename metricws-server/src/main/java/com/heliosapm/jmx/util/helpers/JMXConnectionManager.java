@@ -0,0 +1,646 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.util.helpers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXServiceURL;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.jmx.concurrency.JMXManagedScheduler;
+import com.heliosapm.jmx.concurrency.JMXManagedThreadPool;
+import com.heliosapm.jmx.metrics.SlidingWindow;
+
+/**
+ * <p>Title: JMXConnectionManager</p>
+ * <p>Description: Shares one JMXConnector per remote {@link JMXServiceURL} and connect environment between all callers.
+ * Callers passing different environments, such as different credentials, never share a connector.</p>
+ * <p>{@link #getConnection(JMXServiceURL, Map)} returns an {@link MBeanServerConnection} bound to the target rather than
+ * to a connector: the target connects on first use, concurrent callers are multiplexed over the one connector, and each
+ * call is timed and counted. A target is checked with a cheap <code>getMBeanCount</code> every health check period.
+ * Connects and health checks that do not complete in time are abandoned, since a blocked RMI call cannot be interrupted.
+ * When a call or a health check fails with an {@link IOException}, the connector is closed and the target is handed to the
+ * {@link ReconnectorService}, which installs the new connector when it reconnects; calls made in the meantime fail fast.
+ * Connectors of targets that have not been called for the idle timeout are closed and reopened on the next call.</p>
+ * <p>Notification listeners registered through a shared connection are not carried over to a reconnected connector.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.util.helpers.JMXConnectionManager</code></p>
+ */
+
+public class JMXConnectionManager implements JMXConnectionManagerMBean {
+	/** The singleton instance */
+	private static volatile JMXConnectionManager instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+	
+	/** The targets keyed by JMXServiceURL and environment */
+	private final ConcurrentMap<TargetKey, Target> targets = new NonBlockingHashMap<TargetKey, Target>();
+	/** The serial number supplier for the ids of targets with an environment */
+	private final AtomicInteger targetSerial = new AtomicInteger();
+	/** The health check scheduler */
+	private final JMXManagedScheduler scheduler;
+	/** Worker thread pool */
+	private final JMXManagedThreadPool workerPool;
+	/** The health check period in ms. */
+	private final long healthPeriod;
+	/** The health check timeout in ms. */
+	private final long healthTimeout;
+	/** The connect timeout in ms. */
+	private final long connectTimeout;
+	/** The idle timeout in ms. */
+	private final long idleTimeout;
+	/** The call latency sliding window size */
+	private final int windowSize;
+	/** Instance logger */
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	
+	/**
+	 * Acquires the JMXConnectionManager singleton instance
+	 * @return the JMXConnectionManager singleton instance
+	 */
+	public static JMXConnectionManager getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new JMXConnectionManager();
+				}
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Creates a new JMXConnectionManager
+	 */
+	private JMXConnectionManager() {
+		healthPeriod = Math.max(1L, ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_HEALTH_PERIOD, DEFAULT_HEALTH_PERIOD));
+		healthTimeout = ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_HEALTH_TIMEOUT, DEFAULT_HEALTH_TIMEOUT);
+		connectTimeout = ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT);
+		idleTimeout = ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+		windowSize = ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_WINDOW_SIZE, DEFAULT_WINDOW_SIZE);
+		scheduler = new JMXManagedScheduler(SCHEDULER_OBJECT_NAME, "JMXConnectionManagerScheduler", 1, true);
+		workerPool = new JMXManagedThreadPool(WORKER_OBJECT_NAME, "JMXConnectionManagerWorker", true);
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				for(Target target: targets.values()) {
+					target.scheduleCheck();
+				}
+			}
+		}, healthPeriod, healthPeriod, TimeUnit.MILLISECONDS);
+		JMXHelper.registerMBean(this, OBJECT_NAME);
+	}
+	
+	/**
+	 * Returns a shared MBeanServerConnection to the passed JMXServiceURL
+	 * @param jmxUrl The JMXServiceURL of the target
+	 * @return the shared MBeanServerConnection
+	 */
+	public MBeanServerConnection getConnection(final CharSequence jmxUrl) {
+		if(jmxUrl==null) throw new IllegalArgumentException("The passed JMXServiceURL was null");
+		try {
+			return getConnection(new JMXServiceURL(jmxUrl.toString().trim()), null);
+		} catch (MalformedURLException mex) {
+			throw new IllegalArgumentException("Invalid JMXServiceURL [" + jmxUrl + "]", mex);
+		}
+	}
+	
+	/**
+	 * Returns a shared MBeanServerConnection to the passed JMXServiceURL.
+	 * The connection is only shared with callers passing an equal environment.
+	 * @param jmxServiceURL The JMXServiceURL of the target
+	 * @param env The optional environment map which may be needed to connect
+	 * @return the shared MBeanServerConnection
+	 */
+	public MBeanServerConnection getConnection(final JMXServiceURL jmxServiceURL, final Map<String, ?> env) {
+		if(jmxServiceURL==null) throw new IllegalArgumentException("The passed JMXServiceURL was null");
+		final TargetKey key = new TargetKey(jmxServiceURL.toString(), env);
+		Target target = targets.get(key);
+		if(target==null) {
+			final Target newTarget = new Target(jmxServiceURL, env, key.env==null ? key.url : key.url + " #" + targetSerial.incrementAndGet());
+			target = targets.putIfAbsent(key, newTarget);
+			if(target==null) target = newTarget;
+		}
+		return target.proxy;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#closeTarget(java.lang.String)
+	 */
+	@Override
+	public boolean closeTarget(final String jmxUrl) {
+		if(jmxUrl==null) return false;
+		final String id = jmxUrl.trim();
+		boolean closed = false;
+		for(Iterator<Map.Entry<TargetKey, Target>> iter = targets.entrySet().iterator(); iter.hasNext();) {
+			final Map.Entry<TargetKey, Target> entry = iter.next();
+			final Target target = entry.getValue();
+			if((id.equals(entry.getKey().url) || id.equals(target.getId())) && targets.remove(entry.getKey(), target)) {
+				target.close(TargetState.CLOSED);
+				closed = true;
+			}
+		}
+		return closed;
+	}
+	
+	/**
+	 * <p>Title: TargetKey</p>
+	 * <p>Description: Identifies a target by its JMXServiceURL and connect environment. Environment values are compared
+	 * by content, so that credentials passed as new arrays by each caller still match.</p> 
+	 */
+	static final class TargetKey {
+		/** The JMXServiceURL */
+		final String url;
+		/** A copy of the environment, or null if none was passed */
+		final Map<String, ?> env;
+		/** The hash code */
+		final int hash;
+		
+		/**
+		 * Creates a new TargetKey
+		 * @param url The JMXServiceURL
+		 * @param env The optional environment map
+		 */
+		TargetKey(final String url, final Map<String, ?> env) {
+			this.url = url;
+			this.env = env==null || env.isEmpty() ? null : new HashMap<String, Object>(env);
+			int h = url.hashCode();
+			if(this.env!=null) {
+				for(Map.Entry<String, ?> entry: this.env.entrySet()) {
+					h += entry.getKey().hashCode() ^ Arrays.deepHashCode(new Object[]{entry.getValue()});
+				}
+			}
+			hash = h;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(final Object obj) {
+			if(this==obj) return true;
+			if(!(obj instanceof TargetKey)) return false;
+			final TargetKey other = (TargetKey)obj;
+			if(hash!=other.hash || !url.equals(other.url)) return false;
+			if(env==null || other.env==null) return env==other.env;
+			if(env.size()!=other.env.size()) return false;
+			for(Map.Entry<String, ?> entry: env.entrySet()) {
+				if(!other.env.containsKey(entry.getKey())) return false;
+				if(!Arrays.deepEquals(new Object[]{entry.getValue()}, new Object[]{other.env.get(entry.getKey())})) return false;
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * <p>Title: TargetState</p>
+	 * <p>Description: Enumerates the connection states of a target</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.jmx.util.helpers.JMXConnectionManager.TargetState</code></p>
+	 */
+	public static enum TargetState {
+		/** Not connected, will connect on the next call */
+		IDLE,
+		/** Connected */
+		CONNECTED,
+		/** Failed, waiting for the reconnector service */
+		DOWN,
+		/** Closed and removed from the manager */
+		CLOSED;
+	}
+	
+	/**
+	 * <p>Title: Target</p>
+	 * <p>Description: The shared connector, state and call metrics of one JMXServiceURL</p> 
+	 */
+	protected class Target implements InvocationHandler, ReconnectCallback<JMXConnector> {
+		/** The target's JMXServiceURL */
+		final JMXServiceURL jmxServiceURL;
+		/** The target id */
+		final String id;
+		/** The optional environment map which may be needed to connect */
+		final Map<String, ?> env;
+		/** The shared connection handed to callers */
+		final MBeanServerConnection proxy;
+		/** The current connector */
+		volatile JMXConnector connector = null;
+		/** The current connector's MBeanServerConnection */
+		volatile MBeanServerConnection connection = null;
+		/** The current state */
+		volatile TargetState state = TargetState.IDLE;
+		/** The last time a caller used the target */
+		volatile long lastUsed = System.currentTimeMillis();
+		/** The last health check latency in us. */
+		volatile long lastHealthCheck = -1L;
+		/** Indicates if a health check is in flight */
+		final AtomicBoolean checking = new AtomicBoolean(false);
+		/** Indicates if a caller is connecting, guarded by the target */
+		boolean connecting = false;
+		/** The number of connects */
+		final AtomicLong connects = new AtomicLong();
+		/** The number of calls */
+		final AtomicLong calls = new AtomicLong();
+		/** The number of failed calls */
+		final AtomicLong errors = new AtomicLong();
+		/** The call latency window in nanos */
+		final SlidingWindow latencies = new SlidingWindow(windowSize);
+		/** Clears the shared connection's MBeanInfo cache when the connector reports lost notifications */
+		final NotificationListener lostListener = new NotificationListener() {
+			@Override
+			public void handleNotification(final Notification notification, final Object handback) {
+				if(JMXConnectionNotification.NOTIFS_LOST.equals(notification.getType())) {
+					MBeanInfoCache.notificationsLost(proxy);
+				}
+			}
+		};
+		
+		/**
+		 * Creates a new Target
+		 * @param jmxServiceURL The target's JMXServiceURL
+		 * @param env The optional environment map which may be needed to connect
+		 * @param id The target id
+		 */
+		Target(final JMXServiceURL jmxServiceURL, final Map<String, ?> env, final String id) {
+			this.jmxServiceURL = jmxServiceURL;
+			this.env = env;
+			this.id = id;
+			proxy = (MBeanServerConnection)Proxy.newProxyInstance(MBeanServerConnection.class.getClassLoader(), new Class<?>[]{MBeanServerConnection.class}, this);
+		}
+		
+		/**
+		 * Returns the current connection, connecting if the target is idle. The connect runs outside the target's
+		 * monitor, and concurrent callers wait for it rather than opening connectors of their own.
+		 * @return the current connection
+		 * @throws IOException thrown if the target is down or the connect fails
+		 */
+		MBeanServerConnection connection() throws IOException {
+			MBeanServerConnection conn = connection;
+			if(conn!=null) return conn;
+			synchronized(this) {
+				while(true) {
+					conn = connection;
+					if(conn!=null) return conn;
+					if(state==TargetState.DOWN) throw new IOException("JMX target [" + jmxServiceURL + "] is down, reconnect pending");
+					if(state==TargetState.CLOSED) throw new IOException("JMX target [" + jmxServiceURL + "] is closed");
+					if(!connecting) break;
+					try {
+						wait();
+					} catch (InterruptedException iex) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted waiting for JMX target [" + jmxServiceURL + "] to connect");
+					}
+				}
+				connecting = true;
+			}
+			final JMXConnector c;
+			try {
+				c = JMXTimeouts.connect(jmxServiceURL, env, connectTimeout);
+			} catch (IOException iex) {
+				synchronized(this) {
+					connecting = false;
+					failed(iex);
+					notifyAll();
+				}
+				throw iex;
+			}
+			synchronized(this) {
+				connecting = false;
+				notifyAll();
+				install(c);
+				conn = connection;
+			}
+			if(conn==null) throw new IOException("JMX target [" + jmxServiceURL + "] is closed");
+			return conn;
+		}
+		
+		/**
+		 * Installs a connected connector
+		 * @param c The connected connector
+		 * @throws IOException thrown if the connector's MBeanServerConnection cannot be acquired
+		 */
+		synchronized void install(final JMXConnector c) throws IOException {
+			if(state==TargetState.CLOSED) {
+				try { c.close(); } catch (Exception x) {/* No Op */}
+				return;
+			}
+			connection = c.getMBeanServerConnection();
+			connector = c;
+			c.addConnectionNotificationListener(lostListener, null, null);
+			state = TargetState.CONNECTED;
+			connects.incrementAndGet();
+			MBeanInfoCache.reset(proxy);
+		}
+		
+		/**
+		 * Closes the current connector
+		 * @param newState The state of the target after closing
+		 */
+		void close(final TargetState newState) {
+			final JMXConnector c;
+			synchronized(this) {
+				if(state==TargetState.CLOSED) return;
+				c = connector;
+				connector = null;
+				connection = null;
+				state = newState;
+			}
+			if(c!=null) try { c.close(); } catch (Exception x) {/* No Op */}
+		}
+		
+		/**
+		 * Closes the current connector after a connection failure and hands the target to the reconnector service
+		 * @param cause The failure
+		 */
+		void failed(final Throwable cause) {
+			synchronized(this) {
+				if(state==TargetState.DOWN || state==TargetState.CLOSED) return;
+			}
+			log.warn("JMX target [{}] failed: {}", jmxServiceURL, cause.toString());
+			close(TargetState.DOWN);
+			@SuppressWarnings("unchecked")
+			final Map<String, Object> reconnectEnv = (Map<String, Object>)env;
+			ReconnectorService.getInstance().register(jmxServiceURL, reconnectEnv, null, this);
+		}
+		
+		/**
+		 * <p>Installs the connector reconnected by the reconnector service</p>
+		 * {@inheritDoc}
+		 * @see com.heliosapm.jmx.util.helpers.ReconnectCallback#onReconnect(java.lang.Object)
+		 */
+		@Override
+		public void onReconnect(final JMXConnector c) {
+			synchronized(this) {
+				if(state==TargetState.CONNECTED) {
+					/* connected by a caller since, keep that connector */
+					try { c.close(); } catch (Exception x) {/* No Op */}
+					return;
+				}
+				try {
+					install(c);
+				} catch (IOException iex) {
+					log.warn("Failed to install reconnected connector for [{}]", jmxServiceURL, iex);
+				}
+			}
+		}
+		
+		/**
+		 * Dispatches a health check to the worker pool unless one is in flight.
+		 * Closes the connector instead if the target has been idle for the idle timeout.
+		 */
+		void scheduleCheck() {
+			if(state!=TargetState.CONNECTED) return;
+			if(idleTimeout > 0 && System.currentTimeMillis() - lastUsed > idleTimeout) {
+				log.debug("Closing idle JMX target [{}]", jmxServiceURL);
+				close(TargetState.IDLE);
+				return;
+			}
+			if(!checking.compareAndSet(false, true)) return;
+			try {
+				workerPool.execute(new Runnable() {
+					public void run() {
+						try {
+							check();
+						} finally {
+							checking.set(false);
+						}
+					}
+				});
+			} catch (Exception ex) {
+				checking.set(false);
+			}
+		}
+		
+		/**
+		 * Runs a health check against the current connection
+		 */
+		void check() {
+			final MBeanServerConnection conn = connection;
+			if(conn==null) return;
+			final long start = System.nanoTime();
+			try {
+				// a blocked RMI call cannot be interrupted, so a check that hangs is abandoned and fails the target
+				JMXTimeouts.call(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						return conn.getMBeanCount();
+					}
+				}, healthTimeout, "Health check of [" + jmxServiceURL + "]");
+				lastHealthCheck = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+			} catch (Exception ex) {
+				lastHealthCheck = -1L;
+				if(conn==connection) failed(ex);
+			}
+		}
+		
+		/**
+		 * <p>Times and counts a call on the current connection, failing the target on an IOException</p>
+		 * {@inheritDoc}
+		 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+		 */
+		@Override
+		public Object invoke(final Object proxyInstance, final Method method, final Object[] args) throws Throwable {
+			if(method.getDeclaringClass()==Object.class) {
+				if("equals".equals(method.getName())) return proxyInstance==args[0];
+				if("hashCode".equals(method.getName())) return System.identityHashCode(proxyInstance);
+				return "SharedMBeanServerConnection [" + jmxServiceURL + "]";
+			}
+			lastUsed = System.currentTimeMillis();
+			calls.incrementAndGet();
+			final long start = System.nanoTime();
+			MBeanServerConnection conn = null;
+			try {
+				conn = connection();
+				return method.invoke(conn, args);
+			} catch (InvocationTargetException ite) {
+				final Throwable cause = ite.getCause();
+				errors.incrementAndGet();
+				if(cause instanceof IOException && conn==connection) failed(cause);
+				throw cause;
+			} catch (IOException iex) {
+				errors.incrementAndGet();
+				throw iex;
+			} finally {
+				latencies.record(System.nanoTime() - start);
+			}
+		}
+		
+		/**
+		 * Returns the target id
+		 * @return the target id
+		 */
+		String getId() {
+			return id;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#getTargetCount()
+	 */
+	@Override
+	public int getTargetCount() {
+		return targets.size();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#getConnectedCount()
+	 */
+	@Override
+	public int getConnectedCount() {
+		int connected = 0;
+		for(Target target: targets.values()) {
+			if(target.state==TargetState.CONNECTED) connected++;
+		}
+		return connected;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#getAbandonedCallCount()
+	 */
+	@Override
+	public long getAbandonedCallCount() {
+		return JMXTimeouts.getAbandonedCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#getAbandonedRunningCount()
+	 */
+	@Override
+	public int getAbandonedRunningCount() {
+		return JMXTimeouts.getAbandonedRunningCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#getTargetStates()
+	 */
+	@Override
+	public Map<String, String> getTargetStates() {
+		final Map<String, String> map = new LinkedHashMap<String, String>(targets.size());
+		for(Target target: targets.values()) {
+			map.put(target.getId(), target.state.name());
+		}
+		return map;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#getTargetLatencies()
+	 */
+	@Override
+	public Map<String, Long> getTargetLatencies() {
+		final Map<String, Long> map = new LinkedHashMap<String, Long>(targets.size());
+		for(Target target: targets.values()) {
+			map.put(target.getId(), TimeUnit.NANOSECONDS.toMicros(target.latencies.getMean()));
+		}
+		return map;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#getTargetErrors()
+	 */
+	@Override
+	public Map<String, Long> getTargetErrors() {
+		final Map<String, Long> map = new LinkedHashMap<String, Long>(targets.size());
+		for(Target target: targets.values()) {
+			map.put(target.getId(), target.errors.get());
+		}
+		return map;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#getTargetsTable()
+	 */
+	@Override
+	public String getTargetsTable() {
+		final StringBuilder b = new StringBuilder("<table border='1'><tr><th>Target</th><th>State</th><th>Connects</th><th>Calls</th><th>Errors</th><th>Mean (us)</th><th>95th (us)</th><th>Max (us)</th><th>Health Check (us)</th></tr>");
+		for(Target target: targets.values()) {
+			b.append("<tr>");
+			b.append("<td>").append(target.getId()).append("</td>");
+			b.append("<td>").append(target.state).append("</td>");
+			b.append("<td>").append(target.connects.get()).append("</td>");
+			b.append("<td>").append(target.calls.get()).append("</td>");
+			b.append("<td>").append(target.errors.get()).append("</td>");
+			b.append("<td>").append(TimeUnit.NANOSECONDS.toMicros(target.latencies.getMean())).append("</td>");
+			b.append("<td>").append(TimeUnit.NANOSECONDS.toMicros(target.latencies.getPercentile(95))).append("</td>");
+			b.append("<td>").append(TimeUnit.NANOSECONDS.toMicros(target.latencies.getMax())).append("</td>");
+			b.append("<td>").append(target.lastHealthCheck).append("</td>");
+			b.append("</tr>");
+		}
+		return b.append("</table>").toString();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#getHealthCheckPeriod()
+	 */
+	@Override
+	public long getHealthCheckPeriod() {
+		return healthPeriod;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean#getIdleTimeout()
+	 */
+	@Override
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.util.helpers;
+
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+/**
+ * <p>Title: JMXConnectionManagerMBean</p>
+ * <p>Description: JMX MBean interface for {@link JMXConnectionManager}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.util.helpers.JMXConnectionManagerMBean</code></p>
+ */
+
+public interface JMXConnectionManagerMBean {
+	/** The JMXConnectionManager object name */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("com.heliosapm.jmx:service=JMXConnectionManager");
+	/** The JMXConnectionManager Scheduler's object name */
+	public static final ObjectName SCHEDULER_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.jmx:service=JMXConnectionManager,pool=Scheduler");
+	/** The JMXConnectionManager Worker Pool's object name */
+	public static final ObjectName WORKER_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.jmx:service=JMXConnectionManager,pool=Worker");
+	
+	/** The config property name for the health check period in ms. */
+	public static final String CONFIG_HEALTH_PERIOD = "jmxconnections.healthperiod";
+	/** The default health check period in ms. */
+	public static final long DEFAULT_HEALTH_PERIOD = 15000;
+	/** The config property name for the health check timeout in ms. after which the check is abandoned and the target failed */
+	public static final String CONFIG_HEALTH_TIMEOUT = "jmxconnections.healthtimeout";
+	/** The default health check timeout in ms. */
+	public static final long DEFAULT_HEALTH_TIMEOUT = 5000;
+	/** The config property name for the connect timeout in ms. after which a connect is abandoned */
+	public static final String CONFIG_CONNECT_TIMEOUT = "jmxconnections.connecttimeout";
+	/** The default connect timeout in ms. */
+	public static final long DEFAULT_CONNECT_TIMEOUT = 5000;
+	/** The config property name for the idle time in ms. after which an unused target's connector is closed */
+	public static final String CONFIG_IDLE_TIMEOUT = "jmxconnections.idletimeout";
+	/** The default idle timeout in ms. */
+	public static final long DEFAULT_IDLE_TIMEOUT = 300000;
+	/** The config property name for the size of each target's call latency sliding window */
+	public static final String CONFIG_WINDOW_SIZE = "jmxconnections.windowsize";
+	/** The default call latency sliding window size */
+	public static final int DEFAULT_WINDOW_SIZE = 256;
+	
+	/**
+	 * Returns the number of managed targets
+	 * @return the number of managed targets
+	 */
+	public int getTargetCount();
+	
+	/**
+	 * Returns the number of managed targets with an open connector
+	 * @return the number of connected targets
+	 */
+	public int getConnectedCount();
+
+	/**
+	 * Returns the total number of timed JMX calls and connects abandoned by their caller
+	 * @return the abandoned call count
+	 * @see JMXTimeouts#getAbandonedCount()
+	 */
+	public long getAbandonedCallCount();
+	
+	/**
+	 * Returns the number of abandoned timed JMX calls and connects still occupying a thread
+	 * @return the running abandoned call count
+	 * @see JMXTimeouts#getAbandonedRunningCount()
+	 */
+	public int getAbandonedRunningCount();
+	
+	/**
+	 * Returns the state of each target keyed by target id
+	 * @return the target states
+	 */
+	public Map<String, String> getTargetStates();
+	
+	/**
+	 * Returns the mean call latency in us. of each target keyed by target id
+	 * @return the target mean call latencies
+	 */
+	public Map<String, Long> getTargetLatencies();
+	
+	/**
+	 * Returns the number of failed calls of each target keyed by target id
+	 * @return the target error counts
+	 */
+	public Map<String, Long> getTargetErrors();
+	
+	/**
+	 * Returns an HTML table of each target's state, connects, calls, errors and latencies
+	 * @return an HTML table
+	 */
+	public String getTargetsTable();
+	
+	/**
+	 * Closes and forgets the targets for the passed JMXServiceURL, or the one target with the passed id
+	 * @param jmxUrl The JMXServiceURL or id of the target
+	 * @return true if a target was closed, false if none was found
+	 */
+	public boolean closeTarget(String jmxUrl);
+	
+	/**
+	 * Returns the health check period in ms.
+	 * @return the health check period
+	 */
+	public long getHealthCheckPeriod();
+	
+	/**
+	 * Returns the idle time in ms. after which an unused target's connector is closed
+	 * @return the idle timeout
+	 */
+	public long getIdleTimeout();
+}
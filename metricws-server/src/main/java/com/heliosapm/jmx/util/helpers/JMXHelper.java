@@ -58,9 +58,7 @@ import javax.management.NotificationListener;
 import javax.management.ObjectName;
 import javax.management.QueryExp;
 import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeType;
 import javax.management.openmbean.TabularData;
-import javax.management.openmbean.TabularType;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXConnectorServer;
@@ -427,7 +425,8 @@ public class JMXHelper {
 	}
 	
 	/**
-	 * Acquires a connected JMX connection
+	 * Acquires a new connected JMX connection which the caller is responsible for closing.
+	 * Use {@link JMXConnectionManager} for a shared connection.
 	 * @param jmxUrl The JMXServiceURL of the service to connec to
 	 * @return a JMXConnector
 	 */
@@ -1079,9 +1078,14 @@ public class JMXHelper {
 		}
 	}
 	
+	/**
+	 * Returns the {@link JMXConnectionManager} shared MBeanServerConnection for the passed JMXServiceURL
+	 * @param jmxUrl The JMXServiceURL of the service to connect to
+	 * @return the shared MBeanServerConnection
+	 */
 	public static MBeanServerConnection getMBeanServerConnection(final CharSequence jmxUrl) {
 		try {
-			return getJMXConnection(jmxUrl).getMBeanServerConnection();
+			return JMXConnectionManager.getInstance().getConnection(jmxUrl);
 		} catch (Exception ex) {
 			throw new RuntimeException("Failed to get MBeanServerConnection from [" + jmxUrl + "]", ex);
 		}
@@ -1372,6 +1376,7 @@ while(m.find()) {
 	
 	/**
 	 * Retrieves maps of attribute values keyed by attribute name, in turn keyed by the ObjectName of the MBean.
+	 * Query results and MBeanInfo are served from the connection's {@link MBeanInfoCache}.
 	 * @param server An MBeanServerConnection
 	 * @param objectName An ObjectName which can be absolute or a wildcard.
 	 * @param delimeter The delimeter for composite type compound names
@@ -1400,13 +1405,14 @@ while(m.find()) {
 //			rootNames[i] = rootKey;
 //		}
 		Map<ObjectName, Map<String, Object>> map = new HashMap<ObjectName, Map<String, Object>>();		
+		final MBeanInfoCache infoCache = MBeanInfoCache.getInstance(server);
 		try {
-			for(ObjectName on: server.queryNames(objectName, null)) {
+			for(ObjectName on: infoCache.queryNames(server, objectName)) {
 				AttributeList attrs = null;
 				try {
 					String[] anames = null;
 					if(attributeNames!=null && attributeNames.length==1 && "*".equals(attributeNames[0])) {
-						anames = getAttributeNames(on, server);
+						anames = infoCache.getAttributeNames(server, on);
 					} else {
 						anames = attributeNames;
 					}
@@ -1417,8 +1423,7 @@ while(m.find()) {
 				}
 				Map<String, Object> attrMap = new HashMap<String, Object>();
 				map.put(on, attrMap);
-				final MBeanInfo mbeanInfo = getMBeanInfo(server, on);
-				final Map<String, MBeanAttributeInfo> attrInfos = indexAttributes(mbeanInfo);
+				final Map<String, MBeanAttributeInfo> attrInfos = infoCache.getAttributeIndex(server, on);
 				for(Attribute attr: attrs.asList()) {
 					Object value = attr.getValue();
 					if(value==null) continue;
@@ -1426,8 +1431,7 @@ while(m.find()) {
 					MBeanAttributeInfo attrInfo = attrInfos.get(name);
 					if(value instanceof CompositeData || value instanceof TabularData) {
 						try {
-							Map<String, Object> indexedData = indexOpenData(name, value, delimeter, attrInfo);
-							attrMap.putAll(indexedData);
+							FlatteningPlan.forValue(value).flatten(name, delimeter==null ? "/" : delimeter, value, attrMap);
 						} catch (Exception e) {
 							continue;
 						}
@@ -1507,18 +1511,7 @@ while(m.find()) {
 	 * @return The extracted object
 	 */
 	public static Object extractCompositeData(final CompositeData cd, final String delimeter, final String name) {
-		String[] fragments = name.split(Pattern.quote(delimeter));
-		CompositeData ref = cd;
-		Object value = null;
-		for(int i = 1; i < fragments.length; i++) {
-			value = ref.get(fragments[i]);
-			if(value instanceof CompositeData) {
-				ref = (CompositeData)value;
-			} else {
-				break;
-			}
-		}
-		return value;
+		return FlatteningPlan.extract(cd, delimeter, name);
 	}
 	
 	/**
@@ -1543,33 +1536,15 @@ while(m.find()) {
 	 * @param delimiter The composite key delimiter
 	 * @param attrInfo The MBeanAttributeInfo for the source MBean 
 	 * @return a map of values keyed by the composite key
+	 * @see FlatteningPlan
 	 */
 	public static Map<String, Object> indexOpenData(final String name, final Object openData, String delimiter, final MBeanAttributeInfo attrInfo) {
 		if(openData==null) return Collections.emptyMap();
 		if(delimiter==null) delimiter = "/";		
 		final Map<String, Object> indexMap = new HashMap<String, Object>();
-		if(openData instanceof CompositeData) {
-			CompositeData cd = (CompositeData)openData;
-			CompositeType ct = cd.getCompositeType();
-			for(String key: ct.keySet()) {
-				indexMap.put(name + delimiter + key , cd.get(key));
-			}			
-		} else if(openData instanceof TabularData) {
-			TabularData td = (TabularData)openData;
-			TabularType tt = td.getTabularType();
-			CompositeType ct = tt.getRowType();			
-			@SuppressWarnings("unchecked")
-			Set<List<?>> keySets = (Set<List<?>>) td.keySet();
-			for(List<?> keyset: keySets) {
-				StringBuilder compositeKey = new StringBuilder(name).append(delimiter);
-				for(Object k: keyset) {
-					compositeKey.append(k).append(delimiter);
-				}
-				CompositeData cd = td.get(keyset.toArray());				
-				for(String key: ct.keySet()) {
-					indexMap.put(compositeKey.toString() + key, cd.get(key));
-				}
-			}
+		final FlatteningPlan plan = FlatteningPlan.forValue(openData);
+		if(plan!=null) {
+			plan.flatten(name, delimiter, openData, indexMap);
 		} else  {
 			System.err.println("\n\t!!!!!!!!!!!!!!!!\n\tUnhandled OpenType for [" + name + "]:" + openData.getClass().getName() + "\n\t!!!!!!!!!!!!!!!!\n");
 		}
@@ -0,0 +1,325 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.util.helpers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import com.heliosapm.jmx.concurrency.JMXManagedThreadPool;
+import com.heliosapm.jmx.concurrency.JMXManagedThreadPoolMBean;
+
+/**
+ * <p>Title: JMXTimeouts</p>
+ * <p>Description: Static helpers that enforce timeouts on remote JMX calls.</p>
+ * <p>An RMI connect or call blocked on the network does not respond to an interrupt, so a timed call runs on a
+ * thread of a bounded pool and the caller stops waiting for it when the timeout expires. An abandoned call still
+ * occupies its thread until the network gives up on it: it is counted (see {@link #getAbandonedRunningCount()}), a
+ * connector it goes on to open is closed, and an abandoned call which had not started yet is skipped. When every
+ * caller thread is busy and the queue is full, further timed calls fail at once rather than queue without bound.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.util.helpers.JMXTimeouts</code></p>
+ */
+
+public class JMXTimeouts {
+	/** The timed call thread pool's object name */
+	public static final ObjectName CALLERS_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.jmx:service=JMXTimeouts,pool=Callers");
+	/** The config property name for the maximum number of timed calls running at once */
+	public static final String CONFIG_MAX_CALLERS = "jmxtimeouts.maxcallers";
+	/** The default maximum number of timed calls running at once */
+	public static final int DEFAULT_MAX_CALLERS = 64;
+	/** The config property name for the maximum number of timed calls waiting for a thread */
+	public static final String CONFIG_QUEUE_SIZE = "jmxtimeouts.queuesize";
+	/** The default maximum number of timed calls waiting for a thread */
+	public static final int DEFAULT_QUEUE_SIZE = 256;
+
+	/** The number of calls abandoned by their caller */
+	private static final AtomicLong abandonedCount = new AtomicLong();
+	/** The number of abandoned calls still occupying a thread */
+	private static final AtomicInteger abandonedRunning = new AtomicInteger();
+
+	/** The threads running timed calls. Rejected calls are failed rather than left pending. */
+	private static final JMXManagedThreadPool callers;
+
+	static {
+		final int maxCallers = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_MAX_CALLERS, DEFAULT_MAX_CALLERS));
+		callers = new JMXManagedThreadPool(CALLERS_OBJECT_NAME, "JMXTimedCall", maxCallers, maxCallers,
+				Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_QUEUE_SIZE, DEFAULT_QUEUE_SIZE)),
+				JMXManagedThreadPoolMBean.DEFAULT_KEEP_ALIVE, JMXManagedThreadPoolMBean.DEFAULT_WINDOW_SIZE, JMXManagedThreadPoolMBean.DEFAULT_WINDOW_PERCENTILE, true);
+		callers.allowCoreThreadTimeOut(true);
+		callers.setRejectedExecutionHandler(new RejectedExecutionHandler() {
+			@Override
+			public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+				callers.rejectedExecution(r, executor);
+				throw new RejectedExecutionException("Timed call rejected, [" + executor.getActiveCount() + "] calls running");
+			}
+		});
+	}
+
+	/**
+	 * <p>Title: TimedCall</p>
+	 * <p>Description: A call run on a caller thread which its caller may abandon. Whichever of completion and
+	 * abandonment comes first wins, so a result produced after the caller has given up is discarded exactly once
+	 * and a result produced before is always returned.</p> 
+	 * @param <T> The call's return type
+	 */
+	private static class TimedCall<T> implements Callable<T> {
+		/** The call has not completed and has not been abandoned */
+		private static final int PENDING = 0;
+		/** The caller has stopped waiting for the call */
+		private static final int ABANDONED = 1;
+		/** The call has completed, or will never run */
+		private static final int FINISHED = 2;
+
+		/** The call to run */
+		final Callable<T> call;
+		/** The optional callback run once the call has completed or will never run */
+		final Runnable finished;
+		/** The call state */
+		final AtomicInteger state = new AtomicInteger(PENDING);
+
+		/**
+		 * Creates a new TimedCall
+		 * @param call The call to run
+		 * @param finished The optional callback run once the call has completed or will never run
+		 */
+		TimedCall(final Callable<T> call, final Runnable finished) {
+			this.call = call;
+			this.finished = finished;
+		}
+
+		@Override
+		public T call() throws Exception {
+			T result = null;
+			try {
+				// an abandoned call that has not started is skipped
+				if(state.get()==ABANDONED) return null;
+				result = call.call();
+				return result;
+			} finally {
+				if(!finish() && result!=null) discard(result);
+			}
+		}
+
+		/**
+		 * Marks the call finished and runs the finished callback
+		 * @return true if the call finished before it was abandoned, false otherwise
+		 */
+		boolean finish() {
+			final int prior = state.getAndSet(FINISHED);
+			if(prior==FINISHED) return true;
+			if(prior==ABANDONED) abandonedRunning.decrementAndGet();
+			if(finished!=null) finished.run();
+			return prior==PENDING;
+		}
+
+		/**
+		 * Abandons the call unless it has already finished
+		 * @return true if the call was abandoned, false if it finished first
+		 */
+		boolean abandon() {
+			abandonedRunning.incrementAndGet();
+			if(state.compareAndSet(PENDING, ABANDONED)) {
+				abandonedCount.incrementAndGet();
+				return true;
+			}
+			abandonedRunning.decrementAndGet();
+			return false;
+		}
+
+		/**
+		 * Releases the result of a call which completed after being abandoned
+		 * @param result The result
+		 */
+		protected void discard(final T result) {
+			/* No Op */
+		}
+	}
+
+	/**
+	 * Connects to the passed JMXServiceURL and checks the connection with a <code>getMBeanCount</code>,
+	 * abandoning the attempt if it does not complete in time
+	 * @param jmxServiceURL The JMXServiceURL to connect to
+	 * @param env The optional environment map which may be needed to connect
+	 * @param timeout The timeout in ms., or 0 to connect on the calling thread without a timeout
+	 * @return the connected JMXConnector
+	 * @throws IOException thrown if the connect fails or times out
+	 */
+	public static JMXConnector connect(final JMXServiceURL jmxServiceURL, final Map<String, ?> env, final long timeout) throws IOException {
+		return connect(jmxServiceURL, env, timeout, null);
+	}
+
+	/**
+	 * Connects to the passed JMXServiceURL and checks the connection with a <code>getMBeanCount</code>,
+	 * abandoning the attempt if it does not complete in time
+	 * @param jmxServiceURL The JMXServiceURL to connect to
+	 * @param env The optional environment map which may be needed to connect
+	 * @param timeout The timeout in ms., or 0 to connect on the calling thread without a timeout
+	 * @param finished An optional callback run exactly once when the connect attempt is over, which for an abandoned
+	 * attempt is when its thread finishes with it, possibly long after this method has returned
+	 * @return the connected JMXConnector
+	 * @throws IOException thrown if the connect fails or times out
+	 */
+	public static JMXConnector connect(final JMXServiceURL jmxServiceURL, final Map<String, ?> env, final long timeout, final Runnable finished) throws IOException {
+		if(timeout <= 0L) {
+			try {
+				return connect(jmxServiceURL, env);
+			} finally {
+				if(finished!=null) finished.run();
+			}
+		}
+		final TimedCall<JMXConnector> timed = new TimedCall<JMXConnector>(new Callable<JMXConnector>() {
+			@Override
+			public JMXConnector call() throws Exception {
+				return connect(jmxServiceURL, env);
+			}
+		}, finished) {
+			@Override
+			protected void discard(final JMXConnector connector) {
+				try { connector.close(); } catch (Exception x) {/* No Op */}
+			}
+		};
+		return await(timed, timeout, "Connect to [" + jmxServiceURL + "]");
+	}
+	
+	/**
+	 * Runs a call against a remote MBeanServer, abandoning it if it does not complete in time
+	 * @param <T> The call's return type
+	 * @param call The call to run
+	 * @param timeout The timeout in ms., or 0 to run the call on the calling thread without a timeout
+	 * @param description A description of the call for the timeout exception
+	 * @return the call's result
+	 * @throws IOException thrown if the call fails or times out
+	 */
+	public static <T> T call(final Callable<T> call, final long timeout, final String description) throws IOException {
+		if(timeout <= 0L) {
+			try {
+				return call.call();
+			} catch (IOException iex) {
+				throw iex;
+			} catch (Exception ex) {
+				throw new IOException(description + " failed", ex);
+			}
+		}
+		return await(new TimedCall<T>(call, null), timeout, description);
+	}
+	
+	/**
+	 * Runs a timed call and waits for it, abandoning it if it does not complete in time
+	 * @param <T> The call's return type
+	 * @param timed The call to run
+	 * @param timeout The timeout in ms.
+	 * @param description A description of the call for the timeout exception
+	 * @return the call's result
+	 * @throws IOException thrown if the call fails, times out or is rejected
+	 */
+	private static <T> T await(final TimedCall<T> timed, final long timeout, final String description) throws IOException {
+		final Future<T> future;
+		try {
+			future = callers.submit(timed);
+		} catch (RejectedExecutionException rex) {
+			timed.finish();
+			throw new IOException(description + " rejected: too many timed calls in flight", rex);
+		}
+		boolean interrupted = false;
+		try {
+			try {
+				return future.get(timeout, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException tex) {
+				if(timed.abandon()) throw new IOException(description + " timed out after [" + timeout + "] ms.");
+			} catch (InterruptedException iex) {
+				interrupted = true;
+				if(timed.abandon()) throw new InterruptedIOException(description + " interrupted");
+			}
+			// the call finished as it was being abandoned, so its result is collected rather than leaked
+			while(true) {
+				try {
+					return future.get();
+				} catch (InterruptedException iex) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException eex) {
+			final Throwable cause = eex.getCause();
+			if(cause instanceof IOException) throw (IOException)cause;
+			throw new IOException(description + " failed", cause);
+		} finally {
+			if(interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the total number of timed calls abandoned by their caller
+	 * @return the abandoned call count
+	 */
+	public static long getAbandonedCount() {
+		return abandonedCount.get();
+	}
+
+	/**
+	 * Returns the number of abandoned calls still occupying a caller thread
+	 * @return the running abandoned call count
+	 */
+	public static int getAbandonedRunningCount() {
+		return abandonedRunning.get();
+	}
+	
+	/**
+	 * Connects to the passed JMXServiceURL on the calling thread and checks the connection with a <code>getMBeanCount</code>
+	 * @param jmxServiceURL The JMXServiceURL to connect to
+	 * @param env The optional environment map which may be needed to connect
+	 * @return the connected JMXConnector
+	 * @throws IOException thrown if the connect or the check fails
+	 */
+	private static JMXConnector connect(final JMXServiceURL jmxServiceURL, final Map<String, ?> env) throws IOException {
+		final JMXConnector connector = JMXConnectorFactory.connect(jmxServiceURL, env);
+		try {
+			connector.getMBeanServerConnection().getMBeanCount();
+			return connector;
+		} catch (IOException iex) {
+			try { connector.close(); } catch (Exception x) {/* No Op */}
+			throw iex;
+		} catch (RuntimeException rex) {
+			try { connector.close(); } catch (Exception x) {/* No Op */}
+			throw rex;
+		}
+	}
+}
@@ -0,0 +1,389 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.util.helpers;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationFilterSupport;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * <p>Title: MBeanInfoCache</p>
+ * <p>Description: A per-connection cache of MBeanInfo, attribute names, attribute indexes and ObjectName query results.</p>
+ * <p>Entries are invalidated by the {@link MBeanServerDelegate} registration and unregistration notifications of the connection,
+ * and, for MBeans that declare it, by their {@link JMXHelper#MBEAN_INFO_CHANGED} notification. If the delegate listener cannot be
+ * registered, the cache passes every lookup through to the connection until a registration retried after a back off succeeds.
+ * Notifications can be lost on a remote connection, so entries also expire after <b><code>mbeaninfocache.ttl</code></b> ms.,
+ * and the owner of a connector can clear the cache when it reports lost notifications (see {@link #notificationsLost(MBeanServerConnection)}).
+ * Caches are held weakly by connection.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.util.helpers.MBeanInfoCache</code></p>
+ */
+
+public class MBeanInfoCache implements NotificationListener {
+	/** The caches keyed by connection */
+	private static final Cache<MBeanServerConnection, MBeanInfoCache> caches = CacheBuilder.newBuilder().weakKeys().build();
+	/** Static class logger */
+	private static final Logger LOG = LoggerFactory.getLogger(MBeanInfoCache.class);
+	
+	/** The delay in ms. before a failed delegate listener registration is retried */
+	private static final long LISTEN_RETRY_DELAY = 60000L;
+	/** The config property name for the time in ms. after which a cached entry expires */
+	public static final String CONFIG_TTL = "mbeaninfocache.ttl";
+	/** The default time in ms. after which a cached entry expires, 0 for never */
+	public static final long DEFAULT_TTL = 300000L;
+	/** The time in ms. after which a cached entry expires, 0 for never */
+	private static final long ttl = Math.max(0L, ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_TTL, DEFAULT_TTL));
+	
+	/** The cached MBeanInfo entries keyed by ObjectName */
+	private final ConcurrentMap<ObjectName, Entry> infos = new ConcurrentHashMap<ObjectName, Entry>();
+	/** The cached query results keyed by the query ObjectName */
+	private final ConcurrentMap<ObjectName, QueryResult> queries = new ConcurrentHashMap<ObjectName, QueryResult>();
+	/** The ObjectNames of the MBeans the info changed listener is registered on */
+	private final Set<ObjectName> infoListeners = Collections.newSetFromMap(new ConcurrentHashMap<ObjectName, Boolean>());
+	/** Incremented on every invalidation so a fetch that raced an invalidation is not cached */
+	private final AtomicLong generation = new AtomicLong();
+	/** Indicates if the delegate listener has been registered */
+	private final AtomicBoolean listening = new AtomicBoolean(false);
+	/** Indicates if caching is enabled, false if the delegate listener could not be registered */
+	private volatile boolean enabled = true;
+	/** The time after which a failed delegate listener registration may be retried */
+	private volatile long retryAt = 0L;
+	
+	/** The filter for MBean info changed notifications */
+	private static final NotificationFilterSupport INFO_CHANGED_FILTER = new NotificationFilterSupport();
+	
+	static {
+		INFO_CHANGED_FILTER.enableType(JMXHelper.MBEAN_INFO_CHANGED);
+	}
+	
+	/**
+	 * <p>Title: Entry</p>
+	 * <p>Description: A cached MBeanInfo with its attribute names and attribute index</p> 
+	 */
+	private static class Entry {
+		final long cachedAt = System.currentTimeMillis();
+		final MBeanInfo info;
+		final String[] attributeNames;
+		final Map<String, MBeanAttributeInfo> attributeIndex;
+		Entry(final MBeanInfo info) {
+			this.info = info;
+			attributeIndex = JMXHelper.indexAttributes(info);
+			final MBeanAttributeInfo[] attrs = info.getAttributes();
+			attributeNames = new String[attrs.length];
+			for(int i = 0; i < attrs.length; i++) {
+				attributeNames[i] = attrs[i].getName();
+			}
+		}
+	}
+	
+	/**
+	 * <p>Title: QueryResult</p>
+	 * <p>Description: A cached ObjectName query result</p> 
+	 */
+	private static class QueryResult {
+		final long cachedAt = System.currentTimeMillis();
+		final Set<ObjectName> names;
+		QueryResult(final Set<ObjectName> names) {
+			this.names = names;
+		}
+	}
+	
+	/**
+	 * Determines if an entry cached at the passed time has expired
+	 * @param cachedAt The time the entry was cached
+	 * @return true if the entry has expired
+	 */
+	private static boolean expired(final long cachedAt) {
+		return ttl > 0L && System.currentTimeMillis() - cachedAt >= ttl;
+	}
+	
+	/**
+	 * Returns the cache for the passed connection
+	 * @param connection The MBeanServerConnection
+	 * @return the connection's cache
+	 */
+	public static MBeanInfoCache getInstance(final MBeanServerConnection connection) {
+		if(connection==null) throw new IllegalArgumentException("The passed MBeanServerConnection was null");
+		try {
+			return caches.get(connection, new Callable<MBeanInfoCache>() {
+				@Override
+				public MBeanInfoCache call() throws Exception {
+					return new MBeanInfoCache();
+				}
+			});
+		} catch (ExecutionException eex) {
+			throw new RuntimeException(eex.getCause());
+		}
+	}
+	
+	/**
+	 * Clears the cache for the passed connection, if it has one, and re-registers its listeners on next use.
+	 * Called when the connection has been re-established on a new connector.
+	 * @param connection The MBeanServerConnection
+	 */
+	public static void reset(final MBeanServerConnection connection) {
+		if(connection==null) return;
+		final MBeanInfoCache cache = caches.getIfPresent(connection);
+		if(cache!=null) {
+			cache.listening.set(false);
+			cache.enabled = true;
+			cache.retryAt = 0L;
+			// listeners do not carry over to the new connector
+			cache.infoListeners.clear();
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * Clears the cache for the passed connection, if it has one. Called when the connection's connector reports
+	 * lost notifications, since registration changes may have been missed.
+	 * @param connection The MBeanServerConnection
+	 */
+	public static void notificationsLost(final MBeanServerConnection connection) {
+		if(connection==null) return;
+		final MBeanInfoCache cache = caches.getIfPresent(connection);
+		if(cache!=null) cache.clear();
+	}
+	
+	/**
+	 * Private ctor
+	 */
+	private MBeanInfoCache() {
+	}
+	
+	/**
+	 * Registers the delegate listener on the passed connection if not already registered.
+	 * A failed registration is retried once the retry delay has elapsed.
+	 * @param connection The MBeanServerConnection
+	 * @return true if caching is enabled
+	 */
+	private boolean listen(final MBeanServerConnection connection) {
+		if(!listening.get() && System.currentTimeMillis() >= retryAt && listening.compareAndSet(false, true)) {
+			try {
+				connection.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, null, null);
+				if(!enabled) {
+					// registrations missed while not listening may have invalidated anything cached before
+					clear();
+					enabled = true;
+				}
+			} catch (Exception ex) {
+				enabled = false;
+				retryAt = System.currentTimeMillis() + LISTEN_RETRY_DELAY;
+				listening.set(false);
+				LOG.warn("Failed to register MBeanServerDelegate listener. MBeanInfo will not be cached for [{}] for the next [{}] ms.", connection, LISTEN_RETRY_DELAY, ex);
+			}
+		}
+		return enabled;
+	}
+	
+	/**
+	 * Returns the cached entry for the passed ObjectName, fetching it on a miss
+	 * @param connection The MBeanServerConnection
+	 * @param objectName The ObjectName of the MBean
+	 * @return the entry
+	 * @throws Exception thrown on any error fetching the MBeanInfo
+	 */
+	private Entry entry(final MBeanServerConnection connection, final ObjectName objectName) throws Exception {
+		if(!listen(connection)) return new Entry(connection.getMBeanInfo(objectName));
+		Entry entry = infos.get(objectName);
+		if(entry!=null) {
+			if(!expired(entry.cachedAt)) return entry;
+			infos.remove(objectName, entry);
+		}
+		final long gen = generation.get();
+		entry = new Entry(connection.getMBeanInfo(objectName));
+		if(declaresInfoChanged(entry.info) && infoListeners.add(objectName)) {
+			try {
+				connection.addNotificationListener(objectName, this, INFO_CHANGED_FILTER, null);
+			} catch (Exception ex) {
+				infoListeners.remove(objectName);
+				return entry;
+			}
+		}
+		// put first and re-check, so an invalidation between the check and the put cannot be lost
+		infos.put(objectName, entry);
+		if(generation.get()!=gen) infos.remove(objectName, entry);
+		return entry;
+	}
+	
+	/**
+	 * Determines if the MBean described by the passed MBeanInfo emits MBean info changed notifications
+	 * @param info The MBeanInfo
+	 * @return true if the MBean declares the notification
+	 */
+	private static boolean declaresInfoChanged(final MBeanInfo info) {
+		for(MBeanNotificationInfo notif: info.getNotifications()) {
+			for(String type: notif.getNotifTypes()) {
+				if(JMXHelper.MBEAN_INFO_CHANGED.equals(type)) return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the MBeanInfo for the passed ObjectName
+	 * @param connection The MBeanServerConnection
+	 * @param objectName The ObjectName of the MBean
+	 * @return the MBeanInfo
+	 * @throws Exception thrown on any error fetching the MBeanInfo
+	 */
+	public MBeanInfo getMBeanInfo(final MBeanServerConnection connection, final ObjectName objectName) throws Exception {
+		return entry(connection, objectName).info;
+	}
+	
+	/**
+	 * Returns the attribute names of the passed ObjectName
+	 * @param connection The MBeanServerConnection
+	 * @param objectName The ObjectName of the MBean
+	 * @return the attribute names, or an empty array if the MBeanInfo could not be fetched
+	 */
+	public String[] getAttributeNames(final MBeanServerConnection connection, final ObjectName objectName) {
+		try {
+			return entry(connection, objectName).attributeNames.clone();
+		} catch (Exception ex) {
+			return new String[0];
+		}
+	}
+	
+	/**
+	 * Returns the attribute infos of the passed ObjectName indexed by attribute name
+	 * @param connection The MBeanServerConnection
+	 * @param objectName The ObjectName of the MBean
+	 * @return the attribute index, or an empty map if the MBeanInfo could not be fetched
+	 */
+	public Map<String, MBeanAttributeInfo> getAttributeIndex(final MBeanServerConnection connection, final ObjectName objectName) {
+		try {
+			return Collections.unmodifiableMap(entry(connection, objectName).attributeIndex);
+		} catch (Exception ex) {
+			return Collections.emptyMap();
+		}
+	}
+	
+	/**
+	 * Returns the ObjectNames matching the passed ObjectName or pattern
+	 * @param connection The MBeanServerConnection
+	 * @param objectName The ObjectName or pattern to query
+	 * @return the matching ObjectNames
+	 * @throws Exception thrown on any error querying the connection
+	 */
+	public Set<ObjectName> queryNames(final MBeanServerConnection connection, final ObjectName objectName) throws Exception {
+		if(!listen(connection)) return connection.queryNames(objectName, null);
+		QueryResult result = queries.get(objectName);
+		if(result!=null) {
+			if(!expired(result.cachedAt)) return result.names;
+			queries.remove(objectName, result);
+		}
+		final long gen = generation.get();
+		result = new QueryResult(Collections.unmodifiableSet(new LinkedHashSet<ObjectName>(connection.queryNames(objectName, null))));
+		queries.put(objectName, result);
+		if(generation.get()!=gen) queries.remove(objectName, result);
+		return result.names;
+	}
+	
+	/**
+	 * Clears all cached entries
+	 */
+	public void clear() {
+		generation.incrementAndGet();
+		infos.clear();
+		queries.clear();
+	}
+	
+	/**
+	 * Invalidates the cached entries affected by a registration change of the passed ObjectName
+	 * @param objectName The registered or unregistered ObjectName
+	 */
+	private void invalidate(final ObjectName objectName) {
+		generation.incrementAndGet();
+		infos.remove(objectName);
+		for(ObjectName query: queries.keySet()) {
+			if(query.apply(objectName)) queries.remove(query);
+		}
+	}
+	
+	/**
+	 * <p>Invalidates entries on MBean registration, unregistration and info changed notifications</p>
+	 * {@inheritDoc}
+	 * @see javax.management.NotificationListener#handleNotification(javax.management.Notification, java.lang.Object)
+	 */
+	@Override
+	public void handleNotification(final Notification notification, final Object handback) {
+		if(notification instanceof MBeanServerNotification) {
+			final ObjectName objectName = ((MBeanServerNotification)notification).getMBeanName();
+			// the MBean server drops the listeners of an unregistered MBean, so a re-registered one needs a new listener
+			if(MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) infoListeners.remove(objectName);
+			invalidate(objectName);
+		} else if(JMXHelper.MBEAN_INFO_CHANGED.equals(notification.getType())) {
+			final Object source = notification.getSource();
+			if(source instanceof ObjectName) {
+				generation.incrementAndGet();
+				infos.remove(source);
+			} else {
+				clear();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of cached MBeanInfos
+	 * @return the number of cached MBeanInfos
+	 */
+	public int getInfoCount() {
+		return infos.size();
+	}
+	
+	/**
+	 * Returns the number of cached query results
+	 * @return the number of cached query results
+	 */
+	public int getQueryCount() {
+		return queries.size();
+	}
+}
@@ -24,16 +24,20 @@
  */
 package com.heliosapm.jmx.util.helpers;
 
-import java.io.Closeable;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintStream;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import javax.management.MBeanNotificationInfo;
 import javax.management.Notification;
@@ -43,7 +47,6 @@ import javax.management.NotificationListener;
 import javax.management.remote.JMXAddressable;
 import javax.management.remote.JMXConnectionNotification;
 import javax.management.remote.JMXConnector;
-import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
 import org.cliffc.high_scale_lib.NonBlockingHashMap;
@@ -55,7 +58,13 @@ import com.heliosapm.jmx.concurrency.JMXManagedThreadPool;
 
 /**
  * <p>Title: ReconnectorService</p>
- * <p>Description: Background service for periodically executing reconnect attempts</p> 
+ * <p>Description: Background service for periodically executing reconnect attempts.</p>
+ * <p>Each endpoint retries with exponential backoff and equal jitter, starting at a random point within the base delay,
+ * so that a mass disconnect does not come back as a synchronized reconnect storm. Connect attempts run on the worker pool,
+ * and no more than the configured number are in flight at once; endpoints that come due while the cap is reached wait
+ * in a FIFO ready queue without holding a thread. A connect attempt that times out is abandoned, but keeps its permit
+ * until its thread has actually finished with it, so hung connects cannot pile up beyond the cap. Each endpoint's state, failure count and attempt duration histogram
+ * are published through the management interface.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.jmx.util.helpers.ReconnectorService</code></p>
@@ -73,8 +82,22 @@ public class ReconnectorService extends NotificationBroadcasterSupport implement
 		new MBeanNotificationInfo(new String[]{NOTIF_REGISTERED, NOTIF_FAIL, NOTIF_COMPLETE}, Notification.class.getName(), "A ReconnectorService Event: registered, fail or success")
 	}; 
 	
-	/** A set of pending reconnectables */
-	private final Map<Reconnectable, AtomicLong> reconnectables = new NonBlockingHashMap<Reconnectable, AtomicLong>();
+	/** The reconnect endpoints keyed by JMXServiceURL */
+	private final ConcurrentMap<String, Endpoint> endpoints = new NonBlockingHashMap<String, Endpoint>();
+	/** Endpoints that are due but waiting for a connect permit */
+	private final ConcurrentLinkedQueue<Endpoint> ready = new ConcurrentLinkedQueue<Endpoint>();
+	/** The connect attempt permits */
+	private final Semaphore connectPermits;
+	/** The maximum number of concurrent connect attempts */
+	private final int maxConcurrent;
+	/** The base reconnect delay in ms. */
+	private final long baseDelay;
+	/** The maximum reconnect delay in ms. */
+	private final long maxDelay;
+	/** The connect attempt timeout in ms. */
+	private final long connectTimeout;
+	/** The jitter source */
+	private final Random random = new Random();
 	
 	/** The reconnect scheduler */
 	private final JMXManagedScheduler scheduler;
@@ -88,6 +111,12 @@ public class ReconnectorService extends NotificationBroadcasterSupport implement
 	private final AtomicInteger reconSerial = new AtomicInteger();
 	/** Notif sequence number supplier */
 	private final AtomicLong notifSerial = new AtomicLong();
+	/** The total number of connect attempts */
+	private final AtomicLong attemptCount = new AtomicLong();
+	/** The total number of successful connect attempts */
+	private final AtomicLong successCount = new AtomicLong();
+	/** The total number of failed connect attempts */
+	private final AtomicLong failureCount = new AtomicLong();
 	
 	/**
 	 * Acquires the ReconnectorService singleton instance
@@ -117,6 +146,11 @@ public class ReconnectorService extends NotificationBroadcasterSupport implement
 				return t;
 			}
 		}), NOTIFS);
+		baseDelay = Math.max(1L, ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_BASE_DELAY, DEFAULT_PERIOD));
+		maxDelay = Math.max(baseDelay, ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_MAX_DELAY, DEFAULT_MAX_DELAY));
+		maxConcurrent = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_MAX_CONCURRENT, DEFAULT_MAX_CONCURRENT));
+		connectTimeout = ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT);
+		connectPermits = new Semaphore(maxConcurrent);
 		scheduler = new JMXManagedScheduler(SCHEDULER_OBJECT_NAME, "ReconnectorServiceScheduler", 2, true);
 		workerPool = new JMXManagedThreadPool(WORKER_OBJECT_NAME, "ReconnectorServiceWorker", true);
 		JMXHelper.registerMBean(this, OBJECT_NAME);
@@ -137,7 +171,7 @@ public class ReconnectorService extends NotificationBroadcasterSupport implement
 		connector.addConnectionNotificationListener(new NotificationListener() {
 			public void handleNotification(final Notification n, final Object handback) {
 //				register(connector, null, callback);
-				register(serviceURL, null, null, callback);
+				register(jmxServiceURL, null, null, callback);
 			}
 		}, new NotificationFilter() {
 			/**  */
@@ -145,7 +179,7 @@ public class ReconnectorService extends NotificationBroadcasterSupport implement
 
 			public boolean isNotificationEnabled(final Notification n) {
 				return JMXConnectionNotification.FAILED.equals(n.getType()) 
-						|| (alsoOnClosed && JMXConnectionNotification.FAILED.equals(n.getType()));
+						|| (alsoOnClosed && JMXConnectionNotification.CLOSED.equals(n.getType()));
 			}
 		}, jmxServiceURL);
 	}
@@ -212,19 +246,58 @@ public class ReconnectorService extends NotificationBroadcasterSupport implement
 //	}
 	
 	/**
-	 * Schedules the reconnectable for a reconnect attempt
-	 * @param reconnectable The reconnectable to schedule
+	 * Schedules the endpoint for a reconnect attempt
+	 * @param endpoint The endpoint to schedule
+	 * @param delay The delay in ms. until the endpoint is due
 	 */
-	protected void schedule(final Reconnectable reconnectable) {
+	protected void schedule(final Endpoint endpoint, final long delay) {
+		endpoint.nextAttempt = System.currentTimeMillis() + delay;
 		scheduler.schedule(new Runnable(){
 			public void run() {
-				workerPool.execute(reconnectable);
+				endpoint.state = EndpointState.QUEUED;
+				ready.add(endpoint);
+				drain();
 			}
-		}, DEFAULT_PERIOD, TimeUnit.MILLISECONDS);
+		}, delay, TimeUnit.MILLISECONDS);
 	}
 	
 	/**
-	 * Registers a JMXServiceURL to be connected
+	 * Starts connect attempts for ready endpoints while connect permits are available
+	 */
+	protected void drain() {
+		while(!ready.isEmpty() && connectPermits.tryAcquire()) {
+			final Endpoint endpoint = ready.poll();
+			if(endpoint==null) {
+				connectPermits.release();
+				continue;
+			}
+			endpoint.state = EndpointState.CONNECTING;
+			try {
+				workerPool.execute(endpoint);
+			} catch (RejectedExecutionException rex) {
+				connectPermits.release();
+				endpoint.state = EndpointState.WAITING;
+				schedule(endpoint, backoff(Math.max(1, endpoint.failures)));
+			}
+		}
+	}
+	
+	/**
+	 * Computes the jittered delay before the next attempt: the base delay doubled for each consecutive failure up to the maximum delay,
+	 * of which a random half is added to the other half
+	 * @param failures The number of consecutive failures
+	 * @return the delay in ms.
+	 */
+	protected long backoff(final int failures) {
+		final int exp = Math.min(Math.max(failures - 1, 0), 30);
+		final long delay = Math.min(maxDelay, baseDelay << exp);
+		final long half = delay / 2;
+		return half + (long)(random.nextDouble() * (delay - half));
+	}
+	
+	/**
+	 * Registers a JMXServiceURL to be connected. Registering an endpoint that already has a reconnect in progress
+	 * only updates its environment and callback.
 	 * @param jmxServiceURL The JMXServiceURL to connect
 	 * @param env The optional environment map which may be needed to connect
 	 * @param name An optional decorative name for this connect
@@ -232,62 +305,194 @@ public class ReconnectorService extends NotificationBroadcasterSupport implement
 	 */
 	public void register(final JMXServiceURL jmxServiceURL, final Map<String, Object> env, final String name, final ReconnectCallback<JMXConnector> callback) {
 		if(jmxServiceURL==null) throw new IllegalArgumentException("The passed JMXServiceURL was null");
-		final Reconnectable reconnectable = new Reconnectable() {
-			final int hash = reconSerial.incrementAndGet();
-			@SuppressWarnings("resource")
-			@Override
-			public boolean reconnect() {
-				final PrintStream ERR = System.err;
-				System.setErr(new PrintStream(new OutputStream() {
-					public void write(int b) throws IOException {
-					}
-				}));
-				try {
-					ERR.println("Attempting reconnect for [" + jmxServiceURL + "]");
-					final Closeable cl = ThreadWatcher.getInstance().watch(5, TimeUnit.SECONDS);
-					final JMXConnector connector = JMXConnectorFactory.connect(jmxServiceURL, env);
-					connector.getMBeanServerConnection().getMBeanCount();
-					try { cl.close(); } catch (Exception x) {/* No Op */} 
-					if(callback!=null) {
-						workerPool.execute(new Runnable(){
-							public void run() {								
-								callback.onReconnect(connector);
-							}
-						});
+		final String key = jmxServiceURL.toString();
+		Endpoint endpoint = endpoints.get(key);
+		if(endpoint==null) {
+			final Endpoint newEndpoint = new Endpoint(jmxServiceURL, name);
+			endpoint = endpoints.putIfAbsent(key, newEndpoint);
+			if(endpoint==null) endpoint = newEndpoint;
+		}
+		if(env!=null) endpoint.env = env;
+		if(callback!=null) endpoint.callback = callback;
+		if(endpoint.start()) {
+			sendNotification(NOTIF_REGISTERED, "Registered reconnect for [" + clean(jmxServiceURL) + "]", null);
+			schedule(endpoint, (long)(random.nextDouble() * baseDelay));
+		}
+	}
+	
+	/**
+	 * <p>Title: EndpointState</p>
+	 * <p>Description: Enumerates the reconnect states of an endpoint</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.jmx.util.helpers.ReconnectorService.EndpointState</code></p>
+	 */
+	public static enum EndpointState {
+		/** Waiting for the next attempt */
+		WAITING,
+		/** Due and waiting for a connect permit */
+		QUEUED,
+		/** A connect attempt is in flight */
+		CONNECTING,
+		/** Connected */
+		CONNECTED;
+	}
+	
+	/**
+	 * <p>Title: Endpoint</p>
+	 * <p>Description: The reconnect state and attempt history of one JMXServiceURL</p> 
+	 */
+	protected class Endpoint implements Reconnectable {
+		/** The endpoint's JMXServiceURL */
+		final JMXServiceURL jmxServiceURL;
+		/** The optional decorative name */
+		final String name;
+		/** The hash code */
+		final int hash = reconSerial.incrementAndGet();
+		/** The optional environment map which may be needed to connect */
+		volatile Map<String, Object> env = null;
+		/** The optional callback for the connected JMXConnector */
+		volatile ReconnectCallback<JMXConnector> callback = null;
+		/** The current state, null until first registered */
+		volatile EndpointState state = null;
+		/** The number of consecutive failed attempts */
+		volatile int failures = 0;
+		/** The total number of attempts */
+		final AtomicLong attempts = new AtomicLong();
+		/** The attempt duration histogram, bucketed by {@link ReconnectorServiceMBean#ATTEMPT_HISTOGRAM_BOUNDS} */
+		final AtomicLongArray histogram = new AtomicLongArray(ATTEMPT_HISTOGRAM_BOUNDS.length + 1);
+		/** The time of the next scheduled attempt */
+		volatile long nextAttempt = 0L;
+		/** The duration of the last attempt in ms. */
+		volatile long lastAttemptTime = -1L;
+		/** The last connect failure */
+		volatile String lastError = null;
+		
+		/**
+		 * Creates a new Endpoint
+		 * @param jmxServiceURL The endpoint's JMXServiceURL
+		 * @param name The optional decorative name
+		 */
+		Endpoint(final JMXServiceURL jmxServiceURL, final String name) {
+			this.jmxServiceURL = jmxServiceURL;
+			this.name = name;
+		}
+		
+		/**
+		 * Starts a reconnect cycle unless one is already in progress
+		 * @return true if a cycle was started, false otherwise
+		 */
+		synchronized boolean start() {
+			if(state!=null && state!=EndpointState.CONNECTED) return false;
+			state = EndpointState.WAITING;
+			failures = 0;
+			return true;
+		}
+		
+		/**
+		 * Records the duration of an attempt
+		 * @param elapsed The attempt duration in ms.
+		 */
+		void record(final long elapsed) {
+			lastAttemptTime = elapsed;
+			int bucket = 0;
+			while(bucket < ATTEMPT_HISTOGRAM_BOUNDS.length && elapsed >= ATTEMPT_HISTOGRAM_BOUNDS[bucket]) bucket++;
+			histogram.incrementAndGet(bucket);
+		}
+		
+		@Override
+		public boolean reconnect() {
+			return reconnect(null);
+		}
+
+		/**
+		 * Attempts to connect the endpoint
+		 * @param finished An optional callback run once the connect attempt's thread has finished with it
+		 * @return true if the endpoint connected, false otherwise
+		 */
+		boolean reconnect(final Runnable finished) {
+			attempts.incrementAndGet();
+			attemptCount.incrementAndGet();
+			log.debug("Attempting reconnect for [{}]", clean(jmxServiceURL));
+			final long start = System.currentTimeMillis();
+			final JMXConnector connector;
+			try {
+				// an RMI connect does not respond to interrupts, so a hung connect is abandoned and finishes in the background
+				connector = JMXTimeouts.connect(jmxServiceURL, env, connectTimeout, finished);
+			} catch(Exception ex) {
+				record(System.currentTimeMillis() - start);
+				lastError = ex.toString();
+				log.debug("Failed to connect to [{}] - {}", clean(jmxServiceURL), ex.toString());
+				return false;
+			}
+			record(System.currentTimeMillis() - start);
+			lastError = null;
+			state = EndpointState.CONNECTED;
+			final JMXConnector connected = connector;
+			final ReconnectCallback<JMXConnector> cb = callback;
+			if(cb!=null) {
+				workerPool.execute(new Runnable(){
+					public void run() {								
+						cb.onReconnect(connected);
 					}
-					sendNotification(NOTIF_COMPLETE, "Reconnected JMXConnector [" + clean(jmxServiceURL) + "]", connector);
-					ERR.println(String.format("Connected JMXConnector to [%s]", jmxServiceURL));
-					//register(jmxServiceURL, env, name, callback);
-					autoReconnect(connector, jmxServiceURL, false, callback);
-					return true;
-				} catch(Exception ex) {
-					log.info("Failed to connect to [{}] - {}", jmxServiceURL, ex);
-					return false;
-				} finally {
-					System.setErr(ERR);
-				}
+				});
 			}
-			@Override
-			public String getId() {
-				return name!=null ? name : jmxServiceURL.toString(); 
+			sendNotification(NOTIF_COMPLETE, "Reconnected JMXConnector [" + clean(jmxServiceURL) + "]", connector);
+			log.info("Connected JMXConnector to [{}]", clean(jmxServiceURL));
+			autoReconnect(connector, jmxServiceURL, false, cb);
+			return true;
+		}
+		
+		@Override
+		public String getId() {
+			return name!=null ? name : jmxServiceURL.toString(); 
+		}
+		
+		@Override
+		public void run() {
+			final PermitRelease permit = new PermitRelease();
+			boolean connected = false;
+			try {
+				connected = reconnect(permit);
+			} catch (Exception ex) {
+				log.warn("Unexpected reconnect failure for [{}]", clean(jmxServiceURL), ex);
+				permit.run();
 			}
-			@Override
-			public void run() {
-				if(!reconnect()) {
-					final long failedAttempts = reconnectables.get(this).incrementAndGet();
-					schedule(this);
-					sendNotification(NOTIF_FAIL, "Failed reconnect on JMXConnector [" + clean(jmxServiceURL) + "]. Failed Attempt #" + failedAttempts, null);
-				} else {
-					reconnectables.remove(this);
-				}
+			if(connected) {
+				successCount.incrementAndGet();
+				failures = 0;
+			} else {
+				failureCount.incrementAndGet();
+				final int failedAttempts = ++failures;
+				state = EndpointState.WAITING;
+				schedule(this, backoff(failedAttempts));
+				sendNotification(NOTIF_FAIL, "Failed reconnect on JMXConnector [" + clean(jmxServiceURL) + "]. Failed Attempt #" + failedAttempts, null);
 			}
-			public int hashCode() {
-				return hash * 31;
+			drain();
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash * 31;
+		}
+	}
+
+	/**
+	 * <p>Title: PermitRelease</p>
+	 * <p>Description: Releases the connect permit of one attempt, once, when the attempt's connect thread has finished
+	 * with it, and starts the next ready attempt</p> 
+	 */
+	protected class PermitRelease implements Runnable {
+		/** Set once the permit has been released */
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		@Override
+		public void run() {
+			if(released.compareAndSet(false, true)) {
+				connectPermits.release();
+				drain();
 			}
-		};		
-		sendNotification(NOTIF_REGISTERED, "Registered reconnect for [" + clean(jmxServiceURL) + "]", null);
-		schedule(reconnectable);
-		reconnectables.put(reconnectable, new AtomicLong(0));
+		}
 	}
 
 	/**
@@ -318,6 +523,146 @@ public class ReconnectorService extends NotificationBroadcasterSupport implement
 	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getPendingReconnects()
 	 */
 	public int getPendingReconnects() {
-		return reconnectables.size();
+		int pending = 0;
+		for(Endpoint endpoint: endpoints.values()) {
+			if(endpoint.state!=EndpointState.CONNECTED) pending++;
+		}
+		return pending;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getConnectingCount()
+	 */
+	public int getConnectingCount() {
+		return maxConcurrent - connectPermits.availablePermits();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getAbandonedCallCount()
+	 */
+	public long getAbandonedCallCount() {
+		return JMXTimeouts.getAbandonedCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getAbandonedRunningCount()
+	 */
+	public int getAbandonedRunningCount() {
+		return JMXTimeouts.getAbandonedRunningCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getQueuedCount()
+	 */
+	public int getQueuedCount() {
+		return ready.size();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getMaxConcurrentConnects()
+	 */
+	public int getMaxConcurrentConnects() {
+		return maxConcurrent;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getBaseDelay()
+	 */
+	public long getBaseDelay() {
+		return baseDelay;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getMaxDelay()
+	 */
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getAttemptCount()
+	 */
+	public long getAttemptCount() {
+		return attemptCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getSuccessCount()
+	 */
+	public long getSuccessCount() {
+		return successCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getFailureCount()
+	 */
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getEndpointStates()
+	 */
+	public Map<String, String> getEndpointStates() {
+		final Map<String, String> map = new LinkedHashMap<String, String>(endpoints.size());
+		for(Endpoint endpoint: endpoints.values()) {
+			map.put(endpoint.getId(), String.valueOf(endpoint.state));
+		}
+		return map;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getEndpointFailures()
+	 */
+	public Map<String, Integer> getEndpointFailures() {
+		final Map<String, Integer> map = new LinkedHashMap<String, Integer>(endpoints.size());
+		for(Endpoint endpoint: endpoints.values()) {
+			map.put(endpoint.getId(), endpoint.failures);
+		}
+		return map;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ReconnectorServiceMBean#getEndpointsTable()
+	 */
+	public String getEndpointsTable() {
+		final StringBuilder b = new StringBuilder("<table border='1'><tr><th>Endpoint</th><th>State</th><th>Failures</th><th>Attempts</th><th>Last (ms)</th><th>Next In (ms)</th>");
+		long lower = 0L;
+		for(long bound: ATTEMPT_HISTOGRAM_BOUNDS) {
+			b.append("<th>").append(lower).append("-").append(bound).append("ms</th>");
+			lower = bound;
+		}
+		b.append("<th>&gt;").append(lower).append("ms</th><th>Last Error</th></tr>");
+		final long now = System.currentTimeMillis();
+		for(Endpoint endpoint: endpoints.values()) {
+			final EndpointState state = endpoint.state;
+			b.append("<tr>");
+			b.append("<td>").append(endpoint.getId()).append("</td>");
+			b.append("<td>").append(state).append("</td>");
+			b.append("<td>").append(endpoint.failures).append("</td>");
+			b.append("<td>").append(endpoint.attempts.get()).append("</td>");
+			b.append("<td>").append(endpoint.lastAttemptTime).append("</td>");
+			b.append("<td>").append(state==EndpointState.WAITING ? Math.max(0L, endpoint.nextAttempt - now) : 0L).append("</td>");
+			for(int i = 0; i < endpoint.histogram.length(); i++) {
+				b.append("<td>").append(endpoint.histogram.get(i)).append("</td>");
+			}
+			final String lastError = endpoint.lastError;
+			b.append("<td>").append(lastError==null ? "" : lastError).append("</td>");
+			b.append("</tr>");
+		}
+		return b.append("</table>").toString();
 	}
 }
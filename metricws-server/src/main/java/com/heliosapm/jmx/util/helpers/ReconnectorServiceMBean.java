@@ -24,6 +24,8 @@
  */
 package com.heliosapm.jmx.util.helpers;
 
+import java.util.Map;
+
 import javax.management.ObjectName;
 
 /**
@@ -45,6 +47,23 @@ public interface ReconnectorServiceMBean {
 	/** The default reconnect period, in ms. */
 	public static final long DEFAULT_PERIOD = 5000;
 	
+	/** The config property name for the base reconnect delay in ms., doubled on each consecutive failure */
+	public static final String CONFIG_BASE_DELAY = "reconnector.basedelay";
+	/** The config property name for the maximum reconnect delay in ms. */
+	public static final String CONFIG_MAX_DELAY = "reconnector.maxdelay";
+	/** The default maximum reconnect delay in ms. */
+	public static final long DEFAULT_MAX_DELAY = 300000;
+	/** The config property name for the maximum number of concurrent connect attempts */
+	public static final String CONFIG_MAX_CONCURRENT = "reconnector.maxconcurrent";
+	/** The default maximum number of concurrent connect attempts */
+	public static final int DEFAULT_MAX_CONCURRENT = 16;
+	/** The config property name for the connect attempt timeout in ms. after which the attempt is abandoned and its permit released */
+	public static final String CONFIG_CONNECT_TIMEOUT = "reconnector.connecttimeout";
+	/** The default connect attempt timeout in ms. */
+	public static final long DEFAULT_CONNECT_TIMEOUT = 5000;
+	/** The upper bounds in ms. of the attempt duration histogram buckets. The last bucket holds longer attempts. */
+	public static final long[] ATTEMPT_HISTOGRAM_BOUNDS = {10, 50, 100, 500, 1000, 5000};
+	
 	/** The notification type root */
 	public static final String NOTIF_ROOT = "helios.jmx.reconnector";
 	/** The notification type for a registered reconnect */
@@ -60,6 +79,86 @@ public interface ReconnectorServiceMBean {
 	 * @return the number of pending reconnects
 	 */
 	public int getPendingReconnects();
+	
+	/**
+	 * Returns the number of connect attempts in flight, including abandoned attempts whose thread has not finished
+	 * @return the number of connect attempts in flight
+	 */
+	public int getConnectingCount();
+
+	/**
+	 * Returns the total number of timed JMX calls and connects abandoned by their caller
+	 * @return the abandoned call count
+	 * @see JMXTimeouts#getAbandonedCount()
+	 */
+	public long getAbandonedCallCount();
+	
+	/**
+	 * Returns the number of abandoned timed JMX calls and connects still occupying a thread
+	 * @return the running abandoned call count
+	 * @see JMXTimeouts#getAbandonedRunningCount()
+	 */
+	public int getAbandonedRunningCount();
+	
+	/**
+	 * Returns the number of due endpoints waiting for a connect permit
+	 * @return the number of queued endpoints
+	 */
+	public int getQueuedCount();
+	
+	/**
+	 * Returns the maximum number of concurrent connect attempts
+	 * @return the maximum number of concurrent connect attempts
+	 */
+	public int getMaxConcurrentConnects();
+	
+	/**
+	 * Returns the base reconnect delay in ms.
+	 * @return the base reconnect delay
+	 */
+	public long getBaseDelay();
+	
+	/**
+	 * Returns the maximum reconnect delay in ms.
+	 * @return the maximum reconnect delay
+	 */
+	public long getMaxDelay();
+	
+	/**
+	 * Returns the total number of connect attempts
+	 * @return the total number of connect attempts
+	 */
+	public long getAttemptCount();
+	
+	/**
+	 * Returns the total number of successful connect attempts
+	 * @return the total number of successful connect attempts
+	 */
+	public long getSuccessCount();
+	
+	/**
+	 * Returns the total number of failed connect attempts
+	 * @return the total number of failed connect attempts
+	 */
+	public long getFailureCount();
+	
+	/**
+	 * Returns the reconnect state of each endpoint keyed by endpoint id
+	 * @return the endpoint states
+	 */
+	public Map<String, String> getEndpointStates();
+	
+	/**
+	 * Returns the number of consecutive failed attempts of each endpoint keyed by endpoint id
+	 * @return the endpoint failure counts
+	 */
+	public Map<String, Integer> getEndpointFailures();
+	
+	/**
+	 * Returns an HTML table of each endpoint's state, attempts and attempt duration histogram
+	 * @return an HTML table
+	 */
+	public String getEndpointsTable();
 
 	
 }
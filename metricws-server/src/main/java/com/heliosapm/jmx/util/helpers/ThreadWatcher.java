@@ -26,8 +26,11 @@ package com.heliosapm.jmx.util.helpers;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.concurrent.ScheduledFuture;
+import java.util.ArrayDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,7 +41,13 @@ import com.heliosapm.jmx.concurrency.JMXManagedThreadPool;
 /**
  * <p>Title: ThreadWatcher</p>
  * <p>Description: Watches a thread while it performs some activity and if it does not complete and clear the watcher
- * within a specified period of time, some action will be taken, such as an interrupt.</p> 
+ * within a specified period of time, some action will be taken, such as an interrupt.</p>
+ * <p>Watches are kept in a hashed timing wheel advanced by a single scheduler task every tick, so arming and
+ * cancelling a watch are O(1) and the scheduler's delay queue only ever holds the one tick task. Cancelled watches are
+ * unlinked lazily when the wheel next passes their bucket, and their handles are recycled by the thread that closed them,
+ * so once the thread's handle cache is warm a watch only allocates the small token that closes it. A recycled handle
+ * that is still linked in the wheel is moved to the bucket of its new deadline by the next tick. Deadlines are
+ * honoured to within one tick.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.jmx.util.helpers.ThreadWatcher</code></p>
@@ -58,9 +67,55 @@ public class ThreadWatcher implements ThreadWatcherMBean {
 	/** Instance logger */
 	private final Logger log = LoggerFactory.getLogger(getClass());
 	
+	/** The wheel tick in nanos */
+	private final long tickNanos;
+	/** The wheel tick in ms. */
+	private final long tickMs;
+	/** The wheel buckets, only accessed by the tick task */
+	private final WatcherHandle[] wheel;
+	/** The wheel bucket index mask */
+	private final int mask;
+	/** The nano time of tick zero */
+	private final long startTime = System.nanoTime();
+	/** The last tick processed, only accessed by the tick task */
+	private long lastTick = 0L;
+	/** The stack of newly armed watches waiting to be placed in the wheel */
+	private final AtomicReference<WatcherHandle> pending = new AtomicReference<WatcherHandle>(null);
+	/** Each thread's cache of closed handles available for reuse */
+	private final ThreadLocal<ArrayDeque<WatcherHandle>> handleCache = new ThreadLocal<ArrayDeque<WatcherHandle>>() {
+		@Override
+		protected ArrayDeque<WatcherHandle> initialValue() {
+			return new ArrayDeque<WatcherHandle>(HANDLE_CACHE_SIZE);
+		}
+	};
+	
+	/** The number of watches armed */
+	private final AtomicLong watchCount = new AtomicLong(0L);
+	/** The number of watches closed before their deadline */
+	private final AtomicLong cancelCount = new AtomicLong(0L);
+	/** The number of watches that timed out */
+	private final AtomicLong timeoutCount = new AtomicLong(0L);
+	
 	/** A shareable static instance of the default timeout action */
 	public static final DefaultThreadTimeoutAction DEFAULT_ACTION = new DefaultThreadTimeoutAction();
 	
+	/** The maximum number of closed handles each thread keeps for reuse */
+	private static final int HANDLE_CACHE_SIZE = 16;
+	
+	/** Handle state: not armed and not in the wheel */
+	private static final int FREE = 0;
+	/** Handle state: armed and in the wheel or the pending stack */
+	private static final int ARMED = 1;
+	/** Handle state: closed but still in the wheel or the pending stack */
+	private static final int CANCELLED = 2;
+	/** Handle state: timed out and removed from the wheel */
+	private static final int FIRED = 3;
+	/** The mask of the state bits in a handle's stamp. The remaining bits are the arming generation. */
+	private static final int STATE_MASK = 3;
+	
+	/** The handle stamp updater */
+	private static final AtomicIntegerFieldUpdater<WatcherHandle> stampUpdater = AtomicIntegerFieldUpdater.newUpdater(WatcherHandle.class, "stamp");
+	
 	
 	/**
 	 * Acquires the ThreadWatcher singleton instance
@@ -83,8 +138,24 @@ public class ThreadWatcher implements ThreadWatcherMBean {
 	 * Creates a new ThreadWatcher
 	 */
 	private ThreadWatcher() {
-		scheduler = new JMXManagedScheduler(SCHEDULER_OBJECT_NAME, "ThreadWatcherScheduler", 2, true);
+		tickMs = Math.max(1L, ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_TICK, DEFAULT_TICK));
+		tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+		int size = 1;
+		final int requested = ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_WHEEL_SIZE, DEFAULT_WHEEL_SIZE);
+		while(size < requested && size < (1 << 20)) size <<= 1;
+		wheel = new WatcherHandle[size];
+		mask = size - 1;
+		scheduler = new JMXManagedScheduler(SCHEDULER_OBJECT_NAME, "ThreadWatcherScheduler", 1, true);
 		workerPool = new JMXManagedThreadPool(WORKER_OBJECT_NAME, "ThreadWatcherWorker", true);
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					tick();
+				} catch (Throwable t) {
+					log.error("ThreadWatcher tick failed", t);
+				}
+			}
+		}, tickMs, tickMs, TimeUnit.MILLISECONDS);
 		JMXHelper.registerMBean(this, OBJECT_NAME);
 	}
 	
@@ -92,7 +163,7 @@ public class ThreadWatcher implements ThreadWatcherMBean {
 	/**
 	 * Schedules a timeout action on the passed thread.
 	 * If the returned Closeable is not closed by the time the timeout expires, 
-	 * the timeout action will be fired.
+	 * the timeout action will be fired. Closing it again, or after the timeout fired, has no effect.
 	 * @param thread The thread to watch
 	 * @param timeout The timeout period
 	 * @param unit The timeout unit. Defaults to {@link TimeUnit#MILLISECONDS} if null.
@@ -102,18 +173,13 @@ public class ThreadWatcher implements ThreadWatcherMBean {
 	 */
 	public Closeable watch(final Thread thread, final long timeout, final TimeUnit unit, final ThreadTimeoutAction timeoutAction) {
 		if(thread==null) throw new IllegalArgumentException("Passed thread was null");
-		final ThreadTimeoutAction _timeoutAction = timeoutAction != null ? timeoutAction : new DefaultThreadTimeoutAction();
+		final ThreadTimeoutAction _timeoutAction = timeoutAction != null ? timeoutAction : DEFAULT_ACTION;
 		final TimeUnit _unit = unit != null ? unit : TimeUnit.MILLISECONDS;
-		final ScheduledFuture<?> handle = scheduler.schedule(new Runnable() {
-			public void run() {
-				workerPool.execute(new Runnable() {
-					public void run() {
-						_timeoutAction.onTimeout(thread, timeout, _unit);
-					}
-				});				
-			}
-		}, timeout, _unit);
-		return new WatcherHandle(handle);
+		WatcherHandle handle = handleCache.get().pollFirst();
+		if(handle==null) handle = new WatcherHandle();
+		final int generation = handle.arm(thread, timeout, _unit, _timeoutAction, System.nanoTime() + _unit.toNanos(timeout));
+		watchCount.incrementAndGet();
+		return new Watch(handle, generation);
 	}
 	
 	/**
@@ -158,6 +224,191 @@ public class ThreadWatcher implements ThreadWatcherMBean {
 		return watch(Thread.currentThread(), timeout,  unit, DEFAULT_ACTION);
 	}
 	
+	/**
+	 * Returns the wheel tick index a deadline falls in, rounded up
+	 * @param deadline The deadline nano time
+	 * @return the tick index
+	 */
+	private long tickOf(final long deadline) {
+		final long elapsed = deadline - startTime;
+		return elapsed <= 0L ? 0L : (elapsed + tickNanos - 1) / tickNanos;
+	}
+	
+	/**
+	 * Links a handle into the wheel bucket for its deadline, or the next tick if that has already passed.
+	 * Only called by the tick task.
+	 * @param handle The handle to link
+	 * @param deadline The handle's deadline
+	 */
+	private void link(final WatcherHandle handle, final long deadline) {
+		final int bucket = (int)(Math.max(tickOf(deadline), lastTick + 1) & mask);
+		handle.bucket = bucket;
+		handle.prev = null;
+		handle.next = wheel[bucket];
+		if(handle.next!=null) handle.next.prev = handle;
+		wheel[bucket] = handle;
+	}
+	
+	/**
+	 * Unlinks a handle from its wheel bucket if it is linked. Only called by the tick task.
+	 * @param handle The handle to unlink
+	 */
+	private void unlink(final WatcherHandle handle) {
+		if(handle.bucket < 0) return;
+		if(handle.prev!=null) handle.prev.next = handle.next;
+		else wheel[handle.bucket] = handle.next;
+		if(handle.next!=null) handle.next.prev = handle.prev;
+		handle.next = null;
+		handle.prev = null;
+		handle.bucket = -1;
+	}
+	
+	/**
+	 * Advances the wheel to the current time, placing newly armed watches and firing expired ones.
+	 * Only called from the single scheduled tick task.
+	 */
+	private void tick() {
+		WatcherHandle h = pending.getAndSet(null);
+		while(h!=null) {
+			final WatcherHandle nextPending = h.nextPending;
+			h.nextPending = null;
+			// cleared before the state is read so a re-arm from here on pushes the handle again
+			h.queued = false;
+			// a recycled handle may still be linked under its previous deadline
+			unlink(h);
+			place(h);
+			h = nextPending;
+		}
+		final long now = System.nanoTime();
+		final long currentTick = (now - startTime) / tickNanos;
+		if(currentTick - lastTick > wheel.length) lastTick = currentTick - wheel.length;
+		while(lastTick < currentTick) {
+			lastTick++;
+			final int bucket = (int)(lastTick & mask);
+			WatcherHandle handle = wheel[bucket];
+			wheel[bucket] = null;
+			while(handle!=null) {
+				final WatcherHandle next = handle.next;
+				handle.next = null;
+				handle.prev = null;
+				handle.bucket = -1;
+				expire(handle, now);
+				handle = next;
+			}
+		}
+	}
+	
+	/**
+	 * Places a handle taken from the pending stack in the wheel, or releases it if it was closed before it was placed.
+	 * Only called by the tick task.
+	 * @param handle The unlinked handle to place
+	 */
+	private void place(final WatcherHandle handle) {
+		while(true) {
+			final int stamp = handle.stamp;
+			final int state = stamp & STATE_MASK;
+			if(state==CANCELLED) {
+				if(stampUpdater.compareAndSet(handle, stamp, stamp - CANCELLED + FREE)) return;
+			} else if(state==ARMED) {
+				link(handle, handle.deadline);
+				return;
+			} else {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Examines a handle unlinked from the bucket being processed, releasing it if cancelled,
+	 * firing it if expired, or relinking it otherwise. Only called by the tick task.
+	 * @param handle The handle to examine
+	 * @param now The current nano time
+	 */
+	private void expire(final WatcherHandle handle, final long now) {
+		while(true) {
+			final int stamp = handle.stamp;
+			final int state = stamp & STATE_MASK;
+			if(state==CANCELLED) {
+				if(stampUpdater.compareAndSet(handle, stamp, stamp - CANCELLED + FREE)) return;
+			} else if(state==ARMED) {
+				final long deadline = handle.deadline;
+				if(deadline - now > 0L) {
+					link(handle, deadline);
+					return;
+				}
+				final Thread thread = handle.thread;
+				final long timeout = handle.timeout;
+				final TimeUnit unit = handle.unit;
+				final ThreadTimeoutAction action = handle.action;
+				if(stampUpdater.compareAndSet(handle, stamp, stamp - ARMED + FIRED)) {
+					timeoutCount.incrementAndGet();
+					workerPool.execute(new Runnable() {
+						public void run() {
+							action.onTimeout(thread, timeout, unit);
+						}
+					});
+					return;
+				}
+			} else {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ThreadWatcherMBean#getWatchCount()
+	 */
+	@Override
+	public long getWatchCount() {
+		return watchCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ThreadWatcherMBean#getCancelCount()
+	 */
+	@Override
+	public long getCancelCount() {
+		return cancelCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ThreadWatcherMBean#getTimeoutCount()
+	 */
+	@Override
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ThreadWatcherMBean#getActiveCount()
+	 */
+	@Override
+	public long getActiveCount() {
+		return Math.max(0L, watchCount.get() - cancelCount.get() - timeoutCount.get());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ThreadWatcherMBean#getTickMs()
+	 */
+	@Override
+	public long getTickMs() {
+		return tickMs;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.util.helpers.ThreadWatcherMBean#getWheelSize()
+	 */
+	@Override
+	public int getWheelSize() {
+		return wheel.length;
+	}
+	
 	
 	/**
 	 * <p>Title: ThreadTimeoutAction</p>
@@ -191,22 +442,27 @@ public class ThreadWatcher implements ThreadWatcherMBean {
 	}
 	
 	/**
-	 * <p>Title: WatcherHandle</p>
-	 * <p>Description: A handle to the watcher that allows the watched thread to cancel the watch</p> 
+	 * <p>Title: Watch</p>
+	 * <p>Description: Closes one arming of a recycled handle. The arming generation is captured so that closing a
+	 * watch after its handle has been re-armed for another watch has no effect.</p> 
 	 * <p>Company: Helios Development Group LLC</p>
 	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
-	 * <p><code>com.heliosapm.jmx.util.helpers.ThreadWatcher.WatcherHandle</code></p>
+	 * <p><code>com.heliosapm.jmx.util.helpers.ThreadWatcher.Watch</code></p>
 	 */
-	public class WatcherHandle implements Closeable {
-		/** The internal scheduler handle */
-		private final ScheduledFuture<?> scheduleHandle;
+	private static class Watch implements Closeable {
+		/** The watch's handle */
+		private final WatcherHandle handle;
+		/** The generation the handle was armed with */
+		private final int generation;
 		
 		/**
-		 * Creates a new WatcherHandle
-		 * @param scheduleHandle The internal scheduler handle
+		 * Creates a new Watch
+		 * @param handle The watch's handle
+		 * @param generation The generation the handle was armed with
 		 */
-		private WatcherHandle(final ScheduledFuture<?> scheduleHandle) {
-			this.scheduleHandle = scheduleHandle;
+		Watch(final WatcherHandle handle, final int generation) {
+			this.handle = handle;
+			this.generation = generation;
 		}
 		
 		/**
@@ -216,7 +472,107 @@ public class ThreadWatcher implements ThreadWatcherMBean {
 		 */
 		@Override
 		public void close() throws IOException {
-			scheduleHandle.cancel(true);			
+			handle.close(generation);
+		}
+	}
+	
+	/**
+	 * <p>Title: WatcherHandle</p>
+	 * <p>Description: A watch's wheel entry, recycled once closed.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.jmx.util.helpers.ThreadWatcher.WatcherHandle</code></p>
+	 */
+	private class WatcherHandle {
+		/** The arming generation and state */
+		volatile int stamp = FREE;
+		/** The deadline nano time */
+		private volatile long deadline;
+		/** The watched thread */
+		private Thread thread;
+		/** The timeout period */
+		private long timeout;
+		/** The timeout unit */
+		private TimeUnit unit;
+		/** The timeout action */
+		private ThreadTimeoutAction action;
+		/** The next handle in the wheel bucket, only accessed by the tick task */
+		private WatcherHandle next = null;
+		/** The previous handle in the wheel bucket, only accessed by the tick task */
+		private WatcherHandle prev = null;
+		/** The wheel bucket the handle is linked in, or -1 if it is not linked, only accessed by the tick task */
+		private int bucket = -1;
+		/** The next handle in the pending stack */
+		private WatcherHandle nextPending = null;
+		/** True while the handle is on the pending stack */
+		private volatile boolean queued = false;
+		
+		/**
+		 * Creates a new WatcherHandle
+		 */
+		private WatcherHandle() {
+		}
+		
+		/**
+		 * Arms this handle and pushes it onto the pending stack for the tick task to place, unless it is still there
+		 * from an earlier arming. The tick task unlinks a handle still in the wheel from a cancelled watch before placing it. 
+		 * @param thread The watched thread
+		 * @param timeout The timeout period
+		 * @param unit The timeout unit
+		 * @param action The timeout action
+		 * @param deadline The deadline nano time
+		 * @return the arming generation
+		 */
+		private int arm(final Thread thread, final long timeout, final TimeUnit unit, final ThreadTimeoutAction action, final long deadline) {
+			this.thread = thread;
+			this.timeout = timeout;
+			this.unit = unit;
+			this.action = action;
+			this.deadline = deadline;
+			while(true) {
+				final int s = stamp;
+				final int armed = (s & ~STATE_MASK) + STATE_MASK + 1 + ARMED;
+				final int state = s & STATE_MASK;
+				if(state==CANCELLED || state==FREE) {
+					if(stampUpdater.compareAndSet(this, s, armed)) {
+						if(!queued) {
+							queued = true;
+							WatcherHandle head;
+							do {
+								head = pending.get();
+								nextPending = head;
+							} while(!pending.compareAndSet(head, this));
+						}
+						return armed & ~STATE_MASK;
+					}
+				} else {
+					throw new IllegalStateException("WatcherHandle is still in use");
+				}
+			}
+		}
+		
+		/**
+		 * Cancels the watch armed with the passed generation, if the handle has not since been re-armed
+		 * @param generation The arming generation of the watch to cancel
+		 */
+		private void close(final int generation) {
+			while(true) {
+				final int s = stamp;
+				if((s & ~STATE_MASK)!=generation) return;
+				final int state = s & STATE_MASK;
+				if(state==ARMED) {
+					if(stampUpdater.compareAndSet(this, s, s - ARMED + CANCELLED)) {
+						cancelCount.incrementAndGet();
+						break;
+					}
+				} else if(state==FIRED) {
+					if(stampUpdater.compareAndSet(this, s, s - FIRED + FREE)) break;
+				} else {
+					return;
+				}
+			}
+			final ArrayDeque<WatcherHandle> cache = handleCache.get();
+			if(cache.size() < HANDLE_CACHE_SIZE) cache.addFirst(this);
 		}
 	}
 }
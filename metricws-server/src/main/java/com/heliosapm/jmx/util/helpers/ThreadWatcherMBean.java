@@ -41,5 +41,50 @@ public interface ThreadWatcherMBean {
 	public static final ObjectName SCHEDULER_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.jmx:service=ThreadWatcher,pool=Scheduler");
 	/** The ReconnectorService Worker Pool's object name */
 	public static final ObjectName WORKER_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.jmx:service=ThreadWatcher,pool=Worker");
+	
+	/** The config property name for the timing wheel tick in ms. */
+	public static final String CONFIG_TICK = "threadwatcher.tick";
+	/** The default timing wheel tick in ms. */
+	public static final long DEFAULT_TICK = 10;
+	/** The config property name for the number of timing wheel buckets, rounded up to a power of 2 */
+	public static final String CONFIG_WHEEL_SIZE = "threadwatcher.wheelsize";
+	/** The default number of timing wheel buckets */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+	
+	/**
+	 * Returns the number of watches armed
+	 * @return the number of watches armed
+	 */
+	public long getWatchCount();
+	
+	/**
+	 * Returns the number of watches closed before their deadline
+	 * @return the number of cancelled watches
+	 */
+	public long getCancelCount();
+	
+	/**
+	 * Returns the number of watches that timed out and fired their timeout action
+	 * @return the number of timed out watches
+	 */
+	public long getTimeoutCount();
+	
+	/**
+	 * Returns the number of watches currently armed
+	 * @return the number of armed watches
+	 */
+	public long getActiveCount();
+	
+	/**
+	 * Returns the timing wheel tick in ms.
+	 * @return the timing wheel tick
+	 */
+	public long getTickMs();
+	
+	/**
+	 * Returns the number of timing wheel buckets
+	 * @return the number of timing wheel buckets
+	 */
+	public int getWheelSize();
 
 }
@@ -62,9 +62,18 @@ import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
 import com.heliosapm.jmx.util.helpers.ConfigurationHelper.Config;
 import com.heliosapm.jmx.util.helpers.JMXHelper;
 import com.heliosapm.mws.server.logging.ModifiableLoggingHandler;
+import com.heliosapm.mws.server.net.AdmissionController;
+import com.heliosapm.mws.server.net.EventLoopProbe;
+import com.heliosapm.mws.server.net.IdleReaper;
+import com.heliosapm.mws.server.net.InstrumentedNioWorkerPool;
+import com.heliosapm.mws.server.net.OutboundBudget;
 import com.heliosapm.mws.server.net.RequestRouter;
+import com.heliosapm.mws.server.net.SharedTimer;
+import com.heliosapm.mws.server.net.WriteCoalescer;
 import com.heliosapm.mws.server.net.http.StaticContentHandler;
 import com.heliosapm.mws.server.net.json.JSONRequestRouter;
+import com.heliosapm.mws.server.net.ws.FragmentSequencer;
+import com.heliosapm.mws.server.net.ws.WebSocketHandshakeHandler;
 
 /**
  * <p>Title: Server</p>
@@ -96,6 +105,14 @@ public class Server implements ChannelPipelineFactory {
 	protected ExecutorService bossPool = null;
 	/** The worker thread pool */
 	protected ExecutorService workerPool = null;
+	/** The number of boss threads */
+	protected int bossCount = Configuration.NIO_BOSS_COUNT_DEFAULT;
+	/** The number of worker threads */
+	protected int workerCount = Configuration.NIO_WORKER_COUNT_DEFAULT;
+	/** The instrumented NIO workers */
+	protected InstrumentedNioWorkerPool nioWorkers = null;
+	/** The NIO worker event loop latency probe */
+	protected EventLoopProbe eventLoopProbe = null;
 	
 	/** The server close future */
 	protected ChannelFuture closeFuture = null;
@@ -129,8 +146,18 @@ public class Server implements ChannelPipelineFactory {
 	protected boolean wsAggrEnabled = Configuration.WS_AGGR_ENABLED_DEFAULT;
 	/** The maximum websocket frame size */
 	protected int maxFrameSize = Configuration.WS_AGGR_MAXSIZE_DEFAULT;
-	
+	/** The shared static content handler */
 	protected final StaticContentHandler staticContentHandler = new StaticContentHandler(ConfigurationHelper.getConfig().get(Configuration.HTTP_STATIC_DIR_PROP, File.class));
+	/** The shared request router */
+	protected final RequestRouter requestRouter = new RequestRouter(staticContentHandler);
+	/** The shared connection admission controller */
+	protected final AdmissionController admissionController = AdmissionController.getInstance();
+	/** The shared outbound write coalescer, null if write coalescing is disabled */
+	protected final WriteCoalescer writeCoalescer = ConfigurationHelper.getConfig().get(Configuration.WRITE_COALESCE_ENABLED_PROP, boolean.class) ? WriteCoalescer.getInstance() : null;
+	/** The shared outbound byte budget */
+	protected final OutboundBudget outboundBudget = OutboundBudget.getInstance();
+	/** The shared idle connection reaper, null if idle reaping is disabled */
+	protected final IdleReaper idleReaper = ConfigurationHelper.getConfig().get(Configuration.IDLE_READER_PROP, int.class) > 0 ? IdleReaper.getInstance() : null;
 	
 
 	/** The logging handler */
@@ -200,11 +227,16 @@ public class Server implements ChannelPipelineFactory {
 		
 		
 		
-		bossPool = Executors.newCachedThreadPool(PoolThreadFactory.getThreadFactory("BossPool"));
-		workerPool = Executors.newCachedThreadPool(PoolThreadFactory.getThreadFactory("WorkerPool"));
+		bossCount = ConfigurationHelper.getConfig().get(Configuration.NIO_BOSS_COUNT_PROP, int.class);
+		workerCount = ConfigurationHelper.getConfig().get(Configuration.NIO_WORKER_COUNT_PROP, int.class);
+		// Boss and worker threads each run one selector loop for the life of the server, so the pools are fixed
+		bossPool = Executors.newFixedThreadPool(bossCount, PoolThreadFactory.getThreadFactory("BossPool"));
+		workerPool = Executors.newFixedThreadPool(workerCount, PoolThreadFactory.getThreadFactory("WorkerPool"));
+		nioWorkers = new InstrumentedNioWorkerPool(workerPool, workerCount);
+		eventLoopProbe = new EventLoopProbe(nioWorkers);
 		JMXExecutorServiceWrapper.register(bossPool, JMXHelper.objectName(getClass().getPackage().getName() + ":pool=BossPool"));
-		JMXExecutorServiceWrapper.register(workerPool, JMXHelper.objectName(getClass().getPackage().getName() + ":pool=WorkerPool"));
-		channelFactory = new NioServerSocketChannelFactory(bossPool, workerPool) {
+		JMXExecutorServiceWrapper.register(workerPool, JMXHelper.objectName(getClass().getPackage().getName() + ":pool=WorkerPool"), nioWorkers);
+		channelFactory = new NioServerSocketChannelFactory(bossPool, bossCount, nioWorkers) {
 			@Override
 			public ServerSocketChannel newChannel(final ChannelPipeline pipeline) {
 				ServerSocketChannel ssc = super.newChannel(pipeline);	
@@ -214,6 +246,9 @@ public class Server implements ChannelPipelineFactory {
 		};
 		bootstrap = new ServerBootstrap(channelFactory);
 		bootstrap.setPipelineFactory(this);
+		// Keep the sockets' writability in step with the outbound budget's watermarks
+		bootstrap.setOption("child.writeBufferHighWaterMark", outboundBudget.getHighWatermark());
+		bootstrap.setOption("child.writeBufferLowWaterMark", outboundBudget.getLowWatermark());
 		final CountDownLatch latch = new CountDownLatch(1);
 		final Throwable[] thrown = new Throwable[1];
 		bootstrap.bindAsync(inetSockAddress).addListener(new ChannelFutureListener() {
@@ -286,7 +321,14 @@ public class Server implements ChannelPipelineFactory {
 	 */
 	public void shutdown() {
 		if(bootThread!=null) bootThread.interrupt();
+		// Stop accepting, then tell web socket clients when to come back so they do not all reconnect at once
+		if(serverChannel!=null) {
+			try { serverChannel.close().awaitUninterruptibly(1000); } catch (Exception x) {/* No Op */}
+		}
+		try { WebSocketHandshakeHandler.closeAll().awaitUninterruptibly(2000); } catch (Exception x) {/* No Op */}
+		if(eventLoopProbe!=null) eventLoopProbe.stop();
 		try { channelFactory.shutdown(); } catch (Exception x) {/* No Op */}
+		SharedTimer.stop();
 		LOG.info("Exiting.....");
 	}
 
@@ -297,6 +339,15 @@ public class Server implements ChannelPipelineFactory {
 	@Override
 	public ChannelPipeline getPipeline() throws Exception {
 		final ChannelPipeline pipeline = Channels.pipeline();
+		pipeline.addLast("admission", admissionController);
+		pipeline.addLast("budget", outboundBudget);
+		if(writeCoalescer!=null) {
+			pipeline.addLast("coalescer", writeCoalescer);
+		}
+		if(idleReaper!=null) {
+			pipeline.addLast("idle", idleReaper.getIdleStateHandler());
+			pipeline.addLast("reaper", idleReaper);
+		}
         pipeline.addLast("decoder", new HttpRequestDecoder());
         
         if(chunkingEnabled) {
@@ -309,7 +360,9 @@ public class Server implements ChannelPipelineFactory {
         	pipeline.addLast("wsaggregator", new WebSocketFrameAggregator(maxFrameSize));
         }
         pipeline.addLast("encoder", new HttpResponseEncoder());
-        pipeline.addLast("requestRouter", new RequestRouter());
+        pipeline.addLast("sequencer", FragmentSequencer.getInstance());
+        pipeline.addLast("conflater", outboundBudget.getConflater());
+        pipeline.addLast("requestRouter", requestRouter);
         if(loggingHandlerInstalled) {
         	if(beforeRelativeHandler) {
         		pipeline.addBefore(relativeHandler, "logger", loggingHandler);
@@ -0,0 +1,435 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.concurrency.JMXManagedScheduler;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: AdmissionController</p>
+ * <p>Description: Rate limits the admission of newly accepted connections so that a reconnect storm
+ * (e.g. every dashboard reconnecting after a rolling restart) is absorbed at a steady rate instead of
+ * swamping the workers with handshakes. Admission is paced by a virtual clock: each connection reserves
+ * the next free admission slot and, when that slot is in the future, the connection's reads are suspended
+ * until it arrives. Nothing is read or decoded for a deferred connection, so the accept-to-first-frame time
+ * of admitted connections stays bounded. A connection whose slot would be further away than the maximum
+ * deferral is closed straight away, leaving the client to retry.</p>
+ * <p>Before the shared pacer is consulted, each remote address is held to its own {@link TokenBucket} and
+ * to a cap on its open connections, so that one misbehaving client is turned away without consuming
+ * the admission slots of everybody else. The per address limits are disabled by default since behind a
+ * load balancer or NAT every client shares one address: enable them with <b><code>mws.accept.ip.rate</code></b>
+ * and <b><code>mws.accept.ip.maxconn</code></b> only when clients connect directly.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.AdmissionController</code></p>
+ */
+@ChannelHandler.Sharable
+public class AdmissionController extends SimpleChannelUpstreamHandler implements AdmissionControllerMBean {
+	/** The singleton instance */
+	private static volatile AdmissionController instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The scheduler that resumes deferred connections */
+	protected final JMXManagedScheduler scheduler;
+	/** The number of connections admitted immediately in a burst */
+	protected final int burst;
+	/** The maximum deferral in nanos */
+	protected final long maxDelayNanos;
+	/** The admission interval in nanos, zero if admission control is disabled */
+	protected volatile long intervalNanos;
+	/** The virtual clock: the nano time of the next free admission slot */
+	protected final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+	/** The connections per second allowed from one remote address, zero if unlimited */
+	protected final int ipRate;
+	/** The connections allowed at once from one remote address */
+	protected final int ipBurst;
+	/** The maximum open connections from one remote address, zero if unlimited */
+	protected final int ipMaxConnections;
+	/** The admission state of each remote address */
+	protected final NonBlockingHashMap<InetAddress, Peer> peers = new NonBlockingHashMap<InetAddress, Peer>(1024);
+
+	/** The number of connections admitted immediately */
+	protected final AtomicLong admitted = new AtomicLong();
+	/** The number of connections admitted after a deferral */
+	protected final AtomicLong deferred = new AtomicLong();
+	/** The number of connections rejected */
+	protected final AtomicLong rejected = new AtomicLong();
+	/** The number of connections currently deferred */
+	protected final AtomicInteger pending = new AtomicInteger();
+	/** The number of connections rejected by the per address limits */
+	protected final AtomicLong peerRejected = new AtomicLong();
+
+	/** The period in seconds of the purge of idle peer states */
+	public static final long PEER_PURGE_PERIOD = 60L;
+	/** Peer admission result: the connection was admitted */
+	private static final int ADMITTED = 1;
+	/** Peer admission result: the connection exceeds the peer's limits */
+	private static final int REJECTED = 0;
+	/** Peer admission result, and open count marker: the peer state has been purged */
+	private static final int RETIRED = -1;
+
+	/**
+	 * <p>Title: Peer</p>
+	 * <p>Description: The admission state of one remote address</p> 
+	 */
+	protected class Peer implements ChannelFutureListener {
+		/** The connection rate limiter, null if the rate is unlimited */
+		final TokenBucket bucket = ipRate==0 ? null : new TokenBucket(ipRate, ipBurst);
+		/** The number of open connections, {@link #RETIRED} once the peer has been purged */
+		final AtomicInteger open = new AtomicInteger();
+
+		/**
+		 * Admits a connection from this peer
+		 * @return {@link #ADMITTED}, {@link #REJECTED}, or {@link #RETIRED} if this peer state was purged
+		 * and the connection must be admitted against a fresh one
+		 */
+		int admit() {
+			while(true) {
+				final int current = open.get();
+				if(current==RETIRED) return RETIRED;
+				if(ipMaxConnections > 0 && current >= ipMaxConnections) return REJECTED;
+				if(open.compareAndSet(current, current+1)) break;
+			}
+			if(bucket!=null && !bucket.tryAcquire()) {
+				open.decrementAndGet();
+				return REJECTED;
+			}
+			return ADMITTED;
+		}
+
+		/**
+		 * Retires this peer if it has no open connections and a full bucket
+		 * @return true if the peer was retired and its state can be discarded
+		 */
+		boolean retire() {
+			return (bucket==null || bucket.isFull()) && open.compareAndSet(0, RETIRED);
+		}
+
+		/**
+		 * Releases the open connection count of a closed channel
+		 * @param future the close future
+		 */
+		@Override
+		public void operationComplete(final ChannelFuture future) throws Exception {
+			open.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Acquires and returns the singleton instance
+	 * @return the singleton instance
+	 */
+	public static AdmissionController getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new AdmissionController();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a new AdmissionController
+	 */
+	private AdmissionController() {
+		burst = Math.max(1, ConfigurationHelper.getConfig().get(Configuration.ACCEPT_BURST_PROP, int.class));
+		maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(ConfigurationHelper.getConfig().get(Configuration.ACCEPT_MAXDELAY_PROP, long.class));
+		setRate(ConfigurationHelper.getConfig().get(Configuration.ACCEPT_RATE_PROP, int.class));
+		ipRate = ConfigurationHelper.getConfig().get(Configuration.ACCEPT_IP_RATE_PROP, int.class);
+		ipBurst = Math.max(1, ConfigurationHelper.getConfig().get(Configuration.ACCEPT_IP_BURST_PROP, int.class));
+		ipMaxConnections = ConfigurationHelper.getConfig().get(Configuration.ACCEPT_IP_MAXCONN_PROP, int.class);
+		scheduler = new JMXManagedScheduler(SCHEDULER_OBJECT_NAME, "AdmissionScheduler", 1, true);
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				purgePeers();
+			}
+		}, PEER_PURGE_PERIOD, PEER_PURGE_PERIOD, TimeUnit.SECONDS);
+		JMXHelper.registerMBean(this, OBJECT_NAME);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#channelConnected(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+	 */
+	@Override
+	public void channelConnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+		if(!admitPeer(e.getChannel())) {
+			peerRejected.incrementAndGet();
+			log.debug("Rejected connection from [{}]: per address connection limit exceeded", e.getChannel().getRemoteAddress());
+			e.getChannel().close();
+			return;
+		}
+		final long wait = reserve();
+		if(wait==0L) {
+			admitted.incrementAndGet();
+		} else if(wait < 0L) {
+			rejected.incrementAndGet();
+			log.debug("Rejected connection from [{}]: admission backlog exceeds [{}] ms.", e.getChannel().getRemoteAddress(), TimeUnit.NANOSECONDS.toMillis(maxDelayNanos));
+			e.getChannel().close();
+			return;
+		} else {
+			defer(e.getChannel(), wait);
+		}
+		super.channelConnected(ctx, e);
+	}
+
+	/**
+	 * Applies the per address limits to a new connection
+	 * @param channel The new connection
+	 * @return true if the connection is within its address' limits
+	 */
+	protected boolean admitPeer(final Channel channel) {
+		if(ipRate==0 && ipMaxConnections==0) return true;
+		final SocketAddress sa = channel.getRemoteAddress();
+		if(!(sa instanceof InetSocketAddress)) return true;
+		final InetAddress address = ((InetSocketAddress)sa).getAddress();
+		while(true) {
+			Peer peer = peers.get(address);
+			if(peer==null) {
+				final Peer newPeer = new Peer();
+				peer = peers.putIfAbsent(address, newPeer);
+				if(peer==null) peer = newPeer;
+			}
+			final int result = peer.admit();
+			if(result==RETIRED) {
+				// raced with the purge, which may not have removed the peer yet
+				peers.remove(address, peer);
+				continue;
+			}
+			if(result==REJECTED) return false;
+			channel.getCloseFuture().addListener(peer);
+			return true;
+		}
+	}
+
+	/**
+	 * Discards the state of peers with no open connections and full buckets. A peer is retired before it is
+	 * removed so a concurrent admission never counts a connection against a discarded peer.
+	 */
+	protected void purgePeers() {
+		for(Map.Entry<InetAddress, Peer> entry: peers.entrySet()) {
+			final Peer peer = entry.getValue();
+			if(peer.retire()) peers.remove(entry.getKey(), peer);
+		}
+	}
+
+	/**
+	 * Suspends reads on the passed channel and schedules their resumption
+	 * @param channel The deferred channel
+	 * @param waitNanos The deferral in nanos
+	 */
+	protected void defer(final Channel channel, final long waitNanos) {
+		deferred.incrementAndGet();
+		pending.incrementAndGet();
+		channel.setReadable(false);
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				pending.decrementAndGet();
+				if(channel.isOpen()) channel.setReadable(true);
+			}
+		}, waitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Reserves the next free admission slot
+	 * @return zero if the connection can be admitted now, the nanos until its slot if it must be deferred,
+	 * or -1 if the slot would be beyond the maximum deferral
+	 */
+	protected long reserve() {
+		final long interval = intervalNanos;
+		if(interval==0L) return 0L;
+		final long credit = interval * burst;
+		while(true) {
+			final long now = System.nanoTime();
+			final long current = nextSlot.get();
+			// Idle time accrues credit, up to the burst size
+			final long slot = current - now < -credit ? now - credit : current;
+			final long wait = slot - now;
+			if(wait > maxDelayNanos) return -1L;
+			if(nextSlot.compareAndSet(current, slot + interval)) {
+				return wait <= 0L ? 0L : wait;
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getRate()
+	 */
+	@Override
+	public int getRate() {
+		final long interval = intervalNanos;
+		return interval==0L ? 0 : (int)(TimeUnit.SECONDS.toNanos(1) / interval);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#setRate(int)
+	 */
+	@Override
+	public void setRate(final int rate) {
+		if(rate < 0) throw new IllegalArgumentException("Invalid admission rate [" + rate + "]");
+		intervalNanos = rate==0 ? 0L : TimeUnit.SECONDS.toNanos(1) / rate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getBurst()
+	 */
+	@Override
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getMaxDelay()
+	 */
+	@Override
+	public long getMaxDelay() {
+		return TimeUnit.NANOSECONDS.toMillis(maxDelayNanos);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getAdmittedCount()
+	 */
+	@Override
+	public long getAdmittedCount() {
+		return admitted.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getDeferredCount()
+	 */
+	@Override
+	public long getDeferredCount() {
+		return deferred.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getRejectedCount()
+	 */
+	@Override
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getPendingCount()
+	 */
+	@Override
+	public int getPendingCount() {
+		return pending.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getPeerRate()
+	 */
+	@Override
+	public int getPeerRate() {
+		return ipRate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getPeerBurst()
+	 */
+	@Override
+	public int getPeerBurst() {
+		return ipBurst;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getPeerMaxConnections()
+	 */
+	@Override
+	public int getPeerMaxConnections() {
+		return ipMaxConnections;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getPeerCount()
+	 */
+	@Override
+	public int getPeerCount() {
+		return peers.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#getPeerRejectedCount()
+	 */
+	@Override
+	public long getPeerRejectedCount() {
+		return peerRejected.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.AdmissionControllerMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		admitted.set(0L);
+		deferred.set(0L);
+		rejected.set(0L);
+		peerRejected.set(0L);
+	}
+}
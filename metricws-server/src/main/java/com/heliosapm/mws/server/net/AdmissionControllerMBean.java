@@ -0,0 +1,127 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import javax.management.ObjectName;
+
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: AdmissionControllerMBean</p>
+ * <p>Description: JMX MBean interface for {@link AdmissionController}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.AdmissionControllerMBean</code></p>
+ */
+
+public interface AdmissionControllerMBean {
+	/** The AdmissionController object name */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=AdmissionController");
+	/** The admission scheduler's object name */
+	public static final ObjectName SCHEDULER_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=AdmissionController,pool=Scheduler");
+
+	/**
+	 * Returns the number of new connections admitted per second
+	 * @return the admission rate, zero if admission control is disabled
+	 */
+	public int getRate();
+
+	/**
+	 * Sets the number of new connections admitted per second
+	 * @param rate the admission rate, zero to disable admission control
+	 */
+	public void setRate(int rate);
+
+	/**
+	 * Returns the number of new connections admitted immediately in a burst
+	 * @return the burst size
+	 */
+	public int getBurst();
+
+	/**
+	 * Returns the maximum time in ms. a new connection's reads are deferred before it is rejected
+	 * @return the maximum deferral in ms.
+	 */
+	public long getMaxDelay();
+
+	/**
+	 * Returns the connections per second allowed from one remote address
+	 * @return the per address connection rate, zero if unlimited
+	 */
+	public int getPeerRate();
+
+	/**
+	 * Returns the number of connections allowed at once from one remote address
+	 * @return the per address connection burst
+	 */
+	public int getPeerBurst();
+
+	/**
+	 * Returns the maximum number of open connections from one remote address
+	 * @return the per address connection cap, zero if unlimited
+	 */
+	public int getPeerMaxConnections();
+
+	/**
+	 * Returns the number of remote addresses with tracked admission state
+	 * @return the number of tracked remote addresses
+	 */
+	public int getPeerCount();
+
+	/**
+	 * Returns the number of connections rejected by the per address limits
+	 * @return the number of connections rejected by the per address limits
+	 */
+	public long getPeerRejectedCount();
+
+	/**
+	 * Returns the number of connections admitted immediately
+	 * @return the number of connections admitted immediately
+	 */
+	public long getAdmittedCount();
+
+	/**
+	 * Returns the number of connections admitted after a deferral
+	 * @return the number of deferred connections
+	 */
+	public long getDeferredCount();
+
+	/**
+	 * Returns the number of connections rejected because the deferral would have exceeded the maximum
+	 * @return the number of rejected connections
+	 */
+	public long getRejectedCount();
+
+	/**
+	 * Returns the number of connections currently deferred
+	 * @return the number of connections currently deferred
+	 */
+	public int getPendingCount();
+
+	/**
+	 * Resets the counters
+	 */
+	public void reset();
+}
@@ -0,0 +1,347 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanNotificationInfo;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.concurrency.JMXManagedScheduler;
+import com.heliosapm.jmx.metrics.LogLinearHistogram;
+import com.heliosapm.jmx.notif.SharedNotificationExecutor;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: EventLoopProbe</p>
+ * <p>Description: Measures how promptly each NIO worker gets around to queued work. Every period a no-op task is
+ * queued onto each worker and the delay until it runs is recorded in the worker's latency histogram. A worker
+ * whose latency crosses the threshold, or whose probe is still waiting a full period later, triggers a JMX
+ * notification carrying the worker thread's stack at that moment, which normally points straight at the
+ * handler blocking the I/O thread. A second notification is sent when the worker recovers.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.EventLoopProbe</code></p>
+ */
+
+public class EventLoopProbe extends NotificationBroadcasterSupport implements EventLoopProbeMBean, Runnable {
+	/** The maximum number of stack frames included in a notification */
+	public static final int MAX_FRAMES = 24;
+
+	private static final MBeanNotificationInfo[] NOTIFS = new MBeanNotificationInfo[]{
+		new MBeanNotificationInfo(new String[]{NOTIF_EXCEEDED, NOTIF_CLEARED}, Notification.class.getName(), "An NIO worker event loop latency threshold event: exceeded or cleared")
+	};
+
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The per-worker probes */
+	protected final WorkerProbe[] probes;
+	/** The probe scheduler */
+	protected final JMXManagedScheduler scheduler;
+	/** The probe period in ms. */
+	protected final long period;
+	/** The latency threshold in nanos */
+	protected volatile long thresholdNanos;
+	/** The number of threshold crossings */
+	protected final AtomicLong exceeded = new AtomicLong();
+	/** Notif sequence number supplier */
+	protected final AtomicLong notifSerial = new AtomicLong();
+
+	/**
+	 * Creates a new EventLoopProbe and starts probing if the configured period is not zero
+	 * @param workerPool The instrumented worker pool to probe
+	 */
+	public EventLoopProbe(final InstrumentedNioWorkerPool workerPool) {
+		super(SharedNotificationExecutor.getInstance(), NOTIFS);
+		final List<InstrumentedNioWorker> workers = workerPool.getWorkers();
+		probes = new WorkerProbe[workers.size()];
+		for(int i = 0; i < probes.length; i++) {
+			probes[i] = new WorkerProbe(workers.get(i));
+		}
+		period = ConfigurationHelper.getConfig().get(Configuration.NIO_PROBE_PERIOD_PROP, long.class);
+		setThreshold(ConfigurationHelper.getConfig().get(Configuration.NIO_PROBE_THRESHOLD_PROP, long.class));
+		if(period > 0L) {
+			scheduler = new JMXManagedScheduler(SCHEDULER_OBJECT_NAME, "EventLoopProbe", 1, true);
+			scheduler.scheduleWithFixedDelay(this, period, period, TimeUnit.MILLISECONDS);
+		} else {
+			scheduler = null;
+		}
+		JMXHelper.registerMBean(this, OBJECT_NAME);
+	}
+
+	/**
+	 * Sends a probe to every worker which has no probe outstanding, and checks outstanding probes for stalls
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		final long now = System.nanoTime();
+		for(WorkerProbe probe: probes) {
+			try {
+				final long sent = probe.sentAt;
+				if(sent==0L) {
+					probe.send(now);
+				} else if(now - sent > thresholdNanos) {
+					// Still waiting: the worker is blocked right now
+					probe.exceeded(now - sent);
+				}
+			} catch (Exception ex) {
+				log.warn("Failed to probe NIO worker #{}", probe.worker.getIndex(), ex);
+			}
+		}
+	}
+
+	/**
+	 * Stops probing
+	 */
+	public void stop() {
+		if(scheduler!=null) scheduler.shutdownNow();
+	}
+
+	/**
+	 * Dispatches a JMX notification
+	 * @param type The notification type
+	 * @param message The notification message
+	 * @param userData The optional user data to attach
+	 */
+	protected void sendNotification(final String type, final String message, final Object userData) {
+		final Notification n = new Notification(type, OBJECT_NAME, notifSerial.incrementAndGet(), System.currentTimeMillis(), message);
+		if(userData!=null) {
+			n.setUserData(userData);
+		}
+		sendNotification(n);
+	}
+
+	/**
+	 * Renders the top frames of a thread's stack
+	 * @param thread The thread
+	 * @return the rendered stack
+	 */
+	protected static String stack(final Thread thread) {
+		if(thread==null) return "";
+		final StackTraceElement[] frames = thread.getStackTrace();
+		final StringBuilder b = new StringBuilder(thread.getName()).append(" [").append(thread.getState()).append("]");
+		for(int i = 0; i < frames.length && i < MAX_FRAMES; i++) {
+			b.append("\n\tat ").append(frames[i]);
+		}
+		if(frames.length > MAX_FRAMES) b.append("\n\t...");
+		return b.toString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.EventLoopProbeMBean#getPeriod()
+	 */
+	@Override
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.EventLoopProbeMBean#getThreshold()
+	 */
+	@Override
+	public long getThreshold() {
+		return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.EventLoopProbeMBean#setThreshold(long)
+	 */
+	@Override
+	public void setThreshold(final long threshold) {
+		if(threshold < 1L) throw new IllegalArgumentException("Invalid threshold [" + threshold + "]");
+		thresholdNanos = TimeUnit.MILLISECONDS.toNanos(threshold);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.EventLoopProbeMBean#getLatencies()
+	 */
+	@Override
+	public String[] getLatencies() {
+		final String[] latencies = new String[probes.length];
+		for(int i = 0; i < probes.length; i++) {
+			latencies[i] = "NioWorker#" + probes[i].worker.getIndex() + " " + probes[i].histogram;
+		}
+		return latencies;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.EventLoopProbeMBean#getLatencyMetrics()
+	 */
+	@Override
+	public Map<String, Long> getLatencyMetrics() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		for(WorkerProbe probe: probes) {
+			final String prefix = "worker" + probe.worker.getIndex() + ".";
+			for(Map.Entry<String, Long> entry: probe.histogram.toMap().entrySet()) {
+				map.put(prefix + entry.getKey(), entry.getValue());
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.EventLoopProbeMBean#getExceededCount()
+	 */
+	@Override
+	public long getExceededCount() {
+		return exceeded.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.EventLoopProbeMBean#getExceedingWorkers()
+	 */
+	@Override
+	public int getExceedingWorkers() {
+		int count = 0;
+		for(WorkerProbe probe: probes) {
+			if(probe.exceeding.get()) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.EventLoopProbeMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		exceeded.set(0L);
+		for(WorkerProbe probe: probes) {
+			probe.histogram.reset();
+		}
+	}
+
+	/**
+	 * <p>Title: WorkerProbe</p>
+	 * <p>Description: The probe state and latency histogram of one worker. At most one probe task is outstanding per worker.</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.mws.server.net.EventLoopProbe.WorkerProbe</code></p>
+	 */
+	protected class WorkerProbe implements Runnable {
+		/** The probed worker */
+		final InstrumentedNioWorker worker;
+		/** The latency histogram in microseconds */
+		final LogLinearHistogram histogram = new LogLinearHistogram();
+		/** The nano time the outstanding probe was sent, zero if no probe is outstanding */
+		volatile long sentAt = 0L;
+		/** Indicates if the worker is currently over the threshold. Set by both the scheduler (stalls) and the worker (probe runs) */
+		final AtomicBoolean exceeding = new AtomicBoolean(false);
+
+		/**
+		 * Creates a new WorkerProbe
+		 * @param worker The probed worker
+		 */
+		WorkerProbe(final InstrumentedNioWorker worker) {
+			this.worker = worker;
+		}
+
+		/**
+		 * Queues the probe onto the worker
+		 * @param now The current nano time
+		 */
+		void send(final long now) {
+			sentAt = now;
+			worker.executeInIoThread(this, true);
+		}
+
+		/**
+		 * Runs in the worker thread and records the time since the probe was sent
+		 * {@inheritDoc}
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			final long latency = System.nanoTime() - sentAt;
+			histogram.record(TimeUnit.NANOSECONDS.toMicros(latency));
+			if(latency > thresholdNanos) {
+				exceeded(latency);
+			} else {
+				cleared(latency);
+			}
+			sentAt = 0L;
+		}
+
+		/**
+		 * Handles a latency over the threshold, notifying on the first crossing
+		 * @param latency The latency in nanos
+		 */
+		void exceeded(final long latency) {
+			if(!exceeding.compareAndSet(false, true)) return;
+			exceeded.incrementAndGet();
+			final Thread thread = worker.getThread();
+			final String stack = stack(thread);
+			final long ms = TimeUnit.NANOSECONDS.toMillis(latency);
+			log.warn("NIO worker #{} event loop latency [{}] ms. exceeds threshold [{}] ms.\n{}", worker.getIndex(), ms, getThreshold(), stack);
+			sendNotification(NOTIF_EXCEEDED, "NIO worker #" + worker.getIndex() + " event loop latency [" + ms + "] ms. exceeds threshold [" + getThreshold() + "] ms.", userData(ms, stack));
+		}
+
+		/**
+		 * Handles a latency under the threshold, notifying on the first crossing back
+		 * @param latency The latency in nanos
+		 */
+		void cleared(final long latency) {
+			if(!exceeding.compareAndSet(true, false)) return;
+			final long ms = TimeUnit.NANOSECONDS.toMillis(latency);
+			log.info("NIO worker #{} event loop latency back under threshold: [{}] ms.", worker.getIndex(), ms);
+			sendNotification(NOTIF_CLEARED, "NIO worker #" + worker.getIndex() + " event loop latency [" + ms + "] ms. is back under threshold [" + getThreshold() + "] ms.", userData(ms, null));
+		}
+
+		/**
+		 * Builds a notification's user data
+		 * @param ms The latency in ms.
+		 * @param stack The worker thread's stack, may be null
+		 * @return the user data map
+		 */
+		private HashMap<String, Object> userData(final long ms, final String stack) {
+			final HashMap<String, Object> map = new HashMap<String, Object>(4);
+			map.put("worker", worker.getIndex());
+			map.put("latency", ms);
+			if(stack!=null) map.put("stack", stack);
+			return map;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: EventLoopProbeMBean</p>
+ * <p>Description: JMX MBean interface for {@link EventLoopProbe}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.EventLoopProbeMBean</code></p>
+ */
+
+public interface EventLoopProbeMBean {
+	/** The EventLoopProbe object name */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=EventLoopProbe");
+	/** The probe scheduler's object name */
+	public static final ObjectName SCHEDULER_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=EventLoopProbe,pool=Scheduler");
+
+	/** The notification type root */
+	public static final String NOTIF_ROOT = "mws.nio.probe";
+	/** The notification type sent when a worker's event loop latency exceeds the threshold */
+	public static final String NOTIF_EXCEEDED = NOTIF_ROOT + ".exceeded";
+	/** The notification type sent when a worker's event loop latency drops back under the threshold */
+	public static final String NOTIF_CLEARED = NOTIF_ROOT + ".cleared";
+
+	/**
+	 * Returns the probe period in ms.
+	 * @return the probe period in ms.
+	 */
+	public long getPeriod();
+
+	/**
+	 * Returns the latency threshold in ms.
+	 * @return the latency threshold in ms.
+	 */
+	public long getThreshold();
+
+	/**
+	 * Sets the latency threshold in ms.
+	 * @param threshold the latency threshold in ms.
+	 */
+	public void setThreshold(long threshold);
+
+	/**
+	 * Returns a summary of each worker's event loop latency histogram, in microseconds
+	 * @return the per-worker latency summaries
+	 */
+	public String[] getLatencies();
+
+	/**
+	 * Returns each worker's event loop latency statistics in microseconds, keyed by
+	 * <b><code>worker&lt;n&gt;.&lt;stat&gt;</code></b>
+	 * @return the per-worker latency statistics
+	 */
+	public Map<String, Long> getLatencyMetrics();
+
+	/**
+	 * Returns the number of times a worker's latency crossed the threshold
+	 * @return the number of threshold crossings
+	 */
+	public long getExceededCount();
+
+	/**
+	 * Returns the number of workers currently over the threshold
+	 * @return the number of workers over the threshold
+	 */
+	public int getExceedingWorkers();
+
+	/**
+	 * Resets the latency histograms and counters
+	 */
+	public void reset();
+}
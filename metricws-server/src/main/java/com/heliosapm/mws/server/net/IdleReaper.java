@@ -0,0 +1,223 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import org.jboss.netty.handler.timeout.IdleState;
+import org.jboss.netty.handler.timeout.IdleStateAwareChannelUpstreamHandler;
+import org.jboss.netty.handler.timeout.IdleStateEvent;
+import org.jboss.netty.handler.timeout.IdleStateHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+import com.heliosapm.mws.server.net.json.SubscriptionRegistry;
+import com.heliosapm.mws.server.net.ws.WebSocketHandshakeHandler;
+
+/**
+ * <p>Title: IdleReaper</p>
+ * <p>Description: Detects and reaps dead peers. The shared {@link #getIdleStateHandler() idle state handler},
+ * driven by the {@link SharedTimer}, raises a reader idle event each time a connection has gone the configured
+ * time without sending anything. An idle web socket is pinged, and since a pong is a read, a live peer resets
+ * the idle clock. A connection still silent after the configured number of pings, or an idle plain HTTP
+ * connection, is reaped: its subscriptions are cancelled and it is closed.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.IdleReaper</code></p>
+ */
+@ChannelHandler.Sharable
+public class IdleReaper extends IdleStateAwareChannelUpstreamHandler implements IdleReaperMBean {
+	/** The singleton instance */
+	private static volatile IdleReaper instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The shared idle state handler */
+	protected final IdleStateHandler idleStateHandler;
+	/** The reader idle time in seconds */
+	protected final int readerIdleTime;
+	/** The number of unanswered pings after which a connection is reaped */
+	protected final int maxPings;
+
+	/** The number of idle events */
+	protected final AtomicLong idleEvents = new AtomicLong();
+	/** The number of pings sent */
+	protected final AtomicLong pings = new AtomicLong();
+	/** The number of reaped connections */
+	protected final AtomicLong reaped = new AtomicLong();
+	/** The number of subscriptions cancelled by reaping */
+	protected final AtomicLong reapedSubscriptions = new AtomicLong();
+
+	/**
+	 * Acquires and returns the singleton instance
+	 * @return the singleton instance
+	 */
+	public static IdleReaper getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new IdleReaper();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a new IdleReaper
+	 */
+	private IdleReaper() {
+		readerIdleTime = ConfigurationHelper.getConfig().get(Configuration.IDLE_READER_PROP, int.class);
+		maxPings = ConfigurationHelper.getConfig().get(Configuration.IDLE_MAXPINGS_PROP, int.class);
+		idleStateHandler = new IdleStateHandler(SharedTimer.getTimer(), readerIdleTime, 0, 0);
+		JMXHelper.registerMBean(this, OBJECT_NAME);
+	}
+
+	/**
+	 * Returns the shared idle state handler which raises the idle events handled by this reaper
+	 * @return the shared idle state handler
+	 */
+	public IdleStateHandler getIdleStateHandler() {
+		return idleStateHandler;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.handler.timeout.IdleStateAwareChannelUpstreamHandler#channelIdle(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.handler.timeout.IdleStateEvent)
+	 */
+	@Override
+	public void channelIdle(final ChannelHandlerContext ctx, final IdleStateEvent e) throws Exception {
+		if(e.getState()!=IdleState.READER_IDLE) return;
+		idleEvents.incrementAndGet();
+		final Channel channel = e.getChannel();
+		final long idleMs = System.currentTimeMillis() - e.getLastActivityTimeMillis();
+		// The idle event repeats every reader idle period, so the elapsed periods give the pings already sent
+		final long periods = idleMs / TimeUnit.SECONDS.toMillis(readerIdleTime);
+		if(WebSocketHandshakeHandler.isWebSocket(channel) && periods <= maxPings) {
+			pings.incrementAndGet();
+			channel.write(new PingWebSocketFrame());
+			return;
+		}
+		reap(channel, idleMs);
+	}
+
+	/**
+	 * Cancels the subscriptions of a dead connection and closes it
+	 * @param channel The channel to reap
+	 * @param idleMs The time in ms. the channel has been idle
+	 */
+	protected void reap(final Channel channel, final long idleMs) {
+		reaped.incrementAndGet();
+		final int cancelled = SubscriptionRegistry.cancelAll(channel);
+		reapedSubscriptions.addAndGet(cancelled);
+		log.info("Reaping connection [{}], idle for [{}] ms., cancelled [{}] subscriptions", channel.getRemoteAddress(), idleMs, cancelled);
+		channel.close();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.IdleReaperMBean#getReaderIdleTime()
+	 */
+	@Override
+	public int getReaderIdleTime() {
+		return readerIdleTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.IdleReaperMBean#getMaxPings()
+	 */
+	@Override
+	public int getMaxPings() {
+		return maxPings;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.IdleReaperMBean#getIdleCount()
+	 */
+	@Override
+	public long getIdleCount() {
+		return idleEvents.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.IdleReaperMBean#getPingCount()
+	 */
+	@Override
+	public long getPingCount() {
+		return pings.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.IdleReaperMBean#getReapedCount()
+	 */
+	@Override
+	public long getReapedCount() {
+		return reaped.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.IdleReaperMBean#getReapedSubscriptionCount()
+	 */
+	@Override
+	public long getReapedSubscriptionCount() {
+		return reapedSubscriptions.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.IdleReaperMBean#getActiveSubscriptionCount()
+	 */
+	@Override
+	public int getActiveSubscriptionCount() {
+		return SubscriptionRegistry.getActiveCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.IdleReaperMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		idleEvents.set(0L);
+		pings.set(0L);
+		reaped.set(0L);
+		reapedSubscriptions.set(0L);
+	}
+}
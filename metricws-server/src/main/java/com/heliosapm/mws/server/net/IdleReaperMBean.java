@@ -0,0 +1,89 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import javax.management.ObjectName;
+
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: IdleReaperMBean</p>
+ * <p>Description: JMX MBean interface for {@link IdleReaper}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.IdleReaperMBean</code></p>
+ */
+
+public interface IdleReaperMBean {
+	/** The IdleReaper object name */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=IdleReaper");
+
+	/**
+	 * Returns the time in seconds without reads after which a connection is pinged
+	 * @return the reader idle time in seconds
+	 */
+	public int getReaderIdleTime();
+
+	/**
+	 * Returns the number of unanswered pings after which a connection is reaped
+	 * @return the maximum unanswered pings
+	 */
+	public int getMaxPings();
+
+	/**
+	 * Returns the number of reader idle events
+	 * @return the number of idle events
+	 */
+	public long getIdleCount();
+
+	/**
+	 * Returns the number of pings sent to idle web sockets
+	 * @return the number of pings sent
+	 */
+	public long getPingCount();
+
+	/**
+	 * Returns the number of connections reaped
+	 * @return the number of reaped connections
+	 */
+	public long getReapedCount();
+
+	/**
+	 * Returns the number of subscriptions cancelled by reaping
+	 * @return the number of reaped subscriptions
+	 */
+	public long getReapedSubscriptionCount();
+
+	/**
+	 * Returns the number of active subscriptions across all channels
+	 * @return the number of active subscriptions
+	 */
+	public int getActiveSubscriptionCount();
+
+	/**
+	 * Resets the counters
+	 */
+	public void reset();
+}
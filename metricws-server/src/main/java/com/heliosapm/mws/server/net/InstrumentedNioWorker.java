@@ -0,0 +1,261 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.socket.nio.NioWorker;
+
+/**
+ * <p>Title: InstrumentedNioWorker</p>
+ * <p>Description: A Netty NIO worker which keeps count of the channels it owns, its selects and the time
+ * it spends in handlers (selected key processing and queued tasks) versus blocked in select.
+ * The select and processing counters are only written by the worker's own thread, so they are updated
+ * with ordered writes rather than atomic increments.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.InstrumentedNioWorker</code></p>
+ */
+
+public class InstrumentedNioWorker extends NioWorker {
+	/** The worker's index in its pool */
+	protected final int index;
+	/** The number of channels currently owned by this worker */
+	protected final AtomicInteger channels = new AtomicInteger();
+	/** The number of channels ever registered with this worker */
+	protected final AtomicLong registered = new AtomicLong();
+	/** The number of selects */
+	protected final AtomicLong selects = new AtomicLong();
+	/** The nanos spent blocked in select */
+	protected final AtomicLong selectNanos = new AtomicLong();
+	/** The nanos spent processing selected keys */
+	protected final AtomicLong processNanos = new AtomicLong();
+	/** The number of tasks executed in the worker thread */
+	protected final AtomicLong tasks = new AtomicLong();
+	/** The nanos spent executing tasks */
+	protected final AtomicLong taskNanos = new AtomicLong();
+	/** The select count and nano time of the last select rate sample */
+	private final long[] lastSample = new long[]{0L, System.nanoTime()};
+
+	/** Decrements the owned channel count when a channel closes */
+	private final ChannelFutureListener closeListener = new ChannelFutureListener() {
+		@Override
+		public void operationComplete(final ChannelFuture future) throws Exception {
+			channels.decrementAndGet();
+		}
+	};
+
+	/**
+	 * Creates a new InstrumentedNioWorker
+	 * @param executor The executor providing the worker thread
+	 * @param index The worker's index in its pool
+	 */
+	public InstrumentedNioWorker(final Executor executor, final int index) {
+		super(executor);
+		this.index = index;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.socket.nio.NioWorker#register(org.jboss.netty.channel.Channel, org.jboss.netty.channel.ChannelFuture)
+	 */
+	@Override
+	public void register(final Channel channel, final ChannelFuture future) {
+		channels.incrementAndGet();
+		registered.incrementAndGet();
+		channel.getCloseFuture().addListener(closeListener);
+		super.register(channel, future);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.socket.nio.AbstractNioSelector#select(java.nio.channels.Selector)
+	 */
+	@Override
+	protected int select(final Selector selector) throws IOException {
+		final long start = System.nanoTime();
+		try {
+			return super.select(selector);
+		} finally {
+			selectNanos.lazySet(selectNanos.get() + System.nanoTime() - start);
+			selects.lazySet(selects.get() + 1);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.socket.nio.AbstractNioWorker#process(java.nio.channels.Selector)
+	 */
+	@Override
+	protected void process(final Selector selector) throws IOException {
+		final long start = System.nanoTime();
+		try {
+			super.process(selector);
+		} finally {
+			processNanos.lazySet(processNanos.get() + System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.socket.nio.NioWorker#executeInIoThread(java.lang.Runnable, boolean)
+	 */
+	@Override
+	public void executeInIoThread(final Runnable task, final boolean alwaysAsync) {
+		super.executeInIoThread(new Runnable() {
+			@Override
+			public void run() {
+				final long start = System.nanoTime();
+				try {
+					task.run();
+				} finally {
+					taskNanos.addAndGet(System.nanoTime() - start);
+					tasks.incrementAndGet();
+				}
+			}
+		}, alwaysAsync);
+	}
+
+	/**
+	 * Returns the worker's index in its pool
+	 * @return the worker's index
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the worker's thread
+	 * @return the worker's thread, null if the worker has not started
+	 */
+	public Thread getThread() {
+		return thread;
+	}
+
+	/**
+	 * Returns the number of channels currently owned by this worker
+	 * @return the number of owned channels
+	 */
+	public int getChannelCount() {
+		return channels.get();
+	}
+
+	/**
+	 * Returns the number of channels ever registered with this worker
+	 * @return the number of registered channels
+	 */
+	public long getRegisteredCount() {
+		return registered.get();
+	}
+
+	/**
+	 * Returns the number of selects
+	 * @return the number of selects
+	 */
+	public long getSelectCount() {
+		return selects.get();
+	}
+
+	/**
+	 * Returns the select rate per second since the previous call
+	 * @return the select rate per second
+	 */
+	public long getSelectRate() {
+		final long count = selects.get();
+		final long now = System.nanoTime();
+		final long priorCount, priorTime;
+		synchronized(lastSample) {
+			priorCount = lastSample[0];
+			priorTime = lastSample[1];
+			lastSample[0] = count;
+			lastSample[1] = now;
+		}
+		final long elapsed = now - priorTime;
+		return elapsed <= 0L ? 0L : (count - priorCount) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+
+	/**
+	 * Returns the number of tasks executed in the worker thread
+	 * @return the number of tasks
+	 */
+	public long getTaskCount() {
+		return tasks.get();
+	}
+
+	/**
+	 * Returns the time in ms. spent in handlers, processing selected keys and executing tasks
+	 * @return the handler time in ms.
+	 */
+	public long getHandlerTime() {
+		return TimeUnit.NANOSECONDS.toMillis(processNanos.get() + taskNanos.get());
+	}
+
+	/**
+	 * Returns the time in ms. spent blocked in select
+	 * @return the select time in ms.
+	 */
+	public long getSelectTime() {
+		return TimeUnit.NANOSECONDS.toMillis(selectNanos.get());
+	}
+
+	/**
+	 * Returns this worker's metrics keyed by metric name
+	 * @return this worker's metrics
+	 */
+	public Map<String, Long> getMetrics() {
+		final Map<String, Long> map = new LinkedHashMap<String, Long>();
+		map.put("channels", (long)getChannelCount());
+		map.put("registered", getRegisteredCount());
+		map.put("selects", getSelectCount());
+		map.put("selectRate", getSelectRate());
+		map.put("tasks", getTaskCount());
+		map.put("handlerTime", getHandlerTime());
+		map.put("selectTime", getSelectTime());
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final Thread t = thread;
+		return new StringBuilder("NioWorker#").append(index)
+			.append(" [thread:").append(t==null ? "<not started>" : t.getName())
+			.append(", ").append(getMetrics())
+			.append("]").toString();
+	}
+}
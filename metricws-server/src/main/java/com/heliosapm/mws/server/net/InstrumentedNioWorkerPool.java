@@ -0,0 +1,120 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+import org.jboss.netty.channel.socket.nio.NioWorker;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+
+import com.heliosapm.jmx.concurrency.WorkerStatsProvider;
+
+/**
+ * <p>Title: InstrumentedNioWorkerPool</p>
+ * <p>Description: A fixed size pool of {@link InstrumentedNioWorker}s which reports its per-worker statistics,
+ * including the spread of channels across workers.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.InstrumentedNioWorkerPool</code></p>
+ */
+
+public class InstrumentedNioWorkerPool extends NioWorkerPool implements WorkerStatsProvider {
+	/**
+	 * The pool's workers. The super constructor creates the workers before this class's initializers
+	 * would run, so this field is deliberately left uninitialized and created by the first {@link #newWorker(Executor)}.
+	 */
+	private List<InstrumentedNioWorker> workers;
+
+	/**
+	 * Creates a new InstrumentedNioWorkerPool
+	 * @param workerExecutor The executor providing the worker threads
+	 * @param workerCount The number of workers
+	 */
+	public InstrumentedNioWorkerPool(final Executor workerExecutor, final int workerCount) {
+		super(workerExecutor, workerCount);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.socket.nio.NioWorkerPool#newWorker(java.util.concurrent.Executor)
+	 */
+	@Override
+	protected NioWorker newWorker(final Executor executor) {
+		if(workers==null) workers = new ArrayList<InstrumentedNioWorker>();
+		final InstrumentedNioWorker worker = new InstrumentedNioWorker(executor, workers.size());
+		workers.add(worker);
+		return worker;
+	}
+
+	/**
+	 * Returns the pool's workers
+	 * @return the pool's workers
+	 */
+	public List<InstrumentedNioWorker> getWorkers() {
+		return Collections.unmodifiableList(workers);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.WorkerStatsProvider#getWorkerStats()
+	 */
+	@Override
+	public String[] getWorkerStats() {
+		final String[] stats = new String[workers.size()];
+		for(int i = 0; i < stats.length; i++) {
+			stats[i] = workers.get(i).toString();
+		}
+		return stats;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.jmx.concurrency.WorkerStatsProvider#getWorkerMetrics()
+	 */
+	@Override
+	public Map<String, Long> getWorkerMetrics() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		int min = Integer.MAX_VALUE, max = 0;
+		for(InstrumentedNioWorker worker: workers) {
+			final String prefix = "worker" + worker.getIndex() + ".";
+			for(Map.Entry<String, Long> entry: worker.getMetrics().entrySet()) {
+				map.put(prefix + entry.getKey(), entry.getValue());
+			}
+			final int channels = worker.getChannelCount();
+			if(channels < min) min = channels;
+			if(channels > max) max = channels;
+		}
+		if(!workers.isEmpty()) {
+			map.put("channels.min", (long)min);
+			map.put("channels.max", (long)max);
+		}
+		return map;
+	}
+}
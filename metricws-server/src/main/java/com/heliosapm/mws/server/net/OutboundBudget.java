@@ -0,0 +1,535 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+import com.heliosapm.mws.server.net.json.SubscriptionRegistry;
+import com.heliosapm.mws.server.net.ws.SubscriptionFrame;
+
+/**
+ * <p>Title: OutboundBudget</p>
+ * <p>Description: Accounts for every outbound byte written but not yet flushed to a socket, against a server
+ * wide budget. Netty queues outbound buffers without limit, so a few slow consumers of a busy subscription can
+ * otherwise pin direct memory until the process fails. A channel whose pending bytes pass the high watermark is
+ * congested until they drain below the low watermark (the same watermarks are set on the sockets so that
+ * {@link Channel#isWritable()} follows them). While the budget is exhausted, writes to congested channels invoke
+ * the configured {@link Policy}.</p>
+ * <p>This handler sits at the head of the pipeline where it sees encoded bytes. The CONFLATE policy needs to know which
+ * subscription a write belongs to, so it is applied by the {@link Conflater} (see {@link #getConflater()}), which must be
+ * installed above the encoder.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.OutboundBudget</code></p>
+ */
+@ChannelHandler.Sharable
+public class OutboundBudget extends SimpleChannelDownstreamHandler implements OutboundBudgetMBean {
+	/** The singleton instance */
+	private static volatile OutboundBudget instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+
+	/** The minimum period in nanos between two SHED or DISCONNECT enforcements */
+	public static final long ENFORCE_PERIOD = TimeUnit.MILLISECONDS.toNanos(100);
+	/** The failure of a held subscription event superseded by a later event of the same subscription */
+	public static final CancellationException SUPERSEDED = new CancellationException("Superseded by a later event of the same subscription");
+	/** The failure of a held subscription event discarded when its subscription stopped */
+	public static final CancellationException STOPPED = new CancellationException("The subscription was stopped");
+
+	/**
+	 * <p>Title: Policy</p>
+	 * <p>Description: The policies applied when the outbound budget is exhausted</p> 
+	 */
+	public static enum Policy {
+		/** A congested channel holds only the latest event of each subscription until it drains. Nothing else is held or dropped. */
+		CONFLATE,
+		/** The subscriptions of the most congested channel are cancelled */
+		SHED,
+		/** The most congested channel is closed */
+		DISCONNECT;
+	}
+
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The server wide outbound byte budget */
+	protected final long budget;
+	/** The per channel high watermark */
+	protected final int high;
+	/** The per channel low watermark */
+	protected final int low;
+	/** The policy applied when the budget is exhausted */
+	protected volatile Policy policy;
+	/** The server wide pending outbound bytes */
+	protected final AtomicLong pending = new AtomicLong();
+	/** The peak pending outbound bytes */
+	protected final AtomicLong peak = new AtomicLong();
+	/** The nano time of the last SHED or DISCONNECT enforcement */
+	protected final AtomicLong lastEnforced = new AtomicLong(System.nanoTime() - ENFORCE_PERIOD);
+	/** The congested channels */
+	protected final Map<Channel, Backlog> congested = new NonBlockingHashMap<Channel, Backlog>();
+	/** The outbound backlog of each channel */
+	protected final ChannelLocal<Backlog> backlogs = new ChannelLocal<Backlog>(true);
+	/** The handler applying the CONFLATE policy above the encoder */
+	protected final Conflater conflater = new Conflater();
+
+	/** The number of over budget writes */
+	protected final AtomicLong overBudget = new AtomicLong();
+	/** The number of conflated writes */
+	protected final AtomicLong conflated = new AtomicLong();
+	/** The number of shed subscriptions */
+	protected final AtomicLong shed = new AtomicLong();
+	/** The number of disconnected channels */
+	protected final AtomicLong disconnects = new AtomicLong();
+
+	/**
+	 * <p>Title: Backlog</p>
+	 * <p>Description: The outbound backlog of one channel</p> 
+	 */
+	protected class Backlog implements ChannelFutureListener {
+		/** The channel's handler context */
+		final ChannelHandlerContext ctx;
+		/** The channel's pending outbound bytes */
+		final AtomicLong bytes = new AtomicLong();
+		/** The subscription events held back under the CONFLATE policy keyed by subscription key, guarded by the backlog */
+		final Map<String, MessageEvent> parked = new LinkedHashMap<String, MessageEvent>();
+		/** The conflater's context on this channel, set when the first event is held */
+		volatile ChannelHandlerContext conflaterCtx = null;
+
+		/**
+		 * Creates a new Backlog
+		 * @param ctx The channel's handler context
+		 */
+		Backlog(final ChannelHandlerContext ctx) {
+			this.ctx = ctx;
+		}
+
+		/**
+		 * Holds a subscription event, superseding the held event of the same subscription
+		 * @param conflaterCtx The conflater's context
+		 * @param subKey The subscription key
+		 * @param e The event's write
+		 */
+		void park(final ChannelHandlerContext conflaterCtx, final String subKey, final MessageEvent e) {
+			this.conflaterCtx = conflaterCtx;
+			final MessageEvent superseded;
+			synchronized(this) {
+				superseded = parked.put(subKey, e);
+			}
+			if(superseded!=null) {
+				conflated.incrementAndGet();
+				superseded.getFuture().setFailure(SUPERSEDED);
+			}
+		}
+
+		/**
+		 * Discards the held event of a stopped subscription
+		 * @param subKey The subscription key
+		 */
+		void discard(final String subKey) {
+			final MessageEvent me;
+			synchronized(this) {
+				me = parked.isEmpty() ? null : parked.remove(subKey);
+			}
+			if(me!=null) me.getFuture().setFailure(STOPPED);
+		}
+
+		/**
+		 * Indicates if any subscription event is held
+		 * @return true if any subscription event is held
+		 */
+		synchronized boolean hasParked() {
+			return !parked.isEmpty();
+		}
+
+		/**
+		 * Removes and returns the held subscription events
+		 * @return the held subscription events in the order they were first held
+		 */
+		synchronized List<MessageEvent> drain() {
+			if(parked.isEmpty()) return null;
+			final List<MessageEvent> events = new ArrayList<MessageEvent>(parked.values());
+			parked.clear();
+			return events;
+		}
+
+		/**
+		 * Sends the held subscription events on through the encoder
+		 */
+		void release() {
+			final List<MessageEvent> events = drain();
+			if(events==null) return;
+			final ChannelHandlerContext cctx = conflaterCtx;
+			for(MessageEvent me: events) {
+				if(cctx.getChannel().isOpen()) cctx.sendDownstream(me);
+				else me.getFuture().setFailure(new ClosedChannelException());
+			}
+		}
+
+		/**
+		 * Fails the held subscription events that never went out when the channel closes
+		 * @param future The channel's close future
+		 */
+		@Override
+		public void operationComplete(final ChannelFuture future) throws Exception {
+			congested.remove(ctx.getChannel());
+			final List<MessageEvent> events = drain();
+			if(events==null) return;
+			for(MessageEvent me: events) {
+				me.getFuture().setFailure(new ClosedChannelException());
+			}
+		}
+	}
+
+	/**
+	 * <p>Title: Release</p>
+	 * <p>Description: Returns the bytes of a completed write to the budget</p> 
+	 */
+	protected class Release implements ChannelFutureListener {
+		/** The backlog the write was accounted to */
+		final Backlog backlog;
+		/** The size of the write */
+		final int size;
+
+		/**
+		 * Creates a new Release
+		 * @param backlog The backlog the write was accounted to
+		 * @param size The size of the write
+		 */
+		Release(final Backlog backlog, final int size) {
+			this.backlog = backlog;
+			this.size = size;
+		}
+
+		@Override
+		public void operationComplete(final ChannelFuture future) throws Exception {
+			pending.addAndGet(-size);
+			final long remaining = backlog.bytes.addAndGet(-size);
+			if(remaining < low && congested.remove(future.getChannel())!=null) {
+				backlog.release();
+			}
+		}
+	}
+
+	/**
+	 * Acquires and returns the singleton instance
+	 * @return the singleton instance
+	 */
+	public static OutboundBudget getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new OutboundBudget();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a new OutboundBudget
+	 */
+	private OutboundBudget() {
+		budget = ConfigurationHelper.getConfig().get(Configuration.OUTBOUND_BUDGET_PROP, long.class);
+		high = ConfigurationHelper.getConfig().get(Configuration.OUTBOUND_HIGH_PROP, int.class);
+		low = Math.min(high, ConfigurationHelper.getConfig().get(Configuration.OUTBOUND_LOW_PROP, int.class));
+		setPolicy(ConfigurationHelper.getConfig().get(Configuration.OUTBOUND_POLICY_PROP, String.class));
+		JMXHelper.registerMBean(this, OBJECT_NAME);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelDownstreamHandler#writeRequested(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+	 */
+	@Override
+	public void writeRequested(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+		if(!(e.getMessage() instanceof ChannelBuffer)) {
+			ctx.sendDownstream(e);
+			return;
+		}
+		final Channel channel = e.getChannel();
+		Backlog backlog = backlogs.get(channel);
+		if(backlog==null) {
+			backlog = new Backlog(ctx);
+			backlogs.set(channel, backlog);
+			channel.getCloseFuture().addListener(backlog);
+		}
+		if(pending.get() >= budget && backlog.bytes.get() >= high) {
+			overBudget.incrementAndGet();
+			switch(policy) {
+				case CONFLATE:
+					// applied to subscription events by the conflater, nothing else is dropped
+					break;
+				case SHED:
+				case DISCONNECT:
+					enforce();
+					if(!channel.isOpen()) {
+						e.getFuture().setFailure(new ClosedChannelException());
+						return;
+					}
+					break;
+			}
+		}
+		write(backlog, e);
+	}
+
+	/**
+	 * Returns the handler applying the CONFLATE policy, to be installed above the encoder
+	 * @return the conflater
+	 */
+	public Conflater getConflater() {
+		return conflater;
+	}
+
+	/**
+	 * <p>Title: Conflater</p>
+	 * <p>Description: Applies the CONFLATE policy to the {@link SubscriptionFrame}s written to a channel. While the budget
+	 * is exhausted and the channel is congested, only the latest event of each subscription is held, and it is written
+	 * once the channel drains below the low watermark. A held event superseded by a later one has its write future failed
+	 * with {@link OutboundBudget#SUPERSEDED}. Every other write (replies, HTTP responses, control frames) passes straight through.</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.mws.server.net.OutboundBudget.Conflater</code></p>
+	 */
+	@ChannelHandler.Sharable
+	public class Conflater extends SimpleChannelDownstreamHandler {
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.SimpleChannelDownstreamHandler#writeRequested(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+		 */
+		@Override
+		public void writeRequested(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+			final Object msg = e.getMessage();
+			final Backlog backlog = msg instanceof SubscriptionFrame ? backlogs.get(e.getChannel()) : null;
+			if(backlog==null) {
+				ctx.sendDownstream(e);
+				return;
+			}
+			final SubscriptionFrame frame = (SubscriptionFrame)msg;
+			if(!frame.isEvent()) {
+				backlog.discard(frame.getSubKey());
+				ctx.sendDownstream(e);
+				return;
+			}
+			final boolean exhausted = policy==Policy.CONFLATE && pending.get() >= budget && backlog.bytes.get() >= high;
+			if(!exhausted && !backlog.hasParked()) {
+				ctx.sendDownstream(e);
+				return;
+			}
+			backlog.park(ctx, frame.getSubKey(), e);
+			// the channel may have drained while the event was being held
+			if(!congested.containsKey(e.getChannel())) backlog.release();
+		}
+	}
+
+	/**
+	 * Accounts for a write and sends it on
+	 * @param backlog The backlog of the writing channel
+	 * @param e The write event
+	 */
+	protected void write(final Backlog backlog, final MessageEvent e) {
+		final int size = ((ChannelBuffer)e.getMessage()).readableBytes();
+		final long total = pending.addAndGet(size);
+		while(true) {
+			final long p = peak.get();
+			if(total <= p || peak.compareAndSet(p, total)) break;
+		}
+		if(backlog.bytes.addAndGet(size) >= high) congested.put(e.getChannel(), backlog);
+		e.getFuture().addListener(new Release(backlog, size));
+		backlog.ctx.sendDownstream(e);
+	}
+
+	/**
+	 * Applies the SHED or DISCONNECT policy to the most congested channel, at most once every {@link #ENFORCE_PERIOD}
+	 */
+	protected void enforce() {
+		final long now = System.nanoTime();
+		final long last = lastEnforced.get();
+		if(now - last < ENFORCE_PERIOD || !lastEnforced.compareAndSet(last, now)) return;
+		Channel worst = null;
+		long worstBytes = 0L;
+		for(Map.Entry<Channel, Backlog> entry: congested.entrySet()) {
+			final long bytes = entry.getValue().bytes.get();
+			if(bytes > worstBytes) {
+				worstBytes = bytes;
+				worst = entry.getKey();
+			}
+		}
+		if(worst==null) return;
+		if(policy==Policy.DISCONNECT) {
+			disconnects.incrementAndGet();
+			log.warn("Outbound budget of [{}] bytes exhausted: closing [{}] with [{}] pending bytes", budget, worst.getRemoteAddress(), worstBytes);
+			worst.close();
+		} else {
+			final int cancelled = SubscriptionRegistry.cancelAll(worst);
+			shed.addAndGet(cancelled);
+			log.warn("Outbound budget of [{}] bytes exhausted: cancelled [{}] subscriptions of [{}] with [{}] pending bytes", budget, cancelled, worst.getRemoteAddress(), worstBytes);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getBudget()
+	 */
+	@Override
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getHighWatermark()
+	 */
+	@Override
+	public int getHighWatermark() {
+		return high;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getLowWatermark()
+	 */
+	@Override
+	public int getLowWatermark() {
+		return low;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getPolicy()
+	 */
+	@Override
+	public String getPolicy() {
+		return policy.name();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#setPolicy(java.lang.String)
+	 */
+	@Override
+	public void setPolicy(final String policy) {
+		if(policy==null) throw new IllegalArgumentException("The passed policy was null");
+		this.policy = Policy.valueOf(policy.trim().toUpperCase());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getPendingBytes()
+	 */
+	@Override
+	public long getPendingBytes() {
+		return pending.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getPeakPendingBytes()
+	 */
+	@Override
+	public long getPeakPendingBytes() {
+		return peak.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getCongestedCount()
+	 */
+	@Override
+	public int getCongestedCount() {
+		return congested.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getOverBudgetCount()
+	 */
+	@Override
+	public long getOverBudgetCount() {
+		return overBudget.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getConflatedCount()
+	 */
+	@Override
+	public long getConflatedCount() {
+		return conflated.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getShedSubscriptionCount()
+	 */
+	@Override
+	public long getShedSubscriptionCount() {
+		return shed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#getDisconnectCount()
+	 */
+	@Override
+	public long getDisconnectCount() {
+		return disconnects.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.OutboundBudgetMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		peak.set(pending.get());
+		overBudget.set(0L);
+		conflated.set(0L);
+		shed.set(0L);
+		disconnects.set(0L);
+	}
+}
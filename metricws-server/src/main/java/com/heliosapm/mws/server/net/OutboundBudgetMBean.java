@@ -0,0 +1,119 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import javax.management.ObjectName;
+
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: OutboundBudgetMBean</p>
+ * <p>Description: JMX MBean interface for {@link OutboundBudget}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.OutboundBudgetMBean</code></p>
+ */
+
+public interface OutboundBudgetMBean {
+	/** The OutboundBudget object name */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=OutboundBudget");
+
+	/**
+	 * Returns the server wide outbound byte budget
+	 * @return the outbound byte budget
+	 */
+	public long getBudget();
+
+	/**
+	 * Returns the per channel pending byte count above which a channel is congested
+	 * @return the per channel high watermark
+	 */
+	public int getHighWatermark();
+
+	/**
+	 * Returns the per channel pending byte count below which a congested channel recovers
+	 * @return the per channel low watermark
+	 */
+	public int getLowWatermark();
+
+	/**
+	 * Returns the name of the policy applied when the budget is exhausted
+	 * @return the policy name
+	 */
+	public String getPolicy();
+
+	/**
+	 * Sets the policy applied when the budget is exhausted
+	 * @param policy One of <b><code>CONFLATE</code></b>, <b><code>SHED</code></b> or <b><code>DISCONNECT</code></b>
+	 */
+	public void setPolicy(String policy);
+
+	/**
+	 * Returns the number of outbound bytes written but not yet flushed to the socket, server wide
+	 * @return the pending outbound bytes
+	 */
+	public long getPendingBytes();
+
+	/**
+	 * Returns the highest number of pending outbound bytes since the last reset
+	 * @return the peak pending outbound bytes
+	 */
+	public long getPeakPendingBytes();
+
+	/**
+	 * Returns the number of channels above their high watermark
+	 * @return the number of congested channels
+	 */
+	public int getCongestedCount();
+
+	/**
+	 * Returns the number of writes made while the budget was exhausted
+	 * @return the number of over budget writes
+	 */
+	public long getOverBudgetCount();
+
+	/**
+	 * Returns the number of subscription events superseded by a later event of the same subscription under the CONFLATE policy
+	 * @return the number of conflated writes
+	 */
+	public long getConflatedCount();
+
+	/**
+	 * Returns the number of subscriptions cancelled under the SHED policy
+	 * @return the number of shed subscriptions
+	 */
+	public long getShedSubscriptionCount();
+
+	/**
+	 * Returns the number of channels closed under the DISCONNECT policy
+	 * @return the number of disconnected channels
+	 */
+	public long getDisconnectCount();
+
+	/**
+	 * Resets the counters and the peak
+	 */
+	public void reset();
+}
@@ -31,10 +31,12 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.cliffc.high_scale_lib.NonBlockingHashMap;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelUpstreamHandler;
 import org.jboss.netty.channel.MessageEvent;
@@ -43,6 +45,7 @@ import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
 import org.jboss.netty.util.CharsetUtil;
 import org.slf4j.Logger;
@@ -50,24 +53,35 @@ import org.slf4j.LoggerFactory;
 
 import com.heliosapm.Configuration;
 import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.mws.server.net.http.HttpJSONRequestHandler;
 import com.heliosapm.mws.server.net.http.StaticContentHandler;
 import com.heliosapm.mws.server.net.json.JSONRequest;
 import com.heliosapm.mws.server.net.json.JSONRequestRouter;
+import com.heliosapm.mws.server.net.trace.RequestTrace;
+import com.heliosapm.mws.server.net.trace.RequestTracer;
 import com.heliosapm.mws.server.net.ws.WebSocketHandshakeHandler;
+import com.heliosapm.mws.server.net.ws.WebSocketMessageAssembler;
 
 /**
  * <p>Title: RequestRouter</p>
- * <p>Description: Routes the incoming request to the correct end-point</p> 
+ * <p>Description: Routes the incoming request to the correct end-point.
+ * The router and all the handlers it routes to are sharable, so one instance serves every connection.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.mws.server.net.RequestRouter</code></p>
  */
-
+@ChannelHandler.Sharable
 public class RequestRouter extends SimpleChannelHandler {
 	/** A map of HTTP Request handlers keyed by the URI prefix */
 	protected final Map<String, ChannelUpstreamHandler> httpHandlers = new NonBlockingHashMap<String, ChannelUpstreamHandler>(128);
 	/** The websocket request handler */
 	protected final JSONRequestRouter wsRouter = JSONRequestRouter.getInstance(); 
+	/** The request stage timing tracer */
+	protected final RequestTracer tracer = RequestTracer.getInstance();
+	/** The per connection request and subscription quotas */
+	protected final SessionQuotas quotas = SessionQuotas.getInstance();
+	/** The shared websocket handshake and control frame handler */
+	protected final WebSocketHandshakeHandler wsHandshaker = new WebSocketHandshakeHandler();
 	
 	/** Instance logger */
 	protected final Logger LOG = LoggerFactory.getLogger(getClass());
@@ -92,13 +106,15 @@ public class RequestRouter extends SimpleChannelHandler {
 	
 	/**
 	 * Creates a new RequestRouter
+	 * @param staticContentHandler The shared static content handler
 	 */
-	public RequestRouter() {
+	public RequestRouter(final StaticContentHandler staticContentHandler) {
 		chunkingEnabled = ConfigurationHelper.getConfig().get(Configuration.HTTP_CHUNKING_ENABLED_PROP, boolean.class);
 		wsAggrEnabled = ConfigurationHelper.getConfig().get(Configuration.WS_AGGR_ENABLED_PROP, boolean.class);
-		httpHandlers.put("s", new StaticContentHandler());
-		httpHandlers.put("ws", new WebSocketHandshakeHandler());
-		httpHandlers.put("favicon.ico", new StaticContentHandler());
+		httpHandlers.put("s", staticContentHandler);
+		httpHandlers.put("ws", wsHandshaker);
+		httpHandlers.put("favicon.ico", staticContentHandler);
+		httpHandlers.put(HttpJSONRequestHandler.API_PREFIX, new HttpJSONRequestHandler());
 	}
 	
 	/**
@@ -114,7 +130,14 @@ public class RequestRouter extends SimpleChannelHandler {
 			return;
 		} else if(msg instanceof WebSocketFrame) {
 			final WebSocketFrame frame = (WebSocketFrame)msg;
-			final JSONRequest jsonRequest = JSONRequest.newJSONRequest(ctx.getChannel(), frame);
+			// Close and ping frames are answered by the handshaker
+			if(!wsHandshaker.handleWebSocketFrame(ctx, frame)) return;
+			// Throttled messages are rejected before they are parsed
+			if(frame instanceof TextWebSocketFrame && !quotas.admitFrame(ctx.getChannel())) return;
+			final ChannelBuffer message = WebSocketMessageAssembler.assemble(ctx.getChannel(), frame);
+			if(message==null) return;
+			final RequestTrace trace = tracer.start();
+			final JSONRequest jsonRequest = JSONRequest.newJSONRequest(ctx.getChannel(), message).setTrace(trace);
 			wsRouter.route(jsonRequest);
 			return;
 		}
@@ -153,14 +176,16 @@ public class RequestRouter extends SimpleChannelHandler {
 	    }
 	    try {
 	    	// TODO:  Add CORS handling
-	        final String route = req.getUri().split("/")[1];
+	        final String route = route(req.getUri());
 	        final ChannelUpstreamHandler handler = httpHandlers.get(route);
 	        if(handler==null) {
 	        	sendError(ctx, HttpResponseStatus.NOT_FOUND, "No handler found for [" + route + "]");
 	        	return;
 	        }
-	        ctx.getPipeline().addAfter("requestRouter", "wshandshaker", new WebSocketHandshakeHandler());
-	        //ctx.getPipeline().get("wshandshaker").
+	        if(route.equals(HttpJSONRequestHandler.API_PREFIX) && !quotas.admitRequest(chan)) {
+	        	sendError(ctx, HttpResponseStatus.TOO_MANY_REQUESTS, "Request rate exceeded");
+	        	return;
+	        }
 	        handler.handleUpstream(ctx, e);
 	    } catch (Exception ex) {
 	    	sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, ex.toString());
@@ -169,4 +194,21 @@ public class RequestRouter extends SimpleChannelHandler {
 	  }
 
 	
+	  /**
+	   * Extracts the first path segment of a request URI, e.g. <b><code>ws</code></b> from <b><code>/ws?x=y</code></b>
+	   * @param uri The request URI
+	   * @return the route
+	   */
+	  static String route(final String uri) {
+		  final int start = uri.startsWith("/") ? 1 : 0;
+		  final int len = uri.length();
+		  int end = start;
+		  while(end < len) {
+			  final char c = uri.charAt(end);
+			  if(c=='/' || c=='?' || c=='#') break;
+			  end++;
+		  }
+		  return uri.substring(start, end);
+	  }
+
 }
@@ -0,0 +1,250 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.jboss.netty.util.CharsetUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+import com.heliosapm.mws.server.net.json.SubscriptionRegistry;
+
+/**
+ * <p>Title: SessionQuotas</p>
+ * <p>Description: Per connection request rate and subscription quotas. The request quota is checked on the raw
+ * frame, before anything is decoded, so a flooding client costs one CAS per frame and a pre-encoded error.
+ * A web socket which keeps flooding after being throttled is closed with a policy violation.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.SessionQuotas</code></p>
+ */
+
+public class SessionQuotas implements SessionQuotasMBean {
+	/** The singleton instance */
+	private static volatile SessionQuotas instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+
+	/** The web socket close status for a policy violation */
+	public static final int CLOSE_POLICY_VIOLATION = 1008;
+	/** The pre-encoded error sent for a throttled web socket request */
+	private static final ChannelBuffer THROTTLED = ChannelBuffers.unmodifiableBuffer(ChannelBuffers.copiedBuffer(
+			"{\"id\":-1,\"rerid\":-1,\"t\":\"err\",\"msg\":{\"err\":\"Request rate exceeded\"}}", CharsetUtil.UTF_8));
+
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The requests per second allowed on one connection, zero if unlimited */
+	protected final int requestRate;
+	/** The requests allowed at once on one connection */
+	protected final int requestBurst;
+	/** The maximum subscriptions held by one connection, zero if unlimited */
+	protected final int maxSubscriptions;
+	/** The consecutive throttled requests after which a web socket is closed, zero for never */
+	protected final int maxThrottled;
+
+	/** The quota state of each connection */
+	protected final ChannelLocal<Session> sessions = new ChannelLocal<Session>(true) {
+		@Override
+		protected Session initialValue(final Channel channel) {
+			return new Session();
+		}
+	};
+
+	/** The number of throttled requests */
+	protected final AtomicLong throttled = new AtomicLong();
+	/** The number of rejected subscriptions */
+	protected final AtomicLong rejectedSubscriptions = new AtomicLong();
+	/** The number of web sockets closed for flooding */
+	protected final AtomicLong disconnects = new AtomicLong();
+
+	/**
+	 * <p>Title: Session</p>
+	 * <p>Description: The quota state of one connection</p> 
+	 */
+	protected class Session {
+		/** The request rate limiter, null if the rate is unlimited */
+		final TokenBucket bucket = requestRate==0 ? null : new TokenBucket(requestRate, requestBurst);
+		/** The number of consecutive throttled requests */
+		final AtomicInteger throttledRun = new AtomicInteger();
+	}
+
+	/**
+	 * Acquires and returns the singleton instance
+	 * @return the singleton instance
+	 */
+	public static SessionQuotas getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new SessionQuotas();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a new SessionQuotas
+	 */
+	private SessionQuotas() {
+		requestRate = ConfigurationHelper.getConfig().get(Configuration.SESSION_RATE_PROP, int.class);
+		requestBurst = Math.max(1, ConfigurationHelper.getConfig().get(Configuration.SESSION_BURST_PROP, int.class));
+		maxSubscriptions = ConfigurationHelper.getConfig().get(Configuration.SESSION_MAXSUBS_PROP, int.class);
+		maxThrottled = ConfigurationHelper.getConfig().get(Configuration.SESSION_MAXTHROTTLED_PROP, int.class);
+		JMXHelper.registerMBean(this, OBJECT_NAME);
+	}
+
+	/**
+	 * Acquires a request permit for the passed connection
+	 * @param channel The connection the request came in on
+	 * @return true if the request is within the connection's rate, false if it should be rejected
+	 */
+	public boolean admitRequest(final Channel channel) {
+		if(requestRate==0) return true;
+		final Session session = sessions.get(channel);
+		if(session.bucket.tryAcquire()) {
+			if(session.throttledRun.get()!=0) session.throttledRun.set(0);
+			return true;
+		}
+		throttled.incrementAndGet();
+		session.throttledRun.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Acquires a request permit for a web socket frame. If the frame is throttled, the pre-encoded error is
+	 * written back, or the web socket is closed if it has been throttled too many times in a row.
+	 * @param channel The web socket the frame came in on
+	 * @return true if the frame should be processed, false if it was rejected
+	 */
+	public boolean admitFrame(final Channel channel) {
+		if(admitRequest(channel)) return true;
+		if(maxThrottled > 0 && sessions.get(channel).throttledRun.get() >= maxThrottled) {
+			disconnects.incrementAndGet();
+			log.info("Closing web socket [{}]: [{}] consecutive requests exceeded the request rate", channel.getRemoteAddress(), maxThrottled);
+			channel.write(new CloseWebSocketFrame(CLOSE_POLICY_VIOLATION, "Request rate exceeded")).addListener(ChannelFutureListener.CLOSE);
+		} else {
+			channel.write(new TextWebSocketFrame(THROTTLED.duplicate()));
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if the passed connection can start another subscription
+	 * @param channel The subscribing connection
+	 * @return true if the connection is under its subscription cap
+	 */
+	public boolean admitSubscription(final Channel channel) {
+		if(maxSubscriptions==0 || SubscriptionRegistry.getSubscriptionCount(channel) < maxSubscriptions) return true;
+		rejectedSubscriptions.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.SessionQuotasMBean#getRequestRate()
+	 */
+	@Override
+	public int getRequestRate() {
+		return requestRate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.SessionQuotasMBean#getRequestBurst()
+	 */
+	@Override
+	public int getRequestBurst() {
+		return requestBurst;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.SessionQuotasMBean#getMaxSubscriptions()
+	 */
+	@Override
+	public int getMaxSubscriptions() {
+		return maxSubscriptions;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.SessionQuotasMBean#getMaxThrottled()
+	 */
+	@Override
+	public int getMaxThrottled() {
+		return maxThrottled;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.SessionQuotasMBean#getThrottledCount()
+	 */
+	@Override
+	public long getThrottledCount() {
+		return throttled.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.SessionQuotasMBean#getRejectedSubscriptionCount()
+	 */
+	@Override
+	public long getRejectedSubscriptionCount() {
+		return rejectedSubscriptions.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.SessionQuotasMBean#getDisconnectCount()
+	 */
+	@Override
+	public long getDisconnectCount() {
+		return disconnects.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.SessionQuotasMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		throttled.set(0L);
+		rejectedSubscriptions.set(0L);
+		disconnects.set(0L);
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import javax.management.ObjectName;
+
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: SessionQuotasMBean</p>
+ * <p>Description: JMX MBean interface for {@link SessionQuotas}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.SessionQuotasMBean</code></p>
+ */
+
+public interface SessionQuotasMBean {
+	/** The SessionQuotas object name */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=SessionQuotas");
+
+	/**
+	 * Returns the requests per second allowed on one connection
+	 * @return the per connection request rate, zero if unlimited
+	 */
+	public int getRequestRate();
+
+	/**
+	 * Returns the number of requests allowed at once on one connection
+	 * @return the per connection request burst
+	 */
+	public int getRequestBurst();
+
+	/**
+	 * Returns the maximum number of subscriptions one connection can hold
+	 * @return the per connection subscription cap, zero if unlimited
+	 */
+	public int getMaxSubscriptions();
+
+	/**
+	 * Returns the number of consecutive throttled requests after which a web socket is closed
+	 * @return the consecutive throttled request limit, zero if throttled web sockets are never closed
+	 */
+	public int getMaxThrottled();
+
+	/**
+	 * Returns the number of requests rejected by the request rate limit
+	 * @return the number of throttled requests
+	 */
+	public long getThrottledCount();
+
+	/**
+	 * Returns the number of subscriptions rejected by the subscription cap
+	 * @return the number of rejected subscriptions
+	 */
+	public long getRejectedSubscriptionCount();
+
+	/**
+	 * Returns the number of web sockets closed for persistently exceeding the request rate limit
+	 * @return the number of closed web sockets
+	 */
+	public long getDisconnectCount();
+
+	/**
+	 * Resets the counters
+	 */
+	public void reset();
+}
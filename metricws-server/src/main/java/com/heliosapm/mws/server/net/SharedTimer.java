@@ -0,0 +1,84 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.concurrency.PoolThreadFactory;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+
+/**
+ * <p>Title: SharedTimer</p>
+ * <p>Description: The single hashed wheel timer shared by every per-connection timeout in the server.
+ * A wheel timer schedules and cancels in constant time on one thread, whatever the number of connections.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.SharedTimer</code></p>
+ */
+
+public class SharedTimer {
+	/** The shared timer */
+	private static volatile HashedWheelTimer timer = null;
+	/** The timer ctor lock */
+	private static final Object lock = new Object();
+
+	/** The number of ticks per wheel */
+	public static final int TICKS_PER_WHEEL = 512;
+
+	/**
+	 * Acquires and returns the shared timer
+	 * @return the shared timer
+	 */
+	public static Timer getTimer() {
+		if(timer==null) {
+			synchronized(lock) {
+				if(timer==null) {
+					final long tick = ConfigurationHelper.getConfig().get(Configuration.TIMER_TICK_PROP, long.class);
+					timer = new HashedWheelTimer(PoolThreadFactory.getThreadFactory("SharedTimer"), tick, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+					timer.start();
+				}
+			}
+		}
+		return timer;
+	}
+
+	/**
+	 * Stops the shared timer, if it was started
+	 */
+	public static void stop() {
+		synchronized(lock) {
+			if(timer!=null) {
+				timer.stop();
+				timer = null;
+			}
+		}
+	}
+
+	private SharedTimer() {}
+}
@@ -0,0 +1,84 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: TokenBucket</p>
+ * <p>Description: A lock free token bucket. Rather than refilling a token count, the bucket keeps the
+ * theoretical arrival time of the next permit: each acquisition advances it by one interval, and an
+ * acquisition is refused when that would put it ahead of the current time. Up to <b><code>burst</code></b>
+ * permits accrue while the bucket is idle. Acquisition is a single CAS and nothing is scheduled.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.TokenBucket</code></p>
+ */
+
+public class TokenBucket {
+	/** The interval between permits in nanos */
+	protected final long intervalNanos;
+	/** The credit accrued by an idle bucket in nanos */
+	protected final long creditNanos;
+	/** The theoretical arrival time of the next permit */
+	protected final AtomicLong tat;
+
+	/**
+	 * Creates a new TokenBucket
+	 * @param rate The number of permits per second
+	 * @param burst The maximum number of permits that can be acquired at once
+	 */
+	public TokenBucket(final int rate, final int burst) {
+		if(rate < 1) throw new IllegalArgumentException("Invalid rate [" + rate + "]");
+		if(burst < 1) throw new IllegalArgumentException("Invalid burst [" + burst + "]");
+		intervalNanos = Math.max(1L, TimeUnit.SECONDS.toNanos(1) / rate);
+		creditNanos = intervalNanos * burst;
+		tat = new AtomicLong(System.nanoTime() - creditNanos);
+	}
+
+	/**
+	 * Acquires a permit if one is available
+	 * @return true if a permit was acquired, false if the bucket is empty
+	 */
+	public boolean tryAcquire() {
+		while(true) {
+			final long now = System.nanoTime();
+			final long current = tat.get();
+			final long floor = now - creditNanos;
+			final long next = (current - floor < 0L ? floor : current) + intervalNanos;
+			if(next - now > 0L) return false;
+			if(tat.compareAndSet(current, next)) return true;
+		}
+	}
+
+	/**
+	 * Determines if the bucket has refilled completely, i.e. discarding it would not forgive any debt
+	 * @return true if the bucket is full
+	 */
+	public boolean isFull() {
+		return tat.get() - (System.nanoTime() - creditNanos) <= 0L;
+	}
+}
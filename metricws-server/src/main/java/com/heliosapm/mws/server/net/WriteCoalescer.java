@@ -0,0 +1,360 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelDownstreamHandler;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: WriteCoalescer</p>
+ * <p>Description: Gathers the encoded outbound buffers of each channel written inside a batch (see {@link #beginBatch()})
+ * and writes them to the socket together, as one gathering composite buffer, when the pending bytes or writes reach
+ * their threshold or when the outermost batch on the writing thread ends. Writes made outside a batch (request replies,
+ * HTTP responses, pongs, close frames etc.) and any other downstream event first flush what is pending and then pass
+ * straight through, so ordering is preserved and nothing but batched fan-out ever waits.</p>
+ * <p>Batches are scoped to the writing thread, which is also the thread that runs the encoders in Netty 3, so a
+ * publisher fanning a tick out to its subscribers simply brackets the fan-out:<pre>
+ * WriteCoalescer.beginBatch();
+ * try {
+ *    ... writes ...
+ * } finally {
+ *    WriteCoalescer.endBatch();
+ * }</pre></p>
+ * <p>Installed at the head of the pipeline so it sees the bytes produced by whichever encoder is current.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.WriteCoalescer</code></p>
+ */
+@ChannelHandler.Sharable
+public class WriteCoalescer implements ChannelDownstreamHandler, WriteCoalescerMBean {
+	/** The singleton instance */
+	private static volatile WriteCoalescer instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+
+	/** The pending writes of each channel */
+	private static final ChannelLocal<Pending> pendingWrites = new ChannelLocal<Pending>(true);
+	/** The current thread's batch */
+	private static final ThreadLocal<Batch> batches = new ThreadLocal<Batch>() {
+		@Override
+		protected Batch initialValue() {
+			return new Batch();
+		}
+	};
+
+	/** The number of pending bytes which triggers a flush */
+	protected final int maxBytes;
+	/** The number of pending writes which triggers a flush */
+	protected final int maxCount;
+
+	/** The number of writes received */
+	protected final AtomicLong writes = new AtomicLong();
+	/** The number of socket writes issued */
+	protected final AtomicLong flushes = new AtomicLong();
+	/** The number of threshold flushes */
+	protected final AtomicLong thresholdFlushes = new AtomicLong();
+	/** The number of end of batch flushes */
+	protected final AtomicLong batchFlushes = new AtomicLong();
+	/** The number of writes passed straight through */
+	protected final AtomicLong passThroughs = new AtomicLong();
+
+	/**
+	 * Acquires and returns the singleton instance
+	 * @return the singleton instance
+	 */
+	public static WriteCoalescer getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new WriteCoalescer();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a new WriteCoalescer
+	 */
+	private WriteCoalescer() {
+		maxBytes = ConfigurationHelper.getConfig().get(Configuration.WRITE_COALESCE_MAXBYTES_PROP, int.class);
+		maxCount = ConfigurationHelper.getConfig().get(Configuration.WRITE_COALESCE_MAXCOUNT_PROP, int.class);
+		JMXHelper.registerMBean(this, OBJECT_NAME);
+	}
+
+	/**
+	 * Immediately writes any pending writes on the passed channel
+	 * @param channel The channel to flush
+	 */
+	public static void flush(final Channel channel) {
+		final Pending pending = pendingWrites.get(channel);
+		if(pending!=null) pending.flush();
+	}
+
+	/**
+	 * Starts a batch on the current thread. Writes made until the matching {@link #endBatch()} are coalesced.
+	 * Batches nest, and only the end of the outermost batch flushes.
+	 */
+	public static void beginBatch() {
+		batches.get().depth++;
+	}
+
+	/**
+	 * Ends a batch on the current thread, flushing every channel written in the batch if it was the outermost batch.
+	 * Must be called in a finally block matching a {@link #beginBatch()}.
+	 */
+	public static void endBatch() {
+		final Batch batch = batches.get();
+		if(batch.depth==0 || --batch.depth > 0) return;
+		final List<Pending> written = batch.written;
+		if(written.isEmpty()) return;
+		final WriteCoalescer wc = instance;
+		for(int i = 0; i < written.size(); i++) {
+			if(written.get(i).flush() && wc!=null) wc.batchFlushes.incrementAndGet();
+		}
+		written.clear();
+	}
+
+	/**
+	 * <p>Title: Batch</p>
+	 * <p>Description: The batch state of one thread</p>
+	 */
+	private static class Batch {
+		/** The batch nesting depth */
+		int depth = 0;
+		/** The pending writes of the channels written in the batch */
+		final List<Pending> written = new ArrayList<Pending>();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.ChannelDownstreamHandler#handleDownstream(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelEvent)
+	 */
+	@Override
+	public void handleDownstream(final ChannelHandlerContext ctx, final ChannelEvent e) throws Exception {
+		if(e instanceof MessageEvent && ((MessageEvent)e).getMessage() instanceof ChannelBuffer) {
+			writes.incrementAndGet();
+			final Batch batch = batches.get();
+			if(batch.depth > 0) {
+				Pending pending = pendingWrites.get(e.getChannel());
+				if(pending==null) {
+					pending = new Pending(ctx);
+					final Pending prior = pendingWrites.setIfAbsent(e.getChannel(), pending);
+					if(prior!=null) pending = prior;
+				}
+				final List<Pending> written = batch.written;
+				if(written.isEmpty() || written.get(written.size()-1)!=pending) written.add(pending);
+				pending.add((MessageEvent)e);
+				return;
+			}
+			passThroughs.incrementAndGet();
+		}
+		final Pending pending = pendingWrites.get(e.getChannel());
+		if(pending!=null) pending.flush();
+		ctx.sendDownstream(e);
+	}
+
+	/**
+	 * <p>Title: Pending</p>
+	 * <p>Description: The pending writes of one channel</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.mws.server.net.WriteCoalescer.Pending</code></p>
+	 */
+	private class Pending {
+		/** The context to write downstream from */
+		final ChannelHandlerContext ctx;
+		/** The pending buffers */
+		List<ChannelBuffer> buffers = new ArrayList<ChannelBuffer>();
+		/** The futures of the pending writes */
+		List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
+		/** The remote address of the pending writes */
+		SocketAddress remoteAddress = null;
+		/** The number of pending bytes */
+		int bytes = 0;
+
+		/**
+		 * Creates a new Pending
+		 * @param ctx The context to write downstream from
+		 */
+		Pending(final ChannelHandlerContext ctx) {
+			this.ctx = ctx;
+		}
+
+		/**
+		 * Adds a write, flushing if a threshold is reached
+		 * @param e The write event
+		 */
+		synchronized void add(final MessageEvent e) {
+			final ChannelBuffer buffer = (ChannelBuffer)e.getMessage();
+			if(remoteAddress==null) remoteAddress = e.getRemoteAddress();
+			buffers.add(buffer);
+			futures.add(e.getFuture());
+			bytes += buffer.readableBytes();
+			if(bytes >= maxBytes || buffers.size() >= maxCount) {
+				thresholdFlushes.incrementAndGet();
+				flush();
+			}
+		}
+
+		/**
+		 * Writes the pending buffers downstream as one write
+		 * @return true if anything was pending
+		 */
+		synchronized boolean flush() {
+			final int count = buffers.size();
+			if(count==0) return false;
+			flushes.incrementAndGet();
+			final Channel channel = ctx.getChannel();
+			if(count==1) {
+				ctx.sendDownstream(new DownstreamMessageEvent(channel, futures.get(0), buffers.get(0), remoteAddress));
+			} else {
+				final ChannelBuffer composite = ChannelBuffers.wrappedBuffer(true, buffers.toArray(new ChannelBuffer[count]));
+				final List<ChannelFuture> writeFutures = futures;
+				final ChannelFuture future = Channels.future(channel);
+				future.addListener(new ChannelFutureListener() {
+					@Override
+					public void operationComplete(final ChannelFuture f) throws Exception {
+						for(ChannelFuture cf: writeFutures) {
+							if(f.isSuccess()) cf.setSuccess();
+							else cf.setFailure(f.getCause());
+						}
+					}
+				});
+				ctx.sendDownstream(new DownstreamMessageEvent(channel, future, composite, remoteAddress));
+			}
+			buffers = new ArrayList<ChannelBuffer>();
+			futures = new ArrayList<ChannelFuture>();
+			bytes = 0;
+			return true;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.WriteCoalescerMBean#getMaxBytes()
+	 */
+	@Override
+	public int getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.WriteCoalescerMBean#getMaxCount()
+	 */
+	@Override
+	public int getMaxCount() {
+		return maxCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.WriteCoalescerMBean#getWriteCount()
+	 */
+	@Override
+	public long getWriteCount() {
+		return writes.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.WriteCoalescerMBean#getFlushCount()
+	 */
+	@Override
+	public long getFlushCount() {
+		return flushes.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.WriteCoalescerMBean#getThresholdFlushCount()
+	 */
+	@Override
+	public long getThresholdFlushCount() {
+		return thresholdFlushes.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.WriteCoalescerMBean#getBatchFlushCount()
+	 */
+	@Override
+	public long getBatchFlushCount() {
+		return batchFlushes.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.WriteCoalescerMBean#getPassThroughCount()
+	 */
+	@Override
+	public long getPassThroughCount() {
+		return passThroughs.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.WriteCoalescerMBean#getAverageWritesPerFlush()
+	 */
+	@Override
+	public double getAverageWritesPerFlush() {
+		final long f = flushes.get();
+		return f==0L ? 0D : (double)(writes.get() - passThroughs.get()) / f;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.WriteCoalescerMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		writes.set(0L);
+		flushes.set(0L);
+		thresholdFlushes.set(0L);
+		batchFlushes.set(0L);
+		passThroughs.set(0L);
+	}
+}
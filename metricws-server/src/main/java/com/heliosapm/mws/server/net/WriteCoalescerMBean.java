@@ -0,0 +1,95 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import javax.management.ObjectName;
+
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: WriteCoalescerMBean</p>
+ * <p>Description: JMX MBean interface for {@link WriteCoalescer}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.WriteCoalescerMBean</code></p>
+ */
+
+public interface WriteCoalescerMBean {
+	/** The WriteCoalescer object name */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=WriteCoalescer");
+
+	/**
+	 * Returns the number of pending bytes which triggers a flush
+	 * @return the flush byte threshold
+	 */
+	public int getMaxBytes();
+
+	/**
+	 * Returns the number of pending writes which triggers a flush
+	 * @return the flush write count threshold
+	 */
+	public int getMaxCount();
+
+	/**
+	 * Returns the number of writes received
+	 * @return the number of writes received
+	 */
+	public long getWriteCount();
+
+	/**
+	 * Returns the number of socket writes issued
+	 * @return the number of flushes
+	 */
+	public long getFlushCount();
+
+	/**
+	 * Returns the number of flushes triggered by the byte or count thresholds
+	 * @return the number of threshold flushes
+	 */
+	public long getThresholdFlushCount();
+
+	/**
+	 * Returns the number of flushes triggered by the end of a batch
+	 * @return the number of end of batch flushes
+	 */
+	public long getBatchFlushCount();
+
+	/**
+	 * Returns the number of writes made outside a batch, which are passed straight through
+	 * @return the number of pass through writes
+	 */
+	public long getPassThroughCount();
+
+	/**
+	 * Returns the average number of batched writes coalesced into one socket write
+	 * @return the average number of writes per flush
+	 */
+	public double getAverageWritesPerFlush();
+
+	/**
+	 * Resets the counters
+	 */
+	public void reset();
+}
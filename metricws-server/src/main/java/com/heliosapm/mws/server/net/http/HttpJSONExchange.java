@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.mws.server.net.http;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.setContentLength;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.util.CharsetUtil;
+
+import com.heliosapm.mws.server.net.json.ResponseType;
+
+/**
+ * <p>Title: HttpJSONExchange</p>
+ * <p>Description: Collects the JSON responses for one HTTP JSON-RPC request (a single op or a batch) and writes
+ * them back as one HTTP response. Exchanges are queued per channel in arrival order and an exchange is only
+ * written once every exchange ahead of it has been written, so pipelined HTTP/1.1 requests are answered in order
+ * regardless of the order in which the invoked ops complete. Responses are written outside the channel's exchange lock,
+ * by one thread at a time, so the downstream handlers never run while holding it.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.http.HttpJSONExchange</code></p>
+ */
+
+public class HttpJSONExchange {
+	/** The channel the HTTP request came in on */
+	protected final Channel channel;
+	/** The channel's ordered queue of pending exchanges, which is also the exchange lock */
+	protected final LinkedList<HttpJSONExchange> pipeline;
+	/** The HTTP version of the request */
+	protected final HttpVersion version;
+	/** Indicates if the connection should be kept alive after the response is written */
+	protected final boolean keepAlive;
+	/** Indicates if the request was a batch, in which case the response is always an array */
+	protected final boolean batch;
+	/** The response parts written to each slot */
+	protected final List<List<ChannelBuffer>> parts;
+	/** Indicates which slots have received their final response */
+	protected final boolean[] done;
+	/** The futures of the JSON responses written into this exchange */
+	protected final List<ChannelFuture> futures = new ArrayList<ChannelFuture>(2);
+	/** The number of slots still waiting for a final response */
+	protected int remaining;
+	/** The HTTP status of the response */
+	protected HttpResponseStatus status = HttpResponseStatus.OK;
+	/** A plain text failure message which replaces the JSON content */
+	protected String failure = null;
+	/** True once a thread has taken on writing this exchange, guarded by the pipeline lock */
+	protected boolean writing = false;
+
+	/** The content type of JSON responses */
+	public static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+
+	/** The array open token */
+	private static final ChannelBuffer ARR_OPEN = ChannelBuffers.unmodifiableBuffer(ChannelBuffers.wrappedBuffer(new byte[]{'['}));
+	/** The array close token */
+	private static final ChannelBuffer ARR_CLOSE = ChannelBuffers.unmodifiableBuffer(ChannelBuffers.wrappedBuffer(new byte[]{']'}));
+	/** The array element separator token */
+	private static final ChannelBuffer ARR_SEP = ChannelBuffers.unmodifiableBuffer(ChannelBuffers.wrappedBuffer(new byte[]{','}));
+
+	/**
+	 * Creates a new HttpJSONExchange and appends it to the channel's pipeline
+	 * @param channel The channel the HTTP request came in on
+	 * @param pipeline The channel's ordered queue of pending exchanges
+	 * @param version The HTTP version of the request
+	 * @param keepAlive Indicates if the connection should be kept alive after the response is written
+	 * @param batch Indicates if the request was a batch
+	 * @param slots The number of JSON requests in the exchange
+	 */
+	HttpJSONExchange(final Channel channel, final LinkedList<HttpJSONExchange> pipeline, final HttpVersion version, final boolean keepAlive, final boolean batch, final int slots) {
+		this.channel = channel;
+		this.pipeline = pipeline;
+		this.version = version;
+		this.keepAlive = keepAlive;
+		this.batch = batch;
+		parts = new ArrayList<List<ChannelBuffer>>(slots);
+		done = new boolean[slots];
+		remaining = slots;
+		for(int i = 0; i < slots; i++) {
+			parts.add(new ArrayList<ChannelBuffer>(1));
+		}
+		synchronized(pipeline) {
+			pipeline.addLast(this);
+		}
+	}
+
+	/**
+	 * Writes a JSON response into the passed slot. The slot is completed by any response type other than
+	 * {@link ResponseType#MRESP}, so multi-responses accumulate until their terminating response arrives.
+	 * Responses arriving for an already completed slot (e.g. subscription events) are failed.
+	 * @param slot The slot to write to
+	 * @param type The response type code
+	 * @param content The serialized response
+	 * @param future The future to complete when the HTTP response has been written
+	 */
+	void complete(final int slot, final String type, final ChannelBuffer content, final ChannelFuture future) {
+		final HttpJSONExchange next;
+		synchronized(pipeline) {
+			if(done[slot]) {
+				future.setFailure(new IllegalStateException("The HTTP request for this response has already been answered"));
+				return;
+			}
+			parts.get(slot).add(content);
+			futures.add(future);
+			if(!ResponseType.MRESP.code.equals(type)) {
+				done[slot] = true;
+				remaining--;
+				if(!batch && ResponseType.ERR.code.equals(type)) {
+					status = HttpResponseStatus.INTERNAL_SERVER_ERROR;
+				}
+			}
+			next = claim();
+		}
+		flush(next);
+	}
+
+	/**
+	 * Fails the whole exchange with a plain text error response
+	 * @param errorStatus The HTTP status to respond with
+	 * @param message The error message
+	 */
+	void fail(final HttpResponseStatus errorStatus, final String message) {
+		final HttpJSONExchange next;
+		synchronized(pipeline) {
+			// once claimed the response is being written and can no longer be replaced
+			if(writing) return;
+			status = errorStatus;
+			failure = "Failure: " + errorStatus + "\r\n" + message + "\r\n";
+			for(int i = 0; i < done.length; i++) {
+				done[i] = true;
+			}
+			remaining = 0;
+			next = claim();
+		}
+		flush(next);
+	}
+
+	/**
+	 * Claims the exchange at the head of the pipeline for writing if it is complete and no other thread is writing it.
+	 * Must be called holding the pipeline lock.
+	 * @return the claimed exchange or null if there is none to write
+	 */
+	private HttpJSONExchange claim() {
+		if(pipeline.isEmpty()) return null;
+		final HttpJSONExchange head = pipeline.getFirst();
+		if(head.remaining!=0 || head.writing) return null;
+		head.writing = true;
+		return head;
+	}
+
+	/**
+	 * Writes out the passed claimed exchange and every completed exchange behind it. Must be called without holding
+	 * the pipeline lock. Exchanges stay at the head of the pipeline until written, so exchanges completed meanwhile
+	 * by other threads are left to this one and the responses go out in order.
+	 * @param next The claimed exchange, or null if there is none to write
+	 */
+	private void flush(HttpJSONExchange next) {
+		while(next!=null) {
+			next.write();
+			synchronized(pipeline) {
+				pipeline.removeFirst();
+				next = claim();
+			}
+		}
+	}
+
+	/**
+	 * Builds and writes the HTTP response for this exchange
+	 */
+	private void write() {
+		final HttpResponse response = new DefaultHttpResponse(version, status);
+		final ChannelBuffer body;
+		if(failure!=null) {
+			response.headers().set(CONTENT_TYPE, "text/plain; charset=UTF-8");
+			body = ChannelBuffers.copiedBuffer(failure, CharsetUtil.UTF_8);
+		} else {
+			response.headers().set(CONTENT_TYPE, JSON_CONTENT_TYPE);
+			if(batch) {
+				final ChannelBuffer[] elements = new ChannelBuffer[parts.size()];
+				for(int i = 0; i < elements.length; i++) {
+					elements[i] = render(parts.get(i));
+				}
+				body = array(elements);
+			} else {
+				body = render(parts.get(0));
+			}
+		}
+		response.setContent(body);
+		setContentLength(response, body.readableBytes());
+		if(keepAlive && version==HttpVersion.HTTP_1_0) {
+			response.headers().set(CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+		}
+		final ChannelFuture writeFuture = channel.write(response);
+		if(!futures.isEmpty()) {
+			writeFuture.addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(final ChannelFuture f) throws Exception {
+					for(ChannelFuture cf: futures) {
+						if(f.isSuccess()) cf.setSuccess();
+						else cf.setFailure(f.getCause());
+					}
+				}
+			});
+		}
+		if(!keepAlive || failure!=null) {
+			writeFuture.addListener(ChannelFutureListener.CLOSE);
+		}
+	}
+
+	/**
+	 * Renders the responses written into one slot: the single response itself, or an array of multi-responses
+	 * @param slotParts The responses written into a slot
+	 * @return the rendered slot
+	 */
+	private static ChannelBuffer render(final List<ChannelBuffer> slotParts) {
+		if(slotParts.size()==1) return slotParts.get(0);
+		return array(slotParts.toArray(new ChannelBuffer[slotParts.size()]));
+	}
+
+	/**
+	 * Wraps the passed JSON buffers into a JSON array without copying
+	 * @param elements The JSON buffers to wrap
+	 * @return the JSON array buffer
+	 */
+	private static ChannelBuffer array(final ChannelBuffer[] elements) {
+		final ChannelBuffer[] tokens = new ChannelBuffer[elements.length==0 ? 2 : (elements.length*2)+1];
+		int t = 0;
+		tokens[t++] = ARR_OPEN.duplicate();
+		for(int i = 0; i < elements.length; i++) {
+			if(i>0) tokens[t++] = ARR_SEP.duplicate();
+			tokens[t++] = elements[i];
+		}
+		tokens[t] = ARR_CLOSE.duplicate();
+		return ChannelBuffers.wrappedBuffer(tokens);
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.mws.server.net.http;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.heliosapm.mws.server.net.json.JSONRequest;
+import com.heliosapm.mws.server.net.json.JSONResponse;
+
+/**
+ * <p>Title: HttpJSONRequest</p>
+ * <p>Description: A {@link JSONRequest} received over plain HTTP. Responses sent back to the originating channel
+ * are handed to the request's {@link HttpJSONExchange} slot instead of being framed as web socket frames.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.http.HttpJSONRequest</code></p>
+ */
+
+public class HttpJSONRequest extends JSONRequest {
+	/** The HTTP exchange this request is part of */
+	protected final HttpJSONExchange exchange;
+	/** The slot in the exchange this request's response is written to */
+	protected final int slot;
+
+	/**
+	 * Creates a new HttpJSONRequest
+	 * @param exchange The HTTP exchange this request is part of
+	 * @param slot The slot in the exchange this request's response is written to
+	 * @param channel The channel that the request came in on
+	 * @param tCode the type code of the request
+	 * @param rid The client supplied request ID
+	 * @param serviceName The service name requested
+	 * @param opName The op name requested
+	 * @param request The original request
+	 */
+	HttpJSONRequest(final HttpJSONExchange exchange, final int slot, final Channel channel, final String tCode, final long rid, final String serviceName, final String opName, final JsonNode request) {
+		super(channel, tCode, rid, -1L, serviceName, opName, request);
+		this.exchange = exchange;
+		this.slot = slot;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.json.JSONRequest#writeResponse(com.heliosapm.mws.server.net.json.JSONResponse, org.jboss.netty.buffer.ChannelBuffer, org.jboss.netty.channel.ChannelFuture)
+	 */
+	@Override
+	protected boolean writeResponse(final JSONResponse response, final ChannelBuffer content, final ChannelFuture future) {
+		exchange.complete(slot, response.getType(), content, future);
+		return true;
+	}
+
+}
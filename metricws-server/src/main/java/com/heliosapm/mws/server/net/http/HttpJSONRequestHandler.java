@@ -0,0 +1,236 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.mws.server.net.http;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.isKeepAlive;
+import static org.jboss.netty.handler.codec.http.HttpMethod.POST;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.METHOD_NOT_ALLOWED;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.QueryStringDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.mws.server.net.json.JSON;
+import com.heliosapm.mws.server.net.json.JSONRequestRouter;
+import com.heliosapm.mws.server.net.json.RequestType;
+import com.heliosapm.mws.server.net.trace.RequestTrace;
+import com.heliosapm.mws.server.net.trace.RequestTracer;
+
+/**
+ * <p>Title: HttpJSONRequestHandler</p>
+ * <p>Description: Exposes the {@link JSONRequestRouter} services over plain HTTP so that callers do not need
+ * to open a web socket to make a single call. Supported forms are:<ul>
+ * 	<li><b><code>POST /api/{svc}/{op}</code></b>: The (optional) body is the op's arguments, an object or an array.</li>
+ * 	<li><b><code>POST /api</code></b> with a request object: The body is a standard JSON request, e.g. <code>{"svc":"router", "op":"services", "args":{}}</code></li>
+ * 	<li><b><code>POST /api</code></b> with an array of request objects: A batch, answered with an array of the responses in request order.</li>
+ * </ul>
+ * Responses are the same JSON documents a web socket caller would receive. Keep-alive and HTTP/1.1 pipelining are supported;
+ * responses on a connection are always written in request order (see {@link HttpJSONExchange}).
+ * Subscription ops are rejected since plain HTTP has no channel to deliver events on.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.http.HttpJSONRequestHandler</code></p>
+ */
+@ChannelHandler.Sharable
+public class HttpJSONRequestHandler extends SimpleChannelUpstreamHandler {
+	/** The URI prefix this handler is registered under */
+	public static final String API_PREFIX = "api";
+
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The json request router */
+	protected final JSONRequestRouter router = JSONRequestRouter.getInstance();
+	/** The request stage timing tracer */
+	protected final RequestTracer tracer = RequestTracer.getInstance();
+	/** The maximum number of requests accepted in a batch */
+	protected final int maxBatch;
+
+	/** Counter for received HTTP JSON requests */
+	protected final AtomicLong requestsReceived = new AtomicLong();
+	/** Counter for received HTTP JSON batches */
+	protected final AtomicLong batchesReceived = new AtomicLong();
+	/** Counter for HTTP JSON request failures */
+	protected final AtomicLong requestErrors = new AtomicLong();
+
+	/** The ordered queue of pending exchanges for each channel */
+	private static final ChannelLocal<LinkedList<HttpJSONExchange>> pipelines = new ChannelLocal<LinkedList<HttpJSONExchange>>(true) {
+		@Override
+		protected LinkedList<HttpJSONExchange> initialValue(final Channel channel) {
+			return new LinkedList<HttpJSONExchange>();
+		}
+	};
+
+	/**
+	 * Creates a new HttpJSONRequestHandler
+	 */
+	public HttpJSONRequestHandler() {
+		maxBatch = ConfigurationHelper.getConfig().get(Configuration.HTTP_API_MAXBATCH_PROP, int.class);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+	 */
+	@Override
+	public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+		final Object msg = e.getMessage();
+		if(!(msg instanceof HttpRequest)) {
+			ctx.sendUpstream(e);
+			return;
+		}
+		final HttpRequest req = (HttpRequest)msg;
+		final Channel channel = e.getChannel();
+		final LinkedList<HttpJSONExchange> pipeline = pipelines.get(channel);
+		// segments: ["", "api", svc, op]
+		final String[] segments = new QueryStringDecoder(req.getUri()).getPath().split("/");
+		final boolean direct = segments.length > 2;
+		final JsonNode body;
+		RequestTrace trace = null;
+		try {
+			if(req.getMethod()!=POST) {
+				new HttpJSONExchange(channel, pipeline, req.getProtocolVersion(), isKeepAlive(req), false, 1).fail(METHOD_NOT_ALLOWED, "Only POST is supported");
+				return;
+			}
+			if(direct && segments.length!=4) {
+				new HttpJSONExchange(channel, pipeline, req.getProtocolVersion(), isKeepAlive(req), false, 1).fail(BAD_REQUEST, "Expected /" + API_PREFIX + "/{svc}/{op}");
+				return;
+			}
+			trace = tracer.start();
+			body = parse(req.getContent());
+		} catch (Exception ex) {
+			if(trace!=null) trace.cancel(trace.getId());
+			requestErrors.incrementAndGet();
+			new HttpJSONExchange(channel, pipeline, req.getProtocolVersion(), isKeepAlive(req), false, 1).fail(BAD_REQUEST, "Failed to parse JSON request: " + ex);
+			return;
+		}
+		if(direct) {
+			final ObjectNode request = JSON.getNodeFactory().objectNode();
+			request.put("t", RequestType.REQUEST.code);
+			request.put("svc", segments[2]);
+			request.put("op", segments[3]);
+			if(body!=null) request.set("args", body);
+			final HttpJSONExchange exchange = new HttpJSONExchange(channel, pipeline, req.getProtocolVersion(), isKeepAlive(req), false, 1);
+			dispatch(exchange, 0, channel, request, trace);
+		} else if(body instanceof ArrayNode) {
+			final int size = body.size();
+			if(size > maxBatch) {
+				if(trace!=null) trace.cancel(trace.getId());
+				new HttpJSONExchange(channel, pipeline, req.getProtocolVersion(), isKeepAlive(req), true, 1).fail(REQUEST_ENTITY_TOO_LARGE, "Batch size [" + size + "] exceeds maximum [" + maxBatch + "]");
+				return;
+			}
+			batchesReceived.incrementAndGet();
+			final HttpJSONExchange exchange = new HttpJSONExchange(channel, pipeline, req.getProtocolVersion(), isKeepAlive(req), true, size);
+			if(size==0) {
+				if(trace!=null) trace.cancel(trace.getId());
+				exchange.fail(BAD_REQUEST, "Empty batch");
+				return;
+			}
+			for(int i = 0; i < size; i++) {
+				dispatch(exchange, i, channel, body.get(i), i==0 ? trace : null);
+			}
+		} else if(body instanceof ObjectNode) {
+			final HttpJSONExchange exchange = new HttpJSONExchange(channel, pipeline, req.getProtocolVersion(), isKeepAlive(req), false, 1);
+			dispatch(exchange, 0, channel, body, trace);
+		} else {
+			if(trace!=null) trace.cancel(trace.getId());
+			new HttpJSONExchange(channel, pipeline, req.getProtocolVersion(), isKeepAlive(req), false, 1).fail(BAD_REQUEST, "Expected a JSON request object or an array of request objects");
+		}
+	}
+
+	/**
+	 * Builds a JSON request for one slot of an exchange and routes it
+	 * @param exchange The exchange the request is part of
+	 * @param slot The slot of the request in the exchange
+	 * @param channel The channel the request came in on
+	 * @param node The JSON request
+	 * @param trace The stage timing trace leased for the request, null if the request is not sampled
+	 */
+	protected void dispatch(final HttpJSONExchange exchange, final int slot, final Channel channel, final JsonNode node, final RequestTrace trace) {
+		requestsReceived.incrementAndGet();
+		final HttpJSONRequest request = new HttpJSONRequest(exchange, slot, channel,
+				node.path("t").asText(RequestType.REQUEST.code),
+				node.path("rid").asLong(-1L),
+				node.path("svc").asText(),
+				node.path("op").asText(),
+				node);
+		request.setTrace(trace);
+		try {
+			if(router.getRequestType(request.serviceName, request.opName)==RequestType.SUBSCRIBE) {
+				request.error("Subscription op [" + request.serviceName + "/" + request.opName + "] requires a web socket").send();
+				return;
+			}
+			router.route(request);
+		} catch (Exception ex) {
+			requestErrors.incrementAndGet();
+			log.error("Failed to invoke HTTP JSON request [{}/{}]", request.serviceName, request.opName, ex);
+			request.error("Failed to invoke [" + request.serviceName + "/" + request.opName + "]", ex).send();
+		}
+	}
+
+	/**
+	 * Parses the HTTP request content
+	 * @param content The HTTP request content
+	 * @return the parsed json node or null if the content was empty
+	 * @throws Exception thrown on any parsing error
+	 */
+	protected static JsonNode parse(final ChannelBuffer content) throws Exception {
+		if(content==null || !content.readable()) return null;
+		return JSON.parseToNode(content);
+	}
+
+	/**
+	 * Returns the number of HTTP JSON requests received
+	 * @return the number of HTTP JSON requests received
+	 */
+	public long getRequestsReceived() {
+		return requestsReceived.get();
+	}
+
+	/**
+	 * Returns the number of HTTP JSON batches received
+	 * @return the number of HTTP JSON batches received
+	 */
+	public long getBatchesReceived() {
+		return batchesReceived.get();
+	}
+
+	/**
+	 * Returns the number of HTTP JSON request failures
+	 * @return the number of HTTP JSON request failures
+	 */
+	public long getRequestErrors() {
+		return requestErrors.get();
+	}
+
+}
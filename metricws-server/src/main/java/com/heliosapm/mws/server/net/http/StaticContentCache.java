@@ -0,0 +1,395 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.mws.server.net.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.activation.MimetypesFileTypeMap;
+import javax.management.ObjectName;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.cache.CacheStatistics;
+import com.heliosapm.jmx.concurrency.JMXManagedScheduler;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: StaticContentCache</p>
+ * <p>Description: An in-memory cache of small static content files for a root directory. Cached files are held
+ * in direct buffers together with their pre-computed response headers, content hash ETag and, for compressible types,
+ * a gzip variant built once at load time, so a cache hit touches neither the file system nor any formatter. The cache is bounded by total content bytes with LRU eviction, and a watcher periodically
+ * re-stats the cached files, invalidating any that were modified or deleted.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.http.StaticContentCache</code></p>
+ */
+
+public class StaticContentCache implements Runnable {
+	/** The content caches keyed by root directory */
+	private static final Map<File, StaticContentCache> caches = new NonBlockingHashMap<File, StaticContentCache>();
+	/** The shared mime type map */
+	private static final MimetypesFileTypeMap mimeTypesMap = new MimetypesFileTypeMap();
+	/** The minimum content size worth compressing */
+	public static final int MIN_GZIP_SIZE = 256;
+	/** Hex digits for rendering ETags */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	static {
+		// The JDK's default map does not know the usual web asset types
+		mimeTypesMap.addMimeTypes("text/html html htm");
+		mimeTypesMap.addMimeTypes("text/css css");
+		mimeTypesMap.addMimeTypes("application/javascript js");
+		mimeTypesMap.addMimeTypes("application/json json map");
+		mimeTypesMap.addMimeTypes("image/svg+xml svg");
+		mimeTypesMap.addMimeTypes("image/png png");
+		mimeTypesMap.addMimeTypes("image/x-icon ico");
+		mimeTypesMap.addMimeTypes("application/font-woff woff");
+	}
+	/** The watcher scheduler's JMX ObjectName */
+	public static final ObjectName WATCHER_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=StaticContentCache,pool=Watcher");
+	/** The shared watcher scheduler */
+	private static volatile JMXManagedScheduler watcher = null;
+
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The root directory the cached content is served from */
+	protected final File rootDirectory;
+	/** The maximum size of a file eligible for caching */
+	protected final int maxEntrySize;
+	/** The cached content keyed by sanitized request path */
+	protected final Cache<String, CachedContent> cache;
+
+	/**
+	 * Returns the content cache for the passed root directory, creating it if necessary
+	 * @param rootDirectory The root directory static content is served from
+	 * @return the content cache
+	 */
+	public static StaticContentCache getInstance(final File rootDirectory) {
+		StaticContentCache scc = caches.get(rootDirectory);
+		if(scc==null) {
+			synchronized(caches) {
+				scc = caches.get(rootDirectory);
+				if(scc==null) {
+					scc = new StaticContentCache(rootDirectory);
+					caches.put(rootDirectory, scc);
+				}
+			}
+		}
+		return scc;
+	}
+
+	/**
+	 * Creates a new StaticContentCache
+	 * @param rootDirectory The root directory the cached content is served from
+	 */
+	private StaticContentCache(final File rootDirectory) {
+		this.rootDirectory = rootDirectory;
+		final ConfigurationHelper.Config cfg = ConfigurationHelper.getConfig();
+		maxEntrySize = cfg.get(Configuration.HTTP_STATIC_CACHE_MAXENTRY_PROP, int.class);
+		final long maxSize = cfg.get(Configuration.HTTP_STATIC_CACHE_MAXSIZE_PROP, long.class);
+		final long scanPeriod = cfg.get(Configuration.HTTP_STATIC_SCAN_PROP, long.class);
+		cache = CacheStatistics.getJMXStatisticsEnableCache(
+				CacheBuilder.newBuilder()
+					.maximumWeight(maxSize)
+					.weigher(new Weigher<String, CachedContent>() {
+						@Override
+						public int weigh(final String key, final CachedContent value) {
+							return value.weight();
+						}
+					})
+					.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+					.recordStats(),
+				"StaticContent-" + caches.size());
+		getWatcher().scheduleWithFixedDelay(this, scanPeriod, scanPeriod, TimeUnit.MILLISECONDS);
+		log.info("Created StaticContentCache for [{}], maxSize: {}, maxEntry: {}, scan: {} ms", rootDirectory, maxSize, maxEntrySize, scanPeriod);
+	}
+
+	/**
+	 * Returns the shared watcher scheduler, creating it if necessary
+	 * @return the watcher scheduler
+	 */
+	private static JMXManagedScheduler getWatcher() {
+		if(watcher==null) {
+			synchronized(caches) {
+				if(watcher==null) {
+					watcher = new JMXManagedScheduler(WATCHER_OBJECT_NAME, "StaticContentWatcher", 1, true);
+				}
+			}
+		}
+		return watcher;
+	}
+
+	/**
+	 * Returns the cached content for the passed path without touching the file system
+	 * @param path The sanitized request path
+	 * @return the cached content or null if the path is not cached
+	 */
+	public CachedContent getIfPresent(final String path) {
+		return cache.getIfPresent(path);
+	}
+
+	/**
+	 * Loads the passed file into the cache if it is small enough
+	 * @param path The sanitized request path
+	 * @param file The verified, readable file the path resolves to
+	 * @return the cached content or null if the file is too large to cache
+	 * @throws IOException thrown if the file cannot be read
+	 */
+	public CachedContent load(final String path, final File file) throws IOException {
+		final long length = file.length();
+		if(length > maxEntrySize) return null;
+		final CachedContent cc = new CachedContent(file, mimeTypesMap.getContentType(file.getPath()));
+		cache.put(path, cc);
+		return cc;
+	}
+
+	/**
+	 * Returns the weak ETag of a file too large to cache, derived from its length and last modified timestamp.
+	 * Hashing the content of large files is exactly what the I/O thread serving them cannot afford.
+	 * @param path The sanitized request path
+	 * @param file The verified, readable file the path resolves to
+	 * @return the quoted weak ETag
+	 * @throws IOException thrown if the file cannot be read
+	 */
+	public String getETag(final String path, final File file) throws IOException {
+		if(!file.canRead()) throw new FileNotFoundException(file.getPath());
+		return "W/\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\"";
+	}
+
+	/**
+	 * Returns a new content hash digest
+	 * @return a message digest
+	 */
+	private static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to create MD5 digest", ex);
+		}
+	}
+
+	/**
+	 * Renders a content hash as a quoted ETag
+	 * @param hash The content hash
+	 * @param suffix An optional suffix distinguishing an encoded variant
+	 * @return the quoted ETag
+	 */
+	private static String etag(final byte[] hash, final String suffix) {
+		final StringBuilder b = new StringBuilder(hash.length * 2 + 8).append('"');
+		for(byte x: hash) {
+			b.append(HEX[(x >> 4) & 0x0F]).append(HEX[x & 0x0F]);
+		}
+		if(suffix!=null) b.append(suffix);
+		return b.append('"').toString();
+	}
+
+	/**
+	 * Determines if content of the passed type is worth compressing
+	 * @param contentType The content type
+	 * @return true if the content is compressible
+	 */
+	public static boolean isCompressible(final String contentType) {
+		return contentType.startsWith("text/") || contentType.endsWith("javascript") || contentType.endsWith("json") || contentType.endsWith("xml");
+	}
+
+	/**
+	 * Returns the content type for the passed file
+	 * @param file The file
+	 * @return the content type
+	 */
+	public static String getContentType(final File file) {
+		return mimeTypesMap.getContentType(file.getPath());
+	}
+
+	/**
+	 * The watcher scan: invalidates cached content whose file was modified or deleted since it was loaded
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			for(Map.Entry<String, CachedContent> entry: cache.asMap().entrySet()) {
+				final CachedContent cc = entry.getValue();
+				final File f = cc.file;
+				if(!f.exists() || f.lastModified()!=cc.lastModified || f.length()!=cc.length) {
+					cache.asMap().remove(entry.getKey(), cc);
+					log.debug("Invalidated changed static content [{}]", f);
+				}
+			}
+		} catch (Exception ex) {
+			log.warn("Static content scan failed for [{}]", rootDirectory, ex);
+		}
+	}
+
+	/**
+	 * Invalidates all the cached content
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * <p>Title: CachedContent</p>
+	 * <p>Description: The cached content and pre-computed headers of one static file</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.mws.server.net.http.StaticContentCache.CachedContent</code></p>
+	 */
+	public static class CachedContent {
+		/** The cached file */
+		public final File file;
+		/** The file's last modified timestamp when loaded */
+		public final long lastModified;
+		/** The file's length when loaded */
+		public final long length;
+		/** The pre-formatted Last-Modified header value */
+		public final String lastModifiedHeader;
+		/** The content type header value */
+		public final String contentType;
+		/** The quoted content hash ETag of the file content */
+		public final String etag;
+		/** The quoted ETag of the gzip variant, null if there is no gzip variant */
+		public final String gzipEtag;
+		/** The length of the gzip variant, zero if there is no gzip variant */
+		public final int gzipLength;
+		/** The read-only file content in a direct buffer */
+		private final ChannelBuffer content;
+		/** The read-only gzip variant in a direct buffer, null if the content is not compressible */
+		private final ChannelBuffer gzipContent;
+
+		/**
+		 * Creates a new CachedContent, reading the file into a direct buffer
+		 * @param file The file to cache
+		 * @param contentType The content type of the file
+		 * @throws IOException thrown if the file cannot be read
+		 */
+		CachedContent(final File file, final String contentType) throws IOException {
+			this.file = file;
+			this.contentType = contentType;
+			lastModified = file.lastModified();
+			final RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				final FileChannel fc = raf.getChannel();
+				final ByteBuffer bb = ByteBuffer.allocateDirect((int)fc.size());
+				while(bb.hasRemaining()) {
+					if(fc.read(bb) < 0) break;
+				}
+				bb.flip();
+				length = bb.remaining();
+				content = ChannelBuffers.unmodifiableBuffer(ChannelBuffers.wrappedBuffer(bb));
+			} finally {
+				try { raf.close(); } catch (Exception x) {/* No Op */}
+			}
+			lastModifiedHeader = StaticContentHandler.formatDate(new Date(lastModified));
+			final MessageDigest digest = digest();
+			digest.update(content.toByteBuffer());
+			final byte[] hash = digest.digest();
+			etag = etag(hash, null);
+			final ChannelBuffer gz = length >= MIN_GZIP_SIZE && isCompressible(contentType) ? gzip(content) : null;
+			if(gz!=null && gz.readableBytes() < length) {
+				gzipContent = gz;
+				gzipLength = gz.readableBytes();
+				gzipEtag = etag(hash, "-gz");
+			} else {
+				gzipContent = null;
+				gzipLength = 0;
+				gzipEtag = null;
+			}
+		}
+
+		/**
+		 * Compresses the passed content into a read-only direct buffer
+		 * @param content The content to compress
+		 * @return the compressed content
+		 * @throws IOException thrown on any compression error
+		 */
+		private static ChannelBuffer gzip(final ChannelBuffer content) throws IOException {
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream(content.readableBytes() / 3);
+			final GZIPOutputStream gos = new GZIPOutputStream(baos);
+			content.getBytes(content.readerIndex(), gos, content.readableBytes());
+			gos.finish();
+			gos.close();
+			final byte[] bytes = baos.toByteArray();
+			final ByteBuffer bb = ByteBuffer.allocateDirect(bytes.length);
+			bb.put(bytes).flip();
+			return ChannelBuffers.unmodifiableBuffer(ChannelBuffers.wrappedBuffer(bb));
+		}
+
+		/**
+		 * Indicates if this content has a gzip variant
+		 * @return true if this content has a gzip variant
+		 */
+		public boolean hasGzip() {
+			return gzipContent!=null;
+		}
+
+		/**
+		 * Returns a new independent view of the gzip variant, suitable for writing to a channel
+		 * @return a view of the gzip variant
+		 */
+		public ChannelBuffer gzipContent() {
+			return gzipContent.duplicate();
+		}
+
+		/**
+		 * Returns a new independent view of the cached content, suitable for writing to a channel
+		 * @return a view of the cached content
+		 */
+		public ChannelBuffer content() {
+			return content.duplicate();
+		}
+
+		/**
+		 * Returns the cache weight of this content
+		 * @return the cache weight
+		 */
+		int weight() {
+			return (int)Math.min(Integer.MAX_VALUE, length + gzipLength);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "CachedContent [" + file + ", " + length + " bytes]";
+		}
+	}
+
+
+}
@@ -17,12 +17,21 @@ package com.heliosapm.mws.server.net.http;
 
 import static org.jboss.netty.handler.codec.http.HttpHeaders.isKeepAlive;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.setContentLength;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_RANGES;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CACHE_CONTROL;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_RANGE;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.DATE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ETAG;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.EXPIRES;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.IF_MODIFIED_SINCE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.IF_RANGE;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.LAST_MODIFIED;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.RANGE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.VARY;
 import static org.jboss.netty.handler.codec.http.HttpMethod.GET;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.FORBIDDEN;
@@ -32,6 +41,8 @@ import static org.jboss.netty.handler.codec.http.HttpResponseStatus.METHOD_NOT_A
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.PARTIAL_CONTENT;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
 import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
 import java.io.File;
@@ -39,20 +50,17 @@ import java.io.FileNotFoundException;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.Locale;
 import java.util.TimeZone;
 
-import javax.activation.MimetypesFileTypeMap;
-
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
-import org.jboss.netty.channel.ChannelFutureProgressListener;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.DefaultFileRegion;
@@ -72,6 +80,7 @@ import org.jboss.netty.util.CharsetUtil;
 
 import com.heliosapm.Configuration;
 import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.mws.server.net.http.StaticContentCache.CachedContent;
 
 
 /**
@@ -85,6 +94,11 @@ import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
  * HTTP responses.  It also implements {@code 'If-Modified-Since'} header to
  * take advantage of browser cache, as described in
  * <a href="http://tools.ietf.org/html/rfc2616#section-14.25">RFC 2616</a>.
+ * Cached responses carry a strong content hash {@code ETag}, files too large to cache a weak
+ * length and timestamp {@code ETag}, either of which is validated by
+ * {@code 'If-None-Match'}, single byte ranges ({@code 'Range'} / {@code 'If-Range'})
+ * are answered with a 206, and compressible cached content is served from a
+ * pre-compressed gzip variant to clients that accept it.
  *
  * <h3>How Browser Caching Works</h3>
  *
@@ -131,9 +145,28 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
     static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
     static final String HTTP_DATE_GMT_TIMEZONE = "GMT";
     static final int HTTP_CACHE_SECONDS = 60;
+    /** The Cache-Control header value */
+    static final String CACHE_CONTROL_VALUE = "private, max-age=" + HTTP_CACHE_SECONDS;
+    /** The range unit supported */
+    static final String BYTES = "bytes";
+    /** The gzip content coding */
+    static final String GZIP = "gzip";
+    /** The range sentinel indicating no requested byte is within the entity */
+    static final long[] UNSATISFIABLE = new long[0];
+    
+    /** The shared HTTP date formatter. Access is synchronized on the formatter. */
+    private static final SimpleDateFormat dateFormatter = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+    /** The Date and Expires header values for the current second */
+    private static volatile DateHeaders dateHeaders = null;
+    
+    static {
+    	dateFormatter.setTimeZone(TimeZone.getTimeZone(HTTP_DATE_GMT_TIMEZONE));
+    }
     
     /** The root directory to serve from */
     protected File rootDirectory = null;
+    /** The in-memory content cache for the root directory */
+    protected final StaticContentCache contentCache;
     
     /**
      * Creates a new StaticContentHandler
@@ -144,6 +177,7 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
     	if(!rootDirectory.canRead()) throw new IllegalArgumentException("The passed root directory file [" + rootDirectory + "] cannot be read");
     	if(!rootDirectory.isDirectory()) throw new IllegalArgumentException("The passed root directory file [" + rootDirectory + "] is a file");
     	this.rootDirectory = rootDirectory;
+    	contentCache = StaticContentCache.getInstance(rootDirectory);
     }
     
     /**
@@ -165,6 +199,7 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
     		return;
     	} else if(!(req instanceof HttpRequest)) {
     		sendError(ctx, NOT_ACCEPTABLE);
+    		return;
     	}
         HttpRequest request = (HttpRequest) e.getMessage();
         if (request.getMethod() != GET) {
@@ -178,6 +213,13 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
             return;
         }
 
+        // Cache hit: no file system access
+        CachedContent cached = contentCache.getIfPresent(path);
+        if(cached!=null) {
+        	sendCached(ctx, request, cached);
+        	return;
+        }
+
         File file = new File(rootDirectory, path);
         if (file.isHidden() || !file.exists()) {
             sendError(ctx, NOT_FOUND);
@@ -188,20 +230,25 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
             return;
         }
 
-        // Cache Validation
-        String ifModifiedSince = request.headers().get(IF_MODIFIED_SINCE);
-        if (ifModifiedSince != null && ifModifiedSince.length() != 0) {
-            SimpleDateFormat dateFormatter = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
-            Date ifModifiedSinceDate = dateFormatter.parse(ifModifiedSince);
+        final String etag;
+        try {
+        	cached = contentCache.load(path, file);
+        	etag = cached!=null ? null : contentCache.getETag(path, file);
+        } catch (FileNotFoundException fnfe) {
+            sendError(ctx, NOT_FOUND);
+            return;
+        }
+        if(cached!=null) {
+        	sendCached(ctx, request, cached);
+        	return;
+        }
 
-            // Only compare up to the second because the datetime format we send to the client does
-            // not have milliseconds
-            long ifModifiedSinceDateSeconds = ifModifiedSinceDate.getTime() / 1000;
-            long fileLastModifiedSeconds = file.lastModified() / 1000;
-            if (ifModifiedSinceDateSeconds == fileLastModifiedSeconds) {
-                sendNotModified(ctx);
-                return;
-            }
+        // Cache Validation
+        final long lastModified = file.lastModified();
+        final String lastModifiedHeader = formatDate(new Date(lastModified));
+        if (isNotModified(request, etag, null, lastModified, lastModifiedHeader)) {
+            sendNotModified(ctx, request, etag);
+            return;
         }
 
         RandomAccessFile raf;
@@ -212,11 +259,23 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
             return;
         }
         long fileLength = raf.length();
+        final long[] range = requestedRange(request, fileLength, etag, lastModifiedHeader);
+        if (range == UNSATISFIABLE) {
+            try { raf.close(); } catch (Exception x) {/* No Op */}
+            sendUnsatisfiable(ctx, request, fileLength);
+            return;
+        }
+        final long start = range==null ? 0 : range[0];
+        final long length = range==null ? fileLength : range[1] - range[0] + 1;
 
-        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
-        setContentLength(response, fileLength);
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, range==null ? OK : PARTIAL_CONTENT);
+        setContentLength(response, length);
         setContentTypeHeader(response, file);
-        setDateAndCacheHeaders(response, file);
+        setDateAndCacheHeaders(response, lastModifiedHeader);
+        response.headers().set(ETAG, etag).set(ACCEPT_RANGES, BYTES);
+        if (range != null) {
+            response.headers().set(CONTENT_RANGE, contentRange(range, fileLength));
+        }
 
         Channel ch = e.getChannel();
 
@@ -227,21 +286,17 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
         ChannelFuture writeFuture;
         if (ch.getPipeline().get(SslHandler.class) != null) {
             // Cannot use zero-copy with HTTPS.
-            writeFuture = ch.write(new ChunkedFile(raf, 0, fileLength, 8192));
+            writeFuture = ch.write(new ChunkedFile(raf, start, length, 8192));
         } else {
             // No encryption - use zero-copy.
             final FileRegion region =
-                new DefaultFileRegion(raf.getChannel(), 0, fileLength);
+                new DefaultFileRegion(raf.getChannel(), start, length);
             writeFuture = ch.write(region);
-            writeFuture.addListener(new ChannelFutureProgressListener() {
+            writeFuture.addListener(new ChannelFutureListener() {
             	@Override
             	public void operationComplete(ChannelFuture future) {
                     region.releaseExternalResources();
                 }
-                @Override
-                public void operationProgressed(ChannelFuture future, long amount, long current, long total) {
-                    System.err.printf("%s: %d / %d (+%d)%n", path, current, total, amount);
-                }
             });
         }
 
@@ -252,6 +307,187 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
         }
     }
 
+    /**
+     * Writes a cached file, headers and content in one write. The pre-compressed variant is
+     * written when the client accepts gzip and no byte range was requested.
+     * @param ctx The channel handler context
+     * @param request The HTTP request
+     * @param cached The cached content to write
+     */
+    private static void sendCached(final ChannelHandlerContext ctx, final HttpRequest request, final CachedContent cached) {
+        if (isNotModified(request, cached.etag, cached.gzipEtag, cached.lastModified, cached.lastModifiedHeader)) {
+            sendNotModified(ctx, request, cached.hasGzip() && acceptsGzip(request.headers().get(ACCEPT_ENCODING)) ? cached.gzipEtag : cached.etag);
+            return;
+        }
+        final long[] range = requestedRange(request, cached.length, cached.etag, cached.lastModifiedHeader);
+        if (range == UNSATISFIABLE) {
+            sendUnsatisfiable(ctx, request, cached.length);
+            return;
+        }
+        final boolean gzip = range == null && cached.hasGzip() && acceptsGzip(request.headers().get(ACCEPT_ENCODING));
+        final HttpResponse response = new DefaultHttpResponse(HTTP_1_1, range==null ? OK : PARTIAL_CONTENT);
+        final DateHeaders dh = currentDateHeaders();
+        response.headers()
+        	.set(CONTENT_TYPE, cached.contentType)
+        	.set(DATE, dh.date)
+        	.set(EXPIRES, dh.expires)
+        	.set(CACHE_CONTROL, CACHE_CONTROL_VALUE)
+        	.set(LAST_MODIFIED, cached.lastModifiedHeader)
+        	.set(ACCEPT_RANGES, BYTES)
+        	.set(ETAG, gzip ? cached.gzipEtag : cached.etag);
+        if (cached.hasGzip()) {
+        	response.headers().set(VARY, ACCEPT_ENCODING);
+        }
+        final ChannelBuffer content;
+        if (gzip) {
+        	response.headers().set(CONTENT_ENCODING, GZIP);
+        	content = cached.gzipContent();
+        } else if (range != null) {
+        	response.headers().set(CONTENT_RANGE, contentRange(range, cached.length));
+        	content = cached.content().slice((int)range[0], (int)(range[1] - range[0] + 1));
+        } else {
+        	content = cached.content();
+        }
+        setContentLength(response, content.readableBytes());
+        response.setContent(content);
+        final ChannelFuture writeFuture = ctx.getChannel().write(response);
+        if (!isKeepAlive(request)) {
+            writeFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * Determines if the client's copy is current. A present If-None-Match header takes precedence over
+     * If-Modified-Since, as required by <a href="http://tools.ietf.org/html/rfc7232#section-6">RFC 7232</a>.
+     * @param request The HTTP request
+     * @param etag The ETag of the identity content
+     * @param gzipEtag The ETag of the gzip variant, or null if there is no gzip variant
+     * @param lastModified The file's last modified time
+     * @param lastModifiedHeader The pre-formatted Last-Modified header for the file, or null if not available
+     * @return true if the client's copy is current
+     */
+    private static boolean isNotModified(final HttpRequest request, final String etag, final String gzipEtag, final long lastModified, final String lastModifiedHeader) {
+        final String ifNoneMatch = request.headers().get(IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return matchesETag(ifNoneMatch, etag) || (gzipEtag != null && matchesETag(ifNoneMatch, gzipEtag));
+        }
+        final String ifModifiedSince = request.headers().get(IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null || ifModifiedSince.length() == 0) return false;
+        // Browsers echo back the Last-Modified value we sent, so try the cheap comparison first
+        if (ifModifiedSince.equals(lastModifiedHeader)) return true;
+        try {
+            final Date ifModifiedSinceDate;
+            synchronized(dateFormatter) {
+            	ifModifiedSinceDate = dateFormatter.parse(ifModifiedSince);
+            }
+            // Only compare up to the second because the datetime format we send to the client does
+            // not have milliseconds
+            return ifModifiedSinceDate.getTime() / 1000 == lastModified / 1000;
+        } catch (ParseException pex) {
+        	return false;
+        }
+    }
+
+    /**
+     * Determines if an If-None-Match header value matches the passed ETag, using weak comparison
+     * @param ifNoneMatch The If-None-Match header value: <code>*</code> or a comma separated list of ETags
+     * @param etag The quoted ETag of the current content
+     * @return true if the header matches
+     */
+    static boolean matchesETag(final String ifNoneMatch, final String etag) {
+        if (etag == null) return false;
+        if ("*".equals(ifNoneMatch.trim())) return true;
+        final String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String tag: ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(opaque)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determines if an Accept-Encoding header value accepts gzip
+     * @param acceptEncoding The Accept-Encoding header value, may be null
+     * @return true if gzip is acceptable
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String coding: acceptEncoding.split(",")) {
+            final int semi = coding.indexOf(';');
+            final String name = (semi == -1 ? coding : coding.substring(0, semi)).trim();
+            if (!GZIP.equalsIgnoreCase(name) && !"*".equals(name)) continue;
+            if (semi == -1) return true;
+            final String param = coding.substring(semi + 1).trim();
+            if (!param.startsWith("q=")) return true;
+            try {
+                return Double.parseDouble(param.substring(2).trim()) > 0D;
+            } catch (NumberFormatException nex) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the byte range the request asks for, honouring If-Range. A weak ETag never satisfies If-Range.
+     * @param request The HTTP request
+     * @param length The full length of the entity
+     * @param etag The ETag of the identity content
+     * @param lastModifiedHeader The Last-Modified header of the entity
+     * @return the inclusive <code>[first, last]</code> byte positions, null to send the full entity, or
+     * {@link #UNSATISFIABLE} if no requested byte is within the entity
+     */
+    private static long[] requestedRange(final HttpRequest request, final long length, final String etag, final String lastModifiedHeader) {
+        final String rangeHeader = request.headers().get(RANGE);
+        if (rangeHeader == null) return null;
+        final String ifRange = request.headers().get(IF_RANGE);
+        if (ifRange != null && !ifRange.equals(lastModifiedHeader) && (etag == null || etag.startsWith("W/") || !ifRange.equals(etag))) return null;
+        return parseRange(rangeHeader, length);
+    }
+
+    /**
+     * Parses a single <code>bytes</code> range. Multiple ranges are not supported and yield the full entity.
+     * @param rangeHeader The Range header value, e.g. <code>bytes=0-499</code>, <code>bytes=500-</code> or <code>bytes=-500</code>
+     * @param length The full length of the entity
+     * @return the inclusive <code>[first, last]</code> byte positions, null to send the full entity, or
+     * {@link #UNSATISFIABLE} if no requested byte is within the entity
+     */
+    static long[] parseRange(final String rangeHeader, final long length) {
+        final String spec = rangeHeader.trim();
+        if (!spec.startsWith(BYTES + "=") || spec.indexOf(',') != -1) return null;
+        final int dash = spec.indexOf('-');
+        if (dash == -1) return null;
+        final String first = spec.substring(BYTES.length() + 1, dash).trim();
+        final String last = spec.substring(dash + 1).trim();
+        try {
+            if (first.length() == 0) {
+                // Suffix range: the final n bytes
+                if (last.length() == 0) return null;
+                final long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) return UNSATISFIABLE;
+                return new long[]{Math.max(0, length - suffix), length - 1};
+            }
+            final long start = Long.parseLong(first);
+            final long end = last.length() == 0 ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            if (start >= length) return UNSATISFIABLE;
+            if (end < start) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException nex) {
+            return null;
+        }
+    }
+
+    /**
+     * Renders a Content-Range header value
+     * @param range The inclusive <code>[first, last]</code> byte positions
+     * @param length The full length of the entity
+     * @return the Content-Range header value
+     */
+    private static String contentRange(final long[] range, final long length) {
+        return BYTES + " " + range[0] + "-" + range[1] + "/" + length;
+    }
+
     /**
      * {@inheritDoc}
      * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#exceptionCaught(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ExceptionEvent)
@@ -272,6 +508,9 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
     }
 
     private String sanitizeUri(String uri) {
+        // Drop the query string, e.g. cache busting version parameters
+        final int q = uri.indexOf('?');
+        if (q != -1) uri = uri.substring(0, q);
         // Decode the path.
         try {
             uri = URLDecoder.decode(uri, "UTF-8");
@@ -308,45 +547,59 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
     }
 
     /**
-     * When file timestamp is the same as what the browser is sending up, send a "304 Not Modified"
+     * When the client's copy is current, send a "304 Not Modified"
+     * @param ctx The channel handler context
+     * @param request The HTTP request
+     * @param etag The ETag of the current content, may be null
      */
-    private static void sendNotModified(ChannelHandlerContext ctx) {
+    private static void sendNotModified(ChannelHandlerContext ctx, HttpRequest request, String etag) {
         HttpResponse response = new DefaultHttpResponse(HTTP_1_1, NOT_MODIFIED);
         setDateHeader(response);
+        if (etag != null) response.headers().set(ETAG, etag);
 
-        // Close the connection as soon as the error message is sent.
-        ctx.getChannel().write(response).addListener(ChannelFutureListener.CLOSE);
+        final ChannelFuture writeFuture = ctx.getChannel().write(response);
+        if (!isKeepAlive(request)) {
+            writeFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * Sends a "416 Requested Range Not Satisfiable" with the entity length
+     * @param ctx The channel handler context
+     * @param request The HTTP request
+     * @param length The full length of the entity
+     */
+    private static void sendUnsatisfiable(ChannelHandlerContext ctx, HttpRequest request, long length) {
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, REQUESTED_RANGE_NOT_SATISFIABLE);
+        setDateHeader(response);
+        response.headers().set(CONTENT_RANGE, BYTES + " */" + length);
+        setContentLength(response, 0);
+
+        final ChannelFuture writeFuture = ctx.getChannel().write(response);
+        if (!isKeepAlive(request)) {
+            writeFuture.addListener(ChannelFutureListener.CLOSE);
+        }
     }
 
     /**
      * Sets the Date header for the HTTP response
      */
     private static void setDateHeader(HttpResponse response) {
-        SimpleDateFormat dateFormatter = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
-        dateFormatter.setTimeZone(TimeZone.getTimeZone(HTTP_DATE_GMT_TIMEZONE));
-
-        Calendar time = new GregorianCalendar();
-        response.headers().set(DATE, dateFormatter.format(time.getTime()));
+        response.headers().set(DATE, currentDateHeaders().date);
     }
 
     /**
      * Sets the Date and Cache headers for the HTTP Response
      *
-     * @param fileToCache the file to extract content type
+     * @param lastModifiedHeader the formatted last modified date of the file
      */
-    private static void setDateAndCacheHeaders(HttpResponse response, File fileToCache) {
-        SimpleDateFormat dateFormatter = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
-        dateFormatter.setTimeZone(TimeZone.getTimeZone(HTTP_DATE_GMT_TIMEZONE));
-
-        // Date header
-        Calendar time = new GregorianCalendar();
-        response.headers().set(DATE, dateFormatter.format(time.getTime()));
-
+    private static void setDateAndCacheHeaders(HttpResponse response, String lastModifiedHeader) {
+        final DateHeaders dh = currentDateHeaders();
+        response.headers().set(DATE, dh.date);
         // Add cache headers
-        time.add(Calendar.SECOND, HTTP_CACHE_SECONDS);
-        response.headers().set(EXPIRES, dateFormatter.format(time.getTime()));
-        response.headers().set(CACHE_CONTROL, "private, max-age=" + HTTP_CACHE_SECONDS);
-        response.headers().set(LAST_MODIFIED, dateFormatter.format(new Date(fileToCache.lastModified())));
+        response.headers().set(EXPIRES, dh.expires);
+        response.headers().set(CACHE_CONTROL, CACHE_CONTROL_VALUE);
+        response.headers().set(LAST_MODIFIED, lastModifiedHeader);
     }
 
     /**
@@ -355,8 +608,58 @@ public class StaticContentHandler extends SimpleChannelUpstreamHandler {
      * @param file the file to extract content type
      */
     private static void setContentTypeHeader(HttpResponse response, File file) {
-        MimetypesFileTypeMap mimeTypesMap = new MimetypesFileTypeMap();
-        response.headers().set(CONTENT_TYPE, mimeTypesMap.getContentType(file.getPath()));
+        response.headers().set(CONTENT_TYPE, StaticContentCache.getContentType(file));
+    }
+
+    /**
+     * Formats the passed date as an HTTP header date
+     * @param date The date to format
+     * @return the formatted date
+     */
+    static String formatDate(final Date date) {
+    	synchronized(dateFormatter) {
+    		return dateFormatter.format(date);
+    	}
+    }
+
+    /**
+     * Returns the Date and Expires header values for the current second, formatting them only when the second changes
+     * @return the current date headers
+     */
+    static DateHeaders currentDateHeaders() {
+    	final long second = System.currentTimeMillis() / 1000;
+    	DateHeaders dh = dateHeaders;
+    	if(dh==null || dh.second!=second) {
+    		dh = new DateHeaders(second);
+    		dateHeaders = dh;
+    	}
+    	return dh;
+    }
+
+    /**
+     * <p>Title: DateHeaders</p>
+     * <p>Description: The immutable Date and Expires header values for one second</p>
+     * <p>Company: Helios Development Group LLC</p>
+     * @author Whitehead (nwhitehead AT heliosdev DOT org)
+     * <p><code>com.heliosapm.mws.server.net.http.StaticContentHandler.DateHeaders</code></p>
+     */
+    static final class DateHeaders {
+    	/** The second these headers were formatted for */
+    	final long second;
+    	/** The Date header value */
+    	final String date;
+    	/** The Expires header value */
+    	final String expires;
+
+    	/**
+    	 * Creates a new DateHeaders
+    	 * @param second The second to format the headers for
+    	 */
+    	DateHeaders(final long second) {
+    		this.second = second;
+    		date = formatDate(new Date(second * 1000));
+    		expires = formatDate(new Date((second + HTTP_CACHE_SECONDS) * 1000));
+    	}
     }
 
 }
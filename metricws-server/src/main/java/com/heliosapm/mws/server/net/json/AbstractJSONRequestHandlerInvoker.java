@@ -15,6 +15,8 @@
  */
 package com.heliosapm.mws.server.net.json;
 
+import com.heliosapm.mws.server.net.trace.RequestTrace;
+
 /**
  * <p>Title: AbstractJSONRequestHandlerInvoker</p>
  * <p>Description: </p> 
@@ -36,6 +38,8 @@ public abstract class AbstractJSONRequestHandlerInvoker  {
 	private final String opDescription;
 	/** The operation type */
 	private final RequestType type;
+	/** The op scheduling priority */
+	private final RequestPriority priority;
 	
 	/**
 	 * Creates a new AbstractJSONRequestHandlerInvoker
@@ -45,14 +49,16 @@ public abstract class AbstractJSONRequestHandlerInvoker  {
 	 * @param opName The target op name
 	 * @param opDescription The target op description
 	 * @param type The op type
+	 * @param priority The op scheduling priority
 	 */
-	public AbstractJSONRequestHandlerInvoker(Object targetService, String serviceName, String serviceDescription, String opName, String opDescription, RequestType type) {
+	public AbstractJSONRequestHandlerInvoker(Object targetService, String serviceName, String serviceDescription, String opName, String opDescription, RequestType type, RequestPriority priority) {
 		this.targetService = targetService;		
 		this.serviceName = serviceName;
 		this.serviceDescription = serviceDescription;
 		this.opDescription = opDescription;
 		this.opName = opName;
 		this.type = type;
+		this.priority = type==RequestType.UNSUBSCRIBE ? RequestPriority.CONTROL : priority;
 	}
 	
 
@@ -64,10 +70,9 @@ public abstract class AbstractJSONRequestHandlerInvoker  {
 	 * @param jsonRequest The json request to invoke
 	 */
 	public void invokeJSONRequest(JSONRequest jsonRequest) {
-		final long start = System.currentTimeMillis();
 		try {
 			doInvoke(jsonRequest);
-			long elpsd = System.currentTimeMillis() - start;
+			jsonRequest.traceStamp(RequestTrace.INVOKED);
 		} catch (Exception ex) {
 			
 			throw new RuntimeException("Failed to invoke JSON Service [" + serviceName + "/" + opName + "]", ex);
@@ -130,6 +135,14 @@ public abstract class AbstractJSONRequestHandlerInvoker  {
 	public RequestType getRequestType() {
 		return type;
 	}
+	
+	/**
+	 * Returns the scheduling priority of the op
+	 * @return the scheduling priority of the op
+	 */
+	public RequestPriority getPriority() {
+		return priority;
+	}
 
 	
 	
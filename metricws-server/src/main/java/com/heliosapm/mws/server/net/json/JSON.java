@@ -17,13 +17,18 @@ package com.heliosapm.mws.server.net.json;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.util.JSONPObject;
 
@@ -43,6 +48,8 @@ public class JSON {
 	    jsonMapper.configure(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS, true);
 	    jsonMapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
 	  }
+	  /** The shared json tree reader. Readers are immutable, so one serves every thread. */
+	  private static final ObjectReader treeReader = jsonMapper.reader(JsonNode.class);
 	  
 	  /**
 	   * Deserializes a JSON formatted string to a specific class type
@@ -225,6 +232,53 @@ public class JSON {
 	    }
 	  }
 
+	  /**
+	   * Parses a JSON tree directly from a channel buffer. The backing array of a heap buffer
+	   * is handed to the parser as is, so the content is not copied at all; any other buffer is
+	   * read straight into the parser's input buffer. Parser buffers are recycled per thread.
+	   * @param json The buffer to parse. Its reader index is not modified.
+	   * @return the parsed tree
+	   * @throws IllegalArgumentException if the data was null or empty or parsing failed
+	   * @throws JSONException if the data could not be parsed
+	   */
+	  public static final JsonNode parseToNode(final ChannelBuffer json) {
+	    if (json == null || !json.readable())
+	      throw new IllegalArgumentException("Incoming data was null or empty");
+	    try {
+	      if (json.hasArray()) {
+	        return treeReader.readValue(json.array(), json.arrayOffset() + json.readerIndex(), json.readableBytes());
+	      }
+	      return treeReader.readValue(new ChannelBufferInputStream(json.duplicate()));
+	    } catch (JsonParseException e) {
+	      throw new IllegalArgumentException(e);
+	    } catch (JsonMappingException e) {
+	      throw new IllegalArgumentException(e);
+	    } catch (IOException e) {
+	      throw new JSONException(e);
+	    }
+	  }
+
+	  /**
+	   * Parses a JSON tree from a string
+	   * @param json The string to parse
+	   * @return the parsed tree
+	   * @throws IllegalArgumentException if the data was null or empty or parsing failed
+	   * @throws JSONException if the data could not be parsed
+	   */
+	  public static final JsonNode parseToNode(final String json) {
+	    if (json == null || json.isEmpty())
+	      throw new IllegalArgumentException("Incoming data was null or empty");
+	    try {
+	      return treeReader.readValue(json);
+	    } catch (JsonParseException e) {
+	      throw new IllegalArgumentException(e);
+	    } catch (JsonMappingException e) {
+	      throw new IllegalArgumentException(e);
+	    } catch (IOException e) {
+	      throw new JSONException(e);
+	    }
+	  }
+
 	  /**
 	   * Serializes the given object to a JSON string
 	   * @param object The object to serialize
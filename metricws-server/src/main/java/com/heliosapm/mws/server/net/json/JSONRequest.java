@@ -15,7 +15,6 @@
  */
 package com.heliosapm.mws.server.net.json;
 
-import java.io.InputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Collections;
@@ -24,8 +23,9 @@ import java.util.Iterator;
 import java.util.Map;
 
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -35,6 +35,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.heliosapm.jmx.util.helpers.StringHelper;
+import com.heliosapm.mws.server.net.trace.RequestTrace;
 
 /**
  * <p>Title: JSONRequest</p>
@@ -73,6 +74,13 @@ public class JSONRequest {
 	/** Indicates if argument accessors should return default values, or throw exceptions */
 	protected boolean allowDefaults = true;
 	
+	/** The stage timing trace for this request, null if the request is not sampled */
+	@JsonIgnore
+	protected RequestTrace trace = null;
+	/** The id of the stage timing trace lease */
+	@JsonIgnore
+	protected long traceId = 0L;
+	
 
 	/** The arguments supplied to the op */
 	@JsonProperty("args")
@@ -103,22 +111,20 @@ public class JSONRequest {
 	
 	
 	public static JSONRequest newJSONRequest(final Channel channel, final WebSocketFrame frame) {
-		final ChannelBuffer cb = frame.getBinaryData();
-		InputStream is = null;
+		return newJSONRequest(channel, frame.getBinaryData());
+	}
+	
+	/**
+	 * Creates a new JSONRequest from a complete inbound message
+	 * @param channel The channel the request came in on
+	 * @param cb The buffer containing the json request
+	 * @return a new JSONRequest
+	 */
+	public static JSONRequest newJSONRequest(final Channel channel, final ChannelBuffer cb) {
 		try {
-			is = new ChannelBufferInputStream(cb);
-			JsonNode jsonNode = jsonMapper.readTree(is);
-			return new JSONRequest(channel, 
-					jsonNode.get("t").asText(),
-					jsonNode.get("rid").asLong(-1L),
-					-1L,
-					jsonNode.get("svc").asText(),
-					jsonNode.get("op").asText(),
-					jsonNode);			
+			return newJSONRequest(channel, JSON.parseToNode(cb));
 		} catch (Exception e) {
-			throw new RuntimeException("Failed to parse JsonNode from passed frame buffer [" + frame + "]", e);
-		} finally {
-			if(is!=null) try { is.close(); } catch (Exception x) {/* No Op */}
+			throw new RuntimeException("Failed to parse JsonNode from passed buffer [" + cb + "]", e);
 		}
 	}
 	
@@ -129,21 +135,31 @@ public class JSONRequest {
 	 * @return a new JSONRequest
 	 */
 	public static JSONRequest newJSONRequest(Channel channel, CharSequence jsonContent) {
-		if(jsonContent==null || jsonContent.toString().trim().isEmpty()) throw new IllegalArgumentException("The passed json content was null or empty");
+		final String json = jsonContent==null ? null : jsonContent.toString().trim();
+		if(json==null || json.isEmpty()) throw new IllegalArgumentException("The passed json content was null or empty");
 		try {
-			JsonNode jsonNode = jsonMapper.readTree(jsonContent.toString().trim());
-			return new JSONRequest(channel, 
-					jsonNode.get("t").asText(),
-					jsonNode.get("rid").asLong(-1L),
-					-1L,
-					jsonNode.get("svc").asText(),
-					jsonNode.get("op").asText(),
-					jsonNode);
+			return newJSONRequest(channel, JSON.parseToNode(json));
 		} catch (Exception e) {
-			throw new RuntimeException("Failed to parse JsonNode from passed string [" + jsonContent + "]", e);
+			throw new RuntimeException("Failed to parse JsonNode from passed string [" + json + "]", e);
 		}		
 	}
 	
+	/**
+	 * Creates a new JSONRequest from a parsed request
+	 * @param channel The channel the request came in on
+	 * @param jsonNode The parsed json request
+	 * @return a new JSONRequest
+	 */
+	private static JSONRequest newJSONRequest(final Channel channel, final JsonNode jsonNode) {
+		return new JSONRequest(channel, 
+				jsonNode.get("t").asText(),
+				jsonNode.get("rid").asLong(-1L),
+				-1L,
+				jsonNode.get("svc").asText(),
+				jsonNode.get("op").asText(),
+				jsonNode);
+	}
+	
 	/**
 	 * Creates a new JSONRequest
 	 * @param channel The channel that the request came in on. Ignored if null 
@@ -225,6 +241,73 @@ public class JSONRequest {
 	}
 	
 	
+	/**
+	 * Attaches a stage timing trace to this request and records its DECODED stamp
+	 * @param trace The trace leased for this request. Ignored if null.
+	 * @return this request
+	 */
+	public JSONRequest setTrace(final RequestTrace trace) {
+		if(trace!=null) {
+			this.trace = trace;
+			traceId = trace.getId();
+			trace.op(traceId, serviceName, opName);
+			trace.stamp(traceId, RequestTrace.DECODED);
+		}
+		return this;
+	}
+	
+	/**
+	 * Indicates if this request is being traced
+	 * @return true if this request is being traced, false otherwise
+	 */
+	public boolean isTraced() {
+		return trace!=null;
+	}
+	
+	/**
+	 * Records a stage timing stamp if this request is being traced
+	 * @param stamp The stamp index (see {@link RequestTrace})
+	 */
+	public void traceStamp(final int stamp) {
+		if(trace!=null) trace.stamp(traceId, stamp);
+	}
+	
+	/**
+	 * Returns a listener which completes this request's trace when the first response write completes
+	 * @return the trace completion listener or null if this request is not being traced
+	 */
+	public ChannelFutureListener traceCompleter() {
+		if(trace==null) return null;
+		final RequestTrace t = trace;
+		final long id = traceId;
+		return new ChannelFutureListener() {
+			@Override
+			public void operationComplete(final ChannelFuture future) throws Exception {
+				t.complete(id);
+			}
+		};
+	}
+
+	/**
+	 * Frees this request's trace slot without aggregating it, for a response that will never be written
+	 */
+	public void traceCancel() {
+		if(trace!=null) trace.cancel(traceId);
+	}
+
+	/**
+	 * Transport hook allowing a request which did not arrive as a web socket frame to take delivery
+	 * of a response sent back to its originating channel. The default implementation declines, in which case
+	 * the response is written as a {@link org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame}.
+	 * @param response The response being sent
+	 * @param content The serialized response
+	 * @param future The future to complete when the response has been written
+	 * @return true if the response was delivered by this request, false otherwise
+	 */
+	protected boolean writeResponse(final JSONResponse response, final ChannelBuffer content, final ChannelFuture future) {
+		return false;
+	}
+
 	/**
 	 * Returns a {@link JSONResponse} for this request
 	 * @param responseType The response type of the response to prepare
@@ -261,12 +344,26 @@ public class JSONRequest {
 		return new JSONSubConfirm(requestId,ResponseType.SUB_STARTED, subKey, channel, this);
 	}	
 	
+	/**
+	 * Registers the subscription started by this request with the {@link SubscriptionRegistry} so it is
+	 * cancelled if the channel closes or is reaped before the caller unsubscribes
+	 * @param subKey The unique subscription identifier
+	 * @param canceller The callback which cancels the subscription
+	 * @return this request
+	 */
+	public JSONRequest registerSubscription(final String subKey, final Runnable canceller) {
+		SubscriptionRegistry.register(channel, subKey, canceller);
+		return this;
+	}
+
 	/**
 	 * Returns a subscription cancellation {@link JSONResponse} for the cancelled subscription.
+	 * The subscription is unregistered from the {@link SubscriptionRegistry}.
 	 * @param subKey The unique subscription identifier
 	 * @return a subscription cancellation {@link JSONResponse} for the cancelled subscription.
 	 */
 	public JSONResponse subCancel(String subKey) {
+		if(channel!=null) SubscriptionRegistry.unregister(channel, subKey);
 		return new JSONSubConfirm(requestId, ResponseType.SUB_STOPPED, subKey, channel, this);
 	}	
 	
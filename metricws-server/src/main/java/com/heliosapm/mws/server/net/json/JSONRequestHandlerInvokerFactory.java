@@ -104,6 +104,7 @@ public class JSONRequestHandlerInvokerFactory {
 				final String opName = jsonHandler.name();
 				final String opDescription = jsonHandler.description();
 				final RequestType opType = jsonHandler.type();
+				final RequestPriority opPriority = jsonHandler.priority();
 				
 
 				
@@ -181,8 +182,8 @@ public class JSONRequestHandlerInvokerFactory {
 				invokerClass.addMethod(invokerMethod);
 				//invokerClass.writeFile(System.getProperty("java.io.tmpdir") + File.separator + "jsoninvokers");
 				Class<?> clazz = invokerClass.toClass(handlerInstance.getClass().getClassLoader(), handlerInstance.getClass().getProtectionDomain());
-				Constructor<?> ctor = clazz.getDeclaredConstructor(Object.class, String.class, String.class, String.class, String.class, RequestType.class);
-				AbstractJSONRequestHandlerInvoker invokerInstance = (AbstractJSONRequestHandlerInvoker)ctor.newInstance(handlerInstance, invokerServiceKey, invokerServiceDescription, opName, opDescription, opType);
+				Constructor<?> ctor = clazz.getDeclaredConstructor(Object.class, String.class, String.class, String.class, String.class, RequestType.class, RequestPriority.class);
+				AbstractJSONRequestHandlerInvoker invokerInstance = (AbstractJSONRequestHandlerInvoker)ctor.newInstance(handlerInstance, invokerServiceKey, invokerServiceDescription, opName, opDescription, opType, opPriority);
 				subInvokerMap.put(opName, invokerInstance);				
 			}
 			invokerCache.put(handlerInstance.getClass(), invokerMap);
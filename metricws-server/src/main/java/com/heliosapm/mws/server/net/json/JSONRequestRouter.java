@@ -27,6 +27,10 @@ package com.heliosapm.mws.server.net.json;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.management.ObjectName;
 
 import org.reflections.Reflections;
 import org.reflections.scanners.SubTypesScanner;
@@ -37,12 +41,25 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.concurrency.JMXManagedThreadPool;
+import com.heliosapm.jmx.concurrency.JMXManagedVirtualThreadExecutor;
+import com.heliosapm.jmx.concurrency.Prioritized;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+import com.heliosapm.mws.server.net.SessionQuotas;
 import com.heliosapm.mws.server.net.json.annotations.JSONRequestHandler;
 import com.heliosapm.mws.server.net.json.annotations.JSONRequestService;
+import com.heliosapm.mws.server.net.trace.RequestTrace;
 
 /**
  * <p>Title: JSONRequestRouter</p>
- * <p>Description: Examines JSON requests and routes them to the correct {@link JSONRequestService} annotated instance.</p> 
+ * <p>Description: Examines JSON requests and routes them to the correct {@link JSONRequestService} annotated instance.
+ * Handlers are invoked on the calling I/O thread, or dispatched to the handler executor selected by
+ * <b><code>mws.handler.executor</code></b>: <b><code>pool</code></b> for a {@link JMXManagedThreadPool} or
+ * <b><code>virtual</code></b> for one virtual thread per request (falling back to a pool on JVMs without them).
+ * Ops declared {@link RequestPriority#CONTROL} (including all unsubscribes) are always invoked inline so they never
+ * wait behind data-plane work, and the handler pool queues the remaining ops by {@link RequestPriority} with aging.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.tsdb.plugins.remoting.json.JSONRequestRouter</code></p>
@@ -59,6 +76,11 @@ public class JSONRequestRouter {
 	protected final ConcurrentHashMap<String, Map<String, AbstractJSONRequestHandlerInvoker>> invokerMap = new ConcurrentHashMap<String, Map<String, AbstractJSONRequestHandlerInvoker>>();
 	/** The json node factory */
 	private final JsonNodeFactory nodeFactory = JsonNodeFactory.instance; 
+	/** The executor handlers are dispatched to, null if handlers are invoked inline */
+	protected final ExecutorService handlerExecutor;
+	
+	/** The JMX ObjectName of the request handler executor */
+	public static final ObjectName HANDLER_EXECUTOR_OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=JSONRequestRouter,pool=Handlers");
 	
 	
 	/**
@@ -80,6 +102,7 @@ public class JSONRequestRouter {
 	 * Creates a new JSONRequestRouter
 	 */
 	private JSONRequestRouter() {
+		handlerExecutor = createHandlerExecutor();
 		registerJSONService(this);
 		Reflections r = new Reflections("com", new SubTypesScanner(), new TypesScanner(), new TypeAnnotationsScanner());
 		final Set<Class<?>> jsonRequestServices = r.getTypesAnnotatedWith(JSONRequestService.class, true);
@@ -120,26 +143,99 @@ public class JSONRequestRouter {
 	 * Routes a json request to the intended request handler
 	 * @param jsonRequest The request to route
 	 */
-	public void route(JSONRequest jsonRequest) {
+	public void route(final JSONRequest jsonRequest) {
 		Map<String, AbstractJSONRequestHandlerInvoker> imap = invokerMap.get(jsonRequest.serviceName);
 		if(imap==null) {
 			jsonRequest.error("Failed to route to service name [" + jsonRequest.serviceName + "]").send();
 			return;
 		}
-		AbstractJSONRequestHandlerInvoker invoker = imap.get(jsonRequest.opName);
+		final AbstractJSONRequestHandlerInvoker invoker = imap.get(jsonRequest.opName);
 		if(invoker==null) {
 			jsonRequest.error("Failed to route to op [" + jsonRequest.serviceName + "/" + jsonRequest.opName + "]").send();
 			return;
 		}
-		invoker.invokeJSONRequest(jsonRequest);		
+		if(invoker.getRequestType()==RequestType.SUBSCRIBE && jsonRequest.channel!=null && !SessionQuotas.getInstance().admitSubscription(jsonRequest.channel)) {
+			jsonRequest.error("Subscription quota of [" + SessionQuotas.getInstance().getMaxSubscriptions() + "] exceeded").send();
+			return;
+		}
+		jsonRequest.traceStamp(RequestTrace.ROUTED);
+		if(handlerExecutor==null || invoker.getPriority()==RequestPriority.CONTROL) {
+			invoker.invokeJSONRequest(jsonRequest);
+			return;
+		}
+		try {
+			handlerExecutor.execute(new HandlerTask(invoker, jsonRequest));
+		} catch (RejectedExecutionException rex) {
+			jsonRequest.error("Request [" + jsonRequest.serviceName + "/" + jsonRequest.opName + "] rejected: server busy").send();
+		}
 	}
 	
+	/**
+	 * <p>Title: HandlerTask</p>
+	 * <p>Description: A dispatched JSON request invocation carrying the op's priority to the handler executor's work queue</p> 
+	 */
+	private class HandlerTask implements Runnable, Prioritized {
+		/** The op invoker */
+		private final AbstractJSONRequestHandlerInvoker invoker;
+		/** The request to invoke */
+		private final JSONRequest jsonRequest;
+		
+		HandlerTask(final AbstractJSONRequestHandlerInvoker invoker, final JSONRequest jsonRequest) {
+			this.invoker = invoker;
+			this.jsonRequest = jsonRequest;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				invoker.invokeJSONRequest(jsonRequest);
+			} catch (Exception ex) {
+				log.error("Failed to invoke JSON request [{}/{}]", jsonRequest.serviceName, jsonRequest.opName, ex);
+				jsonRequest.error("Failed to invoke [" + jsonRequest.serviceName + "/" + jsonRequest.opName + "]", ex).send();
+			}
+		}
+		
+		@Override
+		public int getPriority() {
+			return invoker.getPriority().ordinal();
+		}
+	}
+	
+	/**
+	 * Creates the configured handler executor
+	 * @return the handler executor or null if handlers are invoked inline
+	 */
+	protected ExecutorService createHandlerExecutor() {
+		final String mode = ConfigurationHelper.getConfig().get(Configuration.HANDLER_EXECUTOR_PROP, String.class).trim().toLowerCase();
+		if("virtual".equals(mode)) {
+			return JMXManagedVirtualThreadExecutor.newExecutor(HANDLER_EXECUTOR_OBJECT_NAME, "RequestHandler", ConfigurationHelper.getConfig().get(Configuration.HANDLER_MAXCONCURRENCY_PROP, int.class));
+		} else if("pool".equals(mode)) {
+			return new JMXManagedThreadPool(HANDLER_EXECUTOR_OBJECT_NAME, "RequestHandler", JMXManagedThreadPool.QUEUE_TYPE_PRIORITY, true);
+		} else if(!"inline".equals(mode)) {
+			log.warn("Unrecognized handler executor mode [{}]. Handlers will be invoked inline.", mode);
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the request type of the named op
+	 * @param serviceName The service name
+	 * @param opName The op name
+	 * @return the request type of the op or null if the op was not found
+	 */
+	public RequestType getRequestType(final String serviceName, final String opName) {
+		final Map<String, AbstractJSONRequestHandlerInvoker> imap = invokerMap.get(serviceName);
+		if(imap==null) return null;
+		final AbstractJSONRequestHandlerInvoker invoker = imap.get(opName);
+		return invoker==null ? null : invoker.getRequestType();
+	}
+
 	/**
 	 * Writes a JSON catalog of the available services
 	 * @param jsonRequest The json request
 	 * <p>Note: payload for test:<b><code>{"t":"req", "rid":1, "svc":"router", "op":"services"}</code></b></p>
 	 */
-	@JSONRequestHandler(name="services", description="Returns a catalog of available JSON services")
+	@JSONRequestHandler(name="services", description="Returns a catalog of available JSON services", priority=RequestPriority.CONTROL)
 	public void services(JSONRequest jsonRequest) {
 		ObjectNode servicesMap = nodeFactory.objectNode();
 		ObjectNode serviceMap = nodeFactory.objectNode();
@@ -156,7 +252,8 @@ public class JSONRequestRouter {
 			for(AbstractJSONRequestHandlerInvoker invoker: opInvokerMap.values()) {
 				ObjectNode opDetails = nodeFactory.objectNode();
 				opDetails.put("desc", invoker.getOpDescription());
-				opDetails.put("type", invoker.getRequestType().code);				
+				opDetails.put("type", invoker.getRequestType().code);
+				opDetails.put("priority", invoker.getPriority().name().toLowerCase());
 				opMap.set(invoker.getOpName(), opDetails);
 			}			
 		}
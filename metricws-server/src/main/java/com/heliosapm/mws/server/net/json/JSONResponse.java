@@ -29,6 +29,13 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonStreamContext;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.mws.server.net.WriteCoalescer;
+import com.heliosapm.mws.server.net.trace.RequestTrace;
+import com.heliosapm.mws.server.net.ws.SubscriptionFrame;
+import com.heliosapm.mws.server.net.ws.WebSocketFrameOutputStream;
+import com.heliosapm.mws.server.net.ws.WebSocketHandshakeHandler;
 
 /**
  * <p>Title: JSONResponse</p>
@@ -75,6 +82,10 @@ public class JSONResponse implements ChannelBufferizable {
 	@JsonIgnore
 	private volatile ChannelBufferOutputStream channelOutputStream = null;
 	
+	/** The web socket frame output stream used in lieu of content when the channel is a web socket */
+	@JsonIgnore
+	private volatile WebSocketFrameOutputStream frameOutputStream = null;
+	
 	/** The json generator for streaming content */
 	@JsonIgnore
 	private volatile JsonGenerator jsonGen = null;
@@ -88,6 +99,10 @@ public class JSONResponse implements ChannelBufferizable {
 	@JsonIgnore
 	private static final ChannelBufferFactory bufferFactory = new DirectChannelBufferFactory(2048);
 	
+	/** The size of the frames large web socket responses are streamed in */
+	@JsonIgnore
+	private static final int streamChunkSize = ConfigurationHelper.getConfig().get(Configuration.WS_STREAM_CHUNK_PROP, int.class);
+	
 	/** A channel local map of options, set upstream, to configure how downstream handlers serialize objects */
 	@JsonIgnore
 	private static final ChannelLocal<Map<String, Object>> channelLocal = new ChannelLocal<Map<String, Object>>(true) {
@@ -143,13 +158,21 @@ public class JSONResponse implements ChannelBufferizable {
 	}
 	
 	/**
-	 * Returns an OutputStream that writes directly to a channel buffer which will be flushed to the channel on send
+	 * Returns an OutputStream that writes directly to a channel buffer which will be flushed to the channel on send.
+	 * If the channel is a web socket, the content is instead streamed out in frames as it is written
+	 * (see {@link WebSocketFrameOutputStream}) and the stream must be closed.
 	 * @return a channel buffer OutputStream 
 	 */
 	public OutputStream getChannelOutputStream() {
 		if(content!=null) {
 			throw new RuntimeException("Cannot start OutputStream. Content already set");
 		}
+		if(channelOutputStream==null && WebSocketHandshakeHandler.isWebSocket(channel)) {
+			if(frameOutputStream==null) {
+				frameOutputStream = new WebSocketFrameOutputStream(channel, Channels.future(channel), streamChunkSize, bufferFactory);
+			}
+			return frameOutputStream;
+		}
 		if(channelOutputStream==null) {
 			channelOutputStream = new ChannelBufferOutputStream(ChannelBuffers.dynamicBuffer(8096, bufferFactory)) {
 				final ChannelBuffer buf = this.buffer();
@@ -180,6 +203,11 @@ public class JSONResponse implements ChannelBufferizable {
 		if(content!=null) {
 			throw new RuntimeException("Cannot reset OutputStream. Content already set");
 		}
+		if(frameOutputStream!=null) {
+			frameOutputStream.reset();
+			jsonGen = null;
+			return;
+		}
 		if(channelOutputStream != null) {
 			ChannelBuffer buff = channelOutputStream.buffer();
 			try {
@@ -279,7 +307,7 @@ public class JSONResponse implements ChannelBufferizable {
 	 * @return this json response
 	 */
 	public JSONResponse setContent(Object content) {
-		if(channelOutputStream!=null) {
+		if(channelOutputStream!=null || frameOutputStream!=null) {
 			throw new RuntimeException("Cannot set content. OutputStream already set");
 		}
 		this.content = content;
@@ -292,7 +320,7 @@ public class JSONResponse implements ChannelBufferizable {
 	 * @return this json response
 	 */
 	public JSONResponse setContent(ChannelBuffer channelBuffer) {
-		if(channelOutputStream!=null) {
+		if(channelOutputStream!=null || frameOutputStream!=null) {
 			throw new RuntimeException("Cannot set content. OutputStream already set");
 		}
 		content = channelBuffer;
@@ -358,12 +386,19 @@ public class JSONResponse implements ChannelBufferizable {
 //			System.out.println(printOutputContext(jsonGen.getOutputContext())) ;
 			jsonGen.writeEndObject();
 			jsonGen.close();
-			channelOutputStream.close();
+			if(frameOutputStream!=null) {
+				frameOutputStream.close();
+			} else {
+				channelOutputStream.close();
+			}
 		} catch (Exception ex) {
+			// Always end a streamed message so the web socket's write lock is released
+			if(frameOutputStream!=null) try { frameOutputStream.close(); } catch (Exception x) {/* No Op */}
 			throw new RuntimeException("Failed to close JsonGenerator", ex);
 		} finally {
 			jsonGen = null;
 			channelOutputStream = null;
+			frameOutputStream = null;
 			content = null;
 		}		
 	}
@@ -425,6 +460,15 @@ public class JSONResponse implements ChannelBufferizable {
 		return type;
 	}
 
+	/**
+	 * Returns the subscription key of this response if it is a subscription event or the stop of a subscription.
+	 * Such responses are written as {@link SubscriptionFrame}s so they can be conflated per subscription.
+	 * @return the subscription key or null if this response is not a subscription event or stop
+	 */
+	protected String subscriptionKey() {
+		return null;
+	}
+
 	/**
 	 * Returns the response op code
 	 * @return the response op code
@@ -445,31 +489,98 @@ public class JSONResponse implements ChannelBufferizable {
 	
 	
 	/**
-	 * Sends this response to all the passed channels as a {@link TextWebSocketFrame}
+	 * Sends this response to all the passed channels as a {@link TextWebSocketFrame}.
+	 * If one of the channels is the parent request's originating channel, the parent request
+	 * is first given the opportunity to deliver the response through its own transport
+	 * (see {@link JSONRequest#writeResponse(JSONResponse, ChannelBuffer, ChannelFuture)}).
 	 * @param listener A channel future listener to attach to each channel future. Ignored if null.
 	 * @param channels The channels to send this response to
+	 * A response to a single web socket is serialized straight into frames (see {@link #stream(ChannelFutureListener, Channel)}),
+	 * unless it is a subscription event or stop, which is sent as one {@link SubscriptionFrame}.
 	 * @return An array of the futures for the write of this response to each channel written to
 	 */
 	public ChannelFuture[] send(ChannelFutureListener listener, Channel...channels) {
 		if(channels!=null && channels.length>0) {
-			Set<ChannelFuture> futures = new HashSet<ChannelFuture>(channels.length);
 			if(opCode==null) {
 				opCode = "ok";
 			}
-			TextWebSocketFrame frame = new TextWebSocketFrame(this.toChannelBuffer());
-			for(Channel channel: channels) {
-				if(channel!=null && channel.isWritable()) {
+			final String subKey = subscriptionKey();
+			if(channels.length==1 && subKey==null && channelOutputStream==null && WebSocketHandshakeHandler.isWebSocket(channels[0])) {
+				final ChannelFuture cf = stream(listener, channels[0]);
+				return cf==null ? EMPTY_CHANNEL_FUTURE_ARR : new ChannelFuture[]{cf};
+			}
+			Set<ChannelFuture> futures = new HashSet<ChannelFuture>(channels.length);
+			final boolean traced = parentRequest!=null && parentRequest.isTraced();
+			if(traced) parentRequest.traceStamp(RequestTrace.SEND);
+			final ChannelBuffer content = this.toChannelBuffer();
+			if(traced) parentRequest.traceStamp(RequestTrace.SERIALIZED);
+			TextWebSocketFrame frame = null;
+			// a fan-out to several channels is one coalesced batch, flushed when the fan-out completes
+			final boolean fanOut = channels.length > 1;
+			if(fanOut) WriteCoalescer.beginBatch();
+			try {
+				for(Channel channel: channels) {
+					if(channel==null) continue;
+					final boolean origin = parentRequest!=null && parentRequest.channel==channel;
+					// the originating request's transport always gets its response, even when the channel
+					// is not writable, since an ordered HTTP exchange would otherwise never complete
+					if(!origin && !channel.isWritable()) continue;
 					ChannelFuture cf = Channels.future(channel);
 					if(listener!=null) cf.addListener(listener);
-					channel.getPipeline().sendDownstream(new DownstreamMessageEvent(channel, cf, frame, channel.getRemoteAddress()));
+					if(traced && origin) cf.addListener(parentRequest.traceCompleter());
+					if(!origin || !parentRequest.writeResponse(this, content.duplicate(), cf)) {
+						if(!channel.isWritable()) {
+							// the trace completer will never fire, so free the trace slot now
+							if(traced && origin) parentRequest.traceCancel();
+							continue;
+						}
+						if(frame==null) frame = subKey==null ? new TextWebSocketFrame(content) : new SubscriptionFrame(subKey, ResponseType.SUB.code.equals(type), content);
+						channel.getPipeline().sendDownstream(new DownstreamMessageEvent(channel, cf, frame, channel.getRemoteAddress()));
+					}
 					futures.add(cf);
 				}
+			} finally {
+				if(fanOut) WriteCoalescer.endBatch();
 			}
 			return futures.toArray(new ChannelFuture[futures.size()]);
 		}		
 		return EMPTY_CHANNEL_FUTURE_ARR;
 	}
 	
+	/**
+	 * Serializes this response directly into web socket frames of the configured chunk size, so a large
+	 * response is never materialized in one buffer, nor bounded by a maximum frame size.
+	 * @param listener A channel future listener to attach to the write's future. Ignored if null.
+	 * @param channel The web socket to write to
+	 * @return the future of the write of the final frame, or null if the channel was not writable
+	 */
+	protected ChannelFuture stream(final ChannelFutureListener listener, final Channel channel) {
+		if(!channel.isWritable()) {
+			// nothing is written, so free the trace slot rather than leave it to the reaper
+			if(parentRequest!=null && parentRequest.channel==channel) parentRequest.traceCancel();
+			return null;
+		}
+		final boolean traced = parentRequest!=null && parentRequest.isTraced();
+		if(traced) parentRequest.traceStamp(RequestTrace.SEND);
+		final ChannelFuture cf = Channels.future(channel);
+		if(listener!=null) cf.addListener(listener);
+		if(traced && parentRequest.channel==channel) cf.addListener(parentRequest.traceCompleter());
+		ObjectMapper om = mapperOverride;
+		if(om==null) {
+			om = jsonMapper;
+		}
+		final WebSocketFrameOutputStream out = new WebSocketFrameOutputStream(channel, cf, streamChunkSize, bufferFactory);
+		try {
+			// The mapper closes the stream, which writes the final frame
+			om.writeValue(out, this);
+		} catch (Exception ex) {
+			try { out.close(); } catch (Exception x) {/* No Op */}
+			throw new RuntimeException("Failed to stream object as JSON", ex);
+		}
+		if(traced) parentRequest.traceStamp(RequestTrace.SERIALIZED);
+		return cf;
+	}
+	
 	/**
 	 * Sends this response to all the passed channels as a {@link TextWebSocketFrame}
 	 * @param channels The channels to send this response to
@@ -34,4 +34,13 @@ public class JSONSubConfirm extends JSONResponse {
 		this.subKey = subKey;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.json.JSONResponse#subscriptionKey()
+	 */
+	@Override
+	protected String subscriptionKey() {
+		return (ResponseType.SUB.code.equals(type) || ResponseType.SUB_STOPPED.code.equals(type)) ? subKey : null;
+	}
+
 }
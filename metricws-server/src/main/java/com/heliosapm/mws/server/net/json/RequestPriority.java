@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.mws.server.net.json;
+
+/**
+ * <p>Title: RequestPriority</p>
+ * <p>Description: Enumerates the scheduling priority classes of JSON request ops. The ordinal is the
+ * priority level handed to the handler executor's work queue, 0 being the highest.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.json.RequestPriority</code></p>
+ */
+public enum RequestPriority {
+	/** Cheap control-plane ops (unsubscribe, ping, cancel, catalog) which are never queued behind data-plane work */
+	CONTROL,
+	/** Regular data-plane ops */
+	NORMAL,
+	/** Heavy data-plane ops such as history or bulk JMX queries, which yield to normal ops until they age */
+	BULK;
+}
@@ -0,0 +1,144 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net.json;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelLocal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: SubscriptionRegistry</p>
+ * <p>Description: Tracks the subscriptions held by each channel together with the callback that cancels each one,
+ * so that every subscription a channel holds is cancelled when the channel closes or is reaped, whichever
+ * service created it. Subscription services register through {@link JSONRequest#registerSubscription(String, Runnable)}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.json.SubscriptionRegistry</code></p>
+ */
+
+public class SubscriptionRegistry {
+	/** Static class logger */
+	private static final Logger LOG = LoggerFactory.getLogger(SubscriptionRegistry.class);
+	/** The cancellers of each channel's subscriptions keyed by subscription key. Not removed on close by the channel local itself since {@link #CLOSE_LISTENER} needs the entry. */
+	private static final ChannelLocal<Map<String, Runnable>> subscriptions = new ChannelLocal<Map<String, Runnable>>(false);
+	/** The total number of active subscriptions */
+	private static final AtomicInteger active = new AtomicInteger();
+
+	/** Cancels a channel's remaining subscriptions when it closes */
+	private static final ChannelFutureListener CLOSE_LISTENER = new ChannelFutureListener() {
+		@Override
+		public void operationComplete(final ChannelFuture future) throws Exception {
+			cancelAll(future.getChannel());
+		}
+	};
+
+	/**
+	 * Registers a subscription held by the passed channel
+	 * @param channel The subscribing channel
+	 * @param subKey The unique subscription key
+	 * @param canceller The callback which cancels the subscription
+	 */
+	public static void register(final Channel channel, final String subKey, final Runnable canceller) {
+		if(channel==null) throw new IllegalArgumentException("The passed channel was null");
+		if(subKey==null) throw new IllegalArgumentException("The passed subscription key was null");
+		if(canceller==null) throw new IllegalArgumentException("The passed canceller was null");
+		Map<String, Runnable> subs = subscriptions.get(channel);
+		if(subs==null) {
+			subs = new NonBlockingHashMap<String, Runnable>();
+			final Map<String, Runnable> prior = subscriptions.setIfAbsent(channel, subs);
+			if(prior==null) {
+				channel.getCloseFuture().addListener(CLOSE_LISTENER);
+			} else {
+				subs = prior;
+			}
+		}
+		if(subs.put(subKey, canceller)==null) active.incrementAndGet();
+	}
+
+	/**
+	 * Unregisters a subscription which has been cancelled by its owner. The canceller is not called.
+	 * @param channel The subscribing channel
+	 * @param subKey The unique subscription key
+	 * @return true if the subscription was registered
+	 */
+	public static boolean unregister(final Channel channel, final String subKey) {
+		final Map<String, Runnable> subs = subscriptions.get(channel);
+		if(subs!=null && subs.remove(subKey)!=null) {
+			active.decrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Cancels every subscription held by the passed channel
+	 * @param channel The channel
+	 * @return the number of subscriptions cancelled
+	 */
+	public static int cancelAll(final Channel channel) {
+		final Map<String, Runnable> subs = subscriptions.remove(channel);
+		if(subs==null) return 0;
+		int cancelled = 0;
+		for(String subKey: subs.keySet()) {
+			final Runnable canceller = subs.remove(subKey);
+			if(canceller==null) continue;
+			active.decrementAndGet();
+			cancelled++;
+			try {
+				canceller.run();
+			} catch (Exception ex) {
+				LOG.warn("Failed to cancel subscription [{}] for channel [{}]", subKey, channel, ex);
+			}
+		}
+		return cancelled;
+	}
+
+	/**
+	 * Returns the number of subscriptions held by the passed channel
+	 * @param channel The channel
+	 * @return the number of subscriptions held by the channel
+	 */
+	public static int getSubscriptionCount(final Channel channel) {
+		final Map<String, Runnable> subs = subscriptions.get(channel);
+		return subs==null ? 0 : subs.size();
+	}
+
+	/**
+	 * Returns the total number of active subscriptions
+	 * @return the number of active subscriptions
+	 */
+	public static int getActiveCount() {
+		return active.get();
+	}
+
+	private SubscriptionRegistry() {}
+}
@@ -31,6 +31,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import com.heliosapm.mws.server.net.json.JSONRequest;
+import com.heliosapm.mws.server.net.json.RequestPriority;
 import com.heliosapm.mws.server.net.json.RequestType;
 
 
@@ -68,4 +69,9 @@ public @interface JSONRequestHandler {
 	 * The request type
 	 */
 	public RequestType type() default RequestType.REQUEST;
+	
+	/**
+	 * The scheduling priority class. {@link RequestType#UNSUBSCRIBE} ops are always {@link RequestPriority#CONTROL}.
+	 */
+	public RequestPriority priority() default RequestPriority.NORMAL;
 }
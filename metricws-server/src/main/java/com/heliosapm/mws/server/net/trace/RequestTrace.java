@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.mws.server.net.trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Title: RequestTrace</p>
+ * <p>Description: A reusable slot recording the {@link System#nanoTime()} stamps of one sampled JSON request
+ * as it passes through decode, route, invoke, serialize and write. Slots are pooled by the {@link RequestTracer}
+ * and leased to one request at a time under a trace id; stamps carrying a stale trace id are ignored. A stamp from an
+ * abandoned request that races the reclaim of its slot is rolled back once the reclaim is seen, but the new trace may
+ * briefly observe it, so a reclaimed slot can occasionally report a mis-timed stage.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.trace.RequestTrace</code></p>
+ */
+
+public class RequestTrace {
+	/** Stamp index: the request was received */
+	public static final int START = 0;
+	/** Stamp index: the request payload was decoded */
+	public static final int DECODED = 1;
+	/** Stamp index: the request was routed to its invoker */
+	public static final int ROUTED = 2;
+	/** Stamp index: the invoker returned */
+	public static final int INVOKED = 3;
+	/** Stamp index: the first response send started */
+	public static final int SEND = 4;
+	/** Stamp index: the first response was serialized */
+	public static final int SERIALIZED = 5;
+	/** Stamp index: the first response was written to the socket */
+	public static final int WRITTEN = 6;
+	/** The stamp names, indexed by stamp index */
+	public static final String[] STAMP_NAMES = {"start", "decoded", "routed", "invoked", "send", "serialized", "written"};
+
+	/** Stage index: payload decoding, START to DECODED */
+	public static final int STAGE_DECODE = 0;
+	/** Stage index: routing, DECODED to ROUTED */
+	public static final int STAGE_ROUTE = 1;
+	/** Stage index: handler invocation up to the first response, ROUTED to SEND */
+	public static final int STAGE_INVOKE = 2;
+	/** Stage index: response serialization, SEND to SERIALIZED */
+	public static final int STAGE_SERIALIZE = 3;
+	/** Stage index: the socket write, SERIALIZED to WRITTEN */
+	public static final int STAGE_WRITE = 4;
+	/** Stage index: the whole request, START to WRITTEN */
+	public static final int STAGE_TOTAL = 5;
+	/** The stage names, indexed by stage index */
+	public static final String[] STAGE_NAMES = {"decode", "route", "invoke", "serialize", "write", "total"};
+	/** The stamp pairs delimiting each stage, indexed by stage index */
+	private static final int[][] STAGE_STAMPS = {{START, DECODED}, {DECODED, ROUTED}, {ROUTED, SEND}, {SEND, SERIALIZED}, {SERIALIZED, WRITTEN}, {START, WRITTEN}};
+
+	/** The recorded stamps */
+	private final AtomicLongArray stamps = new AtomicLongArray(STAMP_NAMES.length);
+	/** The id of the trace currently leasing this slot, zero if the slot is free */
+	final AtomicLong owner = new AtomicLong(0L);
+	/** The highest trace id claimed for completion, so each trace is aggregated at most once */
+	private final AtomicLong completing = new AtomicLong(0L);
+	/** The wall clock time the slot was leased */
+	volatile long leasedAt = 0L;
+	/** The traced service name */
+	volatile String serviceName = null;
+	/** The traced op name */
+	volatile String opName = null;
+	/** The tracer that owns this slot */
+	private final RequestTracer tracer;
+
+	/**
+	 * Creates a new RequestTrace
+	 * @param tracer The tracer that owns this slot
+	 */
+	RequestTrace(final RequestTracer tracer) {
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Leases this slot to a new trace and records the START stamp
+	 * @param id The new trace id
+	 * @param expected The lease expected to be current, zero for a free slot
+	 * @return true if the lease was acquired, false otherwise
+	 */
+	boolean lease(final long id, final long expected) {
+		if(!owner.compareAndSet(expected, id)) return false;
+		for(int i = 1; i < stamps.length(); i++) {
+			stamps.set(i, 0L);
+		}
+		serviceName = null;
+		opName = null;
+		leasedAt = System.currentTimeMillis();
+		stamps.set(START, System.nanoTime());
+		return true;
+	}
+
+	/**
+	 * Returns the id of the trace currently leasing this slot
+	 * @return the current trace id, zero if the slot is free
+	 */
+	public long getId() {
+		return owner.get();
+	}
+
+	/**
+	 * Records a stamp for the passed trace. Only the first stamp recorded for each index is retained.
+	 * @param id The trace id
+	 * @param stamp The stamp index
+	 */
+	public void stamp(final long id, final int stamp) {
+		if(owner.get()==id && stamps.get(stamp)==0L) {
+			final long now = System.nanoTime();
+			// roll back a stamp that landed after the slot was reclaimed by another trace
+			if(stamps.compareAndSet(stamp, 0L, now) && owner.get()!=id) stamps.compareAndSet(stamp, now, 0L);
+		}
+	}
+
+	/**
+	 * Returns a recorded stamp
+	 * @param stamp The stamp index
+	 * @return the stamp or zero if it was not recorded
+	 */
+	long getStamp(final int stamp) {
+		return stamps.get(stamp);
+	}
+
+	/**
+	 * Copies the recorded stamps into the passed array
+	 * @param into The array to copy into
+	 */
+	void copyStamps(final long[] into) {
+		for(int i = 0; i < into.length; i++) {
+			into[i] = stamps.get(i);
+		}
+	}
+
+	/**
+	 * Records the service and op the trace was for
+	 * @param id The trace id
+	 * @param serviceName The service name
+	 * @param opName The op name
+	 */
+	public void op(final long id, final String serviceName, final String opName) {
+		if(owner.get()==id) {
+			this.serviceName = serviceName;
+			this.opName = opName;
+		}
+	}
+
+	/**
+	 * Records the WRITTEN stamp, hands the trace to the tracer for aggregation and frees the slot.
+	 * Only the first caller completing a trace aggregates it.
+	 * @param id The trace id
+	 */
+	public void complete(final long id) {
+		if(owner.get()!=id) return;
+		long claimed;
+		do {
+			claimed = completing.get();
+			if(claimed >= id) return;
+		} while(!completing.compareAndSet(claimed, id));
+		if(owner.get()!=id) return;
+		stamp(id, WRITTEN);
+		tracer.complete(this, id);
+	}
+
+	/**
+	 * Frees the slot without aggregating the trace, for requests which failed before being dispatched
+	 * @param id The trace id
+	 */
+	public void cancel(final long id) {
+		owner.compareAndSet(id, 0L);
+	}
+
+	/**
+	 * Computes the elapsed time of a stage from the recorded stamps
+	 * @param stage The stage index
+	 * @return the elapsed time in ns. or -1 if either delimiting stamp was not recorded
+	 */
+	long stage(final int stage) {
+		final long from = stamps.get(STAGE_STAMPS[stage][0]);
+		final long to = stamps.get(STAGE_STAMPS[stage][1]);
+		return (from==0L || to==0L) ? -1L : to - from;
+	}
+
+	/**
+	 * Computes the elapsed time of a stage from the passed stamps
+	 * @param stamps The stamps
+	 * @param stage The stage index
+	 * @return the elapsed time in ns. or -1 if either delimiting stamp was not recorded
+	 */
+	static long stage(final long[] stamps, final int stage) {
+		final long from = stamps[STAGE_STAMPS[stage][0]];
+		final long to = stamps[STAGE_STAMPS[stage][1]];
+		return (from==0L || to==0L) ? -1L : to - from;
+	}
+
+}
@@ -0,0 +1,483 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.mws.server.net.trace;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.metrics.LogLinearHistogram;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: RequestTracer</p>
+ * <p>Description: Samples a fraction of JSON requests and records the elapsed time of each processing stage
+ * (decode, route, invoke, serialize, write) into per-op histograms, retaining the slowest traces for inspection.
+ * Unsampled requests pay for one increment of a per-thread counter; sampled requests lease a pooled {@link RequestTrace}
+ * slot, so tracing does not allocate on the request path.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.trace.RequestTracer</code></p>
+ */
+
+public class RequestTracer implements RequestTracerMBean {
+	/** The singleton instance */
+	private static volatile RequestTracer instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+
+	/** The pooled trace slots */
+	private final RequestTrace[] slots;
+	/** The trace id factory */
+	private final AtomicLong traceIds = new AtomicLong(0L);
+	/** The slot scan start hint. Deliberately unsynchronized, contention only costs a longer scan */
+	private int slotCursor = 0;
+	/** Sample one in every <b><code>sampleEvery</code></b> requests, zero to disable */
+	private volatile int sampleEvery;
+	/** The per-thread sampling counters, so the I/O threads never contend on a shared counter */
+	private final ThreadLocal<int[]> sampleCounter = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	/** The stage histograms keyed by service name, then op name */
+	private final NonBlockingHashMap<String, NonBlockingHashMap<String, LogLinearHistogram[]>> opStages = new NonBlockingHashMap<String, NonBlockingHashMap<String, LogLinearHistogram[]>>();
+	/** The slowest traces retained */
+	private final SlowTrace[] slowest;
+	/** The number of slowest traces currently retained */
+	private int slowestCount = 0;
+	/** The total elapsed time a trace must exceed to be retained, once the slowest traces are full */
+	private volatile long slowestFloor = 0L;
+
+	/** The number of sampled requests */
+	private final AtomicLong sampled = new AtomicLong(0L);
+	/** The number of completed traces */
+	private final AtomicLong completed = new AtomicLong(0L);
+	/** The number of sampled requests dropped for lack of a free slot */
+	private final AtomicLong dropped = new AtomicLong(0L);
+	/** The number of slots reclaimed from abandoned traces */
+	private final AtomicLong abandoned = new AtomicLong(0L);
+
+	/** The json node factory */
+	private static final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+
+	/**
+	 * Acquires and returns the singleton instance
+	 * @return the singleton instance
+	 */
+	public static RequestTracer getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new RequestTracer();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a new RequestTracer
+	 */
+	private RequestTracer() {
+		final ConfigurationHelper.Config cfg = ConfigurationHelper.getConfig();
+		setSampleRate(cfg.get(Configuration.TRACE_SAMPLE_RATE_PROP, double.class));
+		slots = new RequestTrace[Math.max(1, cfg.get(Configuration.TRACE_SLOTS_PROP, int.class))];
+		for(int i = 0; i < slots.length; i++) {
+			slots[i] = new RequestTrace(this);
+		}
+		slowest = new SlowTrace[Math.max(1, cfg.get(Configuration.TRACE_SLOWEST_PROP, int.class))];
+		for(int i = 0; i < slowest.length; i++) {
+			slowest[i] = new SlowTrace();
+		}
+		JMXHelper.registerMBean(this, OBJECT_NAME);
+	}
+
+	/**
+	 * Called when a request is received. If the request is sampled, a trace slot is leased and its START stamp recorded.
+	 * @return the leased trace or null if the request is not sampled
+	 */
+	public RequestTrace start() {
+		final int every = sampleEvery;
+		if(every < 1) return null;
+		final int[] counter = sampleCounter.get();
+		if(((counter[0]++ & Integer.MAX_VALUE) % every)!=0) return null;
+		sampled.incrementAndGet();
+		final long id = traceIds.incrementAndGet();
+		final long now = System.currentTimeMillis();
+		final int len = slots.length;
+		final int cursor = slotCursor;
+		for(int i = 0; i < len; i++) {
+			final int index = (cursor + i) % len;
+			final RequestTrace slot = slots[index];
+			final long current = slot.owner.get();
+			if(current==0L) {
+				if(slot.lease(id, 0L)) {
+					slotCursor = index + 1;
+					return slot;
+				}
+			} else if(now - slot.leasedAt > ABANDONED_TRACE_MS) {
+				if(slot.lease(id, current)) {
+					abandoned.incrementAndGet();
+					slotCursor = index + 1;
+					return slot;
+				}
+			}
+		}
+		dropped.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Aggregates a completed trace and frees its slot
+	 * @param trace The completed trace
+	 * @param id The trace id
+	 */
+	void complete(final RequestTrace trace, final long id) {
+		final String svc = trace.serviceName;
+		final String op = trace.opName;
+		if(svc!=null && op!=null && trace.getStamp(RequestTrace.ROUTED)!=0L) {
+			final LogLinearHistogram[] histograms = histograms(svc, op);
+			for(int i = 0; i < histograms.length; i++) {
+				final long elapsed = trace.stage(i);
+				if(elapsed >= 0L) histograms[i].record(elapsed);
+			}
+		}
+		final long total = trace.stage(RequestTrace.STAGE_TOTAL);
+		if(total > slowestFloor) {
+			retain(trace, id, total);
+		}
+		completed.incrementAndGet();
+		trace.owner.compareAndSet(id, 0L);
+	}
+
+	/**
+	 * Returns the stage histograms for the passed op, creating them if necessary
+	 * @param svc The service name
+	 * @param op The op name
+	 * @return the stage histograms
+	 */
+	private LogLinearHistogram[] histograms(final String svc, final String op) {
+		NonBlockingHashMap<String, LogLinearHistogram[]> ops = opStages.get(svc);
+		if(ops==null) {
+			final NonBlockingHashMap<String, LogLinearHistogram[]> newOps = new NonBlockingHashMap<String, LogLinearHistogram[]>();
+			ops = opStages.putIfAbsent(svc, newOps);
+			if(ops==null) ops = newOps;
+		}
+		LogLinearHistogram[] histograms = ops.get(op);
+		if(histograms==null) {
+			final LogLinearHistogram[] newHistograms = new LogLinearHistogram[RequestTrace.STAGE_NAMES.length];
+			for(int i = 0; i < newHistograms.length; i++) {
+				newHistograms[i] = new LogLinearHistogram();
+			}
+			histograms = ops.putIfAbsent(op, newHistograms);
+			if(histograms==null) histograms = newHistograms;
+		}
+		return histograms;
+	}
+
+	/**
+	 * Copies a trace into the slowest traces, displacing the fastest retained trace if full
+	 * @param trace The trace to retain
+	 * @param id The trace id
+	 * @param total The trace's total elapsed time
+	 */
+	private synchronized void retain(final RequestTrace trace, final long id, final long total) {
+		if(total <= slowestFloor) return;
+		SlowTrace target;
+		if(slowestCount < slowest.length) {
+			target = slowest[slowestCount++];
+		} else {
+			target = slowest[0];
+			for(int i = 1; i < slowest.length; i++) {
+				if(slowest[i].total < target.total) target = slowest[i];
+			}
+		}
+		trace.copyStamps(target.stamps);
+		target.id = id;
+		target.total = total;
+		target.serviceName = trace.serviceName;
+		target.opName = trace.opName;
+		target.timestamp = trace.leasedAt;
+		if(slowestCount == slowest.length) {
+			long floor = Long.MAX_VALUE;
+			for(SlowTrace st: slowest) {
+				if(st.total < floor) floor = st.total;
+			}
+			slowestFloor = floor;
+		}
+	}
+
+	/**
+	 * Returns a sorted copy of the retained slowest traces
+	 * @return the slowest traces, slowest first
+	 */
+	private synchronized SlowTrace[] snapshotSlowest() {
+		final SlowTrace[] copy = new SlowTrace[slowestCount];
+		for(int i = 0; i < slowestCount; i++) {
+			copy[i] = slowest[i].copy();
+		}
+		Arrays.sort(copy);
+		return copy;
+	}
+
+	/**
+	 * Returns the slowest retained traces as JSON, slowest first. Elapsed times are in us.
+	 * @return a JSON array of the slowest traces
+	 */
+	public ArrayNode getSlowestTracesJSON() {
+		final ArrayNode arr = nodeFactory.arrayNode();
+		for(SlowTrace st: snapshotSlowest()) {
+			final ObjectNode node = arr.addObject();
+			node.put("id", st.id);
+			node.put("svc", st.serviceName);
+			node.put("op", st.opName);
+			node.put("ts", st.timestamp);
+			final ObjectNode stages = node.putObject("stages");
+			for(int i = 0; i < RequestTrace.STAGE_NAMES.length; i++) {
+				stages.put(RequestTrace.STAGE_NAMES[i], micros(RequestTrace.stage(st.stamps, i)));
+			}
+			final ObjectNode offsets = node.putObject("offsets");
+			for(int i = 1; i < RequestTrace.STAMP_NAMES.length; i++) {
+				if(st.stamps[i]!=0L) offsets.put(RequestTrace.STAMP_NAMES[i], micros(st.stamps[i] - st.stamps[RequestTrace.START]));
+			}
+		}
+		return arr;
+	}
+
+	/**
+	 * Returns the per-op stage statistics as JSON, keyed by service, op, then stage. Values are in us.
+	 * @return a JSON object of the per-op stage statistics
+	 */
+	public ObjectNode getStageMetricsJSON() {
+		final ObjectNode root = nodeFactory.objectNode();
+		for(Map.Entry<String, NonBlockingHashMap<String, LogLinearHistogram[]>> svc: opStages.entrySet()) {
+			final ObjectNode svcNode = root.putObject(svc.getKey());
+			for(Map.Entry<String, LogLinearHistogram[]> op: svc.getValue().entrySet()) {
+				final ObjectNode opNode = svcNode.putObject(op.getKey());
+				final LogLinearHistogram[] histograms = op.getValue();
+				for(int i = 0; i < histograms.length; i++) {
+					final ObjectNode stageNode = opNode.putObject(RequestTrace.STAGE_NAMES[i]);
+					for(Map.Entry<String, Long> stat: histograms[i].toMap().entrySet()) {
+						final long value = stat.getValue();
+						stageNode.put(stat.getKey(), "count".equals(stat.getKey()) ? value : micros(value));
+					}
+				}
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Converts ns. to us.
+	 * @param nanos The ns. to convert
+	 * @return the us. or -1 if the passed value was negative
+	 */
+	private static long micros(final long nanos) {
+		return nanos < 0L ? -1L : TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.trace.RequestTracerMBean#getSampleRate()
+	 */
+	@Override
+	public double getSampleRate() {
+		final int every = sampleEvery;
+		return every < 1 ? 0D : 1D / every;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.trace.RequestTracerMBean#setSampleRate(double)
+	 */
+	@Override
+	public void setSampleRate(final double sampleRate) {
+		if(sampleRate < 0D || sampleRate > 1D) throw new IllegalArgumentException("Invalid sample rate [" + sampleRate + "]. Must be between 0 and 1");
+		sampleEvery = sampleRate==0D ? 0 : (int)Math.round(1D / sampleRate);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.trace.RequestTracerMBean#getSampledCount()
+	 */
+	@Override
+	public long getSampledCount() {
+		return sampled.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.trace.RequestTracerMBean#getCompletedCount()
+	 */
+	@Override
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.trace.RequestTracerMBean#getDroppedCount()
+	 */
+	@Override
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.trace.RequestTracerMBean#getAbandonedCount()
+	 */
+	@Override
+	public long getAbandonedCount() {
+		return abandoned.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.trace.RequestTracerMBean#getSlotCount()
+	 */
+	@Override
+	public int getSlotCount() {
+		return slots.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.trace.RequestTracerMBean#getSlowestTraces()
+	 */
+	@Override
+	public String[] getSlowestTraces() {
+		final SlowTrace[] traces = snapshotSlowest();
+		final String[] rendered = new String[traces.length];
+		for(int i = 0; i < traces.length; i++) {
+			rendered[i] = traces[i].toString();
+		}
+		return rendered;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.trace.RequestTracerMBean#getStageMetrics()
+	 */
+	@Override
+	public Map<String, Long> getStageMetrics() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		for(Map.Entry<String, NonBlockingHashMap<String, LogLinearHistogram[]>> svc: opStages.entrySet()) {
+			for(Map.Entry<String, LogLinearHistogram[]> op: svc.getValue().entrySet()) {
+				final String prefix = svc.getKey() + "/" + op.getKey() + ".";
+				final LogLinearHistogram[] histograms = op.getValue();
+				for(int i = 0; i < histograms.length; i++) {
+					for(Map.Entry<String, Long> stat: histograms[i].toMap().entrySet()) {
+						final long value = stat.getValue();
+						map.put(prefix + RequestTrace.STAGE_NAMES[i] + "." + stat.getKey(), "count".equals(stat.getKey()) ? value : micros(value));
+					}
+				}
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.mws.server.net.trace.RequestTracerMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		opStages.clear();
+		synchronized(this) {
+			slowestCount = 0;
+			slowestFloor = 0L;
+		}
+		sampled.set(0L);
+		completed.set(0L);
+		dropped.set(0L);
+		abandoned.set(0L);
+	}
+
+	/**
+	 * <p>Title: SlowTrace</p>
+	 * <p>Description: A retained copy of one of the slowest traces</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.mws.server.net.trace.RequestTracer.SlowTrace</code></p>
+	 */
+	private static class SlowTrace implements Comparable<SlowTrace> {
+		/** The copied stamps */
+		final long[] stamps = new long[RequestTrace.STAMP_NAMES.length];
+		/** The trace id */
+		long id;
+		/** The total elapsed time in ns. */
+		long total;
+		/** The wall clock time the request was received */
+		long timestamp;
+		/** The service name */
+		String serviceName;
+		/** The op name */
+		String opName;
+
+		/**
+		 * Returns a copy of this trace
+		 * @return a copy of this trace
+		 */
+		SlowTrace copy() {
+			final SlowTrace st = new SlowTrace();
+			System.arraycopy(stamps, 0, st.stamps, 0, stamps.length);
+			st.id = id;
+			st.total = total;
+			st.timestamp = timestamp;
+			st.serviceName = serviceName;
+			st.opName = opName;
+			return st;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(final SlowTrace other) {
+			return total < other.total ? 1 : total > other.total ? -1 : 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			final StringBuilder b = new StringBuilder();
+			b.append(serviceName).append("/").append(opName).append(" [").append(new Date(timestamp)).append("]");
+			for(int i = 0; i < RequestTrace.STAGE_NAMES.length; i++) {
+				b.append(" ").append(RequestTrace.STAGE_NAMES[i]).append("=").append(micros(RequestTrace.stage(stamps, i))).append("us");
+			}
+			return b.toString();
+		}
+	}
+
+}
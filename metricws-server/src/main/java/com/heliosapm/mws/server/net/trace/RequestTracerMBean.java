@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.mws.server.net.trace;
+
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import com.heliosapm.jmx.util.helpers.JMXHelper;
+
+/**
+ * <p>Title: RequestTracerMBean</p>
+ * <p>Description: JMX MBean interface for {@link RequestTracer}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.trace.RequestTracerMBean</code></p>
+ */
+
+public interface RequestTracerMBean {
+	/** The RequestTracer object name */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("com.heliosapm.mws.server:service=RequestTracer");
+	/** The age in ms. after which an uncompleted trace's slot may be reclaimed */
+	public static final long ABANDONED_TRACE_MS = 60000L;
+
+	/**
+	 * Returns the fraction of requests sampled
+	 * @return the fraction of requests sampled
+	 */
+	public double getSampleRate();
+
+	/**
+	 * Sets the fraction of requests sampled. Zero disables tracing.
+	 * @param sampleRate the fraction of requests to sample (0 - 1)
+	 */
+	public void setSampleRate(double sampleRate);
+
+	/**
+	 * Returns the number of requests sampled since the last reset
+	 * @return the number of requests sampled
+	 */
+	public long getSampledCount();
+
+	/**
+	 * Returns the number of traces completed since the last reset
+	 * @return the number of traces completed
+	 */
+	public long getCompletedCount();
+
+	/**
+	 * Returns the number of sampled requests not traced because no slot was free
+	 * @return the number of dropped traces
+	 */
+	public long getDroppedCount();
+
+	/**
+	 * Returns the number of slots reclaimed from traces which never completed
+	 * @return the number of abandoned traces
+	 */
+	public long getAbandonedCount();
+
+	/**
+	 * Returns the number of pooled trace slots
+	 * @return the number of pooled trace slots
+	 */
+	public int getSlotCount();
+
+	/**
+	 * Returns the slowest retained traces, slowest first, rendered one per line
+	 * @return the slowest retained traces
+	 */
+	public String[] getSlowestTraces();
+
+	/**
+	 * Returns the per-op stage statistics in us., keyed by <b><code>svc/op.stage.statistic</code></b>
+	 * @return the per-op stage statistics
+	 */
+	public Map<String, Long> getStageMetrics();
+
+	/**
+	 * Clears the stage histograms, the slowest traces and the counters
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.mws.server.net.trace;
+
+import com.heliosapm.mws.server.net.json.JSONRequest;
+import com.heliosapm.mws.server.net.json.RequestPriority;
+import com.heliosapm.mws.server.net.json.ResponseType;
+import com.heliosapm.mws.server.net.json.annotations.JSONRequestHandler;
+import com.heliosapm.mws.server.net.json.annotations.JSONRequestService;
+
+/**
+ * <p>Title: TraceService</p>
+ * <p>Description: JSON service exposing the {@link RequestTracer} stage timings and slowest traces</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.trace.TraceService</code></p>
+ */
+@JSONRequestService(name="trace", description="Sampled request stage timing traces")
+public class TraceService {
+	/** The request tracer */
+	protected final RequestTracer tracer = RequestTracer.getInstance();
+
+	/**
+	 * Writes the slowest retained traces, slowest first
+	 * @param jsonRequest The json request
+	 * <p>Note: payload for test:<b><code>{"t":"req", "rid":1, "svc":"trace", "op":"slowest"}</code></b></p>
+	 */
+	@JSONRequestHandler(name="slowest", description="Returns the slowest retained request traces", priority=RequestPriority.CONTROL)
+	public void slowest(final JSONRequest jsonRequest) {
+		jsonRequest.response(ResponseType.RESP).setContent(tracer.getSlowestTracesJSON()).send();
+	}
+
+	/**
+	 * Writes the per-op stage statistics
+	 * @param jsonRequest The json request
+	 * <p>Note: payload for test:<b><code>{"t":"req", "rid":1, "svc":"trace", "op":"stages"}</code></b></p>
+	 */
+	@JSONRequestHandler(name="stages", description="Returns the per-op request stage statistics in us.", priority=RequestPriority.CONTROL)
+	public void stages(final JSONRequest jsonRequest) {
+		jsonRequest.response(ResponseType.RESP).setContent(tracer.getStageMetricsJSON()).send();
+	}
+
+	/**
+	 * Sets the sample rate if a <b><code>rate</code></b> argument is supplied and writes the current sample rate
+	 * @param jsonRequest The json request
+	 * <p>Note: payload for test:<b><code>{"t":"req", "rid":1, "svc":"trace", "op":"rate", "args":{"rate":0.05}}</code></b></p>
+	 */
+	@JSONRequestHandler(name="rate", description="Gets or sets the request trace sample rate", priority=RequestPriority.CONTROL)
+	public void rate(final JSONRequest jsonRequest) {
+		if(jsonRequest.has("rate")) {
+			try {
+				tracer.setSampleRate(jsonRequest.get("rate", tracer.getSampleRate()));
+			} catch (IllegalArgumentException ex) {
+				jsonRequest.error(ex.getMessage()).send();
+				return;
+			}
+		}
+		jsonRequest.response(ResponseType.RESP).setContent(tracer.getSampleRate()).send();
+	}
+
+	/**
+	 * Resets the stage statistics and slowest traces
+	 * @param jsonRequest The json request
+	 */
+	@JSONRequestHandler(name="reset", description="Resets the request trace statistics", priority=RequestPriority.CONTROL)
+	public void reset(final JSONRequest jsonRequest) {
+		tracer.reset();
+		jsonRequest.response(ResponseType.RESP).setContent(true).send();
+	}
+
+}
@@ -0,0 +1,319 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net.ws;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.socket.nio.NioWorker;
+import org.jboss.netty.channel.socket.nio.NioSocketChannel;
+import org.jboss.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+import com.heliosapm.mws.server.net.InstrumentedNioWorker;
+
+/**
+ * <p>Title: FragmentSequencer</p>
+ * <p>Description: Keeps the fragments of a message streamed by a {@link WebSocketFrameOutputStream} together on the wire
+ * without holding any lock while the message is produced. While a streamed message is in progress on a channel, every
+ * other data write to the channel is queued, and the queue is released in order once the message's final fragment has
+ * gone out. Control frames (ping, pong and close) may be interleaved with fragments and always pass straight through.
+ * Only one thread sends a channel's queued writes at a time, so writes made while they are being sent (e.g. from a write
+ * future listener) simply join the queue.</p>
+ * <p>A streamed message whose producer stops emitting fragments for longer than <b><code>mws.ws.stream.timeout</code></b>
+ * while other writes wait behind it can never be completed on the wire, so the channel is closed.</p>
+ * <p>Must be installed above the encoder. Streams also use it to wait, off the I/O threads, for a congested channel to
+ * become writable again (see {@link #awaitWritable(Channel)}).</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.ws.FragmentSequencer</code></p>
+ */
+@ChannelHandler.Sharable
+public class FragmentSequencer extends SimpleChannelHandler {
+	/** The singleton instance */
+	private static volatile FragmentSequencer instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+
+	/** Static class logger */
+	private static final Logger LOG = LoggerFactory.getLogger(FragmentSequencer.class);
+	/** The maximum time in ms. a stream may stall while writes wait behind it, or wait for its channel to become writable */
+	private static final long streamTimeout = ConfigurationHelper.getConfig().get(Configuration.WS_STREAM_TIMEOUT_PROP, long.class);
+	/** The sequence state of each channel */
+	private static final ChannelLocal<Sequence> sequences = new ChannelLocal<Sequence>(true);
+	/** The maximum time in ms. a wait for writability sleeps before re-checking */
+	private static final long WRITABLE_POLL = 100L;
+
+	/** The number of writes queued behind a streamed message */
+	protected final AtomicLong queued = new AtomicLong();
+	/** The number of channels closed on a stalled stream */
+	protected final AtomicLong stalled = new AtomicLong();
+
+	/**
+	 * <p>Title: Sequence</p>
+	 * <p>Description: The write sequence state of one channel</p> 
+	 */
+	private static class Sequence implements ChannelFutureListener {
+		/** The writes waiting to be sent, guarded by the sequence */
+		final ArrayDeque<MessageEvent> queue = new ArrayDeque<MessageEvent>();
+		/** The monitor waited on for writability */
+		final Object writable = new Object();
+		/** The stream whose message is in progress on the wire, guarded by the sequence */
+		WebSocketFrameOutputStream owner = null;
+		/** True while a thread is sending queued writes, guarded by the sequence */
+		boolean draining = false;
+
+		/**
+		 * Returns the next write which can be sent, removing it from the queue
+		 * @return the next write or null if none can be sent now
+		 */
+		MessageEvent next() {
+			if(owner==null) {
+				final MessageEvent e = queue.poll();
+				if(e!=null && e.getMessage() instanceof WebSocketFrameOutputStream.Fragment) {
+					final WebSocketFrameOutputStream.Fragment f = (WebSocketFrameOutputStream.Fragment)e.getMessage();
+					if(!f.isFinalFragment()) owner = f.getStream();
+				}
+				return e;
+			}
+			for(Iterator<MessageEvent> iter = queue.iterator(); iter.hasNext();) {
+				final MessageEvent e = iter.next();
+				final Object msg = e.getMessage();
+				if(msg instanceof WebSocketFrameOutputStream.Fragment && ((WebSocketFrameOutputStream.Fragment)msg).getStream()==owner) {
+					iter.remove();
+					if(((WebSocketFrameOutputStream.Fragment)msg).isFinalFragment()) owner = null;
+					return e;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Fails the writes which never went out when the channel closes
+		 * @param future The channel's close future
+		 */
+		@Override
+		public void operationComplete(final ChannelFuture future) throws Exception {
+			MessageEvent e;
+			while(true) {
+				synchronized(this) {
+					e = queue.poll();
+				}
+				if(e==null) break;
+				e.getFuture().setFailure(new ClosedChannelException());
+			}
+			synchronized(writable) {
+				writable.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Acquires and returns the singleton instance
+	 * @return the singleton instance
+	 */
+	public static FragmentSequencer getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new FragmentSequencer();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a new FragmentSequencer
+	 */
+	private FragmentSequencer() {
+	}
+
+	/**
+	 * Returns the sequence state of the passed channel, creating it if necessary
+	 * @param channel The channel
+	 * @return the sequence state
+	 */
+	private static Sequence sequence(final Channel channel) {
+		Sequence seq = sequences.get(channel);
+		if(seq==null) {
+			final Sequence newSeq = new Sequence();
+			seq = sequences.setIfAbsent(channel, newSeq);
+			if(seq==null) {
+				seq = newSeq;
+				channel.getCloseFuture().addListener(seq);
+			}
+		}
+		return seq;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelHandler#writeRequested(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+	 */
+	@Override
+	public void writeRequested(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+		final Object msg = e.getMessage();
+		if(msg instanceof PingWebSocketFrame || msg instanceof PongWebSocketFrame || msg instanceof CloseWebSocketFrame) {
+			ctx.sendDownstream(e);
+			return;
+		}
+		final Sequence seq = sequence(e.getChannel());
+		final WebSocketFrameOutputStream owner;
+		final boolean drainer;
+		synchronized(seq) {
+			seq.queue.add(e);
+			owner = seq.owner;
+			drainer = !seq.draining;
+			seq.draining = true;
+		}
+		if(owner!=null && (!(msg instanceof WebSocketFrameOutputStream.Fragment) || ((WebSocketFrameOutputStream.Fragment)msg).getStream()!=owner)) {
+			queued.incrementAndGet();
+			checkStall(e.getChannel(), owner);
+		}
+		if(drainer) drain(ctx, seq);
+	}
+
+	/**
+	 * Sends the queued writes which can be sent, until none can
+	 * @param ctx The handler context
+	 * @param seq The channel's sequence state
+	 */
+	private void drain(final ChannelHandlerContext ctx, final Sequence seq) {
+		while(true) {
+			final MessageEvent next;
+			synchronized(seq) {
+				next = seq.next();
+				if(next==null) {
+					seq.draining = false;
+					return;
+				}
+			}
+			ctx.sendDownstream(next);
+		}
+	}
+
+	/**
+	 * Closes the channel if the stream the passed write is waiting behind has stalled
+	 * @param channel The channel
+	 * @param stream The stream in progress
+	 */
+	private void checkStall(final Channel channel, final WebSocketFrameOutputStream stream) {
+		if(System.currentTimeMillis() - stream.getLastEmit() > streamTimeout && channel.isOpen()) {
+			stalled.incrementAndGet();
+			LOG.warn("Closing [{}]: a streamed message stalled for more than [{}] ms. with writes waiting behind it", channel.getRemoteAddress(), streamTimeout);
+			channel.close();
+		}
+	}
+
+	/**
+	 * Wakes up streams waiting for the channel to become writable
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelHandler#channelInterestChanged(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+	 */
+	@Override
+	public void channelInterestChanged(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+		final Sequence seq = sequences.get(e.getChannel());
+		if(seq!=null && e.getChannel().isWritable()) {
+			synchronized(seq.writable) {
+				seq.writable.notifyAll();
+			}
+		}
+		ctx.sendUpstream(e);
+	}
+
+	/**
+	 * Waits for the passed channel to become writable. Returns at once if called on the channel's I/O thread,
+	 * which is the thread that would make the channel writable again.
+	 * @param channel The channel to wait on
+	 * @return true if the channel is writable or the caller must not wait, false if the wait timed out or the channel closed
+	 */
+	public static boolean awaitWritable(final Channel channel) {
+		if(channel.isWritable()) return true;
+		if(isIoThread(channel)) return true;
+		final Sequence seq = sequence(channel);
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(streamTimeout);
+		try {
+			synchronized(seq.writable) {
+				while(!channel.isWritable()) {
+					if(!channel.isOpen()) return false;
+					final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if(remaining <= 0L) return false;
+					// the notification can be missed between the check and the wait, so the wait is bounded
+					seq.writable.wait(Math.min(remaining, WRITABLE_POLL));
+				}
+			}
+			return true;
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Determines if the current thread is the passed channel's I/O thread
+	 * @param channel The channel
+	 * @return true if the current thread is, or might be, the channel's I/O thread
+	 */
+	static boolean isIoThread(final Channel channel) {
+		if(!(channel instanceof NioSocketChannel)) return true;
+		final NioWorker worker = ((NioSocketChannel)channel).getWorker();
+		if(!(worker instanceof InstrumentedNioWorker)) return true;
+		return ((InstrumentedNioWorker)worker).getThread()==Thread.currentThread();
+	}
+
+	/**
+	 * Returns the number of writes queued behind a streamed message
+	 * @return the number of queued writes
+	 */
+	public long getQueuedCount() {
+		return queued.get();
+	}
+
+	/**
+	 * Returns the number of channels closed on a stalled stream
+	 * @return the number of stalled streams
+	 */
+	public long getStalledCount() {
+		return stalled.get();
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net.ws;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+/**
+ * <p>Title: SubscriptionFrame</p>
+ * <p>Description: A text frame carrying a subscription event or the stop of a subscription, tagged with the
+ * subscription key so that handlers above the encoder (see {@link com.heliosapm.mws.server.net.OutboundBudget.Conflater})
+ * can tell the events of one subscription apart from every other write.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.ws.SubscriptionFrame</code></p>
+ */
+
+public class SubscriptionFrame extends TextWebSocketFrame {
+	/** The subscription key */
+	protected final String subKey;
+	/** True for a subscription event, false for the stop of the subscription */
+	protected final boolean event;
+
+	/**
+	 * Creates a new SubscriptionFrame
+	 * @param subKey The subscription key
+	 * @param event True for a subscription event, false for the stop of the subscription
+	 * @param content The frame content
+	 */
+	public SubscriptionFrame(final String subKey, final boolean event, final ChannelBuffer content) {
+		super(content);
+		this.subKey = subKey;
+		this.event = event;
+	}
+
+	/**
+	 * Returns the subscription key
+	 * @return the subscription key
+	 */
+	public String getSubKey() {
+		return subKey;
+	}
+
+	/**
+	 * Indicates if this frame is a subscription event, which a later event of the same subscription may supersede
+	 * @return true for a subscription event, false for the stop of the subscription
+	 */
+	public boolean isEvent() {
+		return event;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SubscriptionFrame [" + subKey + (event ? "" : ", stop") + "]";
+	}
+}
@@ -0,0 +1,246 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net.ws;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * <p>Title: WebSocketFrameOutputStream</p>
+ * <p>Description: An output stream that writes a single web socket text message as it is produced, in fixed size
+ * chunks: a non-final {@link TextWebSocketFrame} followed by {@link ContinuationWebSocketFrame}s, the last of which
+ * is written on {@link #close()}. A message that fits in one chunk goes out as one final text frame.</p>
+ * <p>The fragments of a message must not be interleaved with other data frames. The fragments are tagged with their
+ * stream (see {@link Fragment}) and the {@link FragmentSequencer} holds back other writes to the socket until the final
+ * fragment has gone out, so no lock is held while the message is produced. A stream should always be closed: writes
+ * waiting behind an abandoned stream are released by closing the socket.</p>
+ * <p>Before each further chunk is written, a stream producing off the I/O threads waits for the socket to be writable,
+ * so a large message is held in memory as no more than the socket's high watermark plus one chunk. A stream producing
+ * on the socket's I/O thread cannot wait, since that thread is the one which drains the socket: every chunk is queued
+ * at once and the whole message is held in memory until it has been written. That is the case for the default
+ * <b><code>inline</code></b> handler executor (see {@link com.heliosapm.Configuration#HANDLER_EXECUTOR_PROP}), so
+ * bounding the memory of large responses requires the <b><code>pool</code></b> or <b><code>virtual</code></b> executor.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.ws.WebSocketFrameOutputStream</code></p>
+ */
+
+public class WebSocketFrameOutputStream extends OutputStream {
+	/** The web socket written to */
+	protected final Channel channel;
+	/** The future completed by the write of the final frame */
+	protected final ChannelFuture future;
+	/** The chunk size */
+	protected final int chunkSize;
+	/** The factory chunks are allocated from */
+	protected final ChannelBufferFactory bufferFactory;
+	/** The chunk being filled */
+	protected ChannelBuffer chunk = null;
+	/** True once the first frame has been written */
+	protected boolean started = false;
+	/** True once the final frame has been written */
+	protected boolean closed = false;
+	/** The wall clock time the last frame was written */
+	protected volatile long lastEmit = System.currentTimeMillis();
+
+	/**
+	 * <p>Title: Fragment</p>
+	 * <p>Description: A frame which is one fragment of a streamed message</p> 
+	 */
+	public static interface Fragment {
+		/**
+		 * Returns the stream the fragment belongs to
+		 * @return the stream
+		 */
+		public WebSocketFrameOutputStream getStream();
+
+		/**
+		 * Indicates if this is the final fragment of the message
+		 * @return true if this is the final fragment
+		 */
+		public boolean isFinalFragment();
+	}
+
+	/**
+	 * <p>Title: FirstFragment</p>
+	 * <p>Description: The opening text frame of a streamed message</p> 
+	 */
+	static class FirstFragment extends TextWebSocketFrame implements Fragment {
+		/** The stream the fragment belongs to */
+		final WebSocketFrameOutputStream stream;
+
+		FirstFragment(final WebSocketFrameOutputStream stream, final boolean last, final ChannelBuffer content) {
+			super(last, 0, content);
+			this.stream = stream;
+		}
+
+		@Override
+		public WebSocketFrameOutputStream getStream() {
+			return stream;
+		}
+	}
+
+	/**
+	 * <p>Title: NextFragment</p>
+	 * <p>Description: A continuation frame of a streamed message</p> 
+	 */
+	static class NextFragment extends ContinuationWebSocketFrame implements Fragment {
+		/** The stream the fragment belongs to */
+		final WebSocketFrameOutputStream stream;
+
+		NextFragment(final WebSocketFrameOutputStream stream, final boolean last, final ChannelBuffer content) {
+			super(last, 0, content);
+			this.stream = stream;
+		}
+
+		@Override
+		public WebSocketFrameOutputStream getStream() {
+			return stream;
+		}
+	}
+
+	/**
+	 * Creates a new WebSocketFrameOutputStream
+	 * @param channel The web socket to write to
+	 * @param future The future completed by the write of the final frame
+	 * @param chunkSize The chunk size
+	 * @param bufferFactory The factory chunks are allocated from
+	 */
+	public WebSocketFrameOutputStream(final Channel channel, final ChannelFuture future, final int chunkSize, final ChannelBufferFactory bufferFactory) {
+		if(chunkSize < 1) throw new IllegalArgumentException("Invalid chunk size [" + chunkSize + "]");
+		this.channel = channel;
+		this.future = future;
+		this.chunkSize = chunkSize;
+		this.bufferFactory = bufferFactory;
+	}
+
+	/**
+	 * Returns the wall clock time the last frame of this stream was written
+	 * @return the time of the last write
+	 */
+	public long getLastEmit() {
+		return lastEmit;
+	}
+
+	/**
+	 * Returns the chunk to write into, writing out the current one first if it is full
+	 * @return the chunk to write into
+	 * @throws IOException thrown if the stream is closed
+	 */
+	protected ChannelBuffer chunk() throws IOException {
+		if(closed) throw new IOException("Stream closed");
+		if(chunk!=null && !chunk.writable()) emit(false);
+		if(chunk==null) chunk = bufferFactory.getBuffer(chunkSize);
+		return chunk;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.OutputStream#write(int)
+	 */
+	@Override
+	public void write(final int b) throws IOException {
+		chunk().writeByte(b);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(final byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			final ChannelBuffer buf = chunk();
+			final int n = Math.min(len, buf.writableBytes());
+			buf.writeBytes(b, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Writes out the current chunk. Before a further chunk is written, waits for the socket to become writable.
+	 * @param last true if this is the final frame of the message
+	 * @throws IOException thrown if the socket did not become writable in time, in which case it is closed
+	 */
+	protected void emit(final boolean last) throws IOException {
+		final ChannelBuffer buf = chunk==null ? ChannelBuffers.EMPTY_BUFFER : chunk;
+		chunk = null;
+		final WebSocketFrame frame;
+		if(!started) {
+			// a single chunk message needs no sequencing
+			frame = last ? new TextWebSocketFrame(buf) : new FirstFragment(this, false, buf);
+			started = true;
+		} else {
+			frame = new NextFragment(this, last, buf);
+		}
+		lastEmit = System.currentTimeMillis();
+		channel.getPipeline().sendDownstream(new DownstreamMessageEvent(channel, last ? future : Channels.future(channel), frame, channel.getRemoteAddress()));
+		if(!last && !FragmentSequencer.awaitWritable(channel)) {
+			channel.close();
+			throw new IOException("Web socket [" + channel.getRemoteAddress() + "] did not drain in time");
+		}
+	}
+
+	/**
+	 * Discards the unwritten content of the message
+	 * @throws IllegalStateException thrown if part of the message has already been written
+	 */
+	public void reset() {
+		if(started) throw new IllegalStateException("Cannot reset a message that has been partially written");
+		if(chunk!=null) chunk.clear();
+	}
+
+	/**
+	 * Returns the number of bytes buffered and not yet written
+	 * @return the number of buffered bytes
+	 */
+	public int getBufferedBytes() {
+		return chunk==null ? 0 : chunk.readableBytes();
+	}
+
+	/**
+	 * Writes the final frame of the message. Nothing is written on a flush, since a partial
+	 * chunk would only fragment the message further.
+	 * @see java.io.OutputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed) return;
+		closed = true;
+		emit(true);
+	}
+}
@@ -25,20 +25,33 @@
 package com.heliosapm.mws.server.net.ws;
 
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelLocal;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.ChannelGroupFuture;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroupFuture;
 import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocketx.PongWebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
@@ -56,21 +69,46 @@ import static org.jboss.netty.handler.codec.http.HttpVersion.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+
 /**
  * <p>Title: WebSocketHandshakeHandler</p>
- * <p>Description: Executes websocket handshakes to upgrade an http session to websockets</p> 
+ * <p>Description: Executes websocket handshakes to upgrade an http session to websockets.
+ * One instance is shared by every connection: per channel state is held in channel locals and the
+ * handshaker factories are cached per web socket location, so a reconnect storm allocates nothing
+ * here beyond the handshaker itself. Upgraded channels are tracked so that a shutting down server can
+ * close them with a staggered reconnect hint (see {@link #closeAll(long)}).</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.mws.server.net.ws.WebSocketHandshakeHandler</code></p>
  */
-
+@ChannelHandler.Sharable
 public class WebSocketHandshakeHandler extends SimpleChannelUpstreamHandler {
 	/** The websock path */
 	public static final String WEBSOCKET_PATH = "/ws";
+	/** The close status code sent when the server is going away */
+	public static final int CLOSE_GOING_AWAY = 1001;
+	/** The maximum number of cached handshaker factories */
+	public static final int MAX_FACTORIES = 64;
 	/** Instance logger */
 	protected final Logger LOG = LoggerFactory.getLogger(getClass());	
 	/** The websocket handshaker */
-	protected final ChannelLocal<WebSocketServerHandshaker> handshaker = new ChannelLocal<WebSocketServerHandshaker>(true);
+	protected static final ChannelLocal<WebSocketServerHandshaker> handshaker = new ChannelLocal<WebSocketServerHandshaker>(true);
+	/** The handshaker factories keyed by web socket location */
+	protected static final Map<String, WebSocketServerHandshakerFactory> factories = new NonBlockingHashMap<String, WebSocketServerHandshakerFactory>();
+	/** The upgraded web socket channels */
+	protected static final ChannelGroup webSocketChannels = new DefaultChannelGroup("WebSockets");
+	/** Random for reconnect hint jitter */
+	private static final Random random = new Random();
+
+	/** Registers successfully upgraded channels */
+	private static final ChannelFutureListener UPGRADED_LISTENER = new ChannelFutureListener() {
+		@Override
+		public void operationComplete(final ChannelFuture future) throws Exception {
+			if(future.isSuccess()) webSocketChannels.add(future.getChannel());
+		}
+	};
 
 	/**
 	 * {@inheritDoc}
@@ -95,15 +133,86 @@ public class WebSocketHandshakeHandler extends SimpleChannelUpstreamHandler {
 	 */
 	protected void handleHttpRequest(ChannelHandlerContext ctx, HttpRequest req) {
         // Handshake
-        WebSocketServerHandshakerFactory wsFactory = new WebSocketServerHandshakerFactory(getWebSocketLocation(req), null, false);
+        final WebSocketServerHandshakerFactory wsFactory = getFactory(getWebSocketLocation(req));
         final WebSocketServerHandshaker wshshaker = wsFactory.newHandshaker(req);         
         if (wshshaker == null) {
             wsFactory.sendUnsupportedWebSocketVersionResponse(ctx.getChannel());
         } else {
         	handshaker.set(ctx.getChannel(),  wshshaker);
-        	wshshaker.handshake(ctx.getChannel(), req).addListener(WebSocketServerHandshaker.HANDSHAKE_LISTENER);
+        	final ChannelFuture hf = wshshaker.handshake(ctx.getChannel(), req);
+        	hf.addListener(WebSocketServerHandshaker.HANDSHAKE_LISTENER);
+        	hf.addListener(UPGRADED_LISTENER);
         }		
 	}
+
+	/**
+	 * Returns the handshaker factory for the passed location, creating it if necessary.
+	 * Locations come from the client's Host header, so the cache is capped.
+	 * @param location The web socket location
+	 * @return the handshaker factory
+	 */
+	protected static WebSocketServerHandshakerFactory getFactory(final String location) {
+		WebSocketServerHandshakerFactory factory = factories.get(location);
+		if(factory==null) {
+			factory = new WebSocketServerHandshakerFactory(location, null, false);
+			if(factories.size() < MAX_FACTORIES) factories.put(location, factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * Closes every upgraded web socket with a {@link #CLOSE_GOING_AWAY} frame whose reason carries a reconnect hint,
+	 * <code>{"reconnect":&lt;ms&gt;}</code>. The hints are spread evenly (with jitter) across the passed window so the
+	 * clients do not all reconnect at once.
+	 * @param spreadMs The window in ms. to spread the reconnects over
+	 * @return a future completed when every web socket has been closed
+	 */
+	public static ChannelGroupFuture closeAll(final long spreadMs) {
+		final Channel[] channels = webSocketChannels.toArray(new Channel[0]);
+		final int count = channels.length;
+		final List<ChannelFuture> futures = new ArrayList<ChannelFuture>(count);
+		final double step = (double)Math.max(0L, spreadMs) / count;
+		for(int i = 0; i < count; i++) {
+			final long hint = (long)((i + random.nextDouble()) * step);
+			final Channel channel = channels[i];
+			final CloseWebSocketFrame frame = new CloseWebSocketFrame(CLOSE_GOING_AWAY, "{\"reconnect\":" + hint + "}");
+			final WebSocketServerHandshaker wshshaker = handshaker.get(channel);
+			if(wshshaker!=null) {
+				wshshaker.close(channel, frame);
+			} else {
+				channel.write(frame).addListener(ChannelFutureListener.CLOSE);
+			}
+			futures.add(channel.getCloseFuture());
+		}
+		return new DefaultChannelGroupFuture(webSocketChannels, futures);
+	}
+
+	/**
+	 * Closes every upgraded web socket with a reconnect hint spread over the configured window
+	 * @return a future completed when every web socket has been closed
+	 * @see Configuration#WS_RECONNECT_SPREAD_PROP
+	 */
+	public static ChannelGroupFuture closeAll() {
+		return closeAll(ConfigurationHelper.getConfig().get(Configuration.WS_RECONNECT_SPREAD_PROP, long.class));
+	}
+
+	/**
+	 * Returns the number of upgraded web sockets
+	 * @return the number of upgraded web sockets
+	 */
+	public static int getWebSocketCount() {
+		return webSocketChannels.size();
+	}
+
+	/**
+	 * Determines if the passed channel has completed its upgrade to a web socket.
+	 * A channel whose handshake is still in flight is not a web socket yet.
+	 * @param channel The channel to test
+	 * @return true if the channel is a web socket, false otherwise
+	 */
+	public static boolean isWebSocket(final Channel channel) {
+		return webSocketChannels.contains(channel);
+	}
 	
     /**
      * Handles an incoming web socket frame
@@ -111,7 +220,7 @@ public class WebSocketHandshakeHandler extends SimpleChannelUpstreamHandler {
      * @param frame The incoming websocket frame
      * @return true to send upstream, false if request was handled
      */
-    protected boolean handleWebSocketFrame(ChannelHandlerContext ctx, WebSocketFrame frame) {
+    public boolean handleWebSocketFrame(ChannelHandlerContext ctx, WebSocketFrame frame) {
         // Check for closing frame
         if (frame instanceof CloseWebSocketFrame) {
             handshaker.get(ctx.getChannel()).close(ctx.getChannel(), (CloseWebSocketFrame) frame);
@@ -121,8 +230,12 @@ public class WebSocketHandshakeHandler extends SimpleChannelUpstreamHandler {
             ctx.getChannel().write(new PongWebSocketFrame(frame.getBinaryData()));
             return false;
         }
+        // A pong answers a server ping; the read alone resets the idle clock
+        if (frame instanceof PongWebSocketFrame) {
+            return false;
+        }
         
-        if (!(frame instanceof TextWebSocketFrame)) {
+        if (!(frame instanceof TextWebSocketFrame) && !(frame instanceof ContinuationWebSocketFrame)) {
             throw new UnsupportedOperationException(
                     String.format("%s frame types not supported", frame.getClass().getName()));
         }
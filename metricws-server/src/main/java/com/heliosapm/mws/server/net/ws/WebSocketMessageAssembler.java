@@ -0,0 +1,107 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net.ws;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import com.heliosapm.Configuration;
+import com.heliosapm.jmx.util.helpers.ConfigurationHelper;
+
+/**
+ * <p>Title: WebSocketMessageAssembler</p>
+ * <p>Description: Reassembles fragmented inbound web socket messages without an aggregating handler.
+ * Fragments are retained as they arrive and wrapped in one composite buffer when the final fragment lands,
+ * so a message is never copied. A message larger than the configured maximum closes the socket with a
+ * <b><code>1009</code></b> (message too big) status.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.ws.WebSocketMessageAssembler</code></p>
+ */
+
+public class WebSocketMessageAssembler {
+	/** The web socket close status for a message that is too big */
+	public static final int CLOSE_TOO_BIG = 1009;
+	/** The maximum size of an inbound message */
+	private static final int maxMessageSize = ConfigurationHelper.getConfig().get(Configuration.WS_MAXMESSAGE_PROP, int.class);
+
+	/** The fragments of each channel's partially received message */
+	private static final ChannelLocal<Fragments> fragments = new ChannelLocal<Fragments>(true);
+
+	/**
+	 * <p>Title: Fragments</p>
+	 * <p>Description: The fragments of a partially received message</p> 
+	 */
+	private static class Fragments {
+		/** The received fragments */
+		final List<ChannelBuffer> buffers = new ArrayList<ChannelBuffer>();
+		/** The total size of the received fragments */
+		int size = 0;
+	}
+
+	/**
+	 * Adds an inbound data frame to the channel's current message
+	 * @param channel The channel the frame came in on
+	 * @param frame A text or continuation frame
+	 * @return the complete message if the frame was its final fragment, null otherwise
+	 */
+	public static ChannelBuffer assemble(final Channel channel, final WebSocketFrame frame) {
+		final boolean continuation = frame instanceof ContinuationWebSocketFrame;
+		if(!continuation && frame.isFinalFragment() && fragments.get(channel)==null) {
+			return frame.getBinaryData();
+		}
+		Fragments f = fragments.get(channel);
+		if(!continuation) {
+			// A new message supersedes any incomplete one
+			f = new Fragments();
+			fragments.set(channel, f);
+		} else if(f==null) {
+			// The start of the message was rejected, so the rest of it is ignored
+			return null;
+		}
+		final ChannelBuffer buf = frame.getBinaryData();
+		f.size += buf.readableBytes();
+		if(f.size > maxMessageSize) {
+			fragments.remove(channel);
+			channel.write(new CloseWebSocketFrame(CLOSE_TOO_BIG, "Message exceeds [" + maxMessageSize + "] bytes")).addListener(ChannelFutureListener.CLOSE);
+			return null;
+		}
+		f.buffers.add(buf);
+		if(!frame.isFinalFragment()) return null;
+		fragments.remove(channel);
+		return ChannelBuffers.wrappedBuffer(f.buffers.toArray(new ChannelBuffer[f.buffers.size()]));
+	}
+
+	private WebSocketMessageAssembler() {}
+}
@@ -0,0 +1,165 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: MPMCRingQueueTest</p>
+ * <p>Description: Stress tests the parking and wake up of {@link MPMCRingQueue} consumers</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.MPMCRingQueueTest</code></p>
+ */
+public class MPMCRingQueueTest {
+	/** The number of consumers */
+	private static final int CONSUMERS = 8;
+	/** The number of bursts the producer offers */
+	private static final int ROUNDS = 2000;
+	/** The maximum time in ms. a burst may take to be consumed before its tasks are considered stranded */
+	private static final long ROUND_TIMEOUT = 5000L;
+
+	/**
+	 * Offers bursts of tasks from one producer to consumers which are all parked in take,
+	 * and verifies that every task of every burst is consumed
+	 * @throws Exception thrown on any error
+	 */
+	@Test(timeout=120000L)
+	public void testNoTaskStrandedWithParkedConsumers() throws Exception {
+		final MPMCRingQueue<Integer> queue = new MPMCRingQueue<Integer>(64);
+		final AtomicInteger consumed = new AtomicInteger();
+		final Thread[] consumers = startConsumers(queue, consumed);
+		try {
+			int offered = 0;
+			for(int round = 0; round < ROUNDS; round++) {
+				awaitParked(consumers);
+				final int burst = 1 + (round % CONSUMERS);
+				for(int i = 0; i < burst; i++) {
+					assertTrue("Offer rejected", queue.offer(offered++));
+				}
+				final long deadline = System.currentTimeMillis() + ROUND_TIMEOUT;
+				while(consumed.get() < offered) {
+					assertTrue("Round [" + round + "] stranded [" + (offered - consumed.get()) + "] tasks", System.currentTimeMillis() < deadline);
+					Thread.yield();
+				}
+			}
+			assertEquals(offered, consumed.get());
+			assertTrue("Queue not empty", queue.isEmpty());
+		} finally {
+			stop(consumers);
+		}
+	}
+
+	/**
+	 * Streams tasks from one producer without waiting for the consumers to park,
+	 * and verifies that every task is consumed
+	 * @throws Exception thrown on any error
+	 */
+	@Test(timeout=120000L)
+	public void testNoTaskStrandedUnderLoad() throws Exception {
+		final int tasks = 500000;
+		final MPMCRingQueue<Integer> queue = new MPMCRingQueue<Integer>(1024);
+		final AtomicInteger consumed = new AtomicInteger();
+		final Thread[] consumers = startConsumers(queue, consumed);
+		try {
+			for(int i = 0; i < tasks; i++) {
+				queue.put(i);
+				// let the consumers drain and park now and then
+				if(i % 1000 == 0) Thread.sleep(1);
+			}
+			final long deadline = System.currentTimeMillis() + ROUND_TIMEOUT;
+			while(consumed.get() < tasks) {
+				assertTrue("Stranded [" + (tasks - consumed.get()) + "] tasks", System.currentTimeMillis() < deadline);
+				Thread.sleep(1);
+			}
+			assertEquals(tasks, consumed.get());
+		} finally {
+			stop(consumers);
+		}
+	}
+
+	/**
+	 * Starts the consumers, which take from the passed queue until interrupted
+	 * @param queue The queue to take from
+	 * @param consumed The count of consumed tasks
+	 * @return the consumer threads
+	 * @throws InterruptedException thrown if interrupted while waiting for the consumers to start
+	 */
+	private static Thread[] startConsumers(final MPMCRingQueue<Integer> queue, final AtomicInteger consumed) throws InterruptedException {
+		final Thread[] consumers = new Thread[CONSUMERS];
+		final CountDownLatch started = new CountDownLatch(CONSUMERS);
+		for(int i = 0; i < CONSUMERS; i++) {
+			consumers[i] = new Thread("MPMCRingQueueTestConsumer#" + i) {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						while(true) {
+							queue.take();
+							consumed.incrementAndGet();
+						}
+					} catch (InterruptedException iex) {
+						/* No Op */
+					}
+				}
+			};
+			consumers[i].setDaemon(true);
+			consumers[i].start();
+		}
+		started.await();
+		return consumers;
+	}
+
+	/**
+	 * Waits until all the passed consumers are parked
+	 * @param consumers The consumers
+	 */
+	private static void awaitParked(final Thread[] consumers) {
+		final long deadline = System.currentTimeMillis() + ROUND_TIMEOUT;
+		for(Thread t: consumers) {
+			while(t.getState()!=Thread.State.WAITING) {
+				assertTrue("Consumer [" + t.getName() + "] did not park", System.currentTimeMillis() < deadline);
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Interrupts and joins the passed consumers
+	 * @param consumers The consumers
+	 * @throws InterruptedException thrown if interrupted while joining
+	 */
+	private static void stop(final Thread[] consumers) throws InterruptedException {
+		for(Thread t: consumers) t.interrupt();
+		for(Thread t: consumers) t.join(TimeUnit.SECONDS.toMillis(5));
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.concurrency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: PriorityTaskQueueTest</p>
+ * <p>Description: Tests the lane ordering, aging and per lane capacity of {@link PriorityTaskQueue}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.concurrency.PriorityTaskQueueTest</code></p>
+ */
+public class PriorityTaskQueueTest {
+
+	/**
+	 * <p>Title: Task</p>
+	 * <p>Description: A no op task with a priority level</p> 
+	 */
+	private static class Task implements Runnable, Prioritized {
+		final String name;
+		final int priority;
+		Task(final String name, final int priority) {
+			this.name = name;
+			this.priority = priority;
+		}
+		@Override
+		public int getPriority() {
+			return priority;
+		}
+		@Override
+		public void run() {
+			/* No Op */
+		}
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * Verifies that tasks are taken from the highest priority non-empty lane, FIFO within a lane,
+	 * and that undeclared and out of range levels go in the default and lowest lanes
+	 */
+	@Test
+	public void testLaneOrdering() {
+		final PriorityTaskQueue queue = new PriorityTaskQueue(10, 3, 1, 0L);
+		final Runnable plain = new Runnable() {
+			@Override
+			public void run() {
+				/* No Op */
+			}
+		};
+		final Task low = new Task("low", 2);
+		final Task tooLow = new Task("tooLow", 99);
+		final Task negative = new Task("negative", -1);
+		final Task high1 = new Task("high1", 0);
+		final Task high2 = new Task("high2", 0);
+		assertTrue(queue.offer(low));
+		assertTrue(queue.offer(plain));
+		assertTrue(queue.offer(tooLow));
+		assertTrue(queue.offer(high1));
+		assertTrue(queue.offer(negative));
+		assertTrue(queue.offer(high2));
+		assertEquals("High lane size", 2, queue.size(0));
+		assertEquals("Default lane size", 2, queue.size(1));
+		assertEquals("Low lane size", 2, queue.size(2));
+		final Runnable[] expected = {high1, high2, plain, negative, low, tooLow};
+		for(Runnable r: expected) {
+			assertSame("Peek should match the next poll", r, queue.peek());
+			assertSame(r, queue.poll());
+		}
+		assertNull(queue.poll());
+		assertNull(queue.peek());
+		assertEquals("No task should have aged", 0L, queue.getAgedCount());
+	}
+
+	/**
+	 * Verifies that a lower priority task which has waited longer than the aging threshold beyond the head of
+	 * the highest priority lane is taken first, and that peek reports it
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testAgingPromotion() throws Exception {
+		final PriorityTaskQueue queue = new PriorityTaskQueue(10, 3, 1, 50L);
+		final Task low = new Task("low", 2);
+		final Task mid = new Task("mid", 1);
+		final Task high = new Task("high", 0);
+		queue.put(low);
+		Thread.sleep(20L);
+		queue.put(mid);
+		Thread.sleep(150L);
+		queue.put(high);
+		// both lower lanes have aged, the longest waiting goes first
+		assertSame("Peek should apply aging", low, queue.peek());
+		assertEquals("Peek should not count as aging", 0L, queue.getAgedCount());
+		assertSame(low, queue.poll());
+		assertSame(mid, queue.poll());
+		assertSame(high, queue.poll());
+		assertEquals("Aged task count", 2L, queue.getAgedCount());
+	}
+
+	/**
+	 * Verifies that a lower priority task within the aging threshold does not overtake higher priority tasks
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testNoPromotionWithinThreshold() throws Exception {
+		final PriorityTaskQueue queue = new PriorityTaskQueue(10, 2, 1, 10000L);
+		final Task low = new Task("low", 1);
+		final Task high = new Task("high", 0);
+		queue.put(low);
+		Thread.sleep(50L);
+		queue.put(high);
+		assertSame(high, queue.peek());
+		assertSame(high, queue.take());
+		assertSame(low, queue.take());
+		assertEquals("No task should have aged", 0L, queue.getAgedCount());
+	}
+
+	/**
+	 * Verifies that a full lane rejects only its own tasks, and that taking a task from a lane wakes only
+	 * the producers waiting on that lane
+	 * @throws Exception thrown on any error
+	 */
+	@Test(timeout=20000L)
+	public void testPerLaneCapacity() throws Exception {
+		final PriorityTaskQueue queue = new PriorityTaskQueue(1, 2, 1, 0L);
+		final Task low = new Task("low", 1);
+		assertTrue(queue.offer(low));
+		assertFalse("A full lane should reject", queue.offer(new Task("low2", 1)));
+		final Task high = new Task("high", 0);
+		assertTrue("A full lower lane should not reject higher priority tasks", queue.offer(high));
+		assertEquals("Remaining capacity", 0, queue.remainingCapacity());
+
+		final Task highWaiting = new Task("highWaiting", 0);
+		final Task lowWaiting = new Task("lowWaiting", 1);
+		final CountDownLatch highPut = put(queue, highWaiting);
+		final CountDownLatch lowPut = put(queue, lowWaiting);
+		assertFalse("Producer should wait on the full high lane", highPut.await(200L, TimeUnit.MILLISECONDS));
+		assertFalse("Producer should wait on the full low lane", lowPut.await(0L, TimeUnit.MILLISECONDS));
+
+		assertSame(high, queue.take());
+		assertTrue("Producer waiting on the high lane should be woken", highPut.await(5L, TimeUnit.SECONDS));
+		assertFalse("Producer waiting on the low lane should still wait", lowPut.await(200L, TimeUnit.MILLISECONDS));
+
+		assertTrue(queue.remove(low));
+		assertTrue("Producer waiting on the low lane should be woken", lowPut.await(5L, TimeUnit.SECONDS));
+		assertSame(highWaiting, queue.poll());
+		assertSame(lowWaiting, queue.poll());
+		assertNull(queue.poll());
+	}
+
+	/**
+	 * Puts the passed task into the passed queue from a new thread
+	 * @param queue The queue to put into
+	 * @param task The task to put
+	 * @return a latch released when the put completes
+	 */
+	private static CountDownLatch put(final PriorityTaskQueue queue, final Task task) {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Thread t = new Thread("PriorityTaskQueueTest-" + task) {
+			@Override
+			public void run() {
+				try {
+					queue.put(task);
+					latch.countDown();
+				} catch (InterruptedException iex) {
+					/* No Op */
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+		return latch;
+	}
+}
@@ -0,0 +1,267 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.jmx.util.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: FlatteningPlanTest</p>
+ * <p>Description: Verifies that {@link FlatteningPlan} flattens CompositeData and TabularData to exactly the keys and values
+ * of the generic walk <code>JMXHelper.indexOpenData</code> did before plans were introduced</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.jmx.util.helpers.FlatteningPlanTest</code></p>
+ */
+public class FlatteningPlanTest {
+	/** A composite of simple items */
+	private static final CompositeType POINT = compositeType("Point", new String[]{"x", "y", "label"}, SimpleType.INTEGER, SimpleType.LONG, SimpleType.STRING);
+	/** A composite with a nested composite item */
+	private static final CompositeType OUTER = compositeType("Outer", new String[]{"name", "point"}, SimpleType.STRING, POINT);
+	/** A table with one index item and a nested composite item */
+	private static final TabularType BY_KEY = tabularType("ByKey", compositeType("KeyRow", new String[]{"key", "count", "point"}, SimpleType.STRING, SimpleType.LONG, POINT), "key");
+	/** A table with two index items */
+	private static final TabularType BY_ENDPOINT = tabularType("ByEndpoint", compositeType("EndpointRow", new String[]{"host", "port", "rate"}, SimpleType.STRING, SimpleType.INTEGER, SimpleType.DOUBLE), "host", "port");
+
+	/**
+	 * Verifies a composite of simple items, including a null item
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testComposite() throws Exception {
+		assertMatches("Pos", point(1, 2L, "a"));
+		assertMatches("Pos", point(3, 4L, null));
+	}
+
+	/**
+	 * Verifies a composite with a nested composite, which is kept as a value rather than flattened further
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testNestedComposite() throws Exception {
+		final CompositeData outer = new CompositeDataSupport(OUTER, new String[]{"name", "point"}, new Object[]{"o", point(5, 6L, "b")});
+		final Map<String, Object> flat = assertMatches("Outer", outer);
+		assertTrue("Nested composite should be a value", flat.get("Outer/point") instanceof CompositeData);
+	}
+
+	/**
+	 * Verifies tables with one and two index items, including rows with nested composites
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testTabular() throws Exception {
+		final TabularData byKey = new TabularDataSupport(BY_KEY);
+		byKey.put(new CompositeDataSupport(BY_KEY.getRowType(), new String[]{"key", "count", "point"}, new Object[]{"k1", 10L, point(1, 1L, "p1")}));
+		byKey.put(new CompositeDataSupport(BY_KEY.getRowType(), new String[]{"key", "count", "point"}, new Object[]{"k2", 20L, point(2, 2L, "p2")}));
+		assertMatches("Keys", byKey);
+		final TabularData byEndpoint = new TabularDataSupport(BY_ENDPOINT);
+		byEndpoint.put(new CompositeDataSupport(BY_ENDPOINT.getRowType(), new String[]{"host", "port", "rate"}, new Object[]{"h1", 80, 1.5d}));
+		byEndpoint.put(new CompositeDataSupport(BY_ENDPOINT.getRowType(), new String[]{"host", "port", "rate"}, new Object[]{"h1", 443, 2.5d}));
+		byEndpoint.put(new CompositeDataSupport(BY_ENDPOINT.getRowType(), new String[]{"host", "port", "rate"}, new Object[]{"h2", 80, 3.5d}));
+		final Map<String, Object> flat = assertMatches("Endpoints", byEndpoint);
+		assertEquals(2.5d, flat.get("Endpoints/h1/443/rate"));
+		assertMatches("Empty", new TabularDataSupport(BY_ENDPOINT));
+	}
+
+	/**
+	 * Verifies that a plan is compiled once per type and that repeated flattening reuses the same interned names
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testPlanReuse() throws Exception {
+		final CompositeData p = point(1, 2L, "a");
+		assertSame(FlatteningPlan.forType(POINT), FlatteningPlan.forValue(p));
+		final Map<String, Object> first = flatten("Reuse", p, "/");
+		final Map<String, Object> second = flatten("Reuse", point(7, 8L, "c"), "/");
+		for(String key: first.keySet()) {
+			String same = null;
+			for(String k: second.keySet()) {
+				if(k.equals(key)) same = k;
+			}
+			assertSame("Flattened name should be reused", key, same);
+		}
+	}
+
+	/**
+	 * Verifies every CompositeData and TabularData attribute of the platform MXBeans, which include nested tables
+	 * in the garbage collectors' <code>LastGcInfo</code>
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testPlatformMXBeans() throws Exception {
+		System.gc();
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		int compared = 0;
+		for(ObjectName on: server.queryNames(new ObjectName("java.lang:*"), null)) {
+			for(MBeanAttributeInfo attr: server.getMBeanInfo(on).getAttributes()) {
+				final Object value;
+				try {
+					value = server.getAttribute(on, attr.getName());
+				} catch (Exception ex) {
+					continue;
+				}
+				if(value instanceof CompositeData || value instanceof TabularData) {
+					assertMatches(attr.getName(), value);
+					compared++;
+				}
+			}
+		}
+		assertTrue("No open data attributes found", compared > 0);
+	}
+
+	/**
+	 * Asserts that the plan's flattening and {@link JMXHelper#indexOpenData(String, Object, String, MBeanAttributeInfo)} match
+	 * the original flattening for a selection of delimiters
+	 * @param name The attribute name
+	 * @param openData The value to flatten
+	 * @return the flattened value with the default delimiter
+	 */
+	private static Map<String, Object> assertMatches(final String name, final Object openData) {
+		for(String delimiter: new String[]{".", "::"}) {
+			final Map<String, Object> expected = legacyIndex(name, openData, delimiter);
+			assertEquals("Plan flattening of [" + name + "] with [" + delimiter + "]", expected, flatten(name, openData, delimiter));
+			assertEquals("Indexed [" + name + "] with [" + delimiter + "]", expected, JMXHelper.indexOpenData(name, openData, delimiter, null));
+		}
+		final Map<String, Object> expected = legacyIndex(name, openData, null);
+		assertEquals("Indexed [" + name + "] with the default delimiter", expected, JMXHelper.indexOpenData(name, openData, null, null));
+		final Map<String, Object> flat = flatten(name, openData, "/");
+		assertEquals("Plan flattening of [" + name + "]", expected, flat);
+		if(openData instanceof CompositeData) assertFalse(flat.isEmpty());
+		return flat;
+	}
+
+	/**
+	 * Flattens the passed value with its plan
+	 * @param name The attribute name
+	 * @param openData The value to flatten
+	 * @param delimiter The delimiter
+	 * @return the flattened value
+	 */
+	private static Map<String, Object> flatten(final String name, final Object openData, final String delimiter) {
+		final Map<String, Object> map = new HashMap<String, Object>();
+		FlatteningPlan.forValue(openData).flatten(name, delimiter, openData, map);
+		return map;
+	}
+
+	/**
+	 * The generic flattening <code>JMXHelper.indexOpenData</code> did before plans were introduced
+	 * @param name The attribute name
+	 * @param openData The value to flatten
+	 * @param delimiter The delimiter, defaulting to <code>/</code>
+	 * @return the flattened value
+	 */
+	private static Map<String, Object> legacyIndex(final String name, final Object openData, String delimiter) {
+		if(openData==null) return Collections.emptyMap();
+		if(delimiter==null) delimiter = "/";
+		final Map<String, Object> indexMap = new HashMap<String, Object>();
+		if(openData instanceof CompositeData) {
+			final CompositeData cd = (CompositeData)openData;
+			for(String key: cd.getCompositeType().keySet()) {
+				indexMap.put(name + delimiter + key, cd.get(key));
+			}
+		} else if(openData instanceof TabularData) {
+			final TabularData td = (TabularData)openData;
+			final CompositeType ct = td.getTabularType().getRowType();
+			@SuppressWarnings("unchecked")
+			final Set<List<?>> keySets = (Set<List<?>>)td.keySet();
+			for(List<?> keyset: keySets) {
+				final StringBuilder compositeKey = new StringBuilder(name).append(delimiter);
+				for(Object k: keyset) {
+					compositeKey.append(k).append(delimiter);
+				}
+				final CompositeData cd = td.get(keyset.toArray());
+				for(String key: ct.keySet()) {
+					indexMap.put(compositeKey.toString() + key, cd.get(key));
+				}
+			}
+		}
+		return indexMap;
+	}
+
+	/**
+	 * Creates a Point composite
+	 * @param x The x item
+	 * @param y The y item
+	 * @param label The label item
+	 * @return the composite
+	 * @throws Exception thrown on any error
+	 */
+	private static CompositeData point(final Integer x, final Long y, final String label) throws Exception {
+		return new CompositeDataSupport(POINT, new String[]{"x", "y", "label"}, new Object[]{x, y, label});
+	}
+
+	/**
+	 * Creates a composite type whose item descriptions are the item names
+	 * @param typeName The type name
+	 * @param items The item names
+	 * @param types The item types
+	 * @return the composite type
+	 */
+	private static CompositeType compositeType(final String typeName, final String[] items, final OpenType<?>...types) {
+		try {
+			return new CompositeType(typeName, typeName, items, items, types);
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Creates a tabular type
+	 * @param typeName The type name
+	 * @param rowType The row type
+	 * @param indexNames The index item names
+	 * @return the tabular type
+	 */
+	private static TabularType tabularType(final String typeName, final CompositeType rowType, final String...indexNames) {
+		try {
+			return new TabularType(typeName, typeName, rowType, indexNames);
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+}
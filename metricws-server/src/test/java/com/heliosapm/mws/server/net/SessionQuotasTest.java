@@ -0,0 +1,175 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.jboss.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.heliosapm.Configuration;
+
+/**
+ * <p>Title: SessionQuotasTest</p>
+ * <p>Description: Tests the per connection request throttle of {@link SessionQuotas}, up to the policy violation
+ * close of a flooding web socket. Connections are made over Netty's in-VM transport so the frames written back
+ * can be inspected as they were written.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.SessionQuotasTest</code></p>
+ */
+public class SessionQuotasTest {
+	/** The request burst of each connection */
+	private static final int BURST = 2;
+	/** The consecutive throttled requests after which a connection is closed */
+	private static final int MAX_THROTTLED = 3;
+	/** The in-VM server address */
+	private static final LocalAddress ADDRESS = new LocalAddress("SessionQuotasTest");
+
+	/** The in-VM server */
+	private static ServerBootstrap server;
+	/** The in-VM server channel */
+	private static Channel serverChannel;
+	/** The server side of each accepted connection */
+	private static final BlockingQueue<Channel> accepted = new LinkedBlockingQueue<Channel>();
+	/** The quotas under test */
+	private static SessionQuotas quotas;
+
+	/**
+	 * Configures a slow request rate so no permit refills during a test, and starts the in-VM server
+	 */
+	@BeforeClass
+	public static void setUp() {
+		System.setProperty(Configuration.SESSION_RATE_PROP, "1");
+		System.setProperty(Configuration.SESSION_BURST_PROP, "" + BURST);
+		System.setProperty(Configuration.SESSION_MAXTHROTTLED_PROP, "" + MAX_THROTTLED);
+		quotas = SessionQuotas.getInstance();
+		server = new ServerBootstrap(new DefaultLocalServerChannelFactory());
+		server.getPipeline().addLast("accept", new SimpleChannelUpstreamHandler() {
+			@Override
+			public void channelConnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+				accepted.add(e.getChannel());
+			}
+		});
+		serverChannel = server.bind(ADDRESS);
+	}
+
+	/**
+	 * Stops the in-VM server
+	 */
+	@AfterClass
+	public static void tearDown() {
+		if(serverChannel!=null) serverChannel.close().awaitUninterruptibly();
+		if(server!=null) server.releaseExternalResources();
+	}
+
+	/**
+	 * Floods one connection and verifies that the throttled frames are answered with errors until the
+	 * consecutive throttled limit is reached, at which point the connection is closed with a policy violation
+	 * @throws Exception thrown on any error
+	 */
+	@Test(timeout=10000L)
+	public void testFloodingSessionClosedWithPolicyViolation() throws Exception {
+		final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+		final Channel channel = connect(received);
+		final long disconnects = quotas.getDisconnectCount();
+		for(int i = 0; i < BURST; i++) {
+			assertTrue("Frame within the burst should be admitted", quotas.admitFrame(channel));
+		}
+		assertNull("Admitted frames should not be answered", received.poll(100L, TimeUnit.MILLISECONDS));
+		for(int i = 1; i < MAX_THROTTLED; i++) {
+			assertFalse("Frame over the burst should be throttled", quotas.admitFrame(channel));
+			final Object frame = received.poll(5L, TimeUnit.SECONDS);
+			assertTrue("Throttled frame should be answered with an error, not " + frame, frame instanceof TextWebSocketFrame);
+			assertTrue("Connection should still be open", channel.isOpen());
+		}
+		assertFalse("Frame over the burst should be throttled", quotas.admitFrame(channel));
+		final Object frame = received.poll(5L, TimeUnit.SECONDS);
+		assertTrue("Flooding connection should be sent a close frame, not " + frame, frame instanceof CloseWebSocketFrame);
+		assertEquals("Close status", SessionQuotas.CLOSE_POLICY_VIOLATION, ((CloseWebSocketFrame)frame).getStatusCode());
+		assertTrue("Flooding connection should be closed", channel.getCloseFuture().await(5L, TimeUnit.SECONDS));
+		assertEquals("Disconnect count", disconnects + 1, quotas.getDisconnectCount());
+	}
+
+	/**
+	 * Verifies that each connection is throttled against its own bucket
+	 * @throws Exception thrown on any error
+	 */
+	@Test(timeout=10000L)
+	public void testQuotasArePerConnection() throws Exception {
+		final Channel first = connect(new LinkedBlockingQueue<Object>());
+		final Channel second = connect(new LinkedBlockingQueue<Object>());
+		for(int i = 0; i < BURST; i++) {
+			assertTrue("Frame within the burst should be admitted", quotas.admitRequest(first));
+		}
+		assertFalse("Frame over the burst should be throttled", quotas.admitRequest(first));
+		for(int i = 0; i < BURST; i++) {
+			assertTrue("Another connection's frame should be admitted", quotas.admitRequest(second));
+		}
+		first.close().awaitUninterruptibly();
+		second.close().awaitUninterruptibly();
+	}
+
+	/**
+	 * Connects a client to the in-VM server
+	 * @param received The queue the client adds the messages it receives to
+	 * @return the server side of the connection
+	 * @throws Exception thrown on any error
+	 */
+	private static Channel connect(final BlockingQueue<Object> received) throws Exception {
+		final ClientBootstrap client = new ClientBootstrap(new DefaultLocalClientChannelFactory());
+		client.setPipeline(Channels.pipeline(new SimpleChannelUpstreamHandler() {
+			@Override
+			public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+				received.add(e.getMessage());
+			}
+		}));
+		assertTrue("Client should connect", client.connect(ADDRESS).await(5L, TimeUnit.SECONDS));
+		final Channel channel = accepted.poll(5L, TimeUnit.SECONDS);
+		assertTrue("Server should accept the connection", channel!=null);
+		return channel;
+	}
+}
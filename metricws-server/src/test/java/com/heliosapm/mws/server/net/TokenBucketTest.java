@@ -0,0 +1,108 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.mws.server.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: TokenBucketTest</p>
+ * <p>Description: Tests the burst boundary and refill of {@link TokenBucket}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.mws.server.net.TokenBucketTest</code></p>
+ */
+public class TokenBucketTest {
+
+	/**
+	 * Verifies that a new bucket grants exactly <b><code>burst</code></b> permits at once
+	 */
+	@Test
+	public void testNewBucketGrantsExactlyBurst() {
+		final TokenBucket bucket = new TokenBucket(1, 5);
+		assertTrue("A new bucket should be full", bucket.isFull());
+		assertEquals("Permits granted at once", 5, drain(bucket));
+		assertFalse("A drained bucket should not be full", bucket.isFull());
+	}
+
+	/**
+	 * Verifies that a bucket idle for many intervals still grants no more than <b><code>burst</code></b> permits
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testIdleCreditCappedAtBurst() throws Exception {
+		final TokenBucket bucket = new TokenBucket(10, 2);
+		assertEquals("Permits granted at once", 2, drain(bucket));
+		// ten intervals of idle time
+		Thread.sleep(1000L);
+		assertTrue("An idle bucket should be full", bucket.isFull());
+		assertEquals("Permits granted after idling", 2, drain(bucket));
+	}
+
+	/**
+	 * Verifies that a drained bucket grants one permit per elapsed interval
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testRefillsOnePermitPerInterval() throws Exception {
+		final TokenBucket bucket = new TokenBucket(10, 3);
+		assertEquals("Permits granted at once", 3, drain(bucket));
+		// one 100 ms. interval, the next permit is another interval away
+		Thread.sleep(150L);
+		assertTrue("A permit should have refilled", bucket.tryAcquire());
+		assertFalse("Only one permit should have refilled", bucket.tryAcquire());
+		Thread.sleep(100L);
+		assertTrue("The next permit should have refilled", bucket.tryAcquire());
+	}
+
+	/**
+	 * Verifies that invalid rates and bursts are rejected
+	 */
+	@Test
+	public void testInvalidArguments() {
+		try {
+			new TokenBucket(0, 1);
+			throw new AssertionError("A zero rate should be rejected");
+		} catch (IllegalArgumentException expected) {/* No Op */}
+		try {
+			new TokenBucket(1, 0);
+			throw new AssertionError("A zero burst should be rejected");
+		} catch (IllegalArgumentException expected) {/* No Op */}
+	}
+
+	/**
+	 * Acquires permits from the passed bucket until it refuses one
+	 * @param bucket The bucket to drain
+	 * @return the number of permits acquired
+	 */
+	private static int drain(final TokenBucket bucket) {
+		int acquired = 0;
+		while(bucket.tryAcquire()) acquired++;
+		return acquired;
+	}
+}